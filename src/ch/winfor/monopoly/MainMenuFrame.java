@@ -6,6 +6,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.WindowEvent;
 import java.awt.event.WindowListener;
+import java.util.Arrays;
 
 import javax.swing.BorderFactory;
 import javax.swing.JFrame;
@@ -18,8 +19,8 @@ import ch.winfor.monopoly.network.MonopolyConnection;
 import ch.winfor.monopoly.network.MonopolyConnectionListener;
 import ch.winfor.monopoly.network.MonopolyServer;
 import ch.winfor.monopoly.network.NetworkMessage;
-import ch.winfor.monopoly.network.RequestMessage.RequestFullGame;
-import ch.winfor.monopoly.network.UpdateMessage.FullGameUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.BoardUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.StateUpdate;
 
 /**
  * the main menu frame
@@ -110,6 +111,7 @@ public class MainMenuFrame extends JFrame implements ActionListener {
         if (config.isOnline()) {
             MonopolyServer ms = gameConfigurePanel.getServer();
             ms.setGame(mf.getGame());
+            ms.assignSeats(getNetworkPlayers(config));
 
             NetworkMessage nm = new ClientGameConfigurePanel.StartGameMessage();
             ms.broadcast(nm);
@@ -117,10 +119,29 @@ public class MainMenuFrame extends JFrame implements ActionListener {
         showGameFrame(mf);
     }
 
+    /**
+     * @param config
+     *            the configuration of a game
+     * @return the indices of the players that are played over the network
+     */
+    private static int[] getNetworkPlayers(MonopolyGameConfiguration config) {
+        int[] players = new int[config.getNPlayers()];
+        int n = 0;
+        for (int i = 0; i < config.getNPlayers(); i++) {
+            MonopolyGameConfiguration.Player player = config.getPlayer(i);
+            if (player.getType() == MonopolyGameConfiguration.Player.Type.NETWORK)
+                players[n++] = i;
+        }
+        return Arrays.copyOf(players, n);
+    }
+
     private void startClientGame(final MonopolyClient monopolyClient) {
         monopolyClient.addConnectionListener(new MonopolyConnectionListener() {
             private int wrongMessages = 0;
 
+            /** <code>true</code> as soon as the game frame has been opened */
+            private boolean started = false;
+
             @Override
             public void timedOut(MonopolyConnection sender) {
                 layout.show(contentPane, START_GAME);
@@ -130,11 +151,11 @@ public class MainMenuFrame extends JFrame implements ActionListener {
             @Override
             public void messageReceived(MonopolyConnection sender,
                     NetworkMessage message) {
-                if (message instanceof FullGameUpdate) {
-                    FullGameUpdate fgu = (FullGameUpdate) message;
-                    Game game = fgu.getGame();
-                    System.out.println(game);
-                    monopolyClient.setGame(game);
+                // the client creates its game from the board and the state
+                if (message instanceof StateUpdate && !started
+                        && monopolyClient.getGame() != null) {
+                    started = true;
+                    Game game = monopolyClient.getGame();
                     MonopolyFrame mf = new MonopolyFrame(game, 2);
                     showGameFrame(mf);
                     /*
@@ -144,14 +165,14 @@ public class MainMenuFrame extends JFrame implements ActionListener {
                      * monopolyClient.removeConnectionListener(getThis()); } },
                      * 1000);
                      */
-                } else {
+                } else if (!started && !(message instanceof BoardUpdate)) {
                     wrongMessages++;
                     if (wrongMessages > 5)
                         timedOut(sender);
                 }
             }
         });
-        monopolyClient.sendMessage(new RequestFullGame());
+        monopolyClient.requestGame();
     }
 
     private void showGameFrame(MonopolyFrame mf) {
@@ -13,6 +13,7 @@ import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.util.ArrayList;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.swing.JComponent;
 import javax.swing.JFrame;
@@ -29,6 +30,7 @@ import javax.swing.event.ChangeListener;
 
 import ch.winfor.monopoly.Language.LanguageListener;
 import ch.winfor.monopoly.ai.MonopolyAi;
+import ch.winfor.monopoly.game.ActionLog;
 import ch.winfor.monopoly.game.Board;
 import ch.winfor.monopoly.game.BuyableField;
 import ch.winfor.monopoly.game.Card;
@@ -77,6 +79,9 @@ public class MonopolyFrame extends JFrame implements LanguageListener,
 
     private ArrayList<MonopolyAi> ais;
 
+    /** executor shared by the ais of the game */
+    private ScheduledExecutorService aiExecutor;
+
     private static final int MIN_BOARD_SIZE = 500;
     private static final int MAX_BOARD_SIZE = 2500;
 
@@ -88,24 +93,28 @@ public class MonopolyFrame extends JFrame implements LanguageListener,
      */
     public MonopolyFrame(MonopolyGameConfiguration configuration) {
         ais = new ArrayList<MonopolyAi>();
+        aiExecutor = MonopolyAi.createExecutor("monopoly-ai");
         Board board = configuration.getBoard();
         game = new Game(board, configuration.getNPlayers(), System.out);
+        game.setActionLog(new ActionLog(game.getSeed()));
+        game.startDebugConsole();
         boardPanel = new BoardPanel(game);
 
         gameControlPanels = new GameControlPanel[configuration.getNPlayers()];
 
         for (int i = 0; i < configuration.getNPlayers(); i++) {
             MonopolyGameConfiguration.Player p = configuration.getPlayer(i);
-            if (p.getType() == MonopolyGameConfiguration.Player.Type.ARTIFICIAL_INTELLIGENCE) {
-                ais.add(new MonopolyAi(game, i));
-            }
             game.getPlayer(i).setName(p.getName());
             game.getPiece(i).setColor(p.getPieceColor());
         }
+        // from now on, the game is only changed on its own thread
+        game.startGameThread("monopoly-game");
 
         for (int i = 0; i < configuration.getNPlayers(); i++) {
             MonopolyGameConfiguration.Player p = configuration.getPlayer(i);
             if (p.getType() == MonopolyGameConfiguration.Player.Type.ARTIFICIAL_INTELLIGENCE) {
+                ais.add(new MonopolyAi(game, i, aiExecutor, 0, MonopolyAi
+                        .createStrategy()));
                 gameControlPanels[i] = new GameControlPanel(boardPanel, i,
                         false);
             } else {
@@ -126,6 +135,8 @@ public class MonopolyFrame extends JFrame implements LanguageListener,
      */
     public MonopolyFrame(Game game, int playerIndex) {
         this.game = game;
+        ais = new ArrayList<MonopolyAi>();
+        game.startGameThread("monopoly-game");
         boardPanel = new BoardPanel(game);
 
         gameControlPanels = new GameControlPanel[game.getNPlayers()];
@@ -219,6 +230,7 @@ public class MonopolyFrame extends JFrame implements LanguageListener,
     public void free() {
         Language lang = Language.getInstance();
         lang.removeLanguageListener(this);
+        boardPanel.free();
 
         for (int i = 0; i < gameControlPanels.length; i++) {
             GameControlPanel gcp = gameControlPanels[i];
@@ -228,6 +240,9 @@ public class MonopolyFrame extends JFrame implements LanguageListener,
         for (MonopolyAi ai : ais) {
             ai.free();
         }
+        if (aiExecutor != null)
+            aiExecutor.shutdown();
+        game.stopGameThread();
     }
 
     @Override
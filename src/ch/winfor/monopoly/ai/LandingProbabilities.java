@@ -0,0 +1,298 @@
+package ch.winfor.monopoly.ai;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.Field.JailField;
+
+/**
+ * the long-term probabilities of landing on the fields of a board and the
+ * rent a field yields per turn of an opponent
+ * 
+ * The turn of a player is modelled as a Markov chain whose states are the
+ * position and the jail rounds of the player. The chain follows the rules of
+ * {@link ch.winfor.monopoly.game.TurnHandler}: a player in jail only moves
+ * when he casts doubles, go-to-jail fields and cards send him to jail, and
+ * the movement cards move him on. Every card of a deck is assumed to be drawn
+ * equally often. The stationary distribution of the chain only depends on the
+ * board, so it is computed once per board and cached as long as the board is
+ * in use.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class LandingProbabilities {
+    /** the maximum number of cards drawn in a row during one turn */
+    private static final int MAX_CARD_CHAIN = 4;
+
+    /** the number of jail states (<code>0</code> is not in jail) */
+    private static final int JAIL_STATES = JailField.STANDARD_STAY + 1;
+
+    /** stop iterating when the distribution changes less than this */
+    private static final double PRECISION = 1e-12;
+
+    /** the maximum number of iterations */
+    private static final int MAX_ITERATIONS = 10000;
+
+    /** computed tables by board */
+    private static final Map<Board, LandingProbabilities> cache = new WeakHashMap<Board, LandingProbabilities>();
+
+    /** the compiled board */
+    private final RolloutBoard board;
+
+    /** the probability of landing on every field during one turn */
+    private final double[] landings;
+
+    /** the landing probability times the expected dice value per field */
+    private final double[] diceLandings;
+
+    /** the expected rent per opponent turn of every field by level */
+    private final double[][] expectedRents;
+
+    /** the probability of being in jail at the start of a turn */
+    private final double jailProbability;
+
+    /**
+     * solves the chain of a board
+     * 
+     * @param board
+     *            the compiled board
+     */
+    LandingProbabilities(RolloutBoard board) {
+        this.board = board;
+        int nStates = board.length * JAIL_STATES;
+        double[] distribution = new double[nStates];
+        double[] next = new double[nStates];
+        distribution[0] = 1;
+
+        for (int i = 0; i < MAX_ITERATIONS; i++) {
+            Arrays.fill(next, 0);
+            step(distribution, next, null, null);
+            double change = 0;
+            for (int s = 0; s < nStates; s++)
+                change += Math.abs(next[s] - distribution[s]);
+            double[] swap = distribution;
+            distribution = next;
+            next = swap;
+            if (change < PRECISION)
+                break;
+        }
+
+        landings = new double[board.length];
+        diceLandings = new double[board.length];
+        Arrays.fill(next, 0);
+        step(distribution, next, landings, diceLandings);
+
+        double inJail = 0;
+        for (int s = 0; s < nStates; s++) {
+            if (s % JAIL_STATES != 0)
+                inJail += distribution[s];
+        }
+        jailProbability = inJail;
+
+        expectedRents = new double[board.length][];
+        for (int f = 0; f < board.length; f++) {
+            long[] rents;
+            double rate = landings[f];
+            switch (board.kinds[f]) {
+            case RolloutBoard.FIELD_PROPERTY:
+                rents = board.propertyRents[f];
+                break;
+            case RolloutBoard.FIELD_RAILROAD:
+                rents = board.railroadRents[f];
+                break;
+            case RolloutBoard.FIELD_COMPANY:
+                rents = board.companyMultipliers[f];
+                rate = diceLandings[f];
+                break;
+            default:
+                rents = new long[0];
+            }
+            expectedRents[f] = new double[rents.length];
+            for (int level = 0; level < rents.length; level++)
+                expectedRents[f][level] = rate * rents[level];
+        }
+    }
+
+    /**
+     * returns the tables of a board, solving the chain only once per board
+     * 
+     * @param board
+     *            the board; it must not be modified afterwards
+     * @return the landing probabilities on the board
+     */
+    public static LandingProbabilities of(Board board) {
+        synchronized (cache) {
+            LandingProbabilities probabilities = cache.get(board);
+            if (probabilities == null) {
+                probabilities = new LandingProbabilities(
+                        RolloutBoard.of(board));
+                cache.put(board, probabilities);
+            }
+            return probabilities;
+        }
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the probability that a player lands on the field during one of
+     *         his turns
+     */
+    public double getLandingProbability(int field) {
+        return landings[field];
+    }
+
+    /**
+     * @return the probability that a player is in jail at the start of his
+     *         turn
+     */
+    public double getJailProbability() {
+        return jailProbability;
+    }
+
+    /**
+     * returns the rent a field yields on average per turn of one opponent
+     * 
+     * @param field
+     *            the index of the field
+     * @param level
+     *            the number of houses for properties, the number of
+     *            railroads or companies of the owner minus one for railroads
+     *            and companies
+     * @return the expected rent, <code>0</code> if the field doesn't yield any
+     *         or the level is invalid
+     */
+    public double getExpectedRent(int field, int level) {
+        double[] rents = expectedRents[field];
+        return level >= 0 && level < rents.length ? rents[level] : 0;
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the number of levels of {@link #getExpectedRent(int, int)}
+     */
+    public int getNLevels(int field) {
+        return expectedRents[field].length;
+    }
+
+    /**
+     * plays one turn from every state of a distribution
+     * 
+     * @param distribution
+     *            the probability of every state at the start of the turn
+     * @param next
+     *            receives the probability of every state after the turn
+     * @param landings
+     *            receives the landing probability of every field, or
+     *            <code>null</code>
+     * @param diceLandings
+     *            receives the landing probability times the dice value of
+     *            every field, or <code>null</code>
+     */
+    private void step(double[] distribution, double[] next, double[] landings,
+            double[] diceLandings) {
+        for (int s = 0; s < distribution.length; s++) {
+            double p = distribution[s];
+            if (p == 0)
+                continue;
+            int position = s / JAIL_STATES;
+            int rounds = s % JAIL_STATES;
+            if (rounds > 0)
+                rounds--;
+
+            for (int die1 = 1; die1 <= 6; die1++) {
+                for (int die2 = 1; die2 <= 6; die2++) {
+                    double q = p / 36;
+                    if (rounds > 0 && die1 != die2) {
+                        next[position * JAIL_STATES + rounds] += q;
+                        continue;
+                    }
+                    int diceValue = die1 + die2;
+                    land((position + diceValue) % board.length, rounds,
+                            diceValue, q, 0, next, landings, diceLandings);
+                }
+            }
+        }
+    }
+
+    /**
+     * follows the effect of a field a player has landed on
+     * 
+     * @param field
+     *            the index of the field
+     * @param rounds
+     *            the jail rounds of the player
+     * @param diceValue
+     *            the dice value of the turn
+     * @param q
+     *            the probability of this landing
+     * @param chain
+     *            the number of cards drawn before in this turn
+     * @param next
+     *            receives the probability of the state after the turn
+     * @param landings
+     *            receives the landing probability of every field, or
+     *            <code>null</code>
+     * @param diceLandings
+     *            receives the landing probability times the dice value of
+     *            every field, or <code>null</code>
+     */
+    private void land(int field, int rounds, int diceValue, double q,
+            int chain, double[] next, double[] landings, double[] diceLandings) {
+        if (landings != null) {
+            landings[field] += q;
+            diceLandings[field] += q * diceValue;
+        }
+
+        int kind = board.kinds[field];
+        int deck = board.decks[field];
+        if (kind == RolloutBoard.FIELD_GO_TO_JAIL) {
+            next[board.jailIndex * JAIL_STATES + JailField.STANDARD_STAY] += q;
+            return;
+        } else if (kind != RolloutBoard.FIELD_CARD || deck == -1
+                || chain >= MAX_CARD_CHAIN
+                || board.cardKinds[deck].length == 0) {
+            next[field * JAIL_STATES + rounds] += q;
+            return;
+        }
+
+        int nCards = board.cardKinds[deck].length;
+        double qCard = q / nCards;
+        for (int c = 0; c < nCards; c++) {
+            long arg = board.cardArgs[deck][c];
+            int target = -1;
+            switch (board.cardKinds[deck][c]) {
+            case RolloutBoard.CARD_ADVANCE_TO:
+                target = (int) (arg % board.length);
+                break;
+            case RolloutBoard.CARD_ADVANCE_TO_UTILITY:
+                target = board.nextUtility[field];
+                break;
+            case RolloutBoard.CARD_ADVANCE_TO_RAILROAD:
+                target = board.nextRailroad[field];
+                break;
+            case RolloutBoard.CARD_GO_RELATIVE:
+                target = (int) (((field + arg) % board.length + board.length) % board.length);
+                break;
+            case RolloutBoard.CARD_GET_OUT_OF_JAIL:
+                next[field * JAIL_STATES] += qCard;
+                continue;
+            case RolloutBoard.CARD_GO_TO_JAIL:
+                next[board.jailIndex * JAIL_STATES
+                        + JailField.STANDARD_STAY] += qCard;
+                continue;
+            default:
+                break;
+            }
+            if (target == -1)
+                next[field * JAIL_STATES + rounds] += qCard;
+            else
+                land(target, rounds, diceValue, qCard, chain + 1, next,
+                        landings, diceLandings);
+        }
+    }
+}
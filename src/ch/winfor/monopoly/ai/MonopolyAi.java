@@ -1,16 +1,69 @@
 package ch.winfor.monopoly.ai;
 
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
 import ch.winfor.monopoly.Freeable;
+import ch.winfor.monopoly.game.BuyableField;
 import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.GameAdapter;
+import ch.winfor.monopoly.game.GameCommand;
+import ch.winfor.monopoly.game.PropertyField;
+import ch.winfor.monopoly.game.TurnCommand;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 import ch.winfor.monopoly.game.TurnHandler;
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.sim.Strategy;
 
 /**
  * basic monopoly playing intelligence
  * 
+ * The ai doesn't have a thread of its own. It is woken up when a turn ends
+ * and it is its turn, and then takes one action of the {@link TurnHandler}
+ * after the other, until its turn has ended. The ais of one game should
+ * share one single-threaded executor (see {@link #createExecutor(String)}),
+ * so they never act at the same time. The executor only waits for the think
+ * delay; the decision is made in a {@link GameCommand} on the
+ * {@link ch.winfor.monopoly.game.GameThread} if the game has one, and the
+ * action is submitted to the game as a {@link TurnCommand}, like the actions
+ * of the gui, so it goes through the
+ * {@link ch.winfor.monopoly.game.Game.ActionForwarder} of a lockstep game.
+ * The next action is scheduled when the game has taken the previous one.
+ * 
+ * If the ai takes too many actions in one turn, it stops making decisions
+ * and only does what is needed to end the turn.
+ * 
+ * Whether to buy properties and houses is decided by a {@link Strategy},
+ * e.g. a {@link MonteCarloStrategy}; {@link #createStrategy()} chooses the
+ * strategy of the ais of the gui.
+ * 
  * @author Nicolas Winkler
  * 
  */
 public class MonopolyAi implements Freeable {
+    /** the events of the ais */
+    private static final EventLog LOG = Log.get(Log.AI);
+
+    /**
+     * maximum number of actions in one turn before the ai only tries to end
+     * the turn
+     */
+    private static final int MAX_ACTIONS_PER_TURN = 256;
+
+    /**
+     * milliseconds after which an action is submitted again if the game
+     * hasn't taken it (e.g. because the server rejected it)
+     */
+    private static final long RETRY_DELAY = 1000;
+
+    /** executor of the ais that were not given one */
+    private static ScheduledExecutorService sharedExecutor;
+
     /**
      * the players turn index
      */
@@ -21,56 +74,268 @@ public class MonopolyAi implements Freeable {
      */
     private Game game;
 
-    /** thread waiting for the turn */
-    private TurnAwaiter turnAwaiter;
+    /** the executor running the actions */
+    private ScheduledExecutorService executor;
+
+    /** milliseconds the ai waits before every action */
+    private long thinkDelay;
+
+    /** the strategy deciding what to buy */
+    private Strategy strategy;
+
+    /** the number of actions in the current turn */
+    private volatile int actions;
+
+    /** the houses the ai still wants to build in the current turn */
+    private Queue<PropertyField> houses;
+
+    /** the number of actions the game had taken when the ai last acted */
+    private volatile long actedAt = -1;
 
+    /** if the ai has been stopped */
+    private volatile boolean stopped;
+
+    /** wakes the ai up when its turn starts */
+    private GameAdapter turnListener = new GameAdapter() {
+        @Override
+        public void playerEndedTurn(Game sender, int playerIndex) {
+            if (sender.getTurn() == turn) {
+                actions = 0;
+                houses = null;
+                scheduleAction();
+            }
+        }
+    };
+
+    /** schedules the next action when the game has taken one of the ai */
+    private Game.ActionListener actionListener = new Game.ActionListener() {
+        @Override
+        public void actionTaken(Game sender, TurnCommand action,
+                long sequence) {
+            if (action.getPlayer() == turn && sender.getTurn() == turn)
+                scheduleAction();
+        }
+    };
+
+    /** executes the next action */
+    private GameCommand actionCommand = new GameCommand() {
+        @Override
+        public void execute(Game game) {
+            act();
+        }
+    };
+
+    /** submits the next action to the game */
+    private Runnable actionTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!stopped)
+                game.submit(actionCommand);
+        }
+    };
+
+    /** acts again if the game hasn't taken the last action */
+    private GameCommand retryCommand = new GameCommand() {
+        @Override
+        public void execute(Game game) {
+            if (game.getNActions() == actedAt)
+                act();
+        }
+    };
+
+    /** submits {@link #retryCommand} to the game */
+    private Runnable retryTask = new Runnable() {
+        @Override
+        public void run() {
+            if (!stopped)
+                game.submit(retryCommand);
+        }
+    };
+
+    /**
+     * creates an ai that never buys anything and acts without delay on an
+     * executor shared by all ais created like this
+     * 
+     * @param game
+     *            the game
+     * @param turn
+     *            the index of the player controlled by the ai
+     */
     public MonopolyAi(Game game, int turn) {
+        this(game, turn, getSharedExecutor(), 0);
+    }
+
+    /**
+     * @param game
+     *            the game
+     * @param turn
+     *            the index of the player controlled by the ai
+     * @param executor
+     *            the executor running the actions; should be shared by all
+     *            ais of the game and have a single thread
+     * @param thinkDelay
+     *            milliseconds the ai waits before every action (to make it
+     *            look like the computer thinks)
+     */
+    public MonopolyAi(Game game, int turn, ScheduledExecutorService executor,
+            long thinkDelay) {
+        this(game, turn, executor, thinkDelay, new Strategy.NeverBuyStrategy());
+    }
+
+    /**
+     * @param game
+     *            the game
+     * @param turn
+     *            the index of the player controlled by the ai
+     * @param executor
+     *            the executor running the actions; should be shared by all
+     *            ais of the game and have a single thread
+     * @param thinkDelay
+     *            milliseconds the ai waits before every action (to make it
+     *            look like the computer thinks)
+     * @param strategy
+     *            the strategy deciding what to buy
+     */
+    public MonopolyAi(Game game, int turn, ScheduledExecutorService executor,
+            long thinkDelay, Strategy strategy) {
         this.game = game;
         this.turn = turn;
-        turnAwaiter = new TurnAwaiter();
-        turnAwaiter.start();
+        this.executor = executor;
+        this.thinkDelay = thinkDelay;
+        this.strategy = strategy;
+        game.addGameListener(turnListener);
+        game.addActionListener(actionListener);
+        if (game.getTurn() == turn)
+            scheduleAction();
+    }
+
+    /**
+     * creates an executor for the ais of a game
+     * 
+     * @param name
+     *            the name of the thread
+     * @return a single-threaded executor whose thread doesn't keep the program
+     *         running
+     */
+    public static ScheduledExecutorService createExecutor(final String name) {
+        return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * creates the strategy for an ai of the gui
+     * 
+     * The system property <code>monopoly.ai</code> selects the strategy:
+     * <code>montecarlo</code> for a {@link MonteCarloStrategy} or
+     * <code>valuation</code> for a {@link ValuationStrategy}, which decides
+     * right away without simulations. Without the property, the ais use Monte
+     * Carlo rollouts if there is more than one processor core, so the
+     * rollouts don't slow down the gui.
+     * 
+     * @return the strategy
+     * @throws IllegalArgumentException
+     *             if the property names an unknown strategy
+     */
+    public static Strategy createStrategy() {
+        String name = System.getProperty("monopoly.ai");
+        if (name == null)
+            name = Runtime.getRuntime().availableProcessors() > 1 ? "montecarlo"
+                    : "valuation";
+        if (name.equals("montecarlo"))
+            return new MonteCarloStrategy(MonteCarloStrategy.DEFAULT_BUDGET);
+        else if (name.equals("valuation"))
+            return new ValuationStrategy();
+        else
+            throw new IllegalArgumentException("unknown ai strategy: " + name);
+    }
+
+    /**
+     * @return the executor of the ais that were not given one
+     */
+    private static synchronized ScheduledExecutorService getSharedExecutor() {
+        if (sharedExecutor == null)
+            sharedExecutor = createExecutor("monopoly-ai");
+        return sharedExecutor;
+    }
+
+    /**
+     * schedules the next action after the think delay
+     */
+    private void scheduleAction() {
+        if (!stopped)
+            executor.schedule(actionTask, thinkDelay, TimeUnit.MILLISECONDS);
     }
 
-    @SuppressWarnings("unused")
-    public void takeTurn() {
+    /**
+     * submits the next action if it is still the turn of the ai; the
+     * listeners schedule the following one when the game has taken it
+     */
+    private void act() {
+        if (stopped || game.getTurn() != turn)
+            return;
+        boolean decide = ++actions <= MAX_ACTIONS_PER_TURN;
+        if (actions == MAX_ACTIONS_PER_TURN + 1)
+            LOG.warn("turn.forced", "player", turn, "actions",
+                    MAX_ACTIONS_PER_TURN);
+
+        TurnCommand command;
         try {
-            // make it look like the computer thinks
-            // Thread.sleep(500);
-            if (false)
-                throw new InterruptedException();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+            command = nextAction(decide);
+        } catch (RuntimeException e) {
+            LOG.error("action.failed", "player", turn, "error", e);
+            command = nextAction(false);
         }
+        actedAt = game.getNActions();
+        game.submit(command);
+        if (!stopped)
+            executor.schedule(retryTask, Math.max(thinkDelay, RETRY_DELAY),
+                    TimeUnit.MILLISECONDS);
+    }
 
+    /**
+     * decides on the next action of the current turn
+     * 
+     * @param decide
+     *            <code>false</code> to neither buy nor build anything
+     * @return the action
+     */
+    private TurnCommand nextAction(boolean decide) {
         TurnHandler th = game.getTurnHandler();
         switch (th.getNextTask()) {
         case CAST_DICE:
-            th.castDice();
-            break;
+            return new TurnCommand(turn, Action.CAST_DICE);
         case MOVE_PLAYING_PIECE:
-            th.movePiece();
-            break;
+            return new TurnCommand(turn, Action.MOVE_PIECE);
         case BUY_PROPERTY:
-            th.buyProperty(false);
-            break;
+            BuyableField field = th.getPropertyToBuy();
+            boolean buy = decide && field != null
+                    && strategy.buyProperty(th, field)
+                    && th.getPlayer().getWealth() >= field.getPrice();
+            return new TurnCommand(turn, buy ? Action.BUY_PROPERTY
+                    : Action.DECLINE_PROPERTY);
         case PAY_RENT:
-            th.payRent();
-            break;
+            return new TurnCommand(turn, Action.PAY_RENT);
         case PAY_TAX:
-            th.payTax();
-            break;
-        case END_TURN:
-            th.endTurn();
-            break;
+            return new TurnCommand(turn, Action.PAY_TAX);
         case DRAW_CARD:
-            th.drawCard();
-            break;
+            return new TurnCommand(turn, Action.DRAW_CARD);
         case FOLLOW_CARD:
-            th.followCard();
-            break;
+            return new TurnCommand(turn, Action.FOLLOW_CARD);
         default:
-            th.endTurn();
-            break;
+            if (decide && houses == null)
+                houses = new ArrayDeque<PropertyField>(
+                        strategy.chooseHouses(th));
+            PropertyField house = decide ? houses.poll() : null;
+            if (house != null)
+                return new TurnCommand(turn, Action.BUY_HOUSE, game
+                        .getBoard().getFieldIndex(house));
+            return new TurnCommand(turn, Action.END_TURN);
         }
     }
 
@@ -80,38 +345,8 @@ public class MonopolyAi implements Freeable {
     }
 
     public void endGame() {
-        turnAwaiter.shouldStop();
-        turnAwaiter = null;
-    }
-
-    /**
-     * waits until its his turn
-     * 
-     * @author Nicolas Winkler
-     * 
-     */
-    private class TurnAwaiter extends Thread {
-        private boolean shouldRun;
-
-        public TurnAwaiter() {
-            shouldRun = true;
-        }
-
-        public void shouldStop() {
-            shouldRun = false;
-        }
-
-        public void run() {
-            while (shouldRun) {
-                try {
-                    Thread.sleep(1);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                if (game.getTurn() == turn) {
-                    takeTurn();
-                }
-            }
-        }
+        stopped = true;
+        game.removeGameListener(turnListener);
+        game.removeActionListener(actionListener);
     }
 }
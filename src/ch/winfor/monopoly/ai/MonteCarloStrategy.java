@@ -0,0 +1,173 @@
+package ch.winfor.monopoly.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.BuyableField;
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.PropertyField;
+import ch.winfor.monopoly.game.TurnHandler;
+import ch.winfor.monopoly.sim.Strategy;
+
+/**
+ * strategy that decides by playing the alternatives out with a
+ * {@link RolloutEngine}
+ * 
+ * To buy a property, the game is played on from the state with and from the
+ * state without the property. To build, every house that can be built is
+ * compared with building nothing, one house after the other, until building
+ * nothing is rated best. Houses are only built evenly on complete monopoly
+ * groups. Choosing all houses of a turn is one decision: the budget is shared
+ * between the comparisons, so the game never waits longer than the budget.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class MonteCarloStrategy implements Strategy {
+    /** default milliseconds one decision may take */
+    public static final long DEFAULT_BUDGET = 200;
+
+    /** the maximum number of houses built in one turn */
+    private static final int MAX_HOUSES_PER_TURN = 12;
+
+    /** the engine of the strategies created without one */
+    private static RolloutEngine sharedEngine;
+
+    /** the engine playing the rollouts */
+    private final RolloutEngine engine;
+
+    /** milliseconds one decision may take */
+    private final long budgetMillis;
+
+    /**
+     * creates a strategy using an engine shared by all strategies created
+     * like this
+     * 
+     * @param budgetMillis
+     *            milliseconds one decision may take
+     */
+    public MonteCarloStrategy(long budgetMillis) {
+        this(getSharedEngine(), budgetMillis);
+    }
+
+    /**
+     * @param engine
+     *            the engine playing the rollouts
+     * @param budgetMillis
+     *            milliseconds one decision may take
+     */
+    public MonteCarloStrategy(RolloutEngine engine, long budgetMillis) {
+        this.engine = engine;
+        this.budgetMillis = budgetMillis;
+    }
+
+    /**
+     * @return the engine of the strategies that were not given one
+     */
+    private static synchronized RolloutEngine getSharedEngine() {
+        if (sharedEngine == null)
+            sharedEngine = new RolloutEngine();
+        return sharedEngine;
+    }
+
+    /**
+     * @return milliseconds one decision may take
+     */
+    public long getBudget() {
+        return budgetMillis;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.sim.Strategy#buyProperty(ch.winfor.monopoly.game.
+     * TurnHandler, ch.winfor.monopoly.game.BuyableField)
+     */
+    @Override
+    public boolean buyProperty(TurnHandler turnHandler, BuyableField field) {
+        Game game = turnHandler.getGame();
+        int fieldIndex = game.getBoard().getFieldIndex(field);
+        if (fieldIndex == -1
+                || turnHandler.getPlayer().getWealth() < field.getPrice())
+            return false;
+
+        RolloutState root = capture(game);
+        RolloutState pass = root.fork();
+        pass.endTurn();
+        RolloutState buy = root.fork();
+        buy.buy(fieldIndex);
+        buy.endTurn();
+
+        double[] scores = engine.evaluate(new RolloutState[] { pass, buy },
+                root.getTurn(), budgetMillis);
+        return scores[1] > scores[0];
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.sim.Strategy#chooseHouses(ch.winfor.monopoly.game.
+     * TurnHandler)
+     */
+    @Override
+    public List<PropertyField> chooseHouses(TurnHandler turnHandler) {
+        Game game = turnHandler.getGame();
+        Board board = game.getBoard();
+        List<PropertyField> houses = new ArrayList<PropertyField>();
+        RolloutState root = capture(game);
+        int player = root.getTurn();
+        long deadline = System.currentTimeMillis() + budgetMillis;
+        for (int built = 0; built < MAX_HOUSES_PER_TURN; built++) {
+            List<Integer> fields = new ArrayList<Integer>();
+            List<RolloutState> candidates = new ArrayList<RolloutState>();
+            RolloutState nothing = root.fork();
+            nothing.endTurn();
+            candidates.add(nothing);
+            for (int i = 0; i < board.getAbsoluteLength(); i++) {
+                if (root.canBuildHouse(player, i)) {
+                    RolloutState house = root.fork();
+                    house.buildHouse(i);
+                    house.endTurn();
+                    fields.add(i);
+                    candidates.add(house);
+                }
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (fields.isEmpty() || (built > 0 && remaining <= 0))
+                break;
+
+            // share the rest of the budget between the houses that may
+            // still follow; usually there are at most as many as there are
+            // fields to build on now
+            long budget = Math.max(0, remaining)
+                    / Math.min(MAX_HOUSES_PER_TURN - built, fields.size());
+            double[] scores = engine.evaluate(
+                    candidates.toArray(new RolloutState[candidates.size()]),
+                    player, budget);
+            int best = 0;
+            for (int c = 1; c < scores.length; c++) {
+                if (scores[c] > scores[best])
+                    best = c;
+            }
+            if (best == 0)
+                break;
+
+            int field = fields.get(best - 1);
+            root.buildHouse(field);
+            houses.add((PropertyField) board.getField(field));
+        }
+        return houses;
+    }
+
+    /**
+     * @param game
+     *            the game
+     * @return the state of the game
+     */
+    private static RolloutState capture(Game game) {
+        return RolloutState.capture(game, RolloutBoard.of(game.getBoard()));
+    }
+}
@@ -0,0 +1,343 @@
+package ch.winfor.monopoly.ai;
+
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.WeakHashMap;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.Card;
+import ch.winfor.monopoly.game.Card.AdvanceToCard;
+import ch.winfor.monopoly.game.Card.AdvanceToRailroadCard;
+import ch.winfor.monopoly.game.Card.AdvanceToUtilityCard;
+import ch.winfor.monopoly.game.Card.GetMoneyCard;
+import ch.winfor.monopoly.game.Card.GetMoneyPerPlayerCard;
+import ch.winfor.monopoly.game.Card.GetOutOfJailCard;
+import ch.winfor.monopoly.game.Card.GoRelativeCard;
+import ch.winfor.monopoly.game.Card.GoToJailCard;
+import ch.winfor.monopoly.game.Card.PayPerHouseCard;
+import ch.winfor.monopoly.game.CardCollection;
+import ch.winfor.monopoly.game.CompanyField;
+import ch.winfor.monopoly.game.CompiledBoard;
+import ch.winfor.monopoly.game.DrawCardField;
+import ch.winfor.monopoly.game.Field.GoToJailField;
+import ch.winfor.monopoly.game.Field.StartField;
+import ch.winfor.monopoly.game.PropertyField;
+import ch.winfor.monopoly.game.RailroadField;
+import ch.winfor.monopoly.game.TaxField;
+
+/**
+ * the rules of a {@link Board} compiled into flat arrays, so a
+ * {@link RolloutState} can play without looking at any field object
+ * 
+ * The fields are taken from the {@link CompiledBoard} of the board; only the
+ * cards are compiled here. Instances are immutable and shared by all rollouts
+ * on the same board.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+final class RolloutBoard {
+    /** a field without any effect */
+    static final int FIELD_OTHER = CompiledBoard.KIND_OTHER;
+
+    /** a {@link PropertyField} */
+    static final int FIELD_PROPERTY = CompiledBoard.KIND_PROPERTY;
+
+    /** a {@link RailroadField} */
+    static final int FIELD_RAILROAD = CompiledBoard.KIND_RAILROAD;
+
+    /** a {@link CompanyField} */
+    static final int FIELD_COMPANY = CompiledBoard.KIND_COMPANY;
+
+    /** a {@link TaxField} */
+    static final int FIELD_TAX = CompiledBoard.KIND_TAX;
+
+    /** a {@link DrawCardField} */
+    static final int FIELD_CARD = CompiledBoard.KIND_CARD;
+
+    /** a {@link StartField} */
+    static final int FIELD_START = CompiledBoard.KIND_START;
+
+    /** a {@link GoToJailField} */
+    static final int FIELD_GO_TO_JAIL = CompiledBoard.KIND_GO_TO_JAIL;
+
+    /** a card without any effect */
+    static final int CARD_NONE = 0;
+
+    /** {@link AdvanceToCard}, argument: position, flag: move forward */
+    static final int CARD_ADVANCE_TO = 1;
+
+    /** {@link AdvanceToUtilityCard} */
+    static final int CARD_ADVANCE_TO_UTILITY = 2;
+
+    /** {@link AdvanceToRailroadCard} */
+    static final int CARD_ADVANCE_TO_RAILROAD = 3;
+
+    /** {@link GoRelativeCard}, argument: relative position */
+    static final int CARD_GO_RELATIVE = 4;
+
+    /** {@link GetMoneyCard}, argument: money */
+    static final int CARD_GET_MONEY = 5;
+
+    /** {@link GetMoneyPerPlayerCard}, argument: money per player */
+    static final int CARD_GET_MONEY_PER_PLAYER = 6;
+
+    /** {@link GetOutOfJailCard} */
+    static final int CARD_GET_OUT_OF_JAIL = 7;
+
+    /** {@link GoToJailCard} */
+    static final int CARD_GO_TO_JAIL = 8;
+
+    /**
+     * {@link PayPerHouseCard}, argument: money per house, second argument:
+     * money per hotel
+     */
+    static final int CARD_PAY_PER_HOUSE = 9;
+
+    /** compiled boards by board */
+    private static final Map<Board, RolloutBoard> cache = new WeakHashMap<Board, RolloutBoard>();
+
+    /** the number of fields */
+    final int length;
+
+    /** the kind of every field (one of the <code>FIELD_*</code> constants) */
+    final int[] kinds;
+
+    /** the price of every buyable field, <code>0</code> for the others */
+    final long[] prices;
+
+    /** the price of a house on every property, <code>0</code> for the others */
+    final long[] housePrices;
+
+    /** the rent of every property by number of houses */
+    final long[][] propertyRents;
+
+    /** the rent of every railroad by number of railroads owned - 1 */
+    final long[][] railroadRents;
+
+    /** the rent multiplier of every company by number of companies owned - 1 */
+    final long[][] companyMultipliers;
+
+    /** the monopoly group of every property, <code>-1</code> for the others */
+    final int[] groups;
+
+    /** the field indices of the properties of every monopoly group */
+    final int[][] groupFields;
+
+    /** the tax of every tax field, <code>0</code> for the others */
+    final long[] taxes;
+
+    /** the money for passing every field, <code>0</code> except for starts */
+    final long[] passMoney;
+
+    /** the money for landing on every field, <code>0</code> except for starts */
+    final long[] visitMoney;
+
+    /** the indices of the start fields */
+    final int[] startFields;
+
+    /** the deck drawn from on every card field, <code>-1</code> for others */
+    final int[] decks;
+
+    /** the next railroad after every field, <code>-1</code> if there is none */
+    final int[] nextRailroad;
+
+    /** the next company after every field, <code>-1</code> if there is none */
+    final int[] nextUtility;
+
+    /** the index of the jail field */
+    final int jailIndex;
+
+    /** the maximum number of houses on a property */
+    final int maxHouses;
+
+    /** the money every player starts with */
+    final long startMoney;
+
+    /** the kind of every card of every deck (<code>CARD_*</code> constants) */
+    final int[][] cardKinds;
+
+    /** the first argument of every card of every deck */
+    final long[][] cardArgs;
+
+    /** the second argument of every card of every deck */
+    final long[][] cardArgs2;
+
+    /**
+     * compiles a board
+     * 
+     * @param board
+     *            the board
+     */
+    RolloutBoard(Board board) {
+        CompiledBoard compiled = board.getCompiled();
+        length = compiled.getLength();
+        maxHouses = board.getMaxHouses();
+        startMoney = board.getStartMoney();
+        jailIndex = Math.max(0, compiled.getJailIndex());
+
+        String[] deckNames = new TreeSet<String>(board.getDeckNames())
+                .toArray(new String[0]);
+        cardKinds = new int[deckNames.length][];
+        cardArgs = new long[deckNames.length][];
+        cardArgs2 = new long[deckNames.length][];
+        for (int i = 0; i < deckNames.length; i++)
+            compileDeck(i, board.getCardStack(deckNames[i]));
+
+        kinds = new int[length];
+        prices = new long[length];
+        housePrices = new long[length];
+        propertyRents = new long[length][];
+        railroadRents = new long[length][];
+        companyMultipliers = new long[length][];
+        groups = new int[length];
+        taxes = new long[length];
+        passMoney = new long[length];
+        visitMoney = new long[length];
+        decks = new int[length];
+        nextRailroad = new int[length];
+        nextUtility = new int[length];
+        int nStarts = 0;
+        for (int i = 0; i < length; i++) {
+            int kind = compiled.getKind(i);
+            // jails and unknown buyable fields have no effect in a rollout
+            kinds[i] = kind <= FIELD_GO_TO_JAIL ? kind : FIELD_OTHER;
+            prices[i] = compiled.getPrice(i);
+            housePrices[i] = compiled.getHousePrice(i);
+            groups[i] = compiled.getGroup(i);
+            taxes[i] = compiled.getTax(i);
+            passMoney[i] = compiled.getPassMoney(i);
+            visitMoney[i] = compiled.getVisitMoney(i);
+            nextRailroad[i] = compiled.getNextRailroad(i);
+            nextUtility[i] = compiled.getNextUtility(i);
+            decks[i] = kind == FIELD_CARD ? indexOf(deckNames, board
+                    .getField(i).getName()) : -1;
+
+            long[] rents = new long[compiled.getNRents(i)];
+            for (int n = 0; n < rents.length; n++)
+                rents[n] = compiled.getRent(i, n);
+            if (kind == FIELD_PROPERTY)
+                propertyRents[i] = rents;
+            else if (kind == FIELD_RAILROAD)
+                railroadRents[i] = rents;
+            else if (kind == FIELD_COMPANY)
+                companyMultipliers[i] = rents;
+            else if (kind == FIELD_START)
+                nStarts++;
+        }
+
+        startFields = new int[nStarts];
+        for (int i = 0, s = 0; i < length; i++) {
+            if (kinds[i] == FIELD_START)
+                startFields[s++] = i;
+        }
+
+        groupFields = new int[compiled.getNGroups()][];
+        for (int g = 0; g < groupFields.length; g++) {
+            groupFields[g] = new int[compiled.getGroupSize(g)];
+            for (int f = 0; f < groupFields[g].length; f++)
+                groupFields[g][f] = compiled.getGroupField(g, f);
+        }
+    }
+
+    /**
+     * returns the compiled version of a board, compiling it only once
+     * 
+     * @param board
+     *            the board; it must not be modified afterwards
+     * @return the compiled board
+     */
+    static RolloutBoard of(Board board) {
+        synchronized (cache) {
+            RolloutBoard compiled = cache.get(board);
+            if (compiled == null) {
+                compiled = new RolloutBoard(board);
+                cache.put(board, compiled);
+            }
+            return compiled;
+        }
+    }
+
+    /**
+     * encodes the cards of a deck
+     * 
+     * @param deck
+     *            the index of the deck
+     * @param cards
+     *            the cards of the deck
+     */
+    private void compileDeck(int deck, CardCollection cards) {
+        Card[] all = cards != null ? cards.getCards() : new Card[0];
+        cardKinds[deck] = new int[all.length];
+        cardArgs[deck] = new long[all.length];
+        cardArgs2[deck] = new long[all.length];
+        for (int i = 0; i < all.length; i++) {
+            Card card = all[i];
+            int kind = CARD_NONE;
+            long arg = 0;
+            long arg2 = 0;
+            if (card instanceof AdvanceToCard) {
+                kind = CARD_ADVANCE_TO;
+                arg = ((AdvanceToCard) card).getPosition();
+                arg2 = ((AdvanceToCard) card).isMoveForward() ? 1 : 0;
+            } else if (card instanceof AdvanceToUtilityCard) {
+                kind = CARD_ADVANCE_TO_UTILITY;
+            } else if (card instanceof AdvanceToRailroadCard) {
+                kind = CARD_ADVANCE_TO_RAILROAD;
+            } else if (card instanceof GoRelativeCard) {
+                kind = CARD_GO_RELATIVE;
+                arg = ((GoRelativeCard) card).getRelativePosition();
+            } else if (card instanceof GetMoneyCard) {
+                kind = CARD_GET_MONEY;
+                arg = ((GetMoneyCard) card).getMoney();
+            } else if (card instanceof GetMoneyPerPlayerCard) {
+                kind = CARD_GET_MONEY_PER_PLAYER;
+                arg = ((GetMoneyPerPlayerCard) card).getMoney();
+            } else if (card instanceof GetOutOfJailCard) {
+                kind = CARD_GET_OUT_OF_JAIL;
+            } else if (card instanceof GoToJailCard) {
+                kind = CARD_GO_TO_JAIL;
+            } else if (card instanceof PayPerHouseCard) {
+                kind = CARD_PAY_PER_HOUSE;
+                arg = ((PayPerHouseCard) card).getPerHouse();
+                arg2 = ((PayPerHouseCard) card).getPerHotel();
+            }
+            cardKinds[deck][i] = kind;
+            cardArgs[deck][i] = arg;
+            cardArgs2[deck][i] = arg2;
+        }
+    }
+
+    /**
+     * @param names
+     *            the names
+     * @param name
+     *            the name to look for
+     * @return the index of the name or <code>-1</code> if it isn't in the array
+     */
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of decks
+     */
+    int getNDecks() {
+        return cardKinds.length;
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return <code>true</code> if the field can be bought
+     */
+    boolean isBuyable(int field) {
+        int kind = kinds[field];
+        return kind == FIELD_PROPERTY || kind == FIELD_RAILROAD
+                || kind == FIELD_COMPANY;
+    }
+}
@@ -0,0 +1,172 @@
+package ch.winfor.monopoly.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * rates the alternatives of a decision by playing random games from each of
+ * them (Monte Carlo rollouts) on several threads
+ * 
+ * Every worker plays the candidates in rounds until the time budget of the
+ * decision is used up. In one round, all candidates are played with the same
+ * seed (common random numbers), so the results differ only because of the
+ * decision and not because of luck with the dice.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class RolloutEngine {
+    /** default number of turns a rollout plays at most */
+    public static final int DEFAULT_HORIZON = 120;
+
+    /** the threads playing the rollouts */
+    private final ExecutorService workers;
+
+    /** the number of threads */
+    private final int nThreads;
+
+    /** the number of turns a rollout plays at most */
+    private final int horizon;
+
+    /** the number of rollouts played so far */
+    private final AtomicLong rollouts;
+
+    /**
+     * creates an engine with one thread per processor core
+     */
+    public RolloutEngine() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_HORIZON);
+    }
+
+    /**
+     * @param nThreads
+     *            the number of threads playing the rollouts
+     * @param horizon
+     *            the number of turns a rollout plays at most if nobody goes
+     *            bankrupt
+     */
+    public RolloutEngine(int nThreads, int horizon) {
+        this.nThreads = Math.max(1, nThreads);
+        this.horizon = horizon;
+        rollouts = new AtomicLong();
+        final AtomicInteger threadNumber = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(this.nThreads,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "rollout-"
+                                + threadNumber.getAndIncrement());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * @return the number of threads playing the rollouts
+     */
+    public int getNThreads() {
+        return nThreads;
+    }
+
+    /**
+     * @return the number of rollouts played so far
+     */
+    public long getRollouts() {
+        return rollouts.get();
+    }
+
+    /**
+     * stops the threads of the engine
+     */
+    public void shutdown() {
+        workers.shutdown();
+    }
+
+    /**
+     * rates the candidates of a decision; every candidate is played at least
+     * once, even if the budget is <code>0</code>
+     * 
+     * @param candidates
+     *            the states after each alternative of the decision
+     * @param player
+     *            the player making the decision
+     * @param budgetMillis
+     *            milliseconds the rating may take
+     * @return the average score of every candidate for the player
+     */
+    double[] evaluate(final RolloutState[] candidates, final int player,
+            long budgetMillis) {
+        final long deadline = System.nanoTime() + budgetMillis * 1000000L;
+        List<Callable<double[]>> tasks = new ArrayList<Callable<double[]>>(
+                nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            tasks.add(new Callable<double[]>() {
+                @Override
+                public double[] call() {
+                    return play(candidates, player, deadline);
+                }
+            });
+        }
+
+        double[] sums = new double[candidates.length];
+        long rounds = 0;
+        try {
+            for (Future<double[]> result : workers.invokeAll(tasks)) {
+                double[] partial = result.get();
+                for (int c = 0; c < sums.length; c++)
+                    sums[c] += partial[c];
+                rounds += (long) partial[sums.length];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("rollout failed", e.getCause());
+        }
+
+        rollouts.addAndGet(rounds * candidates.length);
+        for (int c = 0; c < sums.length; c++)
+            sums[c] = rounds > 0 ? sums[c] / rounds : 0;
+        return sums;
+    }
+
+    /**
+     * plays rounds of rollouts until the deadline; runs on a worker
+     * 
+     * @param candidates
+     *            the candidates
+     * @param player
+     *            the player making the decision
+     * @param deadline
+     *            the value of {@link System#nanoTime()} at which to stop
+     * @return the sum of the scores of every candidate, followed by the number
+     *         of rounds played
+     */
+    private double[] play(RolloutState[] candidates, int player, long deadline) {
+        double[] sums = new double[candidates.length + 1];
+        Random random = new Random();
+        ThreadLocalRandom seeds = ThreadLocalRandom.current();
+        do {
+            long seed = seeds.nextLong();
+            for (int c = 0; c < candidates.length; c++) {
+                random.setSeed(seed);
+                RolloutState state = candidates[c].fork();
+                state.shuffleDecks(random);
+                state.playOut(random, horizon);
+                sums[c] += state.score(player);
+            }
+            sums[candidates.length]++;
+        } while (System.nanoTime() < deadline);
+        return sums;
+    }
+}
@@ -0,0 +1,556 @@
+package ch.winfor.monopoly.ai;
+
+import java.util.Random;
+
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.Player;
+import ch.winfor.monopoly.game.Field.JailField;
+
+/**
+ * a copy of the state of a game in primitive arrays, which can be played on
+ * much faster than the game itself
+ * 
+ * The state only knows what matters for the outcome of a game: positions,
+ * wealth, jail rounds, owners, houses and the order of the card decks. It
+ * follows the same rules as {@link ch.winfor.monopoly.game.TurnHandler}, while
+ * the decisions of all players are made by a simple default policy. States
+ * are copied with {@link #fork()} before they are played on; the deck orders
+ * are never modified and therefore shared between the copies.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+final class RolloutState {
+    /** the maximum number of cards drawn in a row during one turn */
+    private static final int MAX_CARD_CHAIN = 4;
+
+    /** the compiled board */
+    private final RolloutBoard board;
+
+    /** the number of players */
+    private final int nPlayers;
+
+    /** the position of every player */
+    private final int[] positions;
+
+    /** the money of every player */
+    private final long[] wealth;
+
+    /** the rounds every player still has to spend in jail */
+    private final int[] jailRounds;
+
+    /** the owner of every field, <code>-1</code> if it is free */
+    private final int[] owners;
+
+    /** the houses on every field */
+    private final int[] houses;
+
+    /** the number of railroads every player owns */
+    private final int[] railroads;
+
+    /** the number of companies every player owns */
+    private final int[] companies;
+
+    /** the card order of every deck; never modified, only replaced */
+    private final int[][] deckOrders;
+
+    /** the number of cards drawn from every deck */
+    private final int[] deckCursors;
+
+    /** the player whose turn it is */
+    private int turn;
+
+    /** the number of turns played since the state was captured */
+    private int turnsPlayed;
+
+    /** if a player has gone bankrupt */
+    private boolean over;
+
+    /**
+     * creates an empty state
+     * 
+     * @param board
+     *            the compiled board
+     * @param nPlayers
+     *            the number of players
+     */
+    private RolloutState(RolloutBoard board, int nPlayers) {
+        this.board = board;
+        this.nPlayers = nPlayers;
+        positions = new int[nPlayers];
+        wealth = new long[nPlayers];
+        jailRounds = new int[nPlayers];
+        owners = new int[board.length];
+        houses = new int[board.length];
+        railroads = new int[nPlayers];
+        companies = new int[nPlayers];
+        deckOrders = new int[board.getNDecks()][];
+        deckCursors = new int[board.getNDecks()];
+    }
+
+    /**
+     * copies the state of a game; the order of the decks is unknown to the
+     * players, so it has to be set with {@link #shuffleDecks(Random)}
+     * 
+     * @param game
+     *            the game
+     * @param board
+     *            the compiled board of the game
+     * @return the state of the game
+     */
+    static RolloutState capture(Game game, RolloutBoard board) {
+        RolloutState state = new RolloutState(board, game.getNPlayers());
+        for (int i = 0; i < state.nPlayers; i++) {
+            Player player = game.getPlayer(i);
+            state.positions[i] = player.getPiece().getPosition();
+            state.wealth[i] = player.getWealth();
+            state.jailRounds[i] = player.getInJailRounds();
+            if (player.getWealth() < 0)
+                state.over = true;
+        }
+        for (int i = 0; i < board.length; i++) {
+            Player owner = game.getOwner(i);
+            int ownerIndex = owner != null ? game.getPlayerIndex(owner) : -1;
+            state.owners[i] = ownerIndex;
+            state.houses[i] = game.getHousesOn(i);
+            if (ownerIndex != -1) {
+                if (board.kinds[i] == RolloutBoard.FIELD_RAILROAD)
+                    state.railroads[ownerIndex]++;
+                else if (board.kinds[i] == RolloutBoard.FIELD_COMPANY)
+                    state.companies[ownerIndex]++;
+            }
+        }
+        for (int d = 0; d < state.deckOrders.length; d++) {
+            int[] order = new int[board.cardKinds[d].length];
+            for (int c = 0; c < order.length; c++)
+                order[c] = c;
+            state.deckOrders[d] = order;
+        }
+        state.turn = game.getTurn();
+        return state;
+    }
+
+    /**
+     * @return a copy of this state that can be modified independently
+     */
+    RolloutState fork() {
+        RolloutState copy = new RolloutState(board, nPlayers);
+        System.arraycopy(positions, 0, copy.positions, 0, nPlayers);
+        System.arraycopy(wealth, 0, copy.wealth, 0, nPlayers);
+        System.arraycopy(jailRounds, 0, copy.jailRounds, 0, nPlayers);
+        System.arraycopy(owners, 0, copy.owners, 0, owners.length);
+        System.arraycopy(houses, 0, copy.houses, 0, houses.length);
+        System.arraycopy(railroads, 0, copy.railroads, 0, nPlayers);
+        System.arraycopy(companies, 0, copy.companies, 0, nPlayers);
+        System.arraycopy(deckOrders, 0, copy.deckOrders, 0, deckOrders.length);
+        System.arraycopy(deckCursors, 0, copy.deckCursors, 0,
+                deckCursors.length);
+        copy.turn = turn;
+        copy.turnsPlayed = turnsPlayed;
+        copy.over = over;
+        return copy;
+    }
+
+    /**
+     * gives every deck a new random order and puts all cards back
+     * 
+     * @param random
+     *            the random number generator
+     */
+    void shuffleDecks(Random random) {
+        for (int d = 0; d < deckOrders.length; d++) {
+            int[] order = deckOrders[d].clone();
+            for (int i = order.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            deckOrders[d] = order;
+            deckCursors[d] = 0;
+        }
+    }
+
+    /**
+     * @return the player whose turn it is
+     */
+    int getTurn() {
+        return turn;
+    }
+
+    /**
+     * @return <code>true</code> if a player has gone bankrupt
+     */
+    boolean isOver() {
+        return over;
+    }
+
+    /**
+     * lets the player whose turn it is buy a field
+     * 
+     * @param field
+     *            the index of the field
+     */
+    void buy(int field) {
+        owners[field] = turn;
+        charge(turn, board.prices[field]);
+        if (board.kinds[field] == RolloutBoard.FIELD_RAILROAD)
+            railroads[turn]++;
+        else if (board.kinds[field] == RolloutBoard.FIELD_COMPANY)
+            companies[turn]++;
+    }
+
+    /**
+     * checks if a player may build a house on a field: he must own the whole
+     * monopoly group and build evenly, and he must be able to pay for it
+     * 
+     * @param player
+     *            the player
+     * @param field
+     *            the index of the field
+     * @return <code>true</code> if the player can build a house on the field
+     */
+    boolean canBuildHouse(int player, int field) {
+        int group = board.groups[field];
+        if (group == -1 || owners[field] != player
+                || houses[field] >= board.propertyRents[field].length - 1
+                || houses[field] >= board.maxHouses
+                || wealth[player] < board.housePrices[field])
+            return false;
+        for (int other : board.groupFields[group]) {
+            if (owners[other] != player || houses[other] < houses[field])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * builds a house for the owner of a field
+     * 
+     * @param field
+     *            the index of the field
+     */
+    void buildHouse(int field) {
+        houses[field]++;
+        charge(owners[field], board.housePrices[field]);
+    }
+
+    /**
+     * ends the current turn
+     */
+    void endTurn() {
+        turn = (turn + 1) % nPlayers;
+        turnsPlayed++;
+    }
+
+    /**
+     * plays until a player goes bankrupt or a number of turns has been played
+     * 
+     * @param random
+     *            the random number generator
+     * @param maxTurns
+     *            the maximum number of turns since the state was captured
+     */
+    void playOut(Random random, int maxTurns) {
+        while (!over && turnsPlayed < maxTurns)
+            playTurn(random);
+    }
+
+    /**
+     * plays the turn of the current player, making his decisions with the
+     * default policy
+     * 
+     * @param random
+     *            the random number generator
+     */
+    void playTurn(Random random) {
+        int player = turn;
+        if (jailRounds[player] > 0)
+            jailRounds[player]--;
+
+        int die1 = random.nextInt(6) + 1;
+        int die2 = random.nextInt(6) + 1;
+        if (jailRounds[player] == 0 || die1 == die2) {
+            int before = positions[player];
+            int after = (before + die1 + die2) % board.length;
+            positions[player] = after;
+            payStartMoney(player, before, after);
+            landedOnField(player, die1 + die2, 0);
+        }
+
+        if (!over)
+            buildHouses(player);
+        endTurn();
+    }
+
+    /**
+     * applies the effect of the field a player has landed on
+     * 
+     * @param player
+     *            the player
+     * @param diceValue
+     *            the value of the dice of the current turn
+     * @param chain
+     *            the number of cards drawn before in this turn
+     */
+    private void landedOnField(int player, int diceValue, int chain) {
+        int field = positions[player];
+        switch (board.kinds[field]) {
+        case RolloutBoard.FIELD_PROPERTY:
+        case RolloutBoard.FIELD_RAILROAD:
+        case RolloutBoard.FIELD_COMPANY:
+            int owner = owners[field];
+            if (owner == -1) {
+                if (wealth[player] - board.prices[field] >= getReserve())
+                    buy(field);
+            } else if (owner != player) {
+                long rent = calculateRent(field, owner, diceValue);
+                charge(player, rent);
+                wealth[owner] += rent;
+            }
+            break;
+        case RolloutBoard.FIELD_TAX:
+            charge(player, board.taxes[field]);
+            break;
+        case RolloutBoard.FIELD_CARD:
+            int deck = board.decks[field];
+            if (deck != -1 && chain < MAX_CARD_CHAIN)
+                drawCard(player, deck, diceValue, chain);
+            break;
+        case RolloutBoard.FIELD_START:
+            wealth[player] += board.visitMoney[field];
+            break;
+        case RolloutBoard.FIELD_GO_TO_JAIL:
+            goToJail(player);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * calculates the rent of a field the same way
+     * {@link ch.winfor.monopoly.game.TurnHandler#calculateRent()} does
+     * 
+     * @param field
+     *            the index of the field
+     * @param owner
+     *            the owner of the field
+     * @param diceValue
+     *            the value of the dice of the current turn
+     * @return the rent
+     */
+    private long calculateRent(int field, int owner, int diceValue) {
+        switch (board.kinds[field]) {
+        case RolloutBoard.FIELD_PROPERTY:
+            return board.propertyRents[field][houses[field]];
+        case RolloutBoard.FIELD_RAILROAD:
+            long[] rents = board.railroadRents[field];
+            int nRailroads = railroads[owner];
+            return nRailroads > 0 && nRailroads <= rents.length ? rents[nRailroads - 1]
+                    : 0;
+        case RolloutBoard.FIELD_COMPANY:
+            long[] multipliers = board.companyMultipliers[field];
+            int nCompanies = companies[owner];
+            return nCompanies > 0 && nCompanies <= multipliers.length ? multipliers[nCompanies - 1]
+                    * diceValue
+                    : 0;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * draws the next card of a deck and follows it
+     * 
+     * @param player
+     *            the player drawing the card
+     * @param deck
+     *            the index of the deck
+     * @param diceValue
+     *            the value of the dice of the current turn
+     * @param chain
+     *            the number of cards drawn before in this turn
+     */
+    private void drawCard(int player, int deck, int diceValue, int chain) {
+        int[] order = deckOrders[deck];
+        if (order.length == 0)
+            return;
+        int card = order[deckCursors[deck]++ % order.length];
+        long arg = board.cardArgs[deck][card];
+        int before = positions[player];
+        int target;
+
+        switch (board.cardKinds[deck][card]) {
+        case RolloutBoard.CARD_ADVANCE_TO:
+            target = (int) (arg % board.length);
+            positions[player] = target;
+            if (board.cardArgs2[deck][card] != 0)
+                payStartMoney(player, before, target);
+            landedOnField(player, diceValue, chain + 1);
+            break;
+        case RolloutBoard.CARD_ADVANCE_TO_UTILITY:
+        case RolloutBoard.CARD_ADVANCE_TO_RAILROAD:
+            target = board.cardKinds[deck][card] == RolloutBoard.CARD_ADVANCE_TO_UTILITY ? board.nextUtility[before]
+                    : board.nextRailroad[before];
+            if (target != -1) {
+                positions[player] = target;
+                payStartMoney(player, before, target);
+                landedOnField(player, diceValue, chain + 1);
+            }
+            break;
+        case RolloutBoard.CARD_GO_RELATIVE:
+            target = (int) (((before + arg) % board.length + board.length) % board.length);
+            positions[player] = target;
+            if (arg > 0)
+                payStartMoney(player, before, target);
+            landedOnField(player, diceValue, chain + 1);
+            break;
+        case RolloutBoard.CARD_GET_MONEY:
+            charge(player, -arg);
+            break;
+        case RolloutBoard.CARD_GET_MONEY_PER_PLAYER:
+            for (int other = 0; other < nPlayers; other++) {
+                if (other != player) {
+                    charge(other, arg);
+                    wealth[player] += arg;
+                }
+            }
+            break;
+        case RolloutBoard.CARD_GET_OUT_OF_JAIL:
+            jailRounds[player] = 0;
+            break;
+        case RolloutBoard.CARD_GO_TO_JAIL:
+            goToJail(player);
+            break;
+        case RolloutBoard.CARD_PAY_PER_HOUSE:
+            long costs = 0;
+            for (int i = 0; i < owners.length; i++) {
+                if (owners[i] == player && houses[i] > 0) {
+                    costs += houses[i] == board.maxHouses ? board.cardArgs2[deck][card]
+                            : houses[i] * arg;
+                }
+            }
+            charge(player, costs);
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * pays the money of the start fields a player has passed
+     * 
+     * @param player
+     *            the player
+     * @param before
+     *            the position before the move
+     * @param after
+     *            the position after the move
+     */
+    private void payStartMoney(int player, int before, int after) {
+        int length = board.length;
+        int distance = (after - before + length) % length;
+        if (distance == 0)
+            distance = length;
+        for (int start : board.startFields) {
+            int d = (start - before + length) % length;
+            if (d > 0 && d < distance)
+                wealth[player] += board.passMoney[start];
+        }
+    }
+
+    /**
+     * puts a player into jail
+     * 
+     * @param player
+     *            the player
+     */
+    private void goToJail(int player) {
+        jailRounds[player] = JailField.STANDARD_STAY;
+        positions[player] = board.jailIndex;
+    }
+
+    /**
+     * default policy: builds evenly on the monopolies of a player as long as
+     * he keeps twice the reserve
+     * 
+     * @param player
+     *            the player
+     */
+    private void buildHouses(int player) {
+        long reserve = 2 * getReserve();
+        for (int[] group : board.groupFields) {
+            if (group.length == 0 || owners[group[0]] != player)
+                continue;
+            boolean built = true;
+            while (built) {
+                built = false;
+                for (int field : group) {
+                    if (wealth[player] - board.housePrices[field] >= reserve
+                            && canBuildHouse(player, field)) {
+                        buildHouse(field);
+                        built = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the money the default policy keeps when buying
+     */
+    private long getReserve() {
+        return board.startMoney / 10;
+    }
+
+    /**
+     * takes money from a player
+     * 
+     * @param player
+     *            the player
+     * @param amount
+     *            the amount of money
+     */
+    private void charge(int player, long amount) {
+        wealth[player] -= amount;
+        if (wealth[player] < 0)
+            over = true;
+    }
+
+    /**
+     * calculates the money of a player plus the price of everything he owns
+     * 
+     * @param player
+     *            the player
+     * @return the net worth of the player
+     */
+    long getNetWorth(int player) {
+        long worth = wealth[player];
+        for (int i = 0; i < owners.length; i++) {
+            if (owners[i] == player)
+                worth += board.prices[i] + houses[i] * board.housePrices[i];
+        }
+        return worth;
+    }
+
+    /**
+     * rates the state for a player the way {@link
+     * ch.winfor.monopoly.sim.SimulatedGame} determines the winner
+     * 
+     * @param player
+     *            the player
+     * @return <code>1</code> if the player is the solvent player with the
+     *         highest net worth, <code>0</code> otherwise
+     */
+    double score(int player) {
+        if (wealth[player] < 0)
+            return 0;
+        long own = getNetWorth(player);
+        for (int i = 0; i < nPlayers; i++) {
+            if (i != player && wealth[i] >= 0 && getNetWorth(i) > own)
+                return 0;
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,187 @@
+package ch.winfor.monopoly.ai;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.BuyableField;
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.MonopolyGroup;
+import ch.winfor.monopoly.game.Player;
+import ch.winfor.monopoly.game.PropertyField;
+import ch.winfor.monopoly.game.TurnHandler;
+import ch.winfor.monopoly.sim.Strategy;
+
+/**
+ * strategy that decides with the tables of {@link LandingProbabilities}
+ * instead of simulations
+ * 
+ * The strategy keeps a reserve of the rent and taxes it expects to pay
+ * during the next few turns. It buys every property it can afford above this
+ * reserve and builds the houses that raise the expected rent the most per
+ * money spent.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class ValuationStrategy implements Strategy {
+    /** default number of turns the reserve should last */
+    public static final int DEFAULT_RESERVE_TURNS = 8;
+
+    /** the number of turns the reserve should last */
+    private final int reserveTurns;
+
+    /**
+     * creates a strategy with the default reserve
+     */
+    public ValuationStrategy() {
+        this(DEFAULT_RESERVE_TURNS);
+    }
+
+    /**
+     * @param reserveTurns
+     *            the number of turns of expected payments the strategy keeps
+     *            as reserve
+     */
+    public ValuationStrategy(int reserveTurns) {
+        this.reserveTurns = reserveTurns;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.sim.Strategy#buyProperty(ch.winfor.monopoly.game.
+     * TurnHandler, ch.winfor.monopoly.game.BuyableField)
+     */
+    @Override
+    public boolean buyProperty(TurnHandler turnHandler, BuyableField field) {
+        Player player = turnHandler.getPlayer();
+        return player.getWealth() - field.getPrice() >= getReserve(
+                turnHandler.getGame(), player);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.sim.Strategy#chooseHouses(ch.winfor.monopoly.game.
+     * TurnHandler)
+     */
+    @Override
+    public List<PropertyField> chooseHouses(TurnHandler turnHandler) {
+        Game game = turnHandler.getGame();
+        Board board = game.getBoard();
+        Player player = turnHandler.getPlayer();
+        LandingProbabilities probabilities = LandingProbabilities.of(board);
+        MonopolyGroup[] monopolies = game.getMonopolies(player);
+        long reserve = getReserve(game, player);
+        long wealth = player.getWealth();
+        int[] planned = new int[board.getAbsoluteLength()];
+        List<PropertyField> houses = new ArrayList<PropertyField>();
+
+        while (true) {
+            PropertyField best = null;
+            double bestGain = 0;
+            for (MonopolyGroup group : monopolies) {
+                for (int i = 0; i < group.getNFields(); i++) {
+                    PropertyField field = group.getField(i);
+                    int index = board.getFieldIndex(field);
+                    int built = game.getHousesOn(index) + planned[index];
+                    if (!canBuildEvenly(game, group, planned, built)
+                            || built >= Math.min(field.getMaxHouses(),
+                                    board.getMaxHouses()))
+                        continue;
+                    double gain = (probabilities.getExpectedRent(index,
+                            built + 1) - probabilities.getExpectedRent(index,
+                            built))
+                            / field.getHousePrice();
+                    if (gain > bestGain) {
+                        best = field;
+                        bestGain = gain;
+                    }
+                }
+            }
+
+            if (best == null || wealth - best.getHousePrice() < reserve)
+                return houses;
+            planned[board.getFieldIndex(best)]++;
+            wealth -= best.getHousePrice();
+            houses.add(best);
+        }
+    }
+
+    /**
+     * @param game
+     *            the game
+     * @param group
+     *            a monopoly group
+     * @param planned
+     *            the houses already chosen to be built, by field index
+     * @param houses
+     *            the houses on one of the properties of the group
+     * @return <code>true</code> if no property of the group has less houses
+     */
+    private static boolean canBuildEvenly(Game game, MonopolyGroup group,
+            int[] planned, int houses) {
+        Board board = game.getBoard();
+        for (int i = 0; i < group.getNFields(); i++) {
+            int index = board.getFieldIndex(group.getField(i));
+            if (game.getHousesOn(index) + planned[index] < houses)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * calculates the money the player should keep for the rent and taxes of
+     * the next turns
+     * 
+     * @param game
+     *            the game
+     * @param player
+     *            the player
+     * @return the reserve
+     */
+    private long getReserve(Game game, Player player) {
+        Board board = game.getBoard();
+        LandingProbabilities probabilities = LandingProbabilities.of(board);
+        RolloutBoard compiled = RolloutBoard.of(board);
+
+        double perTurn = 0;
+        for (int i = 0; i < compiled.length; i++) {
+            Player owner = game.getOwner(i);
+            if (compiled.kinds[i] == RolloutBoard.FIELD_TAX) {
+                perTurn += probabilities.getLandingProbability(i)
+                        * compiled.taxes[i];
+            } else if (owner != null && owner != player) {
+                perTurn += probabilities.getExpectedRent(i,
+                        getLevel(game, i, owner));
+            }
+        }
+        return (long) Math.ceil(perTurn * reserveTurns);
+    }
+
+    /**
+     * @param game
+     *            the game
+     * @param field
+     *            the index of a buyable field
+     * @param owner
+     *            the owner of the field
+     * @return the level of the field for
+     *         {@link LandingProbabilities#getExpectedRent(int, int)}
+     */
+    private static int getLevel(Game game, int field, Player owner) {
+        switch (RolloutBoard.of(game.getBoard()).kinds[field]) {
+        case RolloutBoard.FIELD_PROPERTY:
+            return game.getHousesOn(field);
+        case RolloutBoard.FIELD_RAILROAD:
+            return game.getNRailroadsOwned(owner) - 1;
+        case RolloutBoard.FIELD_COMPANY:
+            return game.getNCompaniesOwned(owner) - 1;
+        default:
+            return -1;
+        }
+    }
+}
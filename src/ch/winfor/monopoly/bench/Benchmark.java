@@ -0,0 +1,50 @@
+package ch.winfor.monopoly.bench;
+
+/**
+ * an operation whose time is measured by a {@link BenchmarkRunner}
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public abstract class Benchmark {
+    /** the name under which the results are reported */
+    private final String name;
+
+    /**
+     * @param name
+     *            the name under which the results are reported, e.g.
+     *            <code>game.createHash</code>
+     */
+    protected Benchmark(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the name under which the results are reported
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * prepares the data of the benchmark; called once before the first
+     * operation and not measured
+     * 
+     * @throws Exception
+     *             if the benchmark can't be prepared
+     */
+    public void setUp() throws Exception {
+    }
+
+    /**
+     * runs the measured operation once
+     * 
+     * The result should depend on the work done, so the JIT compiler can't
+     * leave the work out; the runner adds it to a value it keeps.
+     * 
+     * @return any value computed by the operation
+     * @throws Exception
+     *             if the operation fails
+     */
+    public abstract long run() throws Exception;
+}
@@ -0,0 +1,323 @@
+package ch.winfor.monopoly.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * measures the time per operation of {@link Benchmark}s
+ * 
+ * Every benchmark first runs for a number of warmup iterations, so the JIT
+ * compiler has optimized it, and then for a number of measured iterations of
+ * a fixed duration. The operations are run in batches that take about a
+ * millisecond, so reading the clock doesn't distort short operations. The
+ * result of every iteration is the mean time per operation; the iterations
+ * give the mean, the standard deviation and the extremes reported in
+ * {@link Result}.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class BenchmarkRunner {
+    /** default number of iterations that are not measured */
+    public static final int DEFAULT_WARMUP_ITERATIONS = 5;
+
+    /** default number of measured iterations */
+    public static final int DEFAULT_ITERATIONS = 10;
+
+    /** default duration of one iteration in milliseconds */
+    public static final long DEFAULT_ITERATION_MILLIS = 200;
+
+    /** nanoseconds a batch of operations should take */
+    private static final long BATCH_NANOS = 1000 * 1000;
+
+    /** number of iterations that are not measured */
+    private int warmupIterations;
+
+    /** number of measured iterations */
+    private int iterations;
+
+    /** duration of one iteration in milliseconds */
+    private long iterationMillis;
+
+    /** sum of the results of all operations, so they can't be left out */
+    private long sink;
+
+    /**
+     * creates a runner with the default settings
+     */
+    public BenchmarkRunner() {
+        this(DEFAULT_WARMUP_ITERATIONS, DEFAULT_ITERATIONS,
+                DEFAULT_ITERATION_MILLIS);
+    }
+
+    /**
+     * @param warmupIterations
+     *            number of iterations that are not measured
+     * @param iterations
+     *            number of measured iterations
+     * @param iterationMillis
+     *            duration of one iteration in milliseconds
+     */
+    public BenchmarkRunner(int warmupIterations, int iterations,
+            long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.iterations = Math.max(1, iterations);
+        this.iterationMillis = iterationMillis;
+    }
+
+    /**
+     * sets up and measures a benchmark
+     * 
+     * @param benchmark
+     *            the benchmark
+     * @return the result
+     * @throws Exception
+     *             if the benchmark fails
+     */
+    public Result measure(Benchmark benchmark) throws Exception {
+        benchmark.setUp();
+        int batchSize = calibrate(benchmark);
+        for (int i = 0; i < warmupIterations; i++)
+            iterate(benchmark, batchSize, new long[1]);
+
+        double[] nanosPerOp = new double[iterations];
+        long operations = 0;
+        for (int i = 0; i < iterations; i++) {
+            long[] ops = new long[1];
+            long nanos = iterate(benchmark, batchSize, ops);
+            nanosPerOp[i] = (double) nanos / ops[0];
+            operations += ops[0];
+        }
+        return new Result(benchmark.getName(), nanosPerOp, operations);
+    }
+
+    /**
+     * @return the sum of the results of all operations run so far
+     */
+    public long getSink() {
+        return sink;
+    }
+
+    /**
+     * finds the number of operations that take about {@link #BATCH_NANOS}
+     * 
+     * @param benchmark
+     *            the benchmark
+     * @return the number of operations per batch
+     * @throws Exception
+     *             if the benchmark fails
+     */
+    private int calibrate(Benchmark benchmark) throws Exception {
+        int batchSize = 1;
+        while (batchSize < (1 << 24)) {
+            long start = System.nanoTime();
+            runBatch(benchmark, batchSize);
+            if (System.nanoTime() - start >= BATCH_NANOS)
+                break;
+            batchSize <<= 1;
+        }
+        return batchSize;
+    }
+
+    /**
+     * runs batches of operations for the duration of one iteration
+     * 
+     * @param benchmark
+     *            the benchmark
+     * @param batchSize
+     *            the number of operations per batch
+     * @param operations
+     *            receives the number of operations run
+     * @return the nanoseconds the operations took
+     * @throws Exception
+     *             if the benchmark fails
+     */
+    private long iterate(Benchmark benchmark, int batchSize, long[] operations)
+            throws Exception {
+        long duration = iterationMillis * 1000 * 1000;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            runBatch(benchmark, batchSize);
+            operations[0] += batchSize;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < duration);
+        return elapsed;
+    }
+
+    /**
+     * @param benchmark
+     *            the benchmark
+     * @param batchSize
+     *            the number of operations to run
+     * @throws Exception
+     *             if the benchmark fails
+     */
+    private void runBatch(Benchmark benchmark, int batchSize)
+            throws Exception {
+        long sum = 0;
+        for (int i = 0; i < batchSize; i++)
+            sum += benchmark.run();
+        sink += sum;
+    }
+
+    /**
+     * writes results as a JSON object
+     * 
+     * The object contains the time of the run, the Java version, the
+     * operating system and the number of processors, and an array
+     * <code>benchmarks</code> with one object per result. All times are in
+     * nanoseconds per operation.
+     * 
+     * @param results
+     *            the results
+     * @param out
+     *            the writer
+     * @throws IOException
+     *             if writing fails
+     */
+    public static void writeJson(List<Result> results, Writer out)
+            throws IOException {
+        out.write("{\n");
+        out.write("  \"timestamp\": " + System.currentTimeMillis() + ",\n");
+        out.write("  \"java\": " + quote(System.getProperty("java.version"))
+                + ",\n");
+        out.write("  \"os\": "
+                + quote(System.getProperty("os.name") + " "
+                        + System.getProperty("os.arch")) + ",\n");
+        out.write("  \"processors\": "
+                + Runtime.getRuntime().availableProcessors() + ",\n");
+        out.write("  \"benchmarks\": [");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            out.write(i == 0 ? "\n" : ",\n");
+            out.write(String.format(Locale.ROOT, "    {\"name\": %s, "
+                    + "\"unit\": \"ns/op\", \"mean\": %.3f, "
+                    + "\"stdev\": %.3f, \"min\": %.3f, \"max\": %.3f, "
+                    + "\"opsPerSecond\": %.1f, \"iterations\": %d, "
+                    + "\"operations\": %d}", quote(r.getName()), r.getMean(),
+                    r.getStandardDeviation(), r.getMin(), r.getMax(),
+                    1e9 / r.getMean(), r.getIterations(), r.getOperations()));
+        }
+        out.write("\n  ]\n}\n");
+        out.flush();
+    }
+
+    /**
+     * @param s
+     *            a string
+     * @return the string as a JSON string literal
+     */
+    private static String quote(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"').toString();
+    }
+
+    /**
+     * the measured times of a benchmark
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class Result {
+        /** the name of the benchmark */
+        private final String name;
+
+        /** the mean nanoseconds per operation of every iteration */
+        private final double[] nanosPerOp;
+
+        /** the number of operations in all measured iterations */
+        private final long operations;
+
+        /**
+         * @param name
+         *            the name of the benchmark
+         * @param nanosPerOp
+         *            the mean nanoseconds per operation of every iteration
+         * @param operations
+         *            the number of operations in all measured iterations
+         */
+        public Result(String name, double[] nanosPerOp, long operations) {
+            this.name = name;
+            this.nanosPerOp = nanosPerOp;
+            this.operations = operations;
+        }
+
+        /**
+         * @return the name of the benchmark
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of measured iterations
+         */
+        public int getIterations() {
+            return nanosPerOp.length;
+        }
+
+        /**
+         * @return the number of operations in all measured iterations
+         */
+        public long getOperations() {
+            return operations;
+        }
+
+        /**
+         * @return the mean of the nanoseconds per operation of the iterations
+         */
+        public double getMean() {
+            double sum = 0;
+            for (double t : nanosPerOp)
+                sum += t;
+            return sum / nanosPerOp.length;
+        }
+
+        /**
+         * @return the standard deviation of the nanoseconds per operation of
+         *         the iterations
+         */
+        public double getStandardDeviation() {
+            if (nanosPerOp.length < 2)
+                return 0;
+            double mean = getMean();
+            double sum = 0;
+            for (double t : nanosPerOp)
+                sum += (t - mean) * (t - mean);
+            return Math.sqrt(sum / (nanosPerOp.length - 1));
+        }
+
+        /**
+         * @return the nanoseconds per operation of the fastest iteration
+         */
+        public double getMin() {
+            double min = Double.MAX_VALUE;
+            for (double t : nanosPerOp)
+                min = Math.min(min, t);
+            return min;
+        }
+
+        /**
+         * @return the nanoseconds per operation of the slowest iteration
+         */
+        public double getMax() {
+            double max = 0;
+            for (double t : nanosPerOp)
+                max = Math.max(max, t);
+            return max;
+        }
+    }
+}
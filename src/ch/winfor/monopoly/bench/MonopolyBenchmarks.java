@@ -0,0 +1,328 @@
+package ch.winfor.monopoly.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.BoardFactory;
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.Player;
+import ch.winfor.monopoly.game.TurnHandler;
+import ch.winfor.monopoly.gui.FieldImage;
+import ch.winfor.monopoly.log.Level;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.network.NetworkMessageStream;
+import ch.winfor.monopoly.network.UpdateMessage;
+import ch.winfor.monopoly.network.WireFormatComparison;
+import ch.winfor.monopoly.res.Ressources;
+import ch.winfor.monopoly.sim.SimulatedGame;
+import ch.winfor.monopoly.sim.SimulationEngine;
+import ch.winfor.monopoly.sim.Strategy;
+
+/**
+ * the benchmark suite of the engine, the hashing, the network messages and
+ * the rendering of the fields
+ * 
+ * Run with <code>ant benchmark</code> or directly; the results are printed
+ * and written as JSON (see {@link BenchmarkRunner#writeJson(List, Writer)}),
+ * so the results of different releases can be compared.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class MonopolyBenchmarks {
+    /** the boards of the simulation benchmarks */
+    private static final String[] BOARDS = { "standard_edition.xml",
+            "swiss_edition.xml" };
+
+    /** the seed of the games, so every run plays the same games */
+    private static final long SEED = 42;
+
+    /** number of turns played before the game benchmarks */
+    private static final int MID_GAME_TURNS = 40;
+
+    /** number of messages encoded before they are decoded again */
+    private static final int READ_MESSAGES = 256;
+
+    /**
+     * loads a board from the ressources
+     * 
+     * @param name
+     *            the file name of the board
+     * @return the board
+     * @throws Exception
+     *             if the board can't be loaded
+     */
+    private static Board loadBoard(String name) throws Exception {
+        InputStream is = Ressources.getRessource(name);
+        if (is == null)
+            throw new IOException("board not found: " + name);
+        try {
+            return BoardFactory.createFromXml(is);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * creates a game in which the players have bought some properties
+     * 
+     * @param board
+     *            the board
+     * @return the game
+     */
+    private static Game createMidGame(Board board) {
+        Game game = new Game(board, 4, null, SEED);
+        Strategy strategy = new Strategy.AlwaysBuyStrategy();
+        for (int i = 0; i < MID_GAME_TURNS; i++)
+            SimulatedGame.playTurn(game, strategy);
+        return game;
+    }
+
+    /**
+     * @return all benchmarks of the suite
+     * @throws Exception
+     *             if a board can't be loaded
+     */
+    public static List<Benchmark> createBenchmarks() throws Exception {
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (final String boardName : BOARDS) {
+            final Board board = loadBoard(boardName);
+            benchmarks.add(new Benchmark("simulation."
+                    + boardName.replace(".xml", "")) {
+                private Strategy[] strategies = {
+                        new Strategy.AlwaysBuyStrategy(),
+                        new Strategy.ReserveStrategy(200),
+                        new Strategy.AlwaysBuyStrategy(),
+                        new Strategy.ReserveStrategy(500) };
+
+                @Override
+                public long run() {
+                    return new SimulatedGame(board, strategies,
+                            SimulationEngine.STANDARD_MAX_TURNS).play()
+                            .getTurns();
+                }
+            });
+        }
+
+        final Board board = loadBoard(BOARDS[0]);
+        benchmarks.add(new Benchmark("turnHandler.calculateRent") {
+            private TurnHandler turnHandler;
+
+            @Override
+            public void setUp() {
+                Game game = createMidGame(board);
+                turnHandler = game.getTurnHandler();
+                // stand on a field owned by another player
+                for (int i = 0; i < board.getAbsoluteLength(); i++) {
+                    Player owner = game.getOwner(i);
+                    if (owner != null && owner != turnHandler.getPlayer()) {
+                        turnHandler.getPlayer().getPiece().setPosition(i);
+                        break;
+                    }
+                }
+            }
+
+            @Override
+            public long run() {
+                return turnHandler.calculateRent();
+            }
+        });
+        benchmarks.add(new Benchmark("game.getMonopolies") {
+            private Game game;
+
+            private int player;
+
+            @Override
+            public void setUp() {
+                game = createMidGame(board);
+            }
+
+            @Override
+            public long run() {
+                player = (player + 1) % game.getNPlayers();
+                return game.getMonopolies(game.getPlayer(player)).length;
+            }
+        });
+        benchmarks.add(new Benchmark("game.createHash") {
+            private Game game;
+
+            @Override
+            public void setUp() {
+                game = createMidGame(board);
+            }
+
+            @Override
+            public long run() {
+                return game.createHash();
+            }
+        });
+        benchmarks.add(new Benchmark("boardFactory.createFromXml") {
+            private byte[] xml;
+
+            @Override
+            public void setUp() throws IOException {
+                InputStream is = Ressources.getRessource(BOARDS[0]);
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int n; (n = is.read(buffer)) != -1;)
+                    baos.write(buffer, 0, n);
+                is.close();
+                xml = baos.toByteArray();
+            }
+
+            @Override
+            public long run() throws Exception {
+                return BoardFactory.createFromXml(new ByteArrayInputStream(xml))
+                        .getAbsoluteLength();
+            }
+        });
+        benchmarks.add(new Benchmark("fieldImage.create") {
+            private FieldImage[] images;
+
+            private int index;
+
+            @Override
+            public void setUp() {
+                Game game = createMidGame(board);
+                images = new FieldImage[board.getAbsoluteLength()];
+                for (int i = 0; i < images.length; i++)
+                    images[i] = new FieldImage(64, 96, board.getField(i), game);
+            }
+
+            @Override
+            public long run() {
+                index = (index + 1) % images.length;
+                images[index].create();
+                return index;
+            }
+        });
+
+        UpdateMessage[] updates = WireFormatComparison
+                .createSampleUpdates(createMidGame(board));
+        for (UpdateMessage update : updates) {
+            benchmarks.add(createWriteBenchmark(update));
+            benchmarks.add(createReadBenchmark(update));
+        }
+        return benchmarks;
+    }
+
+    /**
+     * @param message
+     *            a message
+     * @return a benchmark writing the message to a
+     *         {@link NetworkMessageStream}
+     */
+    private static Benchmark createWriteBenchmark(final UpdateMessage message) {
+        return new Benchmark("network.write."
+                + message.getClass().getSimpleName()) {
+            private long bytes;
+
+            private NetworkMessageStream stream = new NetworkMessageStream(
+                    new OutputStream() {
+                        @Override
+                        public void write(int b) {
+                            bytes++;
+                        }
+
+                        @Override
+                        public void write(byte[] b, int off, int len) {
+                            bytes += len;
+                        }
+                    }, null);
+
+            @Override
+            public long run() throws IOException {
+                stream.writeMessage(message);
+                return bytes;
+            }
+        };
+    }
+
+    /**
+     * @param message
+     *            a message
+     * @return a benchmark reading the message from a
+     *         {@link NetworkMessageStream}
+     */
+    private static Benchmark createReadBenchmark(final UpdateMessage message) {
+        return new Benchmark("network.read."
+                + message.getClass().getSimpleName()) {
+            private byte[] data;
+
+            private NetworkMessageStream stream;
+
+            private int remaining;
+
+            @Override
+            public void setUp() throws IOException {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                NetworkMessageStream writer = new NetworkMessageStream(baos,
+                        null);
+                for (int i = 0; i < READ_MESSAGES; i++)
+                    writer.writeMessage(message);
+                data = baos.toByteArray();
+            }
+
+            @Override
+            public long run() throws IOException {
+                if (remaining == 0) {
+                    stream = new NetworkMessageStream(null,
+                            new ByteArrayInputStream(data));
+                    remaining = READ_MESSAGES;
+                }
+                remaining--;
+                return stream.readMessage().hashCode();
+            }
+        };
+    }
+
+    /**
+     * runs the benchmarks
+     * 
+     * @param args
+     *            <code>[output file] [name pattern]</code>; the results are
+     *            written to <code>benchmark-results.json</code> by default,
+     *            and only the benchmarks whose names match the regular
+     *            expression are run
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        Log.setLevel(Log.NETWORK, Level.WARN);
+        String output = args.length > 0 ? args[0] : "benchmark-results.json";
+        Pattern filter = Pattern.compile(args.length > 1 ? args[1] : ".*");
+
+        BenchmarkRunner runner = new BenchmarkRunner();
+        List<Benchmark> benchmarks = createBenchmarks();
+        List<BenchmarkRunner.Result> results = new ArrayList<BenchmarkRunner.Result>();
+        for (Benchmark benchmark : benchmarks) {
+            if (!filter.matcher(benchmark.getName()).matches())
+                continue;
+            BenchmarkRunner.Result result = runner.measure(benchmark);
+            results.add(result);
+            System.out.printf("%-48s %14.1f ns/op  +- %.1f%n",
+                    result.getName(), result.getMean(),
+                    result.getStandardDeviation());
+        }
+
+        Writer out = new OutputStreamWriter(new FileOutputStream(output),
+                StandardCharsets.UTF_8);
+        try {
+            BenchmarkRunner.writeJson(results, out);
+        } finally {
+            out.close();
+        }
+        System.out.println("results written to " + output + " (sink "
+                + runner.getSink() + ")");
+    }
+}
@@ -0,0 +1,97 @@
+package ch.winfor.monopoly.game;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+/**
+ * append-only record of the actions of a game
+ * 
+ * A game with a log (see {@link Game#setActionLog(ActionLog)}) appends every
+ * call of an action of its {@link TurnHandler} as a {@link TurnCommand}.
+ * Together with the seed of the game, the log is enough to play the game
+ * again: a new game on the same board with the same seed and the same
+ * players, to which the commands are applied in order, ends up in exactly the
+ * same state (see {@link #replay(Game)}).
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class ActionLog implements Serializable {
+    /** */
+    private static final long serialVersionUID = 3470291854480313915L;
+
+    /** the seed of the game */
+    private final long seed;
+
+    /** the actions in the order they were called */
+    private final ArrayList<TurnCommand> actions;
+
+    /**
+     * creates an empty log
+     * 
+     * @param seed
+     *            the seed of the game that is recorded
+     */
+    public ActionLog(long seed) {
+        this.seed = seed;
+        actions = new ArrayList<TurnCommand>();
+    }
+
+    /**
+     * @return the seed of the recorded game
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * appends an action
+     * 
+     * @param action
+     *            the action
+     */
+    public synchronized void append(TurnCommand action) {
+        actions.add(action);
+    }
+
+    /**
+     * @return the number of recorded actions
+     */
+    public synchronized int size() {
+        return actions.size();
+    }
+
+    /**
+     * @param index
+     *            the index of the action
+     * @return the {@code index}th action
+     */
+    public synchronized TurnCommand get(int index) {
+        return actions.get(index);
+    }
+
+    /**
+     * applies all recorded actions to a game
+     * 
+     * The game must have just been created with the seed of the log (see
+     * {@link Game#Game(Board, int, java.io.OutputStream, long)}), and the
+     * names and colors of the players must be set as in the recorded game,
+     * since they are part of its hash.
+     * 
+     * @param game
+     *            the game to play
+     * @throws IllegalArgumentException
+     *             if the game has another seed
+     */
+    public void replay(Game game) {
+        if (game.getSeed() != seed)
+            throw new IllegalArgumentException("game has another seed");
+        TurnCommand[] recorded;
+        synchronized (this) {
+            recorded = actions.toArray(new TurnCommand[actions.size()]);
+        }
+        for (int i = 0; i < recorded.length; i++) {
+            recorded[i].execute(game);
+        }
+    }
+}
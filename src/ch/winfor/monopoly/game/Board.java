@@ -47,6 +47,12 @@ public class Board implements Hashable, Serializable {
     /** like $ for dollars */
     private String currencySuffix;
 
+    /** cached value of {@link #createHash()}, <code>0</code> if not computed */
+    private transient volatile long hash;
+
+    /** cached value of {@link #getCompiled()} or <code>null</code> */
+    private transient volatile CompiledBoard compiled;
+
     /** the standard length of a field */
     public static final int STANDARD_FLANK_SIZE = 10;
 
@@ -157,6 +163,8 @@ public class Board implements Hashable, Serializable {
      */
     public void setField(int index, Field field) {
         fields[index] = field;
+        hash = 0;
+        compiled = null;
     }
 
     /**
@@ -186,6 +194,7 @@ public class Board implements Hashable, Serializable {
      */
     public void setStartMoney(long startMoney) {
         this.startMoney = startMoney;
+        hash = 0;
     }
 
     /**
@@ -195,12 +204,8 @@ public class Board implements Hashable, Serializable {
      *         <code>null</code> if no jail field found
      */
     public JailField getJailField() {
-        for (int i = 0; i < fields.length; i++) {
-            if (fields[i] instanceof JailField) {
-                return (JailField) fields[i];
-            }
-        }
-        return null;
+        int jailIndex = getCompiled().getJailIndex();
+        return jailIndex != -1 ? (JailField) fields[jailIndex] : null;
     }
 
     /**
@@ -230,6 +235,7 @@ public class Board implements Hashable, Serializable {
             cardStacks.put(stackName, cards);
             cardStackNames.add(stackName);
         }
+        hash = 0;
     }
 
     public Set<String> getDeckNames() {
@@ -260,7 +266,7 @@ public class Board implements Hashable, Serializable {
      * @return the number of monopolies in the game
      */
     public int getNMonopolies() {
-        return monopolies.length;
+        return monopolies != null ? monopolies.length : 0;
     }
 
     /**
@@ -269,6 +275,8 @@ public class Board implements Hashable, Serializable {
      */
     public void setMonopolies(MonopolyGroup[] monopolies) {
         this.monopolies = monopolies;
+        hash = 0;
+        compiled = null;
     }
 
     /**
@@ -279,7 +287,8 @@ public class Board implements Hashable, Serializable {
      * @return the index of the next railroad field
      */
     public int getNextRailroadIndex(int position) {
-        return getNextFieldIndex(position, RailroadField.class);
+        int next = getCompiled().getNextRailroad(position);
+        return next != -1 ? next : position;
     }
 
     /**
@@ -290,38 +299,20 @@ public class Board implements Hashable, Serializable {
      * @return the index of the next company field
      */
     public int getNextUtilityIndex(int position) {
-        return getNextFieldIndex(position, CompanyField.class);
+        int next = getCompiled().getNextUtility(position);
+        return next != -1 ? next : position;
     }
 
     /**
-     * finds the next field of a specific type from a specified index on
+     * finds the index of a field
      * 
-     * @param position
-     *            the index to start looking from
-     * @param fieldType
-     *            the desired type of the field
-     * @return the index of the next field of the desired type
+     * @param field
+     *            the field
+     * @return the index of the field, <code>-1</code> if the field is not on
+     *         this board
      */
-    private int getNextFieldIndex(int position, Class<?> fieldType) {
-        int cursor = position + 1;
-        while (cursor != position) {
-            if (getField(cursor).getClass().equals(fieldType)) {
-                return cursor;
-            }
-            cursor++;
-            cursor %= getAbsoluteLength();
-        }
-        return position;
-    }
-
     public int getFieldIndex(Field field) {
-        int length = getAbsoluteLength();
-        for (int i = 0; i < length; i++) {
-            if (fields[i] == field) {
-                return i;
-            }
-        }
-        return -1;
+        return getCompiled().getFieldIndex(field);
     }
 
     /**
@@ -333,19 +324,48 @@ public class Board implements Hashable, Serializable {
      *         unknown to this board
      */
     public int getMonopolyIndex(MonopolyGroup group) {
-        for (int i = 0; i < monopolies.length; i++) {
-            if (monopolies[i] == group)
-                return i;
+        return getCompiled().getMonopolyIndex(group);
+    }
+
+    /**
+     * returns the fields of the board compiled into flat tables
+     * 
+     * The compiled board is created once and cached like the hash; it is
+     * reset by the setters of this class, but changes to the fields
+     * themselves are not detected.
+     * 
+     * @return the compiled board
+     */
+    public CompiledBoard getCompiled() {
+        CompiledBoard c = compiled;
+        if (c == null) {
+            c = new CompiledBoard(this);
+            compiled = c;
         }
-        return -1;
+        return c;
     }
 
-    /*
-     * (non-Javadoc)
+    /**
+     * returns the hash of the board
+     * 
+     * The board doesn't change during a game, so the hash is only calculated
+     * once and then cached. It is reset by the setters of this class; changes
+     * to the fields or cards themselves are not detected.
      * 
      * @see ch.winfor.monopoly.game.Hashable#createHash()
      */
     public long createHash() {
+        if (hash == 0)
+            hash = calculateHash();
+        return hash;
+    }
+
+    /**
+     * calculates the hash of the board
+     * 
+     * @return the hash value
+     */
+    private long calculateHash() {
         long hash = 0;
         hash += flankSize * 342343;
         for (int i = 0; i < fields.length; i++) {
@@ -150,6 +150,8 @@ public class BoardFactory {
             }
         }
 
+        // the board is complete; compile it before any game runs on it
+        board.getCompiled();
         return board;
     }
 
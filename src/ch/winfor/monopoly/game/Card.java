@@ -139,8 +139,7 @@ public class Card implements Hashable, Serializable {
             if (isMoveForward())
                 turnHandler.payStartMoney(oldPosition, piece.getPosition());
 
-            Board board = turnHandler.getGame().getBoard();
-            turnHandler.landedOnField(board.getField(piece.getPosition()));
+            turnHandler.landedOnField(piece.getPosition());
         }
     }
 
@@ -201,7 +200,7 @@ public class Card implements Hashable, Serializable {
             piece.setPosition(nextUtility);
             turnHandler.payStartMoney(oldPosition, piece.getPosition());
 
-            turnHandler.landedOnField(board.getField(piece.getPosition()));
+            turnHandler.landedOnField(piece.getPosition());
         }
     }
 
@@ -261,7 +260,7 @@ public class Card implements Hashable, Serializable {
             int oldPosition = piece.getPosition();
             piece.setPosition(nextRailroad);
             turnHandler.payStartMoney(oldPosition, piece.getPosition());
-            turnHandler.landedOnField(board.getField(piece.getPosition()));
+            turnHandler.landedOnField(piece.getPosition());
         }
     }
 
@@ -281,6 +280,13 @@ public class Card implements Hashable, Serializable {
             this.relativePosition = relativePosition;
         }
 
+        /**
+         * @return the position relative to the player's current position
+         */
+        public int getRelativePosition() {
+            return relativePosition;
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -299,7 +305,7 @@ public class Card implements Hashable, Serializable {
             piece.setPosition(newPos);
             if (relativePosition > 0)
                 turnHandler.payStartMoney(oldPosition, piece.getPosition());
-            turnHandler.landedOnField(board.getField(piece.getPosition()));
+            turnHandler.landedOnField(piece.getPosition());
         }
     }
 
@@ -458,9 +464,8 @@ public class Card implements Hashable, Serializable {
          */
         public void execute(TurnHandler turnHandler) {
             Player player = turnHandler.getPlayer();
-            Board board = turnHandler.getGame().getBoard();
-            JailField jail = board.getJailField();
-            int jailIndex = board.getFieldIndex(jail);
+            int jailIndex = turnHandler.getGame().getBoard().getCompiled()
+                    .getJailIndex();
             player.setInJailRounds(JailField.STANDARD_STAY);
             player.getPiece().setPosition(jailIndex);
         }
@@ -0,0 +1,426 @@
+package ch.winfor.monopoly.game;
+
+import java.util.IdentityHashMap;
+
+import ch.winfor.monopoly.game.Field.GoToJailField;
+import ch.winfor.monopoly.game.Field.JailField;
+import ch.winfor.monopoly.game.Field.StartField;
+
+/**
+ * the fields of a {@link Board} compiled into flat tables
+ * 
+ * The engine and the AI look up the kind, the group, the rents and the next
+ * railroad or utility of a field by its index instead of testing the classes
+ * of the field objects or searching the board. A compiled board is created
+ * once per board by {@link Board#getCompiled()} and never changes; it is only
+ * correct as long as the board isn't modified.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class CompiledBoard {
+    /** a field without any effect (including free parking) */
+    public static final byte KIND_OTHER = 0;
+
+    /** a {@link PropertyField} */
+    public static final byte KIND_PROPERTY = 1;
+
+    /** a {@link RailroadField} */
+    public static final byte KIND_RAILROAD = 2;
+
+    /** a {@link CompanyField} */
+    public static final byte KIND_COMPANY = 3;
+
+    /** a {@link TaxField} */
+    public static final byte KIND_TAX = 4;
+
+    /** a {@link DrawCardField} */
+    public static final byte KIND_CARD = 5;
+
+    /** a {@link StartField} */
+    public static final byte KIND_START = 6;
+
+    /** a {@link GoToJailField} */
+    public static final byte KIND_GO_TO_JAIL = 7;
+
+    /** a {@link JailField} */
+    public static final byte KIND_JAIL = 8;
+
+    /** any other {@link BuyableField}, which can be bought but has no rent */
+    public static final byte KIND_BUYABLE = 9;
+
+    /** the number of field kinds */
+    public static final int N_KINDS = 10;
+
+    /** the number of fields */
+    private final int length;
+
+    /** the kind of every field (one of the <code>KIND_*</code> constants) */
+    private final byte[] kinds;
+
+    /** the index of the jail field, <code>-1</code> if there is none */
+    private final int jailIndex;
+
+    /** the next railroad after every field, <code>-1</code> if there is none */
+    private final int[] nextRailroad;
+
+    /** the next utility after every field, <code>-1</code> if there is none */
+    private final int[] nextUtility;
+
+    /** the monopoly of every property, <code>-1</code> for other fields */
+    private final int[] groups;
+
+    /** the field indices of the properties of every monopoly */
+    private final int[][] groupFields;
+
+    /** the price of every buyable field, <code>0</code> for the others */
+    private final long[] prices;
+
+    /** the price of a house on every property, <code>0</code> for the others */
+    private final long[] housePrices;
+
+    /** the tax of every tax field, <code>0</code> for the others */
+    private final long[] taxes;
+
+    /** the money for passing every start field, <code>0</code> for the others */
+    private final long[] passMoney;
+
+    /** the money for landing on every start field, <code>0</code> for others */
+    private final long[] visitMoney;
+
+    /**
+     * the rent tables of all fields one after the other: the rent by number of
+     * houses of the properties, the rent by number of railroads - 1 of the
+     * railroads and the rent multiplier by number of companies - 1 of the
+     * companies
+     */
+    private final long[] rents;
+
+    /** the start of the rent table of every field in {@link #rents} */
+    private final int[] rentOffsets;
+
+    /** the length of the rent table of every field */
+    private final int[] rentCounts;
+
+    /** the index of every field object */
+    private final IdentityHashMap<Field, Integer> fieldIndices;
+
+    /** the index of every monopoly object */
+    private final IdentityHashMap<MonopolyGroup, Integer> monopolyIndices;
+
+    /**
+     * compiles a board
+     * 
+     * @param board
+     *            the board
+     */
+    CompiledBoard(Board board) {
+        length = board.getAbsoluteLength();
+        int nMonopolies = board.getNMonopolies();
+        monopolyIndices = new IdentityHashMap<MonopolyGroup, Integer>();
+        for (int i = nMonopolies - 1; i >= 0; i--)
+            monopolyIndices.put(board.getMonopoly(i), i);
+
+        kinds = new byte[length];
+        groups = new int[length];
+        prices = new long[length];
+        housePrices = new long[length];
+        taxes = new long[length];
+        passMoney = new long[length];
+        visitMoney = new long[length];
+        rentOffsets = new int[length];
+        rentCounts = new int[length];
+        fieldIndices = new IdentityHashMap<Field, Integer>(length);
+        long[][] rentTables = new long[length][];
+        int nRents = 0;
+        int jail = -1;
+        for (int i = length - 1; i >= 0; i--) {
+            Field field = board.getField(i);
+            groups[i] = -1;
+            if (field == null)
+                continue;
+            fieldIndices.put(field, i);
+            if (field instanceof BuyableField)
+                prices[i] = ((BuyableField) field).getPrice();
+
+            Class<?> type = field.getClass();
+            if (type.equals(PropertyField.class)) {
+                PropertyField property = (PropertyField) field;
+                kinds[i] = KIND_PROPERTY;
+                housePrices[i] = property.getHousePrice();
+                rentTables[i] = new long[property.getMaxHouses() + 1];
+                for (int h = 0; h < rentTables[i].length; h++)
+                    rentTables[i][h] = property.getRent(h);
+                Integer group = monopolyIndices.get(property.getGroup());
+                groups[i] = group != null ? group : -1;
+            } else if (type.equals(RailroadField.class)) {
+                RailroadField railroad = (RailroadField) field;
+                kinds[i] = KIND_RAILROAD;
+                rentTables[i] = new long[railroad.getMaxRailroads()];
+                for (int n = 0; n < rentTables[i].length; n++)
+                    rentTables[i][n] = railroad.getRent(n + 1);
+            } else if (type.equals(CompanyField.class)) {
+                CompanyField company = (CompanyField) field;
+                kinds[i] = KIND_COMPANY;
+                rentTables[i] = new long[company.getMaxCompanies()];
+                for (int n = 0; n < rentTables[i].length; n++)
+                    rentTables[i][n] = company.getRentMultiplicator(n + 1);
+            } else if (field instanceof BuyableField) {
+                kinds[i] = KIND_BUYABLE;
+            } else if (field instanceof DrawCardField) {
+                kinds[i] = KIND_CARD;
+            } else if (field instanceof TaxField) {
+                kinds[i] = KIND_TAX;
+                taxes[i] = ((TaxField) field).getTaxAmount();
+            } else if (field instanceof StartField) {
+                kinds[i] = KIND_START;
+                passMoney[i] = ((StartField) field).getPassMoney();
+                visitMoney[i] = ((StartField) field).getVisitMoney();
+            } else if (field instanceof GoToJailField) {
+                kinds[i] = KIND_GO_TO_JAIL;
+            } else if (field instanceof JailField) {
+                kinds[i] = KIND_JAIL;
+                jail = i;
+            } else {
+                kinds[i] = KIND_OTHER;
+            }
+            if (rentTables[i] != null)
+                nRents += rentTables[i].length;
+        }
+        jailIndex = jail;
+
+        rents = new long[nRents];
+        for (int i = 0, offset = 0; i < length; i++) {
+            rentOffsets[i] = offset;
+            if (rentTables[i] != null) {
+                rentCounts[i] = rentTables[i].length;
+                System.arraycopy(rentTables[i], 0, rents, offset,
+                        rentCounts[i]);
+                offset += rentCounts[i];
+            }
+        }
+
+        int[] groupSizes = new int[nMonopolies];
+        for (int i = 0; i < length; i++) {
+            if (groups[i] != -1)
+                groupSizes[groups[i]]++;
+        }
+        groupFields = new int[nMonopolies][];
+        for (int g = 0; g < nMonopolies; g++)
+            groupFields[g] = new int[groupSizes[g]];
+        int[] filled = new int[nMonopolies];
+        for (int i = 0; i < length; i++) {
+            if (groups[i] != -1)
+                groupFields[groups[i]][filled[groups[i]]++] = i;
+        }
+
+        nextRailroad = new int[length];
+        nextUtility = new int[length];
+        for (int i = 0; i < length; i++) {
+            nextRailroad[i] = findNext(i, KIND_RAILROAD);
+            nextUtility[i] = findNext(i, KIND_COMPANY);
+        }
+    }
+
+    /**
+     * @param position
+     *            the field to start looking after
+     * @param kind
+     *            the kind of the field to look for
+     * @return the index of the next field of the kind or <code>-1</code> if
+     *         there is none
+     */
+    private int findNext(int position, byte kind) {
+        for (int i = 1; i <= length; i++) {
+            int cursor = (position + i) % length;
+            if (kinds[cursor] == kind)
+                return cursor;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of fields
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the kind of the field (one of the <code>KIND_*</code> constants)
+     */
+    public byte getKind(int field) {
+        return kinds[field];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return <code>true</code> if the field is a {@link BuyableField}
+     */
+    public boolean isBuyable(int field) {
+        byte kind = kinds[field];
+        return kind == KIND_PROPERTY || kind == KIND_RAILROAD
+                || kind == KIND_COMPANY || kind == KIND_BUYABLE;
+    }
+
+    /**
+     * @return the index of the first jail field or <code>-1</code> if there is
+     *         none
+     */
+    public int getJailIndex() {
+        return jailIndex;
+    }
+
+    /**
+     * @param position
+     *            the index of a field
+     * @return the index of the next railroad after the field or
+     *         <code>-1</code> if there is none
+     */
+    public int getNextRailroad(int position) {
+        return nextRailroad[position];
+    }
+
+    /**
+     * @param position
+     *            the index of a field
+     * @return the index of the next company after the field or
+     *         <code>-1</code> if there is none
+     */
+    public int getNextUtility(int position) {
+        return nextUtility[position];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the index of the monopoly of the field or <code>-1</code> if it
+     *         isn't a property
+     */
+    public int getGroup(int field) {
+        return groups[field];
+    }
+
+    /**
+     * @return the number of monopolies
+     */
+    public int getNGroups() {
+        return groupFields.length;
+    }
+
+    /**
+     * @param group
+     *            the index of a monopoly
+     * @return the number of properties of the monopoly on the board
+     */
+    public int getGroupSize(int group) {
+        return groupFields[group].length;
+    }
+
+    /**
+     * @param group
+     *            the index of a monopoly
+     * @param index
+     *            the index of the property in the monopoly
+     * @return the field index of the property
+     */
+    public int getGroupField(int group, int index) {
+        return groupFields[group][index];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the price of the field or <code>0</code> if it can't be bought
+     */
+    public long getPrice(int field) {
+        return prices[field];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the price of a house on the field or <code>0</code> if it isn't
+     *         a property
+     */
+    public long getHousePrice(int field) {
+        return housePrices[field];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the tax of the field or <code>0</code> if it isn't a tax field
+     */
+    public long getTax(int field) {
+        return taxes[field];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the money for passing the field or <code>0</code> if it isn't a
+     *         start field
+     */
+    public long getPassMoney(int field) {
+        return passMoney[field];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the money for landing on the field or <code>0</code> if it isn't
+     *         a start field
+     */
+    public long getVisitMoney(int field) {
+        return visitMoney[field];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @return the length of the rent table of the field: the maximum number of
+     *         houses + 1 of a property, the maximum number of railroads or
+     *         companies, <code>0</code> for other fields
+     */
+    public int getNRents(int field) {
+        return rentCounts[field];
+    }
+
+    /**
+     * @param field
+     *            the index of a field
+     * @param index
+     *            the number of houses of a property, the number of railroads
+     *            - 1 or the number of companies - 1
+     * @return the rent (the rent multiplier for companies)
+     */
+    public long getRent(int field, int index) {
+        return rents[rentOffsets[field] + index];
+    }
+
+    /**
+     * @param field
+     *            a field
+     * @return the index of the field or <code>-1</code> if it isn't on the
+     *         board
+     */
+    public int getFieldIndex(Field field) {
+        Integer index = fieldIndices.get(field);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * @param group
+     *            a monopoly
+     * @return the index of the monopoly or <code>-1</code> if it isn't on the
+     *         board
+     */
+    public int getMonopolyIndex(MonopolyGroup group) {
+        Integer index = monopolyIndices.get(group);
+        return index != null ? index : -1;
+    }
+}
@@ -1,23 +1,28 @@
 package ch.winfor.monopoly.game;
 
+import java.awt.Color;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.PipedOutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Random;
 import java.util.Scanner;
+import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import ch.winfor.monopoly.game.Card.KeepableCard;
 import ch.winfor.monopoly.game.HouseRegister.HouseRegisterListener;
 import ch.winfor.monopoly.game.Player.PlayerListener;
 import ch.winfor.monopoly.game.PlayingPiece.PlayingPieceListener;
+import ch.winfor.monopoly.game.TurnHandler.TurnTask;
+import ch.winfor.monopoly.game.TurnHandler.TurnTaskListener;
+import ch.winfor.monopoly.metrics.Metrics;
+import ch.winfor.monopoly.metrics.Timer;
 
 /**
  * This class is the main part of the game. It connects {@link Board},
@@ -31,11 +36,62 @@ public class Game implements PlayingPieceListener, PlayerListener,
     /** */
     private static final long serialVersionUID = -2837827570335148672L;
 
+    /** number and duration of the playingPieceMoved events sent */
+    private static final Timer PIECE_MOVED_EVENTS = Metrics
+            .timer("game.event.playingPieceMoved.nanos");
+
+    /** number and duration of the playerWealthChanged events sent */
+    private static final Timer WEALTH_CHANGED_EVENTS = Metrics
+            .timer("game.event.playerWealthChanged.nanos");
+
+    /** number and duration of the playerWentBankrupt events sent */
+    private static final Timer BANKRUPT_EVENTS = Metrics
+            .timer("game.event.playerWentBankrupt.nanos");
+
+    /** number and duration of the playersJailStateChanged events sent */
+    private static final Timer JAIL_STATE_EVENTS = Metrics
+            .timer("game.event.playersJailStateChanged.nanos");
+
+    /** number and duration of the playerObtained events sent */
+    private static final Timer OBTAINED_EVENTS = Metrics
+            .timer("game.event.playerObtained.nanos");
+
+    /** number and duration of the playerKeepsCard events sent */
+    private static final Timer KEEPS_CARD_EVENTS = Metrics
+            .timer("game.event.playerKeepsCard.nanos");
+
+    /** number and duration of the houseNumberChanged events sent */
+    private static final Timer HOUSES_EVENTS = Metrics
+            .timer("game.event.houseNumberChanged.nanos");
+
+    /** number and duration of the playerEndedTurn events sent */
+    private static final Timer ENDED_TURN_EVENTS = Metrics
+            .timer("game.event.playerEndedTurn.nanos");
+
+    /** number and duration of the cardDrawn events sent */
+    private static final Timer CARD_DRAWN_EVENTS = Metrics
+            .timer("game.event.cardDrawn.nanos");
+
+    /** number and duration of the batchEnded events sent */
+    private static final Timer BATCH_ENDED_EVENTS = Metrics
+            .timer("game.event.batchEnded.nanos");
+
+    /** number and duration of the turnTaskChanged events sent */
+    private static final Timer TURN_TASK_EVENTS = Metrics
+            .timer("game.event.turnTaskChanged.nanos");
+
+    /** number and duration of the calls of {@link #createHash()} */
+    private static final Timer CREATE_HASH = Metrics
+            .timer("game.createHash.nanos");
+
     /** the board, on which stuff would be placed in the real world */
     private Board board;
 
+    /** the seed from which all random decisions of the game are derived */
+    private long seed;
+
     /** pseudo-random number generator for the dice */
-    private Random random;
+    private GameRandom random;
 
     /** whose turn it is currently */
     private int turn;
@@ -47,7 +103,16 @@ public class Game implements PlayingPieceListener, PlayerListener,
     private TurnHandler turnHandler;
 
     /** listeners for game events from this game */
-    private transient ArrayList<GameListener> gameListeners;
+    private transient ListenerList<GameListener> gameListeners;
+
+    /** subscribers to the task changes of the turn handlers */
+    private transient ListenerList<TurnTaskListener> turnTaskListeners;
+
+    /** subscribers to the ends of the batches */
+    private transient ListenerList<BatchListener> batchListeners;
+
+    /** the number of batches that have begun and not ended yet */
+    private transient int batchDepth;
 
     /** holds information about where houses are */
     private HouseRegister houseRegister;
@@ -55,6 +120,40 @@ public class Game implements PlayingPieceListener, PlayerListener,
     /** the unordered card decks */
     private HashMap<String, ShuffledCardDeck> cardDecks;
 
+    /**
+     * index of who owns which field; only rebuilt by the thread changing the
+     * game when the players or houses are replaced (and after
+     * deserialization), never by a reader
+     */
+    private transient volatile OwnershipIndex ownershipIndex;
+
+    /**
+     * incrementally updated hash of the players, houses and card decks (see
+     * {@link StateHash})
+     */
+    private transient long stateHash;
+
+    /** <code>true</code> if {@link #stateHash} is up to date */
+    private transient boolean stateHashValid;
+
+    /** the thread executing the commands, <code>null</code> if none runs */
+    private transient volatile GameThread gameThread;
+
+    /** the number of actions of the turn handlers taken so far */
+    private long nActions;
+
+    /** the record of the actions, <code>null</code> if they aren't recorded */
+    private transient ActionLog actionLog;
+
+    /** subscribers to the actions of the turn handlers */
+    private transient ListenerList<ActionListener> actionListeners;
+
+    /**
+     * receiver of the submitted {@link TurnCommand}s instead of this game,
+     * <code>null</code> if they are executed here
+     */
+    private transient volatile ActionForwarder actionForwarder;
+
     /** printWriter to write to the game log */
     //private GameLog gameLog;
 
@@ -79,26 +178,65 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the number of players
      */
     public Game(final Board board, int nPlayers, OutputStream gameLogStream) {
+        this(board, nPlayers, gameLogStream, GameRandom.createSeed());
+    }
+
+    /**
+     * initializes a reproducible game
+     * 
+     * The dice, the order of the card decks and the colors of the pieces are
+     * derived from the seed only, so two games with the same seed develop the
+     * same way if the same actions are taken (see {@link ActionLog}).
+     * 
+     * @param board
+     *            the board
+     * @param nPlayers
+     *            the number of players
+     * @param gameLogStream
+     *            the output stream where important game events will be logged
+     * @param seed
+     *            the seed of the random decisions
+     */
+    public Game(final Board board, int nPlayers, OutputStream gameLogStream,
+            long seed) {
         this.board = board;
         //this.gameLog = new GameLog("main game", gameLogStream);
 
-        random = new Random();
-        gameListeners = new ArrayList<GameListener>();
+        this.seed = seed;
+        GameRandom root = new GameRandom(seed);
+        random = root.split();
+        gameListeners = new ListenerList<GameListener>(GameListener.class);
         turn = 0;
         houseRegister = new HouseRegister(board);
 
         cardDecks = new HashMap<String, ShuffledCardDeck>();
-        for (String deck : board.getDeckNames()) {
-            cardDecks.put(deck, new ShuffledCardDeck(board.getCardStack(deck)));
+        // sorted, so the decks get their generators in the same order on
+        // every machine
+        for (String deck : new TreeSet<String>(board.getDeckNames())) {
+            cardDecks.put(deck, new ShuffledCardDeck(board.getCardStack(deck),
+                    root.split()));
         }
 
+        GameRandom colors = root.split();
         this.players = new Player[nPlayers];
         for (int i = 0; i < this.players.length; i++) {
             this.players[i] = new Player("Player " + i);
             this.players[i].setWealth(board.getStartMoney());
+            this.players[i].getPiece().setColor(new Color(colors.nextInt()));
         }
         addListeners();
+        ownershipIndex = OwnershipIndex.create(this, houseRegister);
+
+        //gameLog.log("initialized game!");
+    }
 
+    /**
+     * starts a thread reading debug commands from the standard input
+     * 
+     * Only interactive games should start this; headless games (e.g. the
+     * simulation engine) must not spawn any threads.
+     */
+    public void startDebugConsole() {
         new Thread() {
             public void run() {
                 while (true) {
@@ -106,10 +244,17 @@ public class Game implements PlayingPieceListener, PlayerListener,
                     while (sc.hasNextLine()) {
                         String cmd = sc.nextLine();
                         if (cmd.equalsIgnoreCase("mono")) {
-                            players[0].addPossession((BuyableField) board
-                                    .getField(1));
-                            players[0].addPossession((BuyableField) board
-                                    .getField(3));
+                            submit(new GameCommand() {
+                                @Override
+                                public void execute(Game game) {
+                                    Board board = game.getBoard();
+                                    Player player = game.getPlayer(0);
+                                    player.addPossession((BuyableField) board
+                                            .getField(1));
+                                    player.addPossession((BuyableField) board
+                                            .getField(3));
+                                }
+                            });
                         }
                     }
                     sc.close();
@@ -122,9 +267,75 @@ public class Game implements PlayingPieceListener, PlayerListener,
                 }
             }
         }.start();
+    }
 
+    /**
+     * starts a {@link GameThread}, which from then on executes all commands
+     * passed to {@link #submit(GameCommand)}
+     * 
+     * Only interactive games need this; headless games and games whose
+     * changes are already serialized by their owner (e.g. the rooms of a
+     * server) execute the commands right away.
+     * 
+     * @param name
+     *            the name of the thread
+     * @return the thread, or the one that has already been started
+     */
+    public synchronized GameThread startGameThread(String name) {
+        if (gameThread == null) {
+            GameThread gt = new GameThread(this, name);
+            gt.start();
+            gameThread = gt;
+        }
+        return gameThread;
+    }
 
-        //gameLog.log("initialized game!");
+    /**
+     * stops the {@link GameThread} after the commands submitted so far; later
+     * commands are executed right away again
+     */
+    public synchronized void stopGameThread() {
+        if (gameThread != null) {
+            gameThread.stop();
+            gameThread = null;
+        }
+    }
+
+    /**
+     * @return the thread executing the commands, <code>null</code> if none
+     *         has been started
+     */
+    public GameThread getGameThread() {
+        return gameThread;
+    }
+
+    /**
+     * executes a command on the {@link GameThread} if one has been started,
+     * otherwise right away on the calling thread
+     * 
+     * If an {@link ActionForwarder} is set, {@link TurnCommand}s are passed to
+     * it instead.
+     * 
+     * @param command
+     *            the command
+     */
+    public void submit(GameCommand command) {
+        ActionForwarder af = actionForwarder;
+        if (af != null && command instanceof TurnCommand) {
+            af.forwardAction((TurnCommand) command);
+            return;
+        }
+        GameThread gt = gameThread;
+        if (gt != null) {
+            gt.submit(command);
+        } else {
+            beginBatch();
+            try {
+                command.execute(this);
+            } finally {
+                endBatch();
+            }
+        }
     }
 
     /**
@@ -187,6 +398,9 @@ public class Game implements PlayingPieceListener, PlayerListener,
      */
     public void setBoard(Board board) {
         this.board = board;
+        this.houseRegister.setBoard(board);
+        this.ownershipIndex = OwnershipIndex.create(this, houseRegister);
+        this.stateHashValid = false;
     }
 
     /**
@@ -197,11 +411,18 @@ public class Game implements PlayingPieceListener, PlayerListener,
      * @return <code>true</code> if the field can still be bought
      */
     public boolean freeToBuy(BuyableField field) {
-        for (int i = 0; i < players.length; i++) {
-            if (players[i].possesses(field))
-                return false;
-        }
-        return true;
+        return getOwner(field) == null;
+    }
+
+    /**
+     * determines if the field at a specific index is still available
+     * 
+     * @param fieldIndex
+     *            the index of the field
+     * @return <code>true</code> if the field is not owned by anybody
+     */
+    public boolean freeToBuy(int fieldIndex) {
+        return getOwnershipIndex().getOwner(fieldIndex) == OwnershipIndex.NO_OWNER;
     }
 
     public TurnHandler getTurnHandler() {
@@ -221,12 +442,110 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *         field is not owned by anybody
      */
     public Player getOwner(BuyableField field) {
-        for (Player p : players) {
-            if (p.possesses(field)) {
-                return p;
-            }
+        int fieldIndex = board.getFieldIndex(field);
+        if (fieldIndex == -1)
+            return null;
+        return getOwner(fieldIndex);
+    }
+
+    /**
+     * finds the owner of the field at a specific index
+     * 
+     * @param fieldIndex
+     *            the index of the field
+     * @return the owner of the field or <code>null</code>, if the field is not
+     *         owned by anybody
+     */
+    public Player getOwner(int fieldIndex) {
+        int owner = getOwnershipIndex().getOwner(fieldIndex);
+        return owner == OwnershipIndex.NO_OWNER ? null : players[owner];
+    }
+
+    /**
+     * finds the index of a player
+     * 
+     * @param player
+     *            the player
+     * @return the index of the player in this game, <code>-1</code> if he
+     *         doesn't play in this game
+     */
+    public int getPlayerIndex(Player player) {
+        for (int i = 0; i < players.length; i++) {
+            if (players[i] == player)
+                return i;
         }
-        return null;
+        return -1;
+    }
+
+    /**
+     * @return the turn handler of the current turn or <code>null</code> if it
+     *         hasn't been created yet (unlike {@link #getTurnHandler()}, this
+     *         doesn't start the turn)
+     */
+    TurnHandler getCurrentTurnHandler() {
+        return turnHandler;
+    }
+
+    /**
+     * @return the register of the houses on the board
+     */
+    HouseRegister getHouseRegister() {
+        return houseRegister;
+    }
+
+    /**
+     * @param deckName
+     *            the name of the deck
+     * @return the deck or <code>null</code> if there is no deck with this name
+     */
+    ShuffledCardDeck getCardDeck(String deckName) {
+        return cardDecks.get(deckName);
+    }
+
+    /**
+     * replaces the mutable state of the game (used by
+     * {@link GameSnapshot#restore(Game)})
+     * 
+     * @param players
+     *            the players
+     * @param turn
+     *            whose turn it is
+     * @param houseRegister
+     *            the houses
+     * @param cardDecks
+     *            the card decks
+     * @param turnHandler
+     *            the turn handler of the current turn, may be
+     *            <code>null</code>
+     */
+    void restoreState(Player[] players, int turn, HouseRegister houseRegister,
+            HashMap<String, ShuffledCardDeck> cardDecks, TurnHandler turnHandler) {
+        this.players = players;
+        this.turn = turn;
+        this.houseRegister = houseRegister;
+        this.cardDecks = cardDecks;
+        this.turnHandler = turnHandler;
+        this.ownershipIndex = OwnershipIndex.create(this, houseRegister);
+        this.stateHashValid = false;
+        addListeners();
+    }
+
+    /**
+     * @return the ownership index
+     */
+    OwnershipIndex getOwnershipIndex() {
+        return ownershipIndex;
+    }
+
+    /**
+     * reads the game and rebuilds the ownership index
+     * 
+     * @see java.io.Serializable
+     */
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        ownershipIndex = OwnershipIndex.create(this, houseRegister);
     }
 
     /**
@@ -257,7 +576,7 @@ public class Game implements PlayingPieceListener, PlayerListener,
      * @return the number of railroads the player owns
      */
     public int getNRailroadsOwned(Player owner) {
-        return countFields(owner, RailroadField.class);
+        return countFields(owner, CompiledBoard.KIND_RAILROAD);
     }
 
     /**
@@ -268,7 +587,7 @@ public class Game implements PlayingPieceListener, PlayerListener,
      * @return the number of company fields the player owns
      */
     public int getNCompaniesOwned(Player owner) {
-        return countFields(owner, CompanyField.class);
+        return countFields(owner, CompiledBoard.KIND_COMPANY);
     }
 
     /**
@@ -276,24 +595,17 @@ public class Game implements PlayingPieceListener, PlayerListener,
      * 
      * @param owner
      *            the player whose possessions are counted
-     * @param type
-     *            the type of field that counts
-     * @return the number of fields of the specific type which belong to the
+     * @param kind
+     *            the kind of field that counts (one of the
+     *            <code>CompiledBoard.KIND_*</code> constants)
+     * @return the number of fields of the specific kind which belong to the
      *         specified player
      */
-    private int countFields(Player owner, Class<? extends BuyableField> type) {
-        int count = 0;
-
-        int length = board.getAbsoluteLength();
-        for (int i = 0; i < length; i++) {
-            Field field = board.getField(i);
-            if (field.getClass().equals(type)) {
-                BuyableField buyableField = (BuyableField) field;
-                if (getOwner(buyableField) == owner)
-                    count++;
-            }
-        }
-        return count;
+    private int countFields(Player owner, int kind) {
+        int ownerIndex = getPlayerIndex(owner);
+        if (ownerIndex == -1)
+            return 0;
+        return getOwnershipIndex().countKind(ownerIndex, kind);
     }
 
     /**
@@ -325,7 +637,13 @@ public class Game implements PlayingPieceListener, PlayerListener,
     public Card drawCard(String deckName) {
         ShuffledCardDeck scd = cardDecks.get(deckName);
         if (scd != null) {
+            long oldKey = deckKey(deckName, scd);
             Card c = scd.draw();
+            // a card that can be kept leaves the deck; as the players don't
+            // keep cards yet, it is followed at once and goes back under it
+            if (c instanceof KeepableCard)
+                scd.putUnder(c);
+            updateStateHash(oldKey, deckKey(deckName, scd));
             fireCardDrawn(deckName, c);
             return c;
         } else {
@@ -377,24 +695,12 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *         first index, the number of hotels at the second
      */
     public int[] getHousesAndHotels(Player player) {
-        Board board = getBoard();
-        int houses = 0;
-        int hotels = 0;
-        for (int i = 0; i < board.getAbsoluteLength(); i++) {
-            Field field = board.getField(i);
-            if (field instanceof PropertyField) {
-                PropertyField propertyField = (PropertyField) field;
-                if (player.possesses(propertyField)) {
-                    int houseCount = houseRegister.getHouseCount(i);
-                    if (houseCount < board.getMaxHouses()) {
-                        houses += houseCount;
-                    } else {
-                        hotels++;
-                    }
-                }
-            }
-        }
-        return new int[] { houses, hotels };
+        int playerIndex = getPlayerIndex(player);
+        if (playerIndex == -1)
+            return new int[] { 0, 0 };
+        OwnershipIndex index = getOwnershipIndex();
+        return new int[] { index.getHouses(playerIndex),
+                index.getHotels(playerIndex) };
     }
 
     /**
@@ -469,26 +775,16 @@ public class Game implements PlayingPieceListener, PlayerListener,
      */
     public MonopolyGroup[] getMonopolies(Player player) {
         boolean[] ownership = new boolean[board.getNMonopolies()];
-        for (int i = 0; i < ownership.length; i++)
-            ownership[i] = true;
-
-        int length = board.getAbsoluteLength();
-        for (int i = 0; i < length; i++) {
-            Field field = board.getField(i);
-            if (field instanceof PropertyField) {
-                PropertyField propertyField = (PropertyField) field;
-                MonopolyGroup group = propertyField.getGroup();
-                int monopolyIndex = board.getMonopolyIndex(group);
-                if (getOwner(propertyField) != player) {
-                    ownership[monopolyIndex] = false;
-                }
-            }
-        }
+        int playerIndex = getPlayerIndex(player);
+        OwnershipIndex index = getOwnershipIndex();
 
         int ownershipCount = 0;
-        for (boolean o : ownership)
-            if (o)
+        for (int i = 0; i < ownership.length; i++) {
+            ownership[i] = playerIndex != -1
+                    && index.ownsMonopoly(playerIndex, i);
+            if (ownership[i])
                 ownershipCount++;
+        }
 
         MonopolyGroup[] owned = new MonopolyGroup[ownershipCount];
         int ownerIndex = 0;
@@ -502,12 +798,139 @@ public class Game implements PlayingPieceListener, PlayerListener,
     }
 
     /**
-     * @return the pseudo-random number generator of this game
+     * @return the pseudo-random number generator for the dice
      */
-    Random getRandom() {
+    GameRandom getRandom() {
         return random;
     }
 
+    /**
+     * replaces the generator for the dice and the number of actions taken
+     * (used when a saved game is loaded)
+     * 
+     * @param random
+     *            the generator for the dice
+     * @param nActions
+     *            the number of actions taken
+     */
+    void restoreProgress(GameRandom random, long nActions) {
+        this.random = random;
+        this.nActions = nActions;
+    }
+
+    /**
+     * creates the generator a deck gets when a game with the seed of this
+     * game is created (see {@link GameRandom#split()})
+     * 
+     * @param deckName
+     *            the name of a deck of the board
+     * @return the generator for the deck
+     */
+    GameRandom createDeckRandom(String deckName) {
+        GameRandom root = new GameRandom(seed);
+        root.split(); // the generator of the dice
+        for (String deck : new TreeSet<String>(board.getDeckNames())) {
+            GameRandom deckRandom = root.split();
+            if (deck.equals(deckName))
+                return deckRandom;
+        }
+        return root.split();
+    }
+
+    /**
+     * @return the seed from which all random decisions of the game are
+     *         derived
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * starts or stops recording the actions of the game
+     * 
+     * To be replayable, the log should be set right after the game was
+     * created and have the seed of the game.
+     * 
+     * @param actionLog
+     *            the log to append the actions to, <code>null</code> to stop
+     *            recording
+     */
+    public void setActionLog(ActionLog actionLog) {
+        this.actionLog = actionLog;
+    }
+
+    /**
+     * @return the record of the actions, <code>null</code> if they aren't
+     *         recorded
+     */
+    public ActionLog getActionLog() {
+        return actionLog;
+    }
+
+    /**
+     * counts an action, appends it to the {@link ActionLog} if the actions
+     * are recorded and notifies the {@link ActionListener}s
+     * 
+     * @param action
+     *            the action that has just been taken
+     */
+    void recordAction(TurnCommand action) {
+        long sequence = nActions++;
+        ActionLog log = actionLog;
+        if (log != null)
+            log.append(action);
+        if (actionListeners != null) {
+            ActionListener[] als = actionListeners.getListeners();
+            for (int i = 0; i < als.length; i++) {
+                als[i].actionTaken(this, action, sequence);
+            }
+        }
+    }
+
+    /**
+     * @return the number of actions of the turn handlers taken so far
+     */
+    public long getNActions() {
+        return nActions;
+    }
+
+    /**
+     * adds a listener that is notified of every action of the turn handlers
+     * 
+     * @param al
+     *            the listener
+     */
+    public void addActionListener(ActionListener al) {
+        if (actionListeners == null)
+            actionListeners = new ListenerList<ActionListener>(
+                    ActionListener.class);
+        actionListeners.add(al);
+    }
+
+    /**
+     * removes a listener for the actions
+     * 
+     * @param al
+     *            the listener
+     */
+    public void removeActionListener(ActionListener al) {
+        if (actionListeners != null)
+            actionListeners.remove(al);
+    }
+
+    /**
+     * lets the {@link TurnCommand}s submitted to this game be executed
+     * somewhere else, e.g. by the server of a lockstep game, which sends them
+     * back in the order they are to be executed
+     * 
+     * @param actionForwarder
+     *            the receiver of the actions, <code>null</code> to execute
+     *            them here
+     */
+    public void setActionForwarder(ActionForwarder actionForwarder) {
+        this.actionForwarder = actionForwarder;
+    }
+
     void nextTurn() {
         int oldTurn = turn;
 
@@ -528,18 +951,29 @@ public class Game implements PlayingPieceListener, PlayerListener,
     @Override
     public void updatedPosition(PlayingPiece piece, int position,
             int oldPosition) {
-        int pieceIndex = 0;
+        int pieceIndex = -1;
         for (int i = getNPlayers() - 1; i >= 0; i--) {
             if (getPiece(i) == piece) {
                 pieceIndex = i;
                 break;
             }
         }
+        if (pieceIndex == -1)
+            return;
+        updateStateHash(StateHash.key(StateHash.POSITION, pieceIndex,
+                oldPosition), StateHash.key(StateHash.POSITION, pieceIndex,
+                position));
         firePlayingPieceMoved(pieceIndex, oldPosition);
     }
 
     @Override
     public void wealthChanged(Player sender, long oldWealth, long newWealth) {
+        int playerIndex = getPlayerIndex(sender);
+        if (playerIndex != -1) {
+            updateStateHash(StateHash.key(StateHash.WEALTH, playerIndex,
+                    oldWealth), StateHash.key(StateHash.WEALTH, playerIndex,
+                    newWealth));
+        }
         fireWealthChanged(sender, oldWealth);
     }
 
@@ -550,22 +984,48 @@ public class Game implements PlayingPieceListener, PlayerListener,
 
     @Override
     public void jailStateChanged(Player sender, int oldRounds) {
+        int playerIndex = getPlayerIndex(sender);
+        if (playerIndex != -1) {
+            updateStateHash(StateHash.key(StateHash.JAIL, playerIndex,
+                    oldRounds), StateHash.key(StateHash.JAIL, playerIndex,
+                    sender.getInJailRounds()));
+        }
         firePlayerJailStateChanged(sender, oldRounds);
     }
 
     @Override
     public void addedPropertyPossession(Player sender, BuyableField property) {
+        int playerIndex = getPlayerIndex(sender);
+        int fieldIndex = board.getFieldIndex(property);
+        if (playerIndex != -1 && fieldIndex != -1) {
+            getOwnershipIndex().add(playerIndex, fieldIndex,
+                    houseRegister.getHouseCount(fieldIndex));
+        }
+        if (playerIndex != -1) {
+            updateStateHash(0, StateHash.key(StateHash.POSSESSION,
+                    playerIndex, fieldIndex));
+        }
         firePlayerObtained(sender, property);
     }
 
     @Override
     public void addedCardPossession(Player sender, KeepableCard card) {
+        int playerIndex = getPlayerIndex(sender);
+        if (playerIndex != -1) {
+            updateStateHash(0, StateHash.key(StateHash.CARD, playerIndex,
+                    card.createHash()));
+        }
         firePlayerKeeps(sender, card);
     }
 
     @Override
     public void houseNumberChanged(HouseRegister sender, int position,
             int oldNumber) {
+        getOwnershipIndex().houseNumberChanged(position, oldNumber,
+                sender.getHouseCount(position));
+        updateStateHash(StateHash.key(StateHash.HOUSES, position, oldNumber),
+                StateHash.key(StateHash.HOUSES, position,
+                        sender.getHouseCount(position)));
         fireHouseNumberChanged(position, oldNumber);
     }
 
@@ -578,9 +1038,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the old position of the piece on the board
      */
     protected void firePlayingPieceMoved(int playerIndex, int oldPosition) {
-        for (GameListener gl : gameListeners) {
-            gl.playingPieceMoved(this, playerIndex, oldPosition);
+        long start = PIECE_MOVED_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].playingPieceMoved(this, playerIndex, oldPosition);
         }
+        PIECE_MOVED_EVENTS.stop(start);
     }
 
     /**
@@ -592,9 +1057,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            his wealth before the event
      */
     protected void fireWealthChanged(Player player, long wealthBefore) {
-        for (GameListener gl : gameListeners) {
-            gl.playerWealthChanged(this, player, wealthBefore);
+        long start = WEALTH_CHANGED_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].playerWealthChanged(this, player, wealthBefore);
         }
+        WEALTH_CHANGED_EVENTS.stop(start);
     }
 
     /**
@@ -604,9 +1074,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the insolvent player
      */
     protected void firePlayerWentBankrupt(Player player) {
-        for (GameListener gl : gameListeners) {
-            gl.playerWentBankrupt(this, player);
+        long start = BANKRUPT_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].playerWentBankrupt(this, player);
         }
+        BANKRUPT_EVENTS.stop(start);
     }
 
     /**
@@ -618,9 +1093,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the old jail state
      */
     protected void firePlayerJailStateChanged(Player player, int jailStateBefore) {
-        for (GameListener gl : gameListeners) {
-            gl.playersJailStateChanged(this, player, jailStateBefore);
+        long start = JAIL_STATE_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].playersJailStateChanged(this, player, jailStateBefore);
         }
+        JAIL_STATE_EVENTS.stop(start);
     }
 
     /**
@@ -632,9 +1112,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the field he bought
      */
     protected void firePlayerObtained(Player player, BuyableField field) {
-        for (GameListener gl : gameListeners) {
-            gl.playerObtained(this, player, field);
+        long start = OBTAINED_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].playerObtained(this, player, field);
         }
+        OBTAINED_EVENTS.stop(start);
     }
 
     /**
@@ -646,9 +1131,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the card he can keep
      */
     protected void firePlayerKeeps(Player player, KeepableCard card) {
-        for (GameListener gl : gameListeners) {
-            gl.playerKeepsCard(this, player, card);
+        long start = KEEPS_CARD_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].playerKeepsCard(this, player, card);
         }
+        KEEPS_CARD_EVENTS.stop(start);
     }
 
     /**
@@ -660,9 +1150,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the number of houses that were there before
      */
     protected void fireHouseNumberChanged(int position, int oldNumber) {
-        for (GameListener gl : gameListeners) {
-            gl.houseNumberChanged(this, position, oldNumber);
+        long start = HOUSES_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].houseNumberChanged(this, position, oldNumber);
         }
+        HOUSES_EVENTS.stop(start);
     }
 
     /**
@@ -672,9 +1167,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the index of the player that finished his turn
      */
     protected void firePlayerEndedTurn(int playerIndex) {
-        for (GameListener gl : gameListeners) {
-            gl.playerEndedTurn(this, playerIndex);
+        long start = ENDED_TURN_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].playerEndedTurn(this, playerIndex);
         }
+        ENDED_TURN_EVENTS.stop(start);
     }
 
     /**
@@ -686,9 +1186,14 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the {@link Card} that was drawn
      */
     protected void fireCardDrawn(String deckName, Card c) {
-        for (GameListener gl : gameListeners) {
-            gl.cardDrawn(this, deckName, c);
+        long start = CARD_DRAWN_EVENTS.start();
+        GameListener[] gls = gameListeners.getListeners();
+        GameListener suppressed = gameListeners.getSuppressed();
+        for (int i = 0; i < gls.length; i++) {
+            if (gls[i] != suppressed)
+                gls[i].cardDrawn(this, deckName, c);
         }
+        CARD_DRAWN_EVENTS.stop(start);
     }
 
     /**
@@ -699,7 +1204,7 @@ public class Game implements PlayingPieceListener, PlayerListener,
      */
     public void addGameListener(GameListener gl) {
         if (gameListeners == null)
-            gameListeners = new ArrayList<>();
+            gameListeners = new ListenerList<GameListener>(GameListener.class);
         gameListeners.add(gl);
     }
 
@@ -710,61 +1215,344 @@ public class Game implements PlayingPieceListener, PlayerListener,
      *            the listener
      */
     public void removeGameListener(GameListener gl) {
+        if (gameListeners != null)
+            gameListeners.remove(gl);
+    }
+
+    /**
+     * stops sending game events to one listener until
+     * {@link #resumeEvents(GameListener)} is called, e.g. while a network
+     * connection applies an update it has received
+     * 
+     * The calls can be nested; every call must be followed by a call of
+     * {@link #resumeEvents(GameListener)} with its return value, best in a
+     * <code>finally</code> block.
+     * 
+     * @param gl
+     *            the listener that shouldn't get any events
+     * @return the listener that was suppressed before
+     */
+    public GameListener suppressEvents(GameListener gl) {
         if (gameListeners == null)
-            gameListeners = new ArrayList<>();
-        gameListeners.remove(gl);
+            gameListeners = new ListenerList<GameListener>(GameListener.class);
+        return gameListeners.suppress(gl);
+    }
+
+    /**
+     * ends the suppression started by {@link #suppressEvents(GameListener)}
+     * 
+     * @param previous
+     *            the value returned by {@link #suppressEvents(GameListener)}
+     */
+    public void resumeEvents(GameListener previous) {
+        if (gameListeners != null)
+            gameListeners.resume(previous);
+    }
+
+    /**
+     * adds a listener for the task changes of the current turn
+     * 
+     * @param ttl
+     *            the listener
+     */
+    public void addTurnTaskListener(TurnTaskListener ttl) {
+        if (turnTaskListeners == null)
+            turnTaskListeners = new ListenerList<TurnTaskListener>(
+                    TurnTaskListener.class);
+        turnTaskListeners.add(ttl);
+    }
+
+    /**
+     * removes a listener for the task changes of the current turn
+     * 
+     * @param ttl
+     *            the listener
+     */
+    public void removeTurnTaskListener(TurnTaskListener ttl) {
+        if (turnTaskListeners != null)
+            turnTaskListeners.remove(ttl);
+    }
+
+    /**
+     * begins a batch of changes that belong together, e.g. everything that
+     * happens during one action of a turn
+     * 
+     * Batches can be nested; the {@link BatchListener}s are only notified
+     * when the outermost batch ends. Every call must be followed by a call of
+     * {@link #endBatch()}, best in a <code>finally</code> block.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * ends a batch begun by {@link #beginBatch()}
+     */
+    public void endBatch() {
+        if (batchDepth > 0 && --batchDepth == 0)
+            fireBatchEnded();
+    }
+
+    /**
+     * @return <code>true</code> if the game is in the middle of a batch of
+     *         changes
+     */
+    public boolean isInBatch() {
+        return batchDepth > 0;
+    }
+
+    /**
+     * adds a listener that is notified when a batch of changes has ended
+     * 
+     * @param bl
+     *            the listener
+     */
+    public void addBatchListener(BatchListener bl) {
+        if (batchListeners == null)
+            batchListeners = new ListenerList<BatchListener>(
+                    BatchListener.class);
+        batchListeners.add(bl);
+    }
+
+    /**
+     * removes a listener for the ends of batches
+     * 
+     * @param bl
+     *            the listener
+     */
+    public void removeBatchListener(BatchListener bl) {
+        if (batchListeners != null)
+            batchListeners.remove(bl);
+    }
+
+    /**
+     * sends an event that the outermost batch has ended
+     */
+    private void fireBatchEnded() {
+        if (batchListeners == null)
+            return;
+        long start = BATCH_ENDED_EVENTS.start();
+        BatchListener[] bls = batchListeners.getListeners();
+        for (int i = 0; i < bls.length; i++) {
+            bls[i].batchEnded(this);
+        }
+        BATCH_ENDED_EVENTS.stop(start);
+    }
+
+    /**
+     * sends an event that the next task of the current turn has changed
+     * 
+     * @param sender
+     *            the turn handler of the current turn
+     * @param oldTask
+     *            the task before the change
+     */
+    void fireTurnTaskChanged(TurnHandler sender, TurnTask oldTask) {
+        if (turnTaskListeners == null)
+            return;
+        long start = TURN_TASK_EVENTS.start();
+        TurnTaskListener[] ttls = turnTaskListeners.getListeners();
+        for (int i = 0; i < ttls.length; i++) {
+            ttls[i].turnTaskChanged(sender, oldTask);
+        }
+        TURN_TASK_EVENTS.stop(start);
     }
 
     /**
      * assigns another game value to this game
      * 
      * This method copies all data from the other game into this one, with the
-     * only exception being the game listeners
+     * only exception being the game listeners. The turn task listeners are
+     * told about the new task if it differs from the old one.
      * 
      * @param game
      *            the game to copy from
      */
     public void assignGame(Game game) {
+        TurnTask oldTask = turnHandler != null ? turnHandler.getNextTask()
+                : null;
+        int oldTurn = this.turn;
         this.board = game.board;
         this.cardDecks = game.cardDecks;
         this.houseRegister = game.houseRegister;
         this.houseRegister.setBoard(getBoard());
         this.players = game.players;
+        this.seed = game.seed;
+        this.nActions = game.nActions;
         this.random = game.random;
         this.turn = game.turn;
         this.turnHandler = game.turnHandler;
-        this.turnHandler.setGame(this);
+        if (turnHandler != null)
+            turnHandler.setGame(this);
+        this.ownershipIndex = OwnershipIndex.create(this, houseRegister);
+        this.stateHashValid = false;
 
         if (gameListeners == null)
-            gameListeners = new ArrayList<>();
+            gameListeners = new ListenerList<GameListener>(GameListener.class);
 
         addListeners();
+
+        if (turnHandler != null
+                && (turn != oldTurn || turnHandler.getNextTask() != oldTask))
+            fireTurnTaskChanged(turnHandler, oldTask);
     }
 
+    /**
+     * returns the hash of the whole game
+     * 
+     * The mutable state of the players, houses and decks is hashed
+     * incrementally whenever it changes (see {@link StateHash}), so this
+     * method only has to combine that value with the cached hash of the board,
+     * the turn and the names of the players. It doesn't include the random
+     * number generator, whose identity hash code differs between virtual
+     * machines.
+     * 
+     * @see ch.winfor.monopoly.game.Hashable#createHash()
+     */
     @Override
     public long createHash() {
-        final long prime = 435272656523449L;
-
+        long start = CREATE_HASH.start();
         long hash = board.createHash();
-        hash += random.hashCode();
-        hash *= prime;
-        hash += turn;
-        hash *= prime;
+        hash += StateHash.key(StateHash.TURN, 0, turn);
+        hash += getStateHash();
         for (int i = 0; i < players.length; i++) {
-            hash += players[i].createHash();
-            hash *= prime;
+            long identity = players[i].getName().hashCode() * 31L
+                    + players[i].getPiece().getColor().getRGB();
+            hash += StateHash.key(StateHash.IDENTITY, i, identity);
         }
 
         if (turnHandler != null)
-            hash += turnHandler.createHash();
-        hash *= prime;
-        hash += houseRegister.createHash();
-        for (String deck : board.getDeckNames()) {
-            ShuffledCardDeck scd = cardDecks.get(deck);
-            if (scd != null)
-                hash += scd.createHash() * prime;
+            hash += StateHash.mix(turnHandler.createHash());
+        CREATE_HASH.stop(start);
+        return hash;
+    }
+
+    /**
+     * @return the hash of the players, houses and decks, which is recalculated
+     *         if it isn't up to date
+     */
+    private long getStateHash() {
+        if (!stateHashValid) {
+            stateHash = calculateStateHash();
+            stateHashValid = true;
         }
+        return stateHash;
+    }
 
+    /**
+     * replaces the key of a feature in the state hash after it has changed
+     * 
+     * @param oldKey
+     *            the key of the old value (<code>0</code> if the feature is
+     *            new)
+     * @param newKey
+     *            the key of the new value
+     */
+    private void updateStateHash(long oldKey, long newKey) {
+        if (stateHashValid)
+            stateHash += newKey - oldKey;
+    }
+
+    /**
+     * calculates the hash of the players, houses and decks from scratch
+     * 
+     * @return the hash value
+     */
+    private long calculateStateHash() {
+        long hash = 0;
+        for (int i = 0; i < players.length; i++) {
+            Player player = players[i];
+            hash += StateHash.key(StateHash.WEALTH, i, player.getWealth());
+            hash += StateHash.key(StateHash.POSITION, i, player.getPiece()
+                    .getPosition());
+            hash += StateHash.key(StateHash.JAIL, i, player.getInJailRounds());
+            for (int j = 0; j < player.getNPossessions(); j++) {
+                hash += StateHash.key(StateHash.POSSESSION, i,
+                        board.getFieldIndex(player.getPossession(j)));
+            }
+            for (int j = 0; j < player.getNCards(); j++) {
+                hash += StateHash.key(StateHash.CARD, i, player.getCard(j)
+                        .createHash());
+            }
+        }
+
+        for (int i = 0; i < board.getAbsoluteLength(); i++) {
+            hash += StateHash.key(StateHash.HOUSES, i,
+                    houseRegister.getHouseCount(i));
+        }
+
+        for (String deck : cardDecks.keySet()) {
+            hash += deckKey(deck, cardDecks.get(deck));
+        }
         return hash;
     }
+
+    /**
+     * @param deckName
+     *            the name of the deck
+     * @param deck
+     *            the deck
+     * @return the key of the deck's current order in the state hash
+     */
+    private static long deckKey(String deckName, ShuffledCardDeck deck) {
+        return StateHash.key(StateHash.DECK, deckName.hashCode(),
+                deck.createHash());
+    }
+
+    /**
+     * interface for receiving the ends of batches of changes (see
+     * {@link Game#beginBatch()}), e.g. to send all the changes of one action
+     * at once
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static interface BatchListener extends EventListener {
+        /**
+         * invoked when the outermost batch has ended
+         * 
+         * @param sender
+         *            the game
+         */
+        public void batchEnded(Game sender);
+    }
+
+    /**
+     * interface for receiving the actions of the turn handlers, e.g. to send
+     * them to the other players of a lockstep game
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static interface ActionListener extends EventListener {
+        /**
+         * invoked when an action has been taken; actions that are not allowed
+         * or don't change the game are not reported
+         * 
+         * @param sender
+         *            the game
+         * @param action
+         *            the action
+         * @param sequence
+         *            the number of actions taken before this one
+         */
+        public void actionTaken(Game sender, TurnCommand action, long sequence);
+    }
+
+    /**
+     * receiver of the actions submitted to a game that are executed somewhere
+     * else (see {@link Game#setActionForwarder(ActionForwarder)})
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static interface ActionForwarder {
+        /**
+         * passes an action on; may be called on any thread
+         * 
+         * @param action
+         *            the action
+         */
+        public void forwardAction(TurnCommand action);
+    }
 }
@@ -0,0 +1,50 @@
+package ch.winfor.monopoly.game;
+
+import ch.winfor.monopoly.game.Card.KeepableCard;
+
+/**
+ * {@link GameListener} ignoring every event, so subclasses only need to
+ * override the methods of the events they are interested in
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public abstract class GameAdapter implements GameListener {
+    @Override
+    public void playingPieceMoved(Game sender, int pieceIndex, int oldPosition) {
+    }
+
+    @Override
+    public void playerEndedTurn(Game sender, int playerIndex) {
+    }
+
+    @Override
+    public void playerWealthChanged(Game sender, Player player,
+            long wealthBefore) {
+    }
+
+    @Override
+    public void playerWentBankrupt(Game sender, Player player) {
+    }
+
+    @Override
+    public void playersJailStateChanged(Game sender, Player player,
+            int jailStateBefore) {
+    }
+
+    @Override
+    public void playerObtained(Game sender, Player player, BuyableField field) {
+    }
+
+    @Override
+    public void playerKeepsCard(Game sender, Player player, KeepableCard card) {
+    }
+
+    @Override
+    public void houseNumberChanged(Game sender, int position, int oldNumber) {
+    }
+
+    @Override
+    public void cardDrawn(Game sender, String deckName, Card c) {
+    }
+}
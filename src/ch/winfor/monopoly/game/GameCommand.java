@@ -0,0 +1,22 @@
+package ch.winfor.monopoly.game;
+
+/**
+ * a change to a game, e.g. an action of a player or an update received over
+ * the network
+ * 
+ * Commands are passed to {@link Game#submit(GameCommand)}. If the game has a
+ * {@link GameThread}, they are queued and executed one after the other on
+ * that thread, which is then the only one modifying the game.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public interface GameCommand {
+    /**
+     * applies the command
+     * 
+     * @param game
+     *            the game to change
+     */
+    public void execute(Game game);
+}
@@ -0,0 +1,490 @@
+package ch.winfor.monopoly.game;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+import ch.winfor.monopoly.game.TurnCommand.Action;
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+
+/**
+ * write-ahead journal of a game, from which the game can be rebuilt after the
+ * process has crashed
+ * 
+ * The journal keeps two files in its own directory: a snapshot written by
+ * {@link SavedGame} and a log to which every action of the game (see
+ * {@link Game.ActionListener}) is appended as a fixed-size record with a
+ * checksum. The records of one batch of the game (see
+ * {@link Game#beginBatch()}) are written together with a single write (group
+ * commit), and the log is forced to the disk according to the
+ * {@link SyncPolicy}. Every {@link #setSnapshotInterval(int)} actions, and
+ * whenever the game was changed by something other than an action, a new
+ * snapshot is written and the log is emptied.
+ * 
+ * {@link #recover(File, Board, SyncPolicy)} loads the snapshot and executes
+ * the actions of the log after it. A record that was only partly written when
+ * the process died fails its checksum and ends the replay.
+ * 
+ * The journal must be used on the thread changing the game.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class GameJournal implements Game.ActionListener, Game.BatchListener {
+    /** the events of the game engine */
+    private static final EventLog LOG = Log.get(Log.ENGINE);
+
+    /** version of the format of the log */
+    public static final int VERSION = 1;
+
+    /** default number of actions after which a new snapshot is written */
+    public static final int DEFAULT_SNAPSHOT_INTERVAL = 512;
+
+    /** default milliseconds between two syncs with {@link SyncPolicy#PERIODIC} */
+    public static final long DEFAULT_SYNC_INTERVAL = 1000;
+
+    /** the name of the snapshot file */
+    static final String SNAPSHOT_FILE = "snapshot.sav";
+
+    /** the name of the log file */
+    static final String LOG_FILE = "journal.log";
+
+    /** the first bytes of the log */
+    private static final byte[] MAGIC = { 'M', 'N', 'J', VERSION };
+
+    /** size of the header: magic and the number of actions of the snapshot */
+    private static final int HEADER_SIZE = MAGIC.length + 8;
+
+    /**
+     * size of a record: sequence, player, action, field and the CRC-32 of the
+     * bytes before
+     */
+    private static final int RECORD_SIZE = 8 + 4 + 1 + 4 + 4;
+
+    /**
+     * when the log is forced to the disk
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static enum SyncPolicy {
+        /**
+         * after every batch; an action is on the disk before the next one is
+         * executed
+         */
+        EVERY_BATCH,
+
+        /**
+         * at the end of a batch if the last sync is longer ago than the sync
+         * interval; a crash of the machine loses at most this time
+         */
+        PERIODIC,
+
+        /**
+         * never; the log survives crashes of the process, but not of the
+         * machine
+         */
+        NEVER
+    }
+
+    /** the directory of the files */
+    private final File directory;
+
+    /** the game */
+    private final Game game;
+
+    /** when the log is forced to the disk */
+    private final SyncPolicy policy;
+
+    /** the log */
+    private FileChannel log;
+
+    /** the records of the current batch that haven't been written */
+    private ByteBuffer pending;
+
+    /** computes the checksums of the records */
+    private final CRC32 crc;
+
+    /** number of actions after which a new snapshot is written */
+    private int snapshotInterval;
+
+    /** milliseconds between two syncs with {@link SyncPolicy#PERIODIC} */
+    private long syncInterval;
+
+    /** the number of actions of the game at the last snapshot */
+    private long snapshotSequence;
+
+    /** the number of actions of the game at the end of the last batch */
+    private long batchSequence;
+
+    /** the hash of the game at the end of the last batch */
+    private long batchHash;
+
+    /** <code>true</code> if records were written since the last sync */
+    private boolean unsynced;
+
+    /** the time of the last sync in milliseconds */
+    private long lastSync;
+
+    /**
+     * @param directory
+     *            the directory of the files
+     * @param game
+     *            the game
+     * @param policy
+     *            when the log is forced to the disk
+     */
+    private GameJournal(File directory, Game game, SyncPolicy policy) {
+        this.directory = directory;
+        this.game = game;
+        this.policy = policy;
+        pending = ByteBuffer.allocate(RECORD_SIZE * 16);
+        crc = new CRC32();
+        snapshotInterval = DEFAULT_SNAPSHOT_INTERVAL;
+        syncInterval = DEFAULT_SYNC_INTERVAL;
+    }
+
+    /**
+     * starts a new journal for a game, replacing any journal in the directory
+     * 
+     * @param directory
+     *            the directory for the files of the journal; it is created if
+     *            it doesn't exist
+     * @param game
+     *            the game
+     * @param policy
+     *            when the log is forced to the disk
+     * @return the journal, which records the game from now on
+     * @throws IOException
+     *             if the files can't be written
+     */
+    public static GameJournal create(File directory, Game game,
+            SyncPolicy policy) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("can't create " + directory);
+        GameJournal journal = new GameJournal(directory, game, policy);
+        journal.openLog();
+        journal.snapshot();
+        journal.attach();
+        return journal;
+    }
+
+    /**
+     * rebuilds a game from its journal and continues recording it
+     * 
+     * @param directory
+     *            the directory of the journal
+     * @param board
+     *            the board the game is played on
+     * @param policy
+     *            when the log is forced to the disk
+     * @return the journal; the game is returned by {@link #getGame()}
+     * @throws IOException
+     *             if the snapshot can't be loaded or the files can't be
+     *             written
+     */
+    public static GameJournal recover(File directory, Board board,
+            SyncPolicy policy) throws IOException {
+        Game game = SavedGame.load(new File(directory, SNAPSHOT_FILE), board);
+        GameJournal journal = new GameJournal(directory, game, policy);
+        journal.openLog();
+        journal.replay();
+        // the replayed actions are moved into a new snapshot, which also
+        // drops a damaged end of the log
+        journal.snapshot();
+        journal.attach();
+        return journal;
+    }
+
+    /**
+     * @param directory
+     *            a directory
+     * @return <code>true</code> if the directory contains a journal that can
+     *         be recovered
+     */
+    public static boolean exists(File directory) {
+        return new File(directory, SNAPSHOT_FILE).isFile();
+    }
+
+    /**
+     * @return the recorded game
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * @return the directory of the files
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @param snapshotInterval
+     *            the number of actions after which a new snapshot is written
+     *            and the log is emptied
+     */
+    public void setSnapshotInterval(int snapshotInterval) {
+        this.snapshotInterval = Math.max(1, snapshotInterval);
+    }
+
+    /**
+     * @param syncInterval
+     *            the milliseconds between two syncs with
+     *            {@link SyncPolicy#PERIODIC}
+     */
+    public void setSyncInterval(long syncInterval) {
+        this.syncInterval = syncInterval;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.game.Game.ActionListener#actionTaken(ch.winfor.monopoly
+     * .game.Game, ch.winfor.monopoly.game.TurnCommand, long)
+     */
+    @Override
+    public void actionTaken(Game sender, TurnCommand action, long sequence) {
+        if (pending.remaining() < RECORD_SIZE) {
+            ByteBuffer larger = ByteBuffer.allocate(pending.capacity() * 2);
+            pending.flip();
+            larger.put(pending);
+            pending = larger;
+        }
+        int start = pending.position();
+        pending.putLong(sequence);
+        pending.putInt(action.getPlayer());
+        pending.put((byte) action.getAction().ordinal());
+        pending.putInt(action.getField());
+        crc.reset();
+        crc.update(pending.array(), start, RECORD_SIZE - 4);
+        pending.putInt((int) crc.getValue());
+    }
+
+    /**
+     * writes the records of the batch and syncs or takes a snapshot if it is
+     * due
+     * 
+     * @see ch.winfor.monopoly.game.Game.BatchListener#batchEnded(ch.winfor.monopoly.game.Game)
+     */
+    @Override
+    public void batchEnded(Game sender) {
+        try {
+            long sequence = game.getNActions();
+            long hash = game.createHash();
+            if (sequence == batchSequence && hash != batchHash) {
+                // changed by something that isn't in the log
+                snapshot();
+            } else if (sequence - snapshotSequence >= snapshotInterval) {
+                snapshot();
+            } else {
+                writePending();
+                if (policy == SyncPolicy.EVERY_BATCH
+                        || (policy == SyncPolicy.PERIODIC && System
+                                .currentTimeMillis() - lastSync >= syncInterval))
+                    sync();
+            }
+        } catch (IOException e) {
+            LOG.error("journal.notWritten", "directory", directory, "error", e);
+        }
+    }
+
+    /**
+     * writes a snapshot of the game and empties the log
+     * 
+     * @throws IOException
+     *             if the files can't be written
+     */
+    public void snapshot() throws IOException {
+        boolean force = policy != SyncPolicy.NEVER;
+        SavedGame.save(game, new File(directory, SNAPSHOT_FILE), force);
+        if (force)
+            syncDirectory();
+
+        pending.clear();
+        snapshotSequence = game.getNActions();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.putLong(snapshotSequence);
+        header.flip();
+        log.truncate(0);
+        log.position(0);
+        writeFully(header);
+        if (force)
+            log.force(false);
+        unsynced = false;
+        lastSync = System.currentTimeMillis();
+        batchSequence = snapshotSequence;
+        batchHash = game.createHash();
+    }
+
+    /**
+     * writes the pending records and forces the log to the disk
+     * 
+     * @throws IOException
+     *             if the log can't be written
+     */
+    public void sync() throws IOException {
+        writePending();
+        if (unsynced)
+            log.force(false);
+        unsynced = false;
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * stops recording, syncs the log (unless the policy is
+     * {@link SyncPolicy#NEVER}) and closes it; the journal can be recovered
+     * later
+     * 
+     * @throws IOException
+     *             if the log can't be written
+     */
+    public void close() throws IOException {
+        detach();
+        try {
+            if (policy != SyncPolicy.NEVER)
+                sync();
+            else
+                writePending();
+        } finally {
+            log.close();
+        }
+    }
+
+    /**
+     * stops recording and deletes the files of the journal, e.g. because the
+     * game is over
+     * 
+     * @throws IOException
+     *             if the log can't be closed
+     */
+    public void delete() throws IOException {
+        detach();
+        log.close();
+        new File(directory, LOG_FILE).delete();
+        new File(directory, SNAPSHOT_FILE).delete();
+        directory.delete();
+    }
+
+    /**
+     * opens the log file
+     * 
+     * @throws IOException
+     *             if it can't be opened
+     */
+    private void openLog() throws IOException {
+        log = FileChannel.open(new File(directory, LOG_FILE).toPath(),
+                StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+    }
+
+    /**
+     * executes the actions of the log that came after the snapshot
+     * 
+     * @throws IOException
+     *             if the log can't be read
+     */
+    private void replay() throws IOException {
+        long size = log.size();
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+            return;
+        ByteBuffer content = ByteBuffer.allocate((int) size);
+        log.position(0);
+        while (content.hasRemaining() && log.read(content) != -1)
+            ;
+        content.flip();
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (content.get() != MAGIC[i])
+                return;
+        }
+        content.getLong(); // the snapshot may be newer than the log
+
+        Action[] actions = Action.values();
+        while (content.remaining() >= RECORD_SIZE) {
+            int start = content.position();
+            long sequence = content.getLong();
+            int player = content.getInt();
+            int action = content.get();
+            int field = content.getInt();
+            crc.reset();
+            crc.update(content.array(), start, RECORD_SIZE - 4);
+            if (content.getInt() != (int) crc.getValue() || action < 0
+                    || action >= actions.length)
+                break; // written partly
+            if (sequence < game.getNActions())
+                continue; // already in the snapshot
+            if (sequence != game.getNActions())
+                break;
+            new TurnCommand(player, actions[action], field).execute(game);
+        }
+    }
+
+    /**
+     * writes the pending records to the log
+     * 
+     * @throws IOException
+     *             if the log can't be written
+     */
+    private void writePending() throws IOException {
+        if (pending.position() == 0)
+            return;
+        pending.flip();
+        writeFully(pending);
+        pending.clear();
+        unsynced = true;
+        batchSequence = game.getNActions();
+        batchHash = game.createHash();
+    }
+
+    /**
+     * @param buffer
+     *            the bytes to append to the log
+     * @throws IOException
+     *             if the log can't be written
+     */
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            log.write(buffer);
+    }
+
+    /**
+     * forces the directory to the disk, so the renamed snapshot survives a
+     * crash of the machine; not possible on every platform
+     */
+    private void syncDirectory() {
+        try {
+            FileChannel dir = FileChannel.open(directory.toPath(),
+                    StandardOpenOption.READ);
+            try {
+                dir.force(true);
+            } finally {
+                dir.close();
+            }
+        } catch (IOException e) {
+            // directories can't be opened on some platforms
+        }
+    }
+
+    /**
+     * starts recording the game
+     */
+    private void attach() {
+        game.addActionListener(this);
+        game.addBatchListener(this);
+    }
+
+    /**
+     * stops recording the game
+     */
+    private void detach() {
+        game.removeActionListener(this);
+        game.removeBatchListener(this);
+    }
+}
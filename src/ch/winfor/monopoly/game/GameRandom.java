@@ -0,0 +1,153 @@
+package ch.winfor.monopoly.game;
+
+import java.util.Random;
+
+/**
+ * seeded, splittable pseudo-random number generator of a game
+ * 
+ * Every random decision of a game (the dice, the order of the card decks, the
+ * colors of the pieces) is taken from a generator split off the one created
+ * from the seed of the game. A game created with the same seed and fed the
+ * same actions (see {@link ActionLog}) therefore develops exactly the same on
+ * every machine.
+ * 
+ * The algorithm is SplitMix64 (the one of
+ * <code>java.util.SplittableRandom</code>, which isn't serializable and can't
+ * be used where a {@link Random} is expected). The generator is not thread
+ * safe; it belongs to the game thread like the rest of the game.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class GameRandom extends Random {
+    /** */
+    private static final long serialVersionUID = -6305470722916374287L;
+
+    /** the increment of a generator created from a seed */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /** the current state */
+    private long state;
+
+    /** the increment of the state (always odd) */
+    private long gamma;
+
+    /**
+     * creates a generator
+     * 
+     * @param seed
+     *            the seed
+     */
+    public GameRandom(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    /**
+     * creates a generator in a given state (see {@link #getState()})
+     * 
+     * @param seed
+     *            the initial state
+     * @param gamma
+     *            the increment of the state
+     */
+    GameRandom(long seed, long gamma) {
+        super(seed);
+        this.state = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * @return a seed for a game that doesn't have to be reproducible
+     */
+    public static long createSeed() {
+        return mix64(System.nanoTime() ^ System.currentTimeMillis() << 20);
+    }
+
+    /**
+     * creates an independent generator and advances this one
+     * 
+     * The new generator depends only on the state of this one, so splitting
+     * in the same order always gives the same generators.
+     * 
+     * @return the new generator
+     */
+    public GameRandom split() {
+        return new GameRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * resets the state; called by the constructor of {@link Random}
+     * 
+     * @see java.util.Random#setSeed(long)
+     */
+    @Override
+    public void setSeed(long seed) {
+        state = seed;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Random#next(int)
+     */
+    @Override
+    protected int next(int bits) {
+        return (int) (mix64(nextSeed()) >>> (64 - bits));
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.util.Random#nextLong()
+     */
+    @Override
+    public long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    /**
+     * @return the current state, from which the generator can be recreated
+     *         together with {@link #getGamma()}
+     */
+    long getState() {
+        return state;
+    }
+
+    /**
+     * @return the increment of the state
+     */
+    long getGamma() {
+        return gamma;
+    }
+
+    /**
+     * @return the next state
+     */
+    private long nextSeed() {
+        return state += gamma;
+    }
+
+    /**
+     * @param z
+     *            a state
+     * @return the 64 bit output of the state
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param z
+     *            a state
+     * @return an increment for a split generator
+     */
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
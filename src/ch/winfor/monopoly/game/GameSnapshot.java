@@ -0,0 +1,757 @@
+package ch.winfor.monopoly.game;
+
+import java.awt.Color;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import ch.winfor.monopoly.game.Card.KeepableCard;
+import ch.winfor.monopoly.game.TurnHandler.TurnTask;
+
+/**
+ * immutable copy of the mutable state of a {@link Game}
+ * 
+ * The snapshot doesn't contain the {@link Board}, only its hash; fields and
+ * cards are referenced by their index. A snapshot can be written in a compact
+ * binary format, either completely or as the difference to an older snapshot
+ * of the same game.
+ * 
+ * Cards are numbered by going through the decks of the board in alphabetical
+ * order of their names.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class GameSnapshot implements Serializable {
+    /** */
+    private static final long serialVersionUID = 3514052719412686270L;
+
+    /** bit in the delta flags indicating that the houses changed */
+    private static final int DELTA_HOUSES = 1;
+
+    /** bit in the delta flags indicating that the turn handler changed */
+    private static final int DELTA_TURN_HANDLER = 2;
+
+    /** the hash of the board */
+    private final long boardHash;
+
+    /** whose turn it is */
+    private final int turn;
+
+    /** the state of every player */
+    private final PlayerState[] players;
+
+    /** the number of houses on every field */
+    private final int[] houses;
+
+    /** the names of the decks in alphabetical order */
+    private final String[] deckNames;
+
+    /** the card numbers of every deck in the order they will be drawn */
+    private final int[][] deckOrders;
+
+    /** the number of cards drawn since every deck was shuffled */
+    private final int[] deckDrawn;
+
+    /** the state of the turn handler, <code>null</code> if there is none */
+    private final TurnState turnState;
+
+    /**
+     * @param boardHash
+     *            the hash of the board
+     * @param turn
+     *            whose turn it is
+     * @param players
+     *            the state of every player
+     * @param houses
+     *            the number of houses on every field
+     * @param deckNames
+     *            the names of the decks in alphabetical order
+     * @param deckOrders
+     *            the card numbers of every deck
+     * @param deckDrawn
+     *            the number of cards drawn since every deck was shuffled
+     * @param turnState
+     *            the state of the turn handler
+     */
+    private GameSnapshot(long boardHash, int turn, PlayerState[] players,
+            int[] houses, String[] deckNames, int[][] deckOrders,
+            int[] deckDrawn, TurnState turnState) {
+        this.boardHash = boardHash;
+        this.turn = turn;
+        this.players = players;
+        this.houses = houses;
+        this.deckNames = deckNames;
+        this.deckOrders = deckOrders;
+        this.deckDrawn = deckDrawn;
+        this.turnState = turnState;
+    }
+
+    /**
+     * copies the state of a game
+     * 
+     * @param game
+     *            the game
+     * @return the snapshot
+     */
+    public static GameSnapshot capture(Game game) {
+        Board board = game.getBoard();
+        String[] deckNames = sortedDeckNames(board);
+        IdentityHashMap<Card, Integer> cardNumbers = numberCards(board,
+                deckNames);
+
+        PlayerState[] players = new PlayerState[game.getNPlayers()];
+        for (int i = 0; i < players.length; i++) {
+            Player player = game.getPlayer(i);
+            int[] possessions = new int[player.getNPossessions()];
+            for (int j = 0; j < possessions.length; j++)
+                possessions[j] = board.getFieldIndex(player.getPossession(j));
+            int[] cards = new int[player.getNCards()];
+            for (int j = 0; j < cards.length; j++)
+                cards[j] = cardNumber(cardNumbers, player.getCard(j));
+            players[i] = new PlayerState(player.getName(), player.getPiece()
+                    .getColor().getRGB(), player.getWealth(), player
+                    .getPiece().getPosition(), player.getInJailRounds(),
+                    possessions, cards);
+        }
+
+        int[] houses = new int[board.getAbsoluteLength()];
+        for (int i = 0; i < houses.length; i++)
+            houses[i] = game.getHousesOn(i);
+
+        int[][] deckOrders = new int[deckNames.length][];
+        int[] deckDrawn = new int[deckNames.length];
+        for (int i = 0; i < deckNames.length; i++) {
+            ShuffledCardDeck deck = game.getCardDeck(deckNames[i]);
+            Card[] order = deck != null ? deck.getOrder() : new Card[0];
+            deckOrders[i] = new int[order.length];
+            for (int j = 0; j < order.length; j++)
+                deckOrders[i][j] = cardNumber(cardNumbers, order[j]);
+            deckDrawn[i] = deck != null ? deck.getDrawn() : 0;
+        }
+
+        TurnState turnState = null;
+        TurnHandler th = game.getCurrentTurnHandler();
+        if (th != null) {
+            int[] lastCast = th.getLastCast();
+            turnState = new TurnState(th.getTurn(), lastCast == null ? null
+                    : lastCast.clone(), cardNumber(cardNumbers,
+                    th.getDrawnCard()), th.getNextTask() == null ? -1 : th
+                    .getNextTask().ordinal());
+        }
+
+        return new GameSnapshot(board.createHash(), game.getTurn(), players,
+                houses, deckNames, deckOrders, deckDrawn, turnState);
+    }
+
+    /**
+     * replaces the state of a game by the state of this snapshot
+     * 
+     * The existing {@link Player} objects are reused if the number of players
+     * didn't change. No events are sent to the listeners of the game.
+     * 
+     * @param game
+     *            the game, which must be played on the board the snapshot was
+     *            taken from
+     * @throws IllegalArgumentException
+     *             if the game is played on another board
+     */
+    public void restore(Game game) {
+        Board board = game.getBoard();
+        if (board.createHash() != boardHash)
+            throw new IllegalArgumentException("snapshot of another board");
+        Card[] cards = listCards(board, deckNames);
+
+        Player[] newPlayers = game.getPlayers();
+        if (newPlayers.length != players.length) {
+            newPlayers = new Player[players.length];
+            for (int i = 0; i < newPlayers.length; i++)
+                newPlayers[i] = new Player(players[i].name);
+        }
+        for (int i = 0; i < players.length; i++) {
+            PlayerState ps = players[i];
+            Player player = newPlayers[i];
+            ArrayList<BuyableField> possessions = new ArrayList<BuyableField>();
+            for (int fieldIndex : ps.possessions)
+                possessions.add((BuyableField) board.getField(fieldIndex));
+            ArrayList<KeepableCard> kept = new ArrayList<KeepableCard>();
+            for (int cardNumber : ps.cards)
+                kept.add((KeepableCard) cards[cardNumber]);
+
+            player.setName(ps.name);
+            player.getPiece().setColor(new Color(ps.color, true));
+            player.getPiece().restorePosition(ps.position);
+            player.restore(ps.wealth, ps.jailRounds, possessions, kept);
+        }
+
+        HouseRegister houseRegister = game.getHouseRegister();
+        if (houseRegister.getLength() != houses.length)
+            houseRegister = new HouseRegister(board);
+        houseRegister.restore(houses);
+
+        HashMap<String, ShuffledCardDeck> decks = new HashMap<String, ShuffledCardDeck>();
+        for (int i = 0; i < deckNames.length; i++) {
+            ShuffledCardDeck deck = game.getCardDeck(deckNames[i]);
+            if (deck == null)
+                deck = new ShuffledCardDeck(board.getCardStack(deckNames[i]),
+                        game.createDeckRandom(deckNames[i]));
+            Card[] order = new Card[deckOrders[i].length];
+            for (int j = 0; j < order.length; j++)
+                order[j] = cards[deckOrders[i][j]];
+            deck.restore(order, deckDrawn[i]);
+            decks.put(deckNames[i], deck);
+        }
+
+        TurnHandler turnHandler = null;
+        if (turnState != null) {
+            turnHandler = new TurnHandler(game, turnState.turn,
+                    turnState.lastCast == null ? null
+                            : turnState.lastCast.clone(),
+                    turnState.drawnCard == -1 ? null
+                            : cards[turnState.drawnCard],
+                    turnState.nextTask == -1 ? null
+                            : TurnTask.values()[turnState.nextTask]);
+        }
+
+        game.restoreState(newPlayers, turn, houseRegister, decks, turnHandler);
+    }
+
+    /**
+     * @return the hash of the board the snapshot was taken from
+     */
+    public long getBoardHash() {
+        return boardHash;
+    }
+
+    /**
+     * @return the number of players
+     */
+    public int getNPlayers() {
+        return players.length;
+    }
+
+    /**
+     * @return the index of the player whose turn it is
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * @return the next task of the current turn; {@link TurnTask#CAST_DICE}
+     *         if the turn hasn't started yet
+     */
+    public TurnTask getNextTask() {
+        if (turnState == null || turnState.turn != turn
+                || turnState.nextTask == -1)
+            return TurnTask.CAST_DICE;
+        return TurnTask.values()[turnState.nextTask];
+    }
+
+    /**
+     * @param board
+     *            the board the snapshot was taken from
+     * @return the card drawn in the current turn, <code>null</code> if none
+     *         has been drawn
+     */
+    public Card getDrawnCard(Board board) {
+        if (turnState == null || turnState.turn != turn
+                || turnState.drawnCard == -1)
+            return null;
+        return listCards(board, deckNames)[turnState.drawnCard];
+    }
+
+    /**
+     * determines if the difference to another snapshot can be written with
+     * {@link #writeDelta(GameSnapshot, DataOutput)}
+     * 
+     * @param base
+     *            the older snapshot
+     * @return <code>true</code> if both snapshots are of the same board and
+     *         have the same players and decks
+     */
+    public boolean canDeltaFrom(GameSnapshot base) {
+        return base != null && base.boardHash == boardHash
+                && base.players.length == players.length
+                && players.length <= 64 && deckNames.length <= 32
+                && base.houses.length == houses.length
+                && Arrays.equals(base.deckNames, deckNames);
+    }
+
+    /**
+     * writes the whole snapshot
+     * 
+     * @param out
+     *            the output
+     * @throws IOException
+     *             if writing fails
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(boardHash);
+        out.writeInt(turn);
+        out.writeInt(players.length);
+        for (PlayerState ps : players)
+            ps.write(out);
+        out.writeInt(houses.length);
+        for (int h : houses)
+            out.writeByte(h);
+        out.writeInt(deckNames.length);
+        for (int i = 0; i < deckNames.length; i++) {
+            out.writeUTF(deckNames[i]);
+            writeDeck(out, i);
+        }
+        TurnState.write(turnState, out);
+    }
+
+    /**
+     * reads a snapshot written by {@link #write(DataOutput)}
+     * 
+     * The input must end with the snapshot (e.g. a frame received over the
+     * network), so the numbers of elements can be checked against the
+     * remaining bytes before arrays are allocated for them.
+     * 
+     * @param in
+     *            the input
+     * @return the snapshot
+     * @throws IOException
+     *             if reading fails or the snapshot is malformed
+     */
+    public static GameSnapshot read(DataInputStream in) throws IOException {
+        long boardHash = in.readLong();
+        int turn = in.readInt();
+        PlayerState[] players = new PlayerState[readCount(in, in.readInt(),
+                PlayerState.MIN_SIZE, "players")];
+        for (int i = 0; i < players.length; i++)
+            players[i] = PlayerState.read(in);
+        int[] houses = new int[readCount(in, in.readInt(), 1, "fields")];
+        for (int i = 0; i < houses.length; i++)
+            houses[i] = in.readUnsignedByte();
+        int nDecks = readCount(in, in.readInt(), 6, "decks");
+        String[] deckNames = new String[nDecks];
+        int[][] deckOrders = new int[nDecks][];
+        int[] deckDrawn = new int[nDecks];
+        for (int i = 0; i < nDecks; i++) {
+            deckNames[i] = in.readUTF();
+            deckOrders[i] = readDeckOrder(in);
+            deckDrawn[i] = in.readShort();
+        }
+        TurnState turnState = TurnState.read(in);
+        return new GameSnapshot(boardHash, turn, players, houses, deckNames,
+                deckOrders, deckDrawn, turnState);
+    }
+
+    /**
+     * writes only the parts of this snapshot that differ from an older one
+     * 
+     * @param base
+     *            the older snapshot, which the receiver must know
+     * @param out
+     *            the output
+     * @throws IOException
+     *             if writing fails
+     * @throws IllegalArgumentException
+     *             if {@link #canDeltaFrom(GameSnapshot)} is <code>false</code>
+     */
+    public void writeDelta(GameSnapshot base, DataOutput out)
+            throws IOException {
+        if (!canDeltaFrom(base))
+            throw new IllegalArgumentException("incompatible base snapshot");
+
+        long playerMask = 0;
+        for (int i = 0; i < players.length; i++) {
+            if (!players[i].equals(base.players[i]))
+                playerMask |= 1L << i;
+        }
+        int deckMask = 0;
+        for (int i = 0; i < deckNames.length; i++) {
+            if (deckDrawn[i] != base.deckDrawn[i]
+                    || !Arrays.equals(deckOrders[i], base.deckOrders[i]))
+                deckMask |= 1 << i;
+        }
+        int nChangedHouses = 0;
+        for (int i = 0; i < houses.length; i++) {
+            if (houses[i] != base.houses[i])
+                nChangedHouses++;
+        }
+        int flags = 0;
+        if (nChangedHouses > 0)
+            flags |= DELTA_HOUSES;
+        if (turnState == null ? base.turnState != null : !turnState
+                .equals(base.turnState))
+            flags |= DELTA_TURN_HANDLER;
+
+        out.writeByte(flags);
+        out.writeInt(turn);
+        out.writeLong(playerMask);
+        for (int i = 0; i < players.length; i++) {
+            if ((playerMask & (1L << i)) != 0)
+                players[i].write(out);
+        }
+        if ((flags & DELTA_HOUSES) != 0) {
+            out.writeShort(nChangedHouses);
+            for (int i = 0; i < houses.length; i++) {
+                if (houses[i] != base.houses[i]) {
+                    out.writeShort(i);
+                    out.writeByte(houses[i]);
+                }
+            }
+        }
+        out.writeInt(deckMask);
+        for (int i = 0; i < deckNames.length; i++) {
+            if ((deckMask & (1 << i)) != 0)
+                writeDeck(out, i);
+        }
+        if ((flags & DELTA_TURN_HANDLER) != 0)
+            TurnState.write(turnState, out);
+    }
+
+    /**
+     * reads a snapshot written by {@link #writeDelta(GameSnapshot, DataOutput)}
+     * 
+     * @param base
+     *            the snapshot the delta was created from
+     * @param in
+     *            the input
+     * @return the new snapshot
+     * @throws IOException
+     *             if reading fails or the delta is malformed
+     */
+    public static GameSnapshot readDelta(GameSnapshot base, DataInputStream in)
+            throws IOException {
+        int flags = in.readUnsignedByte();
+        int turn = in.readInt();
+        long playerMask = in.readLong();
+        PlayerState[] players = base.players.clone();
+        for (int i = 0; i < players.length; i++) {
+            if ((playerMask & (1L << i)) != 0)
+                players[i] = PlayerState.read(in);
+        }
+        int[] houses = base.houses;
+        if ((flags & DELTA_HOUSES) != 0) {
+            houses = houses.clone();
+            int nChanged = readCount(in, in.readShort(), 3, "changed fields");
+            for (int i = 0; i < nChanged; i++) {
+                int index = in.readShort();
+                if (index < 0 || index >= houses.length)
+                    throw new IOException("invalid field: " + index);
+                houses[index] = in.readUnsignedByte();
+            }
+        }
+        int deckMask = in.readInt();
+        int[][] deckOrders = base.deckOrders.clone();
+        int[] deckDrawn = base.deckDrawn.clone();
+        for (int i = 0; i < deckOrders.length; i++) {
+            if ((deckMask & (1 << i)) != 0) {
+                deckOrders[i] = readDeckOrder(in);
+                deckDrawn[i] = in.readShort();
+            }
+        }
+        TurnState turnState = base.turnState;
+        if ((flags & DELTA_TURN_HANDLER) != 0)
+            turnState = TurnState.read(in);
+        return new GameSnapshot(base.boardHash, turn, players, houses,
+                base.deckNames, deckOrders, deckDrawn, turnState);
+    }
+
+    /**
+     * writes the order of one deck
+     * 
+     * @param out
+     *            the output
+     * @param deck
+     *            the index of the deck
+     * @throws IOException
+     *             if writing fails
+     */
+    private void writeDeck(DataOutput out, int deck) throws IOException {
+        out.writeShort(deckOrders[deck].length);
+        for (int card : deckOrders[deck])
+            out.writeShort(card);
+        out.writeShort(deckDrawn[deck]);
+    }
+
+    /**
+     * reads the order of one deck (without the number of drawn cards)
+     * 
+     * @param in
+     *            the input
+     * @return the card numbers
+     * @throws IOException
+     *             if reading fails
+     */
+    private static int[] readDeckOrder(DataInputStream in)
+            throws IOException {
+        int[] order = new int[readCount(in, in.readShort(), 2, "cards")];
+        for (int j = 0; j < order.length; j++)
+            order[j] = in.readShort();
+        return order;
+    }
+
+    /**
+     * checks a number of elements read from an input against the bytes left
+     * in the input
+     * 
+     * @param in
+     *            the input
+     * @param count
+     *            the number of elements
+     * @param elementSize
+     *            the minimal number of bytes of one element
+     * @param elements
+     *            the name of the elements for the error message
+     * @return the number of elements
+     * @throws IOException
+     *             if the number is negative or the elements can't fit in the
+     *             rest of the input
+     */
+    private static int readCount(DataInputStream in, int count,
+            int elementSize, String elements) throws IOException {
+        if (count < 0 || (long) count * elementSize > in.available())
+            throw new IOException("invalid number of " + elements + ": "
+                    + count);
+        return count;
+    }
+
+    /**
+     * @param board
+     *            the board
+     * @return the names of the decks of the board in alphabetical order
+     */
+    private static String[] sortedDeckNames(Board board) {
+        String[] names = board.getDeckNames().toArray(new String[0]);
+        Arrays.sort(names);
+        return names;
+    }
+
+    /**
+     * @param board
+     *            the board
+     * @param deckNames
+     *            the names of the decks in alphabetical order
+     * @return all cards of the board, indexed by their numbers
+     */
+    private static Card[] listCards(Board board, String[] deckNames) {
+        ArrayList<Card> cards = new ArrayList<Card>();
+        for (String name : deckNames) {
+            CardCollection cc = board.getCardStack(name);
+            if (cc != null)
+                cards.addAll(Arrays.asList(cc.getCards()));
+        }
+        return cards.toArray(new Card[cards.size()]);
+    }
+
+    /**
+     * @param board
+     *            the board
+     * @param deckNames
+     *            the names of the decks in alphabetical order
+     * @return the number of every card of the board
+     */
+    private static IdentityHashMap<Card, Integer> numberCards(Board board,
+            String[] deckNames) {
+        Card[] cards = listCards(board, deckNames);
+        IdentityHashMap<Card, Integer> numbers = new IdentityHashMap<Card, Integer>();
+        for (int i = 0; i < cards.length; i++)
+            numbers.put(cards[i], i);
+        return numbers;
+    }
+
+    /**
+     * @param numbers
+     *            the numbers of the cards
+     * @param card
+     *            the card, may be <code>null</code>
+     * @return the number of the card, <code>-1</code> if it is
+     *         <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the card doesn't belong to the board
+     */
+    private static int cardNumber(IdentityHashMap<Card, Integer> numbers,
+            Card card) {
+        if (card == null)
+            return -1;
+        Integer number = numbers.get(card);
+        if (number == null)
+            throw new IllegalArgumentException("card not on board: " + card);
+        return number;
+    }
+
+    /**
+     * state of one player
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    private static final class PlayerState implements Serializable {
+        /** */
+        private static final long serialVersionUID = -1283190434712098622L;
+
+        /**
+         * the minimal number of bytes of a written player: name, color,
+         * wealth, position, jail rounds and the two numbers of elements
+         */
+        static final int MIN_SIZE = 2 + 4 + 8 + 2 + 2 + 2 + 2;
+
+        /** the name */
+        final String name;
+
+        /** the color of the piece (ARGB) */
+        final int color;
+
+        /** the money */
+        final long wealth;
+
+        /** the position of the piece */
+        final int position;
+
+        /** the number of rounds the player has to stay in jail */
+        final int jailRounds;
+
+        /** the indices of the fields the player possesses */
+        final int[] possessions;
+
+        /** the numbers of the cards the player keeps */
+        final int[] cards;
+
+        PlayerState(String name, int color, long wealth, int position,
+                int jailRounds, int[] possessions, int[] cards) {
+            this.name = name;
+            this.color = color;
+            this.wealth = wealth;
+            this.position = position;
+            this.jailRounds = jailRounds;
+            this.possessions = possessions;
+            this.cards = cards;
+        }
+
+        void write(DataOutput out) throws IOException {
+            out.writeUTF(name);
+            out.writeInt(color);
+            out.writeLong(wealth);
+            out.writeShort(position);
+            out.writeShort(jailRounds);
+            out.writeShort(possessions.length);
+            for (int p : possessions)
+                out.writeShort(p);
+            out.writeShort(cards.length);
+            for (int c : cards)
+                out.writeShort(c);
+        }
+
+        static PlayerState read(DataInputStream in) throws IOException {
+            String name = in.readUTF();
+            int color = in.readInt();
+            long wealth = in.readLong();
+            int position = in.readShort();
+            int jailRounds = in.readShort();
+            int[] possessions = new int[readCount(in, in.readShort(), 2,
+                    "possessions")];
+            for (int i = 0; i < possessions.length; i++)
+                possessions[i] = in.readShort();
+            int[] cards = new int[readCount(in, in.readShort(), 2, "cards")];
+            for (int i = 0; i < cards.length; i++)
+                cards[i] = in.readShort();
+            return new PlayerState(name, color, wealth, position, jailRounds,
+                    possessions, cards);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PlayerState))
+                return false;
+            PlayerState other = (PlayerState) obj;
+            return name.equals(other.name) && color == other.color
+                    && wealth == other.wealth && position == other.position
+                    && jailRounds == other.jailRounds
+                    && Arrays.equals(possessions, other.possessions)
+                    && Arrays.equals(cards, other.cards);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() ^ (int) wealth ^ position << 16;
+        }
+    }
+
+    /**
+     * state of the turn handler
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    private static final class TurnState implements Serializable {
+        /** */
+        private static final long serialVersionUID = 6021617448961093542L;
+
+        /** the index of the player whose turn it is */
+        final int turn;
+
+        /** the result of the last throw, may be <code>null</code> */
+        final int[] lastCast;
+
+        /** the number of the drawn card, <code>-1</code> for none */
+        final int drawnCard;
+
+        /** the ordinal of the next task, <code>-1</code> for none */
+        final int nextTask;
+
+        TurnState(int turn, int[] lastCast, int drawnCard, int nextTask) {
+            this.turn = turn;
+            this.lastCast = lastCast;
+            this.drawnCard = drawnCard;
+            this.nextTask = nextTask;
+        }
+
+        static void write(TurnState ts, DataOutput out) throws IOException {
+            out.writeBoolean(ts != null);
+            if (ts == null)
+                return;
+            out.writeInt(ts.turn);
+            out.writeByte(ts.lastCast == null ? -1 : ts.lastCast.length);
+            if (ts.lastCast != null) {
+                for (int value : ts.lastCast)
+                    out.writeByte(value);
+            }
+            out.writeShort(ts.drawnCard);
+            out.writeByte(ts.nextTask);
+        }
+
+        static TurnState read(DataInput in) throws IOException {
+            if (!in.readBoolean())
+                return null;
+            int turn = in.readInt();
+            int nCast = in.readByte();
+            int[] lastCast = null;
+            if (nCast >= 0) {
+                lastCast = new int[nCast];
+                for (int i = 0; i < nCast; i++)
+                    lastCast[i] = in.readByte();
+            }
+            int drawnCard = in.readShort();
+            int nextTask = in.readByte();
+            return new TurnState(turn, lastCast, drawnCard, nextTask);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof TurnState))
+                return false;
+            TurnState other = (TurnState) obj;
+            return turn == other.turn
+                    && Arrays.equals(lastCast, other.lastCast)
+                    && drawnCard == other.drawnCard
+                    && nextTask == other.nextTask;
+        }
+
+        @Override
+        public int hashCode() {
+            return turn ^ drawnCard << 8 ^ nextTask << 16;
+        }
+    }
+}
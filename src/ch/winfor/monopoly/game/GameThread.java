@@ -0,0 +1,197 @@
+package ch.winfor.monopoly.game;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+
+/**
+ * the only thread modifying a game
+ * 
+ * Every change of the game (the actions of the user interface and the ais,
+ * network updates, debug commands) is submitted as a {@link GameCommand} and
+ * executed on this thread in the order it was submitted. The game itself
+ * therefore needs no locks, and the {@link GameListener}s of the game are
+ * called on this thread.
+ * 
+ * Other threads should not read the game while it may change. Whenever the
+ * queue has run empty, the thread takes a {@link GameSnapshot} and passes it
+ * to its {@link SnapshotListener}s; the snapshot is immutable and can be read
+ * from any thread.
+ * 
+ * Every command is executed as one batch of the game (see
+ * {@link Game#beginBatch()}), so the changes it causes can be sent over the
+ * network together.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class GameThread {
+    /** the events of the game engine */
+    private static final EventLog LOG = Log.get(Log.ENGINE);
+
+    /** command telling the thread to stop */
+    private static final GameCommand STOP = new GameCommand() {
+        @Override
+        public void execute(Game game) {
+        }
+    };
+
+    /** the game */
+    private final Game game;
+
+    /** the commands waiting to be executed */
+    private final LinkedBlockingQueue<GameCommand> commands;
+
+    /** the thread */
+    private final Thread thread;
+
+    /** the last published snapshot */
+    private volatile GameSnapshot snapshot;
+
+    /** subscribers to the snapshots */
+    private final ListenerList<SnapshotListener> snapshotListeners;
+
+    /**
+     * creates the thread; it is started by {@link Game#startGameThread(String)}
+     * 
+     * @param game
+     *            the game
+     * @param name
+     *            the name of the thread
+     */
+    GameThread(Game game, String name) {
+        this.game = game;
+        commands = new LinkedBlockingQueue<GameCommand>();
+        snapshotListeners = new ListenerList<SnapshotListener>(
+                SnapshotListener.class);
+        snapshot = GameSnapshot.capture(game);
+        thread = new Thread(name) {
+            @Override
+            public void run() {
+                processCommands();
+            }
+        };
+        thread.setDaemon(true);
+    }
+
+    /**
+     * starts the thread
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * lets the thread stop after the commands submitted so far
+     */
+    void stop() {
+        commands.add(STOP);
+    }
+
+    /**
+     * queues a command
+     * 
+     * @param command
+     *            the command
+     */
+    public void submit(GameCommand command) {
+        if (command == null)
+            throw new NullPointerException("command");
+        commands.add(command);
+    }
+
+    /**
+     * @return <code>true</code> if the calling thread is this game thread
+     */
+    public boolean isGameThread() {
+        return Thread.currentThread() == thread;
+    }
+
+    /**
+     * @return the state of the game after the last commands
+     */
+    public GameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * adds a subscriber to the snapshots
+     * 
+     * @param sl
+     *            the new subscriber
+     */
+    public void addSnapshotListener(SnapshotListener sl) {
+        snapshotListeners.add(sl);
+    }
+
+    /**
+     * removes a subscriber to the snapshots
+     * 
+     * @param sl
+     *            the subscriber
+     */
+    public void removeSnapshotListener(SnapshotListener sl) {
+        snapshotListeners.remove(sl);
+    }
+
+    /**
+     * executes the commands until {@link #stop()} is called
+     */
+    private void processCommands() {
+        while (true) {
+            GameCommand command;
+            try {
+                command = commands.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (command == STOP)
+                return;
+
+            game.beginBatch();
+            try {
+                command.execute(game);
+            } catch (RuntimeException e) { // a failing command must not stop
+                                           // the game
+                LOG.error("command.failed", "command", command, "error", e);
+            } finally {
+                game.endBatch();
+            }
+
+            if (commands.isEmpty())
+                publishSnapshot();
+        }
+    }
+
+    /**
+     * takes a snapshot of the game and passes it to the subscribers
+     */
+    private void publishSnapshot() {
+        GameSnapshot gs = GameSnapshot.capture(game);
+        snapshot = gs;
+        SnapshotListener[] sls = snapshotListeners.getListeners();
+        for (int i = 0; i < sls.length; i++) {
+            sls[i].snapshotPublished(this, gs);
+        }
+    }
+
+    /**
+     * interface for receiving the state of the game after it has changed
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static interface SnapshotListener extends EventListener {
+        /**
+         * invoked on the game thread when commands have been executed and
+         * no more are waiting
+         * 
+         * @param sender
+         *            the game thread
+         * @param snapshot
+         *            the state of the game
+         */
+        public void snapshotPublished(GameThread sender, GameSnapshot snapshot);
+    }
+}
@@ -1,8 +1,6 @@
 package ch.winfor.monopoly.game;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
 
 /**
  * provides functions to keep a record of all the possessions of the players
@@ -23,14 +21,15 @@ public class HouseRegister implements Serializable, Hashable {
     private int[] houseCount;
 
     /** list of subscribers */
-    private transient List<HouseRegisterListener> houseRegisterListeners;
+    private transient ListenerList<HouseRegisterListener> houseRegisterListeners;
 
     public HouseRegister(Board board) {
         this.board = board;
         houseCount = new int[this.board.getAbsoluteLength()];
         for (int i = 0; i < houseCount.length; i++)
             houseCount[i] = 0;
-        houseRegisterListeners = new ArrayList<HouseRegisterListener>();
+        houseRegisterListeners = new ListenerList<HouseRegisterListener>(
+                HouseRegisterListener.class);
     }
 
     /**
@@ -64,6 +63,25 @@ public class HouseRegister implements Serializable, Hashable {
         fireHouseNumberChanged(fieldIndex, oldNumber);
     }
 
+    /**
+     * @return the number of fields in the register
+     */
+    int getLength() {
+        return houseCount.length;
+    }
+
+    /**
+     * replaces all house counts without notifying the listeners (used when a
+     * whole game state is restored)
+     * 
+     * @param houseCount
+     *            the new number of houses per field
+     */
+    void restore(int[] houseCount) {
+        System.arraycopy(houseCount, 0, this.houseCount, 0,
+                this.houseCount.length);
+    }
+
     /**
      * adds a house to a field
      * 
@@ -99,8 +117,9 @@ public class HouseRegister implements Serializable, Hashable {
      *            the old value
      */
     protected void fireHouseNumberChanged(int position, int oldNumber) {
-        for (HouseRegisterListener hrl : houseRegisterListeners) {
-            hrl.houseNumberChanged(this, position, oldNumber);
+        HouseRegisterListener[] hrls = houseRegisterListeners.getListeners();
+        for (int i = 0; i < hrls.length; i++) {
+            hrls[i].houseNumberChanged(this, position, oldNumber);
         }
     }
 
@@ -112,7 +131,8 @@ public class HouseRegister implements Serializable, Hashable {
      */
     public void addHouseRegisterListener(HouseRegisterListener hrl) {
         if (houseRegisterListeners == null)
-            houseRegisterListeners = new ArrayList<HouseRegisterListener>();
+            houseRegisterListeners = new ListenerList<HouseRegisterListener>(
+                    HouseRegisterListener.class);
         houseRegisterListeners.add(hrl);
     }
 
@@ -123,9 +143,8 @@ public class HouseRegister implements Serializable, Hashable {
      *            the subscriber to remove
      */
     public void removeHouseRegisterListener(HouseRegisterListener hrl) {
-        if (houseRegisterListeners == null)
-            houseRegisterListeners = new ArrayList<HouseRegisterListener>();
-        houseRegisterListeners.remove(hrl);
+        if (houseRegisterListeners != null)
+            houseRegisterListeners.remove(hrl);
     }
 
     /**
@@ -0,0 +1,128 @@
+package ch.winfor.monopoly.game;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+
+/**
+ * list of subscribers to the events of a game component
+ * 
+ * The listeners are kept in an array that is copied whenever a listener is
+ * added or removed, which is rare compared to the events. Sending an event
+ * therefore only needs a loop over {@link #getListeners()}, which allocates
+ * nothing, and the list can be changed from other threads (or by a listener)
+ * while an event is sent.
+ * 
+ * One listener can be suppressed for a while, e.g. a network connection while
+ * it applies an update it has received, so the events caused by the update
+ * aren't sent back. Senders skip the listener returned by
+ * {@link #getSuppressed()}.
+ * 
+ * @author Nicolas Winkler
+ * 
+ * @param <L>
+ *            the type of the listeners
+ */
+public final class ListenerList<L> {
+    /** the listeners; never modified, only replaced */
+    private volatile L[] listeners;
+
+    /** the listener that doesn't get any events, or <code>null</code> */
+    private volatile L suppressed;
+
+    /**
+     * creates an empty list
+     * 
+     * @param type
+     *            the type of the listeners
+     */
+    @SuppressWarnings("unchecked")
+    public ListenerList(Class<L> type) {
+        listeners = (L[]) Array.newInstance(type, 0);
+    }
+
+    /**
+     * adds a listener to the end of the list
+     * 
+     * @param listener
+     *            the new listener; <code>null</code> is ignored
+     */
+    public synchronized void add(L listener) {
+        if (listener == null)
+            return;
+        L[] old = listeners;
+        L[] copy = Arrays.copyOf(old, old.length + 1);
+        copy[old.length] = listener;
+        listeners = copy;
+    }
+
+    /**
+     * removes the first occurrence of a listener
+     * 
+     * @param listener
+     *            the listener to remove
+     * @return <code>true</code> if the listener was in the list
+     */
+    public synchronized boolean remove(L listener) {
+        L[] old = listeners;
+        for (int i = 0; i < old.length; i++) {
+            if (old[i].equals(listener)) {
+                L[] copy = Arrays.copyOf(old, old.length - 1);
+                System.arraycopy(old, i + 1, copy, i, old.length - i - 1);
+                listeners = copy;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * returns the current listeners
+     * 
+     * The array must not be modified. Later changes of the list don't change
+     * it, so it can be iterated while listeners are added or removed.
+     * 
+     * @return the listeners
+     */
+    public L[] getListeners() {
+        return listeners;
+    }
+
+    /**
+     * @return the number of listeners
+     */
+    public int size() {
+        return listeners.length;
+    }
+
+    /**
+     * @return the listener that doesn't get any events, or <code>null</code>
+     */
+    public L getSuppressed() {
+        return suppressed;
+    }
+
+    /**
+     * stops sending events to a listener until {@link #resume(Object)} is
+     * called
+     * 
+     * @param listener
+     *            the listener to skip
+     * @return the listener that was suppressed before, which must be passed
+     *         to {@link #resume(Object)}
+     */
+    public L suppress(L listener) {
+        L previous = suppressed;
+        suppressed = listener;
+        return previous;
+    }
+
+    /**
+     * ends the suppression started by the matching {@link #suppress(Object)}
+     * 
+     * @param previous
+     *            the value returned by {@link #suppress(Object)}
+     */
+    public void resume(L previous) {
+        suppressed = previous;
+    }
+}
@@ -0,0 +1,203 @@
+package ch.winfor.monopoly.game;
+
+import java.util.Arrays;
+
+/**
+ * index storing who owns which field of a board
+ * 
+ * The owner of every field is stored in a primitive array indexed by the field
+ * index. Additionally, for every player it counts the owned fields per field
+ * type, per {@link MonopolyGroup} and the houses and hotels on his
+ * properties. This allows rent calculation, monopoly detection and house
+ * counting in constant time.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+class OwnershipIndex {
+    /** value in {@link #owners} for fields nobody owns */
+    static final int NO_OWNER = -1;
+
+    /** the compiled board */
+    private final CompiledBoard board;
+
+    /** the number of houses that represent a hotel */
+    private final int maxHouses;
+
+    /** the owner index of every field */
+    private final int[] owners;
+
+    /** number of owned fields per player and kind */
+    private final int[][] kindCounts;
+
+    /** number of owned properties per player and monopoly */
+    private final int[][] groupCounts;
+
+    /** number of houses per player (not counting hotels) */
+    private final int[] houses;
+
+    /** number of hotels per player */
+    private final int[] hotels;
+
+    /**
+     * creates an empty index
+     * 
+     * @param board
+     *            the board
+     * @param nPlayers
+     *            the number of players
+     */
+    OwnershipIndex(Board board, int nPlayers) {
+        this.board = board.getCompiled();
+        owners = new int[this.board.getLength()];
+        Arrays.fill(owners, NO_OWNER);
+        maxHouses = board.getMaxHouses();
+        kindCounts = new int[nPlayers][CompiledBoard.N_KINDS];
+        groupCounts = new int[nPlayers][this.board.getNGroups()];
+        houses = new int[nPlayers];
+        hotels = new int[nPlayers];
+    }
+
+    /**
+     * builds the index from the possessions and houses of a game
+     * 
+     * @param game
+     *            the game
+     * @param houseRegister
+     *            the houses of the game
+     * @return the new index
+     */
+    static OwnershipIndex create(Game game, HouseRegister houseRegister) {
+        Board board = game.getBoard();
+        OwnershipIndex index = new OwnershipIndex(board, game.getNPlayers());
+        for (int i = 0; i < board.getAbsoluteLength(); i++) {
+            if (index.board.isBuyable(i)) {
+                BuyableField field = (BuyableField) board.getField(i);
+                for (int p = 0; p < game.getNPlayers(); p++) {
+                    if (game.getPlayer(p).possesses(field)) {
+                        index.add(p, i, houseRegister.getHouseCount(i));
+                        break;
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * registers a player as the owner of a field
+     * 
+     * @param player
+     *            the index of the new owner
+     * @param fieldIndex
+     *            the index of the field
+     * @param houseCount
+     *            the number of houses currently on the field
+     */
+    void add(int player, int fieldIndex, int houseCount) {
+        int oldOwner = owners[fieldIndex];
+        if (oldOwner == player)
+            return;
+        if (oldOwner != NO_OWNER) {
+            kindCounts[oldOwner][board.getKind(fieldIndex)]--;
+            if (board.getGroup(fieldIndex) != -1)
+                groupCounts[oldOwner][board.getGroup(fieldIndex)]--;
+            if (board.getKind(fieldIndex) == CompiledBoard.KIND_PROPERTY)
+                countHouses(oldOwner, houseCount, -1);
+        }
+
+        owners[fieldIndex] = player;
+        kindCounts[player][board.getKind(fieldIndex)]++;
+        if (board.getGroup(fieldIndex) != -1)
+            groupCounts[player][board.getGroup(fieldIndex)]++;
+        if (board.getKind(fieldIndex) == CompiledBoard.KIND_PROPERTY)
+            countHouses(player, houseCount, 1);
+    }
+
+    /**
+     * updates the house counters after houses were built or demolished
+     * 
+     * @param fieldIndex
+     *            the index of the field
+     * @param oldNumber
+     *            the number of houses before the change
+     * @param newNumber
+     *            the number of houses after the change
+     */
+    void houseNumberChanged(int fieldIndex, int oldNumber, int newNumber) {
+        int owner = owners[fieldIndex];
+        if (owner != NO_OWNER
+                && board.getKind(fieldIndex) == CompiledBoard.KIND_PROPERTY) {
+            countHouses(owner, oldNumber, -1);
+            countHouses(owner, newNumber, 1);
+        }
+    }
+
+    /**
+     * adds or removes the houses of one field from a player's counters
+     * 
+     * @param player
+     *            the player
+     * @param houseCount
+     *            the number of houses on the field
+     * @param sign
+     *            <code>1</code> to add, <code>-1</code> to remove
+     */
+    private void countHouses(int player, int houseCount, int sign) {
+        if (houseCount < maxHouses)
+            houses[player] += sign * houseCount;
+        else
+            hotels[player] += sign;
+    }
+
+    /**
+     * @param fieldIndex
+     *            the index of the field
+     * @return the index of the owner or {@link #NO_OWNER}
+     */
+    int getOwner(int fieldIndex) {
+        return owners[fieldIndex];
+    }
+
+    /**
+     * @param player
+     *            the index of the player
+     * @param kind
+     *            one of the <code>CompiledBoard.KIND_*</code> constants
+     * @return the number of fields of this kind the player owns
+     */
+    int countKind(int player, int kind) {
+        return kindCounts[player][kind];
+    }
+
+    /**
+     * @param player
+     *            the index of the player
+     * @param monopolyIndex
+     *            the index of the monopoly
+     * @return <code>true</code> if the player owns every property of the
+     *         monopoly
+     */
+    boolean ownsMonopoly(int player, int monopolyIndex) {
+        int size = board.getGroupSize(monopolyIndex);
+        return size > 0 && groupCounts[player][monopolyIndex] == size;
+    }
+
+    /**
+     * @param player
+     *            the index of the player
+     * @return the number of houses the player owns (not counting hotels)
+     */
+    int getHouses(int player) {
+        return houses[player];
+    }
+
+    /**
+     * @param player
+     *            the index of the player
+     * @return the number of hotels the player owns
+     */
+    int getHotels(int player) {
+        return hotels[player];
+    }
+}
@@ -37,7 +37,7 @@ public class Player implements Serializable, Hashable {
     private int inJailRounds;
 
     /** stores the subscribers to events from this player */
-    private transient ArrayList<PlayerListener> playerListeners;
+    private transient ListenerList<PlayerListener> playerListeners;
 
     public Player(String name) {
         this.setName(name);
@@ -45,7 +45,8 @@ public class Player implements Serializable, Hashable {
         cards = new ArrayList<KeepableCard>();
         piece = new PlayingPiece();
 
-        playerListeners = new ArrayList<PlayerListener>();
+        playerListeners = new ListenerList<PlayerListener>(
+                PlayerListener.class);
     }
 
     /**
@@ -82,6 +83,38 @@ public class Player implements Serializable, Hashable {
         fireAddedCardPossession(card);
     }
 
+    /**
+     * @return the number of fields this player possesses
+     */
+    public int getNPossessions() {
+        return possessions.size();
+    }
+
+    /**
+     * @param index
+     *            the index of the possession (in the order they were obtained)
+     * @return the field
+     */
+    public BuyableField getPossession(int index) {
+        return possessions.get(index);
+    }
+
+    /**
+     * @return the number of cards this player keeps
+     */
+    public int getNCards() {
+        return cards.size();
+    }
+
+    /**
+     * @param index
+     *            the index of the card (in the order they were obtained)
+     * @return the card
+     */
+    public KeepableCard getCard(int index) {
+        return cards.get(index);
+    }
+
     /**
      * @return the piece
      */
@@ -173,6 +206,27 @@ public class Player implements Serializable, Hashable {
         fireJailStateChanged(oldRounds);
     }
 
+    /**
+     * replaces the state of the player without notifying the listeners (used
+     * when a whole game state is restored)
+     * 
+     * @param wealth
+     *            the new wealth
+     * @param inJailRounds
+     *            the number of rounds the player has to stay in jail
+     * @param possessions
+     *            the fields the player possesses
+     * @param cards
+     *            the cards the player keeps
+     */
+    void restore(long wealth, int inJailRounds,
+            ArrayList<BuyableField> possessions, ArrayList<KeepableCard> cards) {
+        this.wealth = wealth;
+        this.inJailRounds = inJailRounds;
+        this.possessions = possessions;
+        this.cards = cards;
+    }
+
     /**
      * @return the name
      */
@@ -197,13 +251,14 @@ public class Player implements Serializable, Hashable {
      *            the wealth after the change
      */
     protected void fireWealthChanged(long oldWealth, long newWealth) {
-        for (PlayerListener pl : playerListeners) {
-            pl.wealthChanged(this, oldWealth, newWealth);
+        PlayerListener[] pls = playerListeners.getListeners();
+        for (int i = 0; i < pls.length; i++) {
+            pls[i].wealthChanged(this, oldWealth, newWealth);
         }
 
         if (oldWealth >= 0 && newWealth < 0) {
-            for (PlayerListener pl : playerListeners) {
-                pl.wentBankrupt(this);
+            for (int i = 0; i < pls.length; i++) {
+                pls[i].wentBankrupt(this);
             }
         }
     }
@@ -216,8 +271,9 @@ public class Player implements Serializable, Hashable {
      * @see PlayerListener#jailStateChanged(Player)
      */
     protected void fireJailStateChanged(int oldRounds) {
-        for (PlayerListener pl : playerListeners) {
-            pl.jailStateChanged(this, oldRounds);
+        PlayerListener[] pls = playerListeners.getListeners();
+        for (int i = 0; i < pls.length; i++) {
+            pls[i].jailStateChanged(this, oldRounds);
         }
     }
 
@@ -228,8 +284,9 @@ public class Player implements Serializable, Hashable {
      *            the newly obtained property
      */
     protected void fireAddedPropertyPossession(BuyableField property) {
-        for (PlayerListener pl : playerListeners) {
-            pl.addedPropertyPossession(this, property);
+        PlayerListener[] pls = playerListeners.getListeners();
+        for (int i = 0; i < pls.length; i++) {
+            pls[i].addedPropertyPossession(this, property);
         }
     }
 
@@ -240,8 +297,9 @@ public class Player implements Serializable, Hashable {
      *            the newly obtained card
      */
     protected void fireAddedCardPossession(KeepableCard card) {
-        for (PlayerListener pl : playerListeners) {
-            pl.addedCardPossession(this, card);
+        PlayerListener[] pls = playerListeners.getListeners();
+        for (int i = 0; i < pls.length; i++) {
+            pls[i].addedCardPossession(this, card);
         }
     }
 
@@ -253,7 +311,8 @@ public class Player implements Serializable, Hashable {
      */
     public void addPlayerListener(PlayerListener pl) {
         if (playerListeners == null)
-            playerListeners = new ArrayList<PlayerListener>();
+            playerListeners = new ListenerList<PlayerListener>(
+                    PlayerListener.class);
         playerListeners.add(pl);
     }
 
@@ -264,9 +323,8 @@ public class Player implements Serializable, Hashable {
      *            the listener which should be removed
      */
     public void removePlayerListener(PlayerListener pl) {
-        if (playerListeners == null)
-            playerListeners = new ArrayList<PlayerListener>();
-        playerListeners.remove(pl);
+        if (playerListeners != null)
+            playerListeners.remove(pl);
     }
 
     /*
@@ -2,8 +2,6 @@ package ch.winfor.monopoly.game;
 
 import java.awt.Color;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Random;
 
 /**
  * 
@@ -22,15 +20,19 @@ public class PlayingPiece implements Serializable, Hashable {
     private Color color;
 
     /** list of listeners to be notified about events */
-    private transient ArrayList<PlayingPieceListener> playingPieceListeners;
+    private transient ListenerList<PlayingPieceListener> playingPieceListeners;
 
     /**
      * initializes the piece to position 0
+     * 
+     * The piece is gray until it gets a color (the pieces of a game get a
+     * random color derived from the seed of the game).
      */
     public PlayingPiece() {
         position = 0;
-        color = new Color(new Random().nextInt());
-        playingPieceListeners = new ArrayList<PlayingPieceListener>();
+        color = Color.GRAY;
+        playingPieceListeners = new ListenerList<PlayingPieceListener>(
+                PlayingPieceListener.class);
     }
 
     /**
@@ -50,6 +52,17 @@ public class PlayingPiece implements Serializable, Hashable {
         firePositionUpdated(position, oldPosition);
     }
 
+    /**
+     * sets the position without notifying the listeners (used when a whole
+     * game state is restored)
+     * 
+     * @param position
+     *            the position to set (absolute value)
+     */
+    void restorePosition(int position) {
+        this.position = position;
+    }
+
     /**
      * sends a position update event to every subscriber
      * 
@@ -60,9 +73,10 @@ public class PlayingPiece implements Serializable, Hashable {
      */
     protected void firePositionUpdated(int position, int oldPosition) {
         if (playingPieceListeners == null)
-            playingPieceListeners = new ArrayList<>();
-        for (PlayingPieceListener ppl : playingPieceListeners) {
-            ppl.updatedPosition(this, position, oldPosition);
+            return;
+        PlayingPieceListener[] ppls = playingPieceListeners.getListeners();
+        for (int i = 0; i < ppls.length; i++) {
+            ppls[i].updatedPosition(this, position, oldPosition);
         }
     }
 
@@ -74,7 +88,8 @@ public class PlayingPiece implements Serializable, Hashable {
      */
     public void addPlayingPieceListener(PlayingPieceListener ppl) {
         if (playingPieceListeners == null)
-            playingPieceListeners = new ArrayList<>();
+            playingPieceListeners = new ListenerList<PlayingPieceListener>(
+                    PlayingPieceListener.class);
         playingPieceListeners.add(ppl);
     }
 
@@ -85,9 +100,8 @@ public class PlayingPiece implements Serializable, Hashable {
      *            the listener which should be removed
      */
     public void removePlayingPieceListener(PlayingPieceListener ppl) {
-        if (playingPieceListeners == null)
-            playingPieceListeners = new ArrayList<>();
-        playingPieceListeners.remove(ppl);
+        if (playingPieceListeners != null)
+            playingPieceListeners.remove(ppl);
     }
 
     /*
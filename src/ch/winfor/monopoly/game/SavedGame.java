@@ -0,0 +1,257 @@
+package ch.winfor.monopoly.game;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * saves running games to files and loads them again
+ * 
+ * A save file contains the mutable state of the game as a
+ * {@link GameSnapshot}, the seed, the number of actions taken and the states
+ * of the random number generators, so a loaded game continues exactly like
+ * the saved one would have. The board isn't saved; the file contains only its
+ * hash, and the game has to be loaded onto the same board. Nothing is read
+ * with Java serialization.
+ * 
+ * The format is:
+ * <ul>
+ * <li>{@link #MAGIC}, whose last byte is the version of the format</li>
+ * <li>the seed and the number of actions taken</li>
+ * <li>state and increment of the generator of the dice and of the generator
+ * of every deck (in the alphabetical order of the deck names)</li>
+ * <li>the snapshot (see {@link GameSnapshot#write(java.io.DataOutput)})</li>
+ * <li>the CRC-32 of all the bytes before</li>
+ * </ul>
+ * 
+ * A file is written to a temporary file next to it first, which is then
+ * renamed, so an existing save is never left half overwritten.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class SavedGame {
+    /** version of the format */
+    public static final int VERSION = 1;
+
+    /** the first bytes of every save file */
+    private static final byte[] MAGIC = { 'M', 'N', 'S', VERSION };
+
+    /** the size of the checksum at the end of the file */
+    private static final int CHECKSUM_SIZE = 4;
+
+    /** only static methods */
+    private SavedGame() {
+    }
+
+    /**
+     * writes the state of a game into a byte array
+     * 
+     * Must be called on the thread changing the game (see {@link GameThread}
+     * ).
+     * 
+     * @param game
+     *            the game
+     * @return the content of a save file
+     */
+    public static byte[] toBytes(Game game) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(MAGIC);
+            out.writeLong(game.getSeed());
+            out.writeLong(game.getNActions());
+            writeRandom(out, game.getRandom());
+            String[] deckNames = sortedDeckNames(game.getBoard());
+            out.writeInt(deckNames.length);
+            for (String deckName : deckNames) {
+                ShuffledCardDeck deck = game.getCardDeck(deckName);
+                writeRandom(out, deck != null ? deck.getRandom() : null);
+            }
+            GameSnapshot.capture(game).write(out);
+            out.flush();
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+            return bytes.toByteArray();
+        } catch (IOException e) { // not thrown by a ByteArrayOutputStream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * saves a game to a file
+     * 
+     * Must be called on the thread changing the game.
+     * 
+     * @param game
+     *            the game
+     * @param file
+     *            the file, which is replaced if it exists
+     * @param force
+     *            <code>true</code> to wait until the file is on the disk
+     * @throws IOException
+     *             if the file can't be written
+     */
+    public static void save(Game game, File file, boolean force)
+            throws IOException {
+        byte[] content = toBytes(game);
+        Path target = file.toPath();
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            if (force)
+                channel.force(false);
+        } finally {
+            channel.close();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * loads a game saved by {@link #save(Game, File, boolean)}
+     * 
+     * @param file
+     *            the file
+     * @param board
+     *            the board the game was played on
+     * @return the game, without listeners and thread
+     * @throws IOException
+     *             if the file can't be read, is damaged or is of another
+     *             board
+     */
+    public static Game load(File file, Board board) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ);
+        byte[] content;
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("file too large: " + size);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1)
+                    throw new IOException("file shrank while reading");
+            }
+            content = buffer.array();
+        } finally {
+            channel.close();
+        }
+        return fromBytes(content, board);
+    }
+
+    /**
+     * creates a game from the content of a save file
+     * 
+     * @param content
+     *            the content, as returned by {@link #toBytes(Game)}
+     * @param board
+     *            the board the game was played on
+     * @return the game
+     * @throws IOException
+     *             if the content is damaged or of another board
+     */
+    public static Game fromBytes(byte[] content, Board board)
+            throws IOException {
+        if (content.length < MAGIC.length + CHECKSUM_SIZE
+                || !Arrays.equals(Arrays.copyOf(content, MAGIC.length), MAGIC))
+            throw new IOException("not a save file of version " + VERSION);
+        int length = content.length - CHECKSUM_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(content, 0, length);
+        if (ByteBuffer.wrap(content, length, CHECKSUM_SIZE).getInt() != (int) crc
+                .getValue())
+            throw new IOException("save file is damaged");
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                content, MAGIC.length, length - MAGIC.length));
+        long seed = in.readLong();
+        long nActions = in.readLong();
+        GameRandom dice = readRandom(in);
+        int nDecks = in.readInt();
+        if (dice == null || nDecks < 0 || nDecks > in.available())
+            throw new IOException("invalid save file");
+        GameRandom[] deckRandoms = new GameRandom[nDecks];
+        for (int i = 0; i < deckRandoms.length; i++)
+            deckRandoms[i] = readRandom(in);
+        GameSnapshot snapshot = GameSnapshot.read(in);
+
+        if (snapshot.getBoardHash() != board.createHash())
+            throw new IOException("game of another board");
+        String[] deckNames = sortedDeckNames(board);
+        if (deckNames.length != deckRandoms.length)
+            throw new IOException("game of another board");
+
+        Game game = new Game(board, snapshot.getNPlayers(), null, seed);
+        snapshot.restore(game);
+        game.restoreProgress(dice, nActions);
+        for (int i = 0; i < deckNames.length; i++) {
+            ShuffledCardDeck deck = game.getCardDeck(deckNames[i]);
+            if (deck != null && deckRandoms[i] != null)
+                deck.setRandom(deckRandoms[i]);
+        }
+        return game;
+    }
+
+    /**
+     * @param out
+     *            the output
+     * @param random
+     *            the generator to write, may be <code>null</code>
+     * @throws IOException
+     *             if writing fails
+     */
+    private static void writeRandom(DataOutputStream out, GameRandom random)
+            throws IOException {
+        out.writeBoolean(random != null);
+        if (random != null) {
+            out.writeLong(random.getState());
+            out.writeLong(random.getGamma());
+        }
+    }
+
+    /**
+     * @param in
+     *            the input
+     * @return the generator written by
+     *         {@link #writeRandom(DataOutputStream, GameRandom)}
+     * @throws IOException
+     *             if reading fails
+     */
+    private static GameRandom readRandom(DataInputStream in)
+            throws IOException {
+        if (!in.readBoolean())
+            return null;
+        long state = in.readLong();
+        return new GameRandom(state, in.readLong());
+    }
+
+    /**
+     * @param board
+     *            the board
+     * @return the names of the decks of the board in alphabetical order
+     */
+    private static String[] sortedDeckNames(Board board) {
+        String[] names = board.getDeckNames().toArray(new String[0]);
+        Arrays.sort(names);
+        return names;
+    }
+}
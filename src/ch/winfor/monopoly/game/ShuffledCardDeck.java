@@ -1,81 +1,298 @@
 package ch.winfor.monopoly.game;
 
 import java.io.Serializable;
-import java.util.LinkedList;
-import java.util.Random;
+
+import ch.winfor.monopoly.game.Card.KeepableCard;
 
 /**
  * card stack where cards can be drawn from
  * 
+ * The deck is a ring buffer of indices into the cards of its
+ * {@link CardCollection}: drawing a card moves the cursor on and writes the
+ * card behind the last one, so both drawing and putting a card under the deck
+ * take constant time, and the state of the deck is just the cursor and the
+ * permutation.
+ * 
+ * A {@link KeepableCard} leaves the deck when it is drawn, since the player
+ * drawing it may hold it. It comes back when it is put under the deck with
+ * {@link #putUnder(Card)}.
+ * 
  * @author Nicolas Winkler
  * 
  */
 public class ShuffledCardDeck implements Serializable, Hashable {
     /** */
-    private static final long serialVersionUID = 1703907219267597194L;
+    private static final long serialVersionUID = -4969420867316734520L;
 
     /** the cards (in a fixed order) */
     private CardCollection cards;
 
-    /** lifo structure containing the same cards as {@link #cards} */
-    private LinkedList<Card> cardQueue;
+    /**
+     * the indices (into the cards of {@link #cards}) of the cards in the deck;
+     * the next card to draw is at {@link #head}
+     */
+    private int[] ring;
+
+    /** the position of the next card in {@link #ring} */
+    private int head;
+
+    /** the number of cards in the deck */
+    private int size;
+
+    /** <code>true</code> for the cards that are in the deck */
+    private boolean[] inDeck;
+
+    /**
+     * hash of the order of the cards at the time the deck was last shuffled
+     * or modified from outside
+     */
+    private long orderHash;
 
-    public ShuffledCardDeck(CardCollection cards) {
+    /**
+     * number of cards drawn since {@link #orderHash} was calculated (modulo
+     * the size of the deck)
+     */
+    private int drawn;
+
+    /** pseudo-random number generator for the shuffles of this deck */
+    private GameRandom random;
+
+    /**
+     * creates the deck and shuffles it
+     * 
+     * @param cards
+     *            the cards
+     * @param random
+     *            the pseudo-random number generator used for shuffling,
+     *            which should belong to this deck alone so its order doesn't
+     *            depend on anything else (see {@link GameRandom#split()})
+     */
+    public ShuffledCardDeck(CardCollection cards, GameRandom random) {
         this.cards = cards;
-        cardQueue = new LinkedList<Card>();
+        this.random = random;
+        int n = cards.getCards().length;
+        ring = new int[n];
+        inDeck = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            ring[i] = i;
+            inDeck[i] = true;
+        }
+        size = n;
         shuffle();
     }
 
     /**
-     * shuffles the deck (puts it in random order)
+     * shuffles the deck (puts the cards in it in random order)
+     * 
+     * This is a Fisher-Yates shuffle in place. Cards that are out of the deck
+     * stay out.
      */
     public void shuffle() {
-        cardQueue.clear();
-        Card[] cardArr = cards.getCards();
-
-        LinkedList<Card> list = new LinkedList<Card>();
-        for (int i = 0; i < cardArr.length; i++) {
-            list.add(cardArr[i]);
-        }
-
-        Random rand = new Random();
-
-        for (int i = 0; i < cardArr.length; i++) {
-            int index = rand.nextInt(list.size());
-            cardQueue.add(list.get(index));
-            list.remove(index);
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int a = (head + i) % ring.length;
+            int b = (head + j) % ring.length;
+            int swap = ring[a];
+            ring[a] = ring[b];
+            ring[b] = swap;
         }
+        updateOrderHash();
     }
 
     /**
      * draws the card on top of the deck
      * 
-     * @return the card on top of the deck
+     * An ordinary card is put under the deck again at once. A
+     * {@link KeepableCard} is taken out of the deck until it is put back with
+     * {@link #putUnder(Card)}.
+     * 
+     * @return the card on top of the deck or <code>null</code> if the deck is
+     *         empty
      */
     public Card draw() {
-        Card top = cardQueue.poll();
-        putUnder(top);
+        if (size == 0)
+            return null;
+        Card top = cards.getCards()[ring[head]];
+        if (top instanceof KeepableCard) {
+            inDeck[ring[head]] = false;
+            head = (head + 1) % ring.length;
+            size--;
+            updateOrderHash();
+        } else {
+            rotate();
+            drawn = (drawn + 1) % size;
+        }
         return top;
     }
 
     /**
-     * puts a card under the stack
+     * puts a card that was taken out of the deck under it
      * 
      * @param c
-     *            the card to put
+     *            the card to put; it must be a card of this deck that isn't
+     *            in it
+     * @throws IllegalArgumentException
+     *             if the card isn't out of this deck
      */
     public void putUnder(Card c) {
-        cardQueue.add(c);
+        int index = indexOutOfDeck(c);
+        if (index == -1)
+            throw new IllegalArgumentException("card is not out of the deck");
+        ring[(head + size) % ring.length] = index;
+        inDeck[index] = true;
+        size++;
+        updateOrderHash();
     }
 
-    @Override
-    public long createHash() {
+    /**
+     * @return the number of cards in the deck
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the cards in the order they will be drawn
+     */
+    Card[] getOrder() {
+        Card[] all = cards.getCards();
+        Card[] order = new Card[size];
+        for (int i = 0; i < size; i++)
+            order[i] = all[ring[(head + i) % ring.length]];
+        return order;
+    }
+
+    /**
+     * @return the number of cards drawn since the deck was last shuffled
+     *         (modulo the size of the deck)
+     */
+    int getDrawn() {
+        return drawn;
+    }
+
+    /**
+     * replaces the order of the cards (used when a whole game state is
+     * restored); the cards that aren't in the order are out of the deck
+     * 
+     * @param order
+     *            the cards in the order they will be drawn
+     * @param drawn
+     *            the number of cards drawn since the deck was last shuffled
+     */
+    void restore(Card[] order, int drawn) {
+        for (int i = 0; i < inDeck.length; i++)
+            inDeck[i] = false;
+        head = 0;
+        size = 0;
+        for (int i = 0; i < order.length; i++) {
+            int index = indexOutOfDeck(order[i]);
+            if (index != -1) {
+                ring[size++] = index;
+                inDeck[index] = true;
+            }
+        }
+        if (size == 0) {
+            updateOrderHash();
+            return;
+        }
+
+        // turn the deck back to the order after the shuffle for the hash,
+        // then draw the cards again
+        int rotation = drawn % size;
+        reverse(0, size);
+        reverse(0, rotation);
+        reverse(rotation, size);
+        updateOrderHash();
+        for (int i = 0; i < rotation; i++)
+            rotate();
+        this.drawn = rotation;
+    }
+
+    /**
+     * @return the pseudo-random number generator for the shuffles
+     */
+    GameRandom getRandom() {
+        return random;
+    }
+
+    /**
+     * replaces the pseudo-random number generator (used when a saved game is
+     * loaded)
+     * 
+     * @param random
+     *            the generator
+     */
+    void setRandom(GameRandom random) {
+        this.random = random;
+    }
+
+    /**
+     * moves the card on top of the deck under it
+     */
+    private void rotate() {
+        int top = ring[head];
+        head = (head + 1) % ring.length;
+        ring[(head + size - 1) % ring.length] = top;
+    }
+
+    /**
+     * reverses a part of {@link #ring}
+     * 
+     * @param from
+     *            the first position (inclusive)
+     * @param to
+     *            the last position (exclusive)
+     */
+    private void reverse(int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int swap = ring[i];
+            ring[i] = ring[j];
+            ring[j] = swap;
+        }
+    }
+
+    /**
+     * @param c
+     *            a card
+     * @return the index of the card in the collection, if it is out of the
+     *         deck, <code>-1</code> otherwise
+     */
+    private int indexOutOfDeck(Card c) {
+        Card[] all = cards.getCards();
+        for (int i = 0; i < all.length; i++) {
+            if (all[i] == c && !inDeck[i])
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * recalculates {@link #orderHash} from the current order of the cards
+     */
+    private void updateOrderHash() {
         final long prime = 472949829875983283L;
+        Card[] all = cards.getCards();
         long hash = 0;
-        for (int i = 0; i < cardQueue.size(); i++) {
-            hash += cardQueue.get(i).createHash();
+        for (int i = 0; i < size; i++) {
+            Card c = all[ring[(head + i) % ring.length]];
+            hash += c == null ? 0 : c.createHash();
             hash *= prime;
         }
-        return hash;
+        orderHash = hash;
+        drawn = 0;
+    }
+
+    /**
+     * returns the hash of the order of the cards
+     * 
+     * Drawing a card only rotates the deck, so the hash is derived from the
+     * order after the last shuffle and the number of cards drawn since then.
+     * This makes it constant time.
+     * 
+     * @see ch.winfor.monopoly.game.Hashable#createHash()
+     */
+    @Override
+    public long createHash() {
+        return StateHash.mix(orderHash + drawn);
     }
 }
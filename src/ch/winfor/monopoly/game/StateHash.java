@@ -0,0 +1,78 @@
+package ch.winfor.monopoly.game;
+
+/**
+ * keys for the incremental hash of the mutable state of a {@link Game}
+ * 
+ * Every feature of the game state (e.g. "player 2 has 1500 money" or "there
+ * are 3 houses on field 19") is mapped to a pseudo-random 64 bit key. The hash
+ * of a state is the sum of the keys of all its features, so when a feature
+ * changes, the hash can be updated in constant time by subtracting the old key
+ * and adding the new one. Sums are used instead of the usual xor so that
+ * features which occur twice (e.g. two identical cards) don't cancel each
+ * other out.
+ * 
+ * The keys only depend on their arguments, so they are the same in every
+ * virtual machine and can be compared over the network.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+final class StateHash {
+    /** key type for the wealth of a player */
+    static final int WEALTH = 1;
+
+    /** key type for the position of a player's piece */
+    static final int POSITION = 2;
+
+    /** key type for the jail rounds of a player */
+    static final int JAIL = 3;
+
+    /** key type for a field owned by a player */
+    static final int POSSESSION = 4;
+
+    /** key type for a card kept by a player */
+    static final int CARD = 5;
+
+    /** key type for the number of houses on a field */
+    static final int HOUSES = 6;
+
+    /** key type for the state of a card deck */
+    static final int DECK = 7;
+
+    /** key type for the name and color of a player */
+    static final int IDENTITY = 8;
+
+    /** key type for whose turn it is */
+    static final int TURN = 9;
+
+    private StateHash() {
+    }
+
+    /**
+     * creates the key of a feature
+     * 
+     * @param type
+     *            the type of the feature (one of the constants in this class)
+     * @param index
+     *            the index of the player, field or deck the feature belongs to
+     * @param value
+     *            the value of the feature
+     * @return the key
+     */
+    static long key(int type, int index, long value) {
+        return mix(mix(((long) type << 32) | (index & 0xFFFFFFFFL)) + value);
+    }
+
+    /**
+     * scrambles the bits of a value (finalizer of the SplitMix64 generator)
+     * 
+     * @param z
+     *            the value
+     * @return the scrambled value
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
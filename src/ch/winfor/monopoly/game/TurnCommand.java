@@ -0,0 +1,174 @@
+package ch.winfor.monopoly.game;
+
+import java.io.Serializable;
+
+/**
+ * immutable command executing one action of the {@link TurnHandler}
+ * 
+ * The command names the player who wants to act. If it isn't his turn
+ * anymore when the command is executed (e.g. because the command waited in
+ * the queue while the turn was ended by someone else), it does nothing.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class TurnCommand implements GameCommand, Serializable {
+    /** */
+    private static final long serialVersionUID = 7740963613278402275L;
+
+    /**
+     * the actions of a turn
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static enum Action {
+        /** see {@link TurnHandler#castDice()} */
+        CAST_DICE,
+
+        /** see {@link TurnHandler#movePiece()} */
+        MOVE_PIECE,
+
+        /** buy the property the player stands on */
+        BUY_PROPERTY,
+
+        /** don't buy the property the player stands on */
+        DECLINE_PROPERTY,
+
+        /** see {@link TurnHandler#payRent()} */
+        PAY_RENT,
+
+        /** see {@link TurnHandler#payTax()} */
+        PAY_TAX,
+
+        /** see {@link TurnHandler#drawCard()} */
+        DRAW_CARD,
+
+        /** see {@link TurnHandler#followCard()} */
+        FOLLOW_CARD,
+
+        /** build a house on the field of the command */
+        BUY_HOUSE,
+
+        /** see {@link TurnHandler#endTurn()} */
+        END_TURN
+    }
+
+    /** the index of the player who acts */
+    private final int player;
+
+    /** the action */
+    private final Action action;
+
+    /** the index of the field for {@link Action#BUY_HOUSE}, otherwise -1 */
+    private final int field;
+
+    /**
+     * @param player
+     *            the index of the player who acts
+     * @param action
+     *            the action; not {@link Action#BUY_HOUSE}, which needs a
+     *            field
+     */
+    public TurnCommand(int player, Action action) {
+        this(player, action, -1);
+    }
+
+    /**
+     * @param player
+     *            the index of the player who acts
+     * @param action
+     *            the action
+     * @param field
+     *            the index of the field to build a house on for
+     *            {@link Action#BUY_HOUSE}
+     */
+    public TurnCommand(int player, Action action, int field) {
+        if (action == null)
+            throw new NullPointerException("action");
+        this.player = player;
+        this.action = action;
+        this.field = field;
+    }
+
+    /**
+     * @return the index of the player who acts
+     */
+    public int getPlayer() {
+        return player;
+    }
+
+    /**
+     * @return the action
+     */
+    public Action getAction() {
+        return action;
+    }
+
+    /**
+     * @return the index of the field to build a house on, -1 if the action
+     *         isn't {@link Action#BUY_HOUSE}
+     */
+    public int getField() {
+        return field;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.game.GameCommand#execute(ch.winfor.monopoly.game.Game)
+     */
+    @Override
+    public void execute(Game game) {
+        if (game.getTurn() != player)
+            return;
+        TurnHandler th = game.getTurnHandler();
+        switch (action) {
+        case CAST_DICE:
+            th.castDice();
+            break;
+        case MOVE_PIECE:
+            th.movePiece();
+            break;
+        case BUY_PROPERTY:
+            th.buyProperty(true);
+            break;
+        case DECLINE_PROPERTY:
+            th.buyProperty(false);
+            break;
+        case PAY_RENT:
+            th.payRent();
+            break;
+        case PAY_TAX:
+            th.payTax();
+            break;
+        case DRAW_CARD:
+            th.drawCard();
+            break;
+        case FOLLOW_CARD:
+            th.followCard();
+            break;
+        case BUY_HOUSE:
+            Field f = field >= 0 && field < game.getBoard().getAbsoluteLength() ? game
+                    .getBoard().getField(field) : null;
+            if (f instanceof PropertyField)
+                th.buyHouse((PropertyField) f);
+            break;
+        case END_TURN:
+            th.endTurn();
+            break;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        return "player " + player + ": " + action
+                + (field != -1 ? " " + field : "");
+    }
+}
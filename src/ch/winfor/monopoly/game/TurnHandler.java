@@ -1,10 +1,12 @@
 package ch.winfor.monopoly.game;
 
 import java.io.Serializable;
+import java.util.Locale;
 
-import ch.winfor.monopoly.game.Field.GoToJailField;
 import ch.winfor.monopoly.game.Field.JailField;
-import ch.winfor.monopoly.game.Field.StartField;
+import ch.winfor.monopoly.game.TurnCommand.Action;
+import ch.winfor.monopoly.metrics.Metrics;
+import ch.winfor.monopoly.metrics.Timer;
 
 /**
  * handler for a turn
@@ -16,6 +18,18 @@ public class TurnHandler implements Serializable, Hashable {
     /** */
     private static final long serialVersionUID = -5094959225562941291L;
 
+    /** the calls and durations of the actions, by {@link Action#ordinal()} */
+    private static final Timer[] ACTION_DURATIONS = new Timer[Action
+            .values().length];
+
+    static {
+        for (Action action : Action.values()) {
+            String name = action.name().toLowerCase(Locale.ROOT);
+            ACTION_DURATIONS[action.ordinal()] = Metrics.timer("game.action."
+                    + name + ".nanos");
+        }
+    }
+
     /** reference to the game */
     private transient Game game;
 
@@ -42,6 +56,29 @@ public class TurnHandler implements Serializable, Hashable {
         startTurn();
     }
 
+    /**
+     * restores a turn handler in the middle of a turn
+     * 
+     * @param game
+     *            the parent game
+     * @param turn
+     *            the index of the player whose turn it is
+     * @param lastCast
+     *            the result of the last throw, may be <code>null</code>
+     * @param drawnCard
+     *            the card drawn this turn, may be <code>null</code>
+     * @param nextTask
+     *            the next task of the player
+     */
+    TurnHandler(Game game, int turn, int[] lastCast, Card drawnCard,
+            TurnTask nextTask) {
+        this.game = game;
+        this.turn = turn;
+        this.lastCast = lastCast;
+        this.drawnCard = drawnCard;
+        this.nextTask = nextTask;
+    }
+
     /**
      * initializes the turn handler at the start of the turn
      */
@@ -63,20 +100,23 @@ public class TurnHandler implements Serializable, Hashable {
      *         anything throws the dice
      */
     public int[] castDice() {
-        if (getNextTask() == TurnTask.CAST_DICE) {
-            lastCast = new int[] { game.getRandom().nextInt(6) + 1,
-                    game.getRandom().nextInt(6) + 1 };
-
-            Player player = getPlayer();
-            if (player.isInJail()) {
-                if (doublesCast())
-                    nextTask = TurnTask.MOVE_PLAYING_PIECE;
-                else
-                    nextTask = TurnTask.END_TURN;
-            } else {
-                nextTask = TurnTask.MOVE_PLAYING_PIECE;
-            }
+        TurnCommand command = new TurnCommand(turn, Action.CAST_DICE);
+        if (!isAllowed(command))
+            return lastCast;
+        long start = start(command);
+        lastCast = new int[] { game.getRandom().nextInt(6) + 1,
+                game.getRandom().nextInt(6) + 1 };
+
+        Player player = getPlayer();
+        if (player.isInJail()) {
+            if (doublesCast())
+                setNextTask(TurnTask.MOVE_PLAYING_PIECE);
+            else
+                setNextTask(TurnTask.END_TURN);
+        } else {
+            setNextTask(TurnTask.MOVE_PLAYING_PIECE);
         }
+        taken(command, start);
         return lastCast;
     }
 
@@ -84,19 +124,20 @@ public class TurnHandler implements Serializable, Hashable {
      * moves the piece of the current player
      */
     public void movePiece() {
-        if (nextTask == TurnTask.MOVE_PLAYING_PIECE) {
-            Player player = game.getPlayer(turn);
-            PlayingPiece piece = player.getPiece();
-            int positionBefore = piece.getPosition();
-            game.movePiece(turn, getLastCastValue());
-            int positionAfter = piece.getPosition();
+        TurnCommand command = new TurnCommand(turn, Action.MOVE_PIECE);
+        if (!isAllowed(command))
+            return;
+        long start = start(command);
+        Player player = game.getPlayer(turn);
+        PlayingPiece piece = player.getPiece();
+        int positionBefore = piece.getPosition();
+        game.movePiece(turn, getLastCastValue());
+        int positionAfter = piece.getPosition();
 
-            payStartMoney(positionBefore, positionAfter);
+        payStartMoney(positionBefore, positionAfter);
 
-            int position = piece.getPosition();
-            Field landed = game.getBoard().getField(position);
-            landedOnField(landed);
-        }
+        landedOnField(piece.getPosition());
+        taken(command, start);
     }
 
     /**
@@ -109,48 +150,73 @@ public class TurnHandler implements Serializable, Hashable {
      *            end of the interval
      */
     public void payStartMoney(int positionBefore, int positionAfter) {
-        Board board = game.getBoard();
+        CompiledBoard board = game.getBoard().getCompiled();
         Player player = game.getPlayer(turn);
-        for (int i = positionBefore + 1; (i % board.getAbsoluteLength()) != positionAfter; i++) {
-            int pos = i % board.getAbsoluteLength();
-            Field field = board.getField(pos);
-            if (field instanceof StartField) {
-                StartField startField = (StartField) field;
-                player.pay(startField.getPassMoney());
-            }
+        int length = board.getLength();
+        for (int i = positionBefore + 1; (i % length) != positionAfter; i++) {
+            int pos = i % length;
+            if (board.getKind(pos) == CompiledBoard.KIND_START)
+                player.pay(board.getPassMoney(pos));
         }
     }
 
+    /**
+     * sets the next task after the current player landed on a field
+     * 
+     * @param landed
+     *            the field
+     */
     public void landedOnField(Field landed) {
-        if (landed instanceof BuyableField) {
-            BuyableField buyableLanded = (BuyableField) landed;
-            if (game.freeToBuy(buyableLanded)) {
-                nextTask = TurnTask.BUY_PROPERTY;
+        int position = game.getBoard().getFieldIndex(landed);
+        if (position != -1)
+            landedOnField(position);
+        else
+            setNextTask(TurnTask.END_TURN);
+    }
+
+    /**
+     * sets the next task after the current player landed on a field
+     * 
+     * @param position
+     *            the index of the field
+     */
+    public void landedOnField(int position) {
+        CompiledBoard board = game.getBoard().getCompiled();
+        switch (board.getKind(position)) {
+        case CompiledBoard.KIND_PROPERTY:
+        case CompiledBoard.KIND_RAILROAD:
+        case CompiledBoard.KIND_COMPANY:
+        case CompiledBoard.KIND_BUYABLE:
+            Player owner = game.getOwner(position);
+            if (owner == null) {
+                setNextTask(TurnTask.BUY_PROPERTY);
             } else {
-                if (game.getOwner(buyableLanded) == getPlayer())
-                    nextTask = TurnTask.END_TURN;
+                if (owner == getPlayer())
+                    setNextTask(TurnTask.END_TURN);
                 else
-                    nextTask = TurnTask.PAY_RENT;
+                    setNextTask(TurnTask.PAY_RENT);
             }
-        } else if (landed instanceof DrawCardField) {
-            nextTask = TurnTask.DRAW_CARD;
-        } else if (landed instanceof TaxField) {
-            nextTask = TurnTask.PAY_TAX;
-        } else if (landed instanceof StartField) {
-            Player player = game.getPlayer(turn);
-            player.pay(((StartField) landed).getVisitMoney());
-            nextTask = TurnTask.END_TURN;
-        } else if (landed instanceof GoToJailField) {
-            Board board = game.getBoard();
-            JailField jail = board.getJailField();
-            int jailIndex = board.getFieldIndex(jail);
+            break;
+        case CompiledBoard.KIND_CARD:
+            setNextTask(TurnTask.DRAW_CARD);
+            break;
+        case CompiledBoard.KIND_TAX:
+            setNextTask(TurnTask.PAY_TAX);
+            break;
+        case CompiledBoard.KIND_START:
+            game.getPlayer(turn).pay(board.getVisitMoney(position));
+            setNextTask(TurnTask.END_TURN);
+            break;
+        case CompiledBoard.KIND_GO_TO_JAIL:
             Player player = game.getPlayer(turn);
             player.setInJailRounds(JailField.STANDARD_STAY);
             PlayingPiece piece = game.getPiece(turn);
-            piece.setPosition(jailIndex);
-            nextTask = TurnTask.END_TURN;
-        } else {
-            nextTask = TurnTask.END_TURN;
+            piece.setPosition(board.getJailIndex());
+            setNextTask(TurnTask.END_TURN);
+            break;
+        default:
+            setNextTask(TurnTask.END_TURN);
+            break;
         }
     }
 
@@ -166,25 +232,20 @@ public class TurnHandler implements Serializable, Hashable {
      *         <code>false</code> otherwise
      */
     public boolean buyProperty(boolean buy) {
-        boolean bought = false;
-        Player player = game.getPlayer(turn);
-        PlayingPiece piece = player.getPiece();
-        int position = piece.getPosition();
-        Field f = game.getBoard().getField(position);
-        if (f instanceof BuyableField && buy) {
-            BuyableField buyableField = (BuyableField) f;
-            if (player.getWealth() >= buyableField.getPrice()) {
-                player.charge(buyableField.getPrice());
-                player.addPossession(buyableField);
-                bought = true;
-            }
-        }
-
-        if (buy == bought) {
-            nextTask = TurnTask.END_TURN;
+        TurnCommand command = new TurnCommand(turn,
+                buy ? Action.BUY_PROPERTY : Action.DECLINE_PROPERTY);
+        if (!isAllowed(command))
+            return false;
+        long start = start(command);
+        if (buy) {
+            BuyableField buyableField = getPropertyToBuy();
+            Player player = game.getPlayer(turn);
+            player.charge(buyableField.getPrice());
+            player.addPossession(buyableField);
         }
-
-        return bought;
+        setNextTask(TurnTask.END_TURN);
+        taken(command, start);
+        return buy;
     }
 
     /**
@@ -225,22 +286,17 @@ public class TurnHandler implements Serializable, Hashable {
      *         property, it's not even his turn...)
      */
     public boolean buyHouse(PropertyField propertyField) {
-        Player player = game.getPlayer(turn);
-        long housePrice = propertyField.getHousePrice();
-
-        boolean bought = false;
-
-        if (player.getWealth() >= housePrice) {
-            Board board = getGame().getBoard();
-            int fieldIndex = board.getFieldIndex(propertyField);
-            if (fieldIndex != -1) {
-                if (getGame().addHouse(fieldIndex)) {
-                    player.charge(housePrice);
-                    bought = true;
-                }
-            }
+        int fieldIndex = game.getBoard().getFieldIndex(propertyField);
+        TurnCommand command = new TurnCommand(turn, Action.BUY_HOUSE,
+                fieldIndex);
+        if (!isAllowed(command))
+            return false;
+        long start = start(command);
+        boolean bought = game.addHouse(fieldIndex);
+        if (bought) {
+            game.getPlayer(turn).charge(propertyField.getHousePrice());
+            taken(command, start);
         }
-
         return bought;
     }
 
@@ -250,18 +306,22 @@ public class TurnHandler implements Serializable, Hashable {
      * @return a card drawn from the stack
      */
     public Card drawCard() {
-        if (getNextTask() == TurnTask.DRAW_CARD) {
-            Player player = game.getPlayer(turn);
-            Field field = game.getFieldOfPlayer(player);
+        TurnCommand command = new TurnCommand(turn, Action.DRAW_CARD);
+        if (!isAllowed(command))
+            return null;
+        long start = start(command);
+        Player player = game.getPlayer(turn);
+        Field field = game.getFieldOfPlayer(player);
 
-            nextTask = TurnTask.FOLLOW_CARD;
-            if (field instanceof DrawCardField) {
-                String deckName = field.getName();
-                drawnCard = game.drawCard(deckName);
-                return drawnCard;
-            }
+        Card card = null;
+        setNextTask(TurnTask.FOLLOW_CARD);
+        if (field instanceof DrawCardField) {
+            String deckName = field.getName();
+            drawnCard = game.drawCard(deckName);
+            card = drawnCard;
         }
-        return null;
+        taken(command, start);
+        return card;
     }
 
     /**
@@ -276,11 +336,16 @@ public class TurnHandler implements Serializable, Hashable {
      * follows the instructions on the drawn card
      */
     public void followCard() {
+        TurnCommand command = new TurnCommand(turn, Action.FOLLOW_CARD);
+        if (!isAllowed(command))
+            return;
+        long start = start(command);
         if (drawnCard != null)
             drawnCard.execute(this);
         if (nextTask == TurnTask.FOLLOW_CARD) {
-            nextTask = TurnTask.END_TURN;
+            setNextTask(TurnTask.END_TURN);
         }
+        taken(command, start);
     }
 
     /**
@@ -290,15 +355,19 @@ public class TurnHandler implements Serializable, Hashable {
      *         he has to pay a tax, <code>false</code> otherwise
      */
     public boolean payTax() {
+        TurnCommand command = new TurnCommand(turn, Action.PAY_TAX);
+        if (!isAllowed(command))
+            return false;
         Player player = getPlayer();
-        Field field = game.getFieldOfPlayer(player);
-        if (field instanceof TaxField) {
-            TaxField taxField = (TaxField) field;
-            player.charge(taxField.getTaxAmount());
-            nextTask = TurnTask.END_TURN;
-            return true;
-        }
-        return false;
+        CompiledBoard board = game.getBoard().getCompiled();
+        int position = player.getPiece().getPosition();
+        if (board.getKind(position) != CompiledBoard.KIND_TAX)
+            return false;
+        long start = start(command);
+        player.charge(board.getTax(position));
+        setNextTask(TurnTask.END_TURN);
+        taken(command, start);
+        return true;
     }
 
     /**
@@ -308,21 +377,23 @@ public class TurnHandler implements Serializable, Hashable {
      * @return <code>true</code>, if the rent was payed
      */
     public boolean payRent() {
-        if (nextTask == TurnTask.PAY_RENT) {
-            Player player = getPlayer();
-            Field field = game.getFieldOfPlayer(player);
-            if (field instanceof BuyableField) {
-                Player owner = game.getOwner((BuyableField) field);
-                if (owner != null) {
-                    long rent = calculateRent();
-                    player.charge(rent);
-                    owner.charge(-rent);
-                }
-                nextTask = TurnTask.END_TURN;
-                return true;
-            }
+        TurnCommand command = new TurnCommand(turn, Action.PAY_RENT);
+        if (!isAllowed(command))
+            return false;
+        Player player = getPlayer();
+        int position = player.getPiece().getPosition();
+        if (!game.getBoard().getCompiled().isBuyable(position))
+            return false;
+        long start = start(command);
+        Player owner = game.getOwner(position);
+        if (owner != null) {
+            long rent = calculateRent();
+            player.charge(rent);
+            owner.charge(-rent);
         }
-        return false;
+        setNextTask(TurnTask.END_TURN);
+        taken(command, start);
+        return true;
     }
 
     /**
@@ -331,29 +402,32 @@ public class TurnHandler implements Serializable, Hashable {
     public long calculateRent() {
         long rent = 0;
         Player player = getPlayer();
-        Field field = game.getFieldOfPlayer(player);
-        if (field instanceof BuyableField) {
-            Player owner = game.getOwner((BuyableField) field);
-            if (field instanceof PropertyField && owner != null) {
-                PropertyField propertyField = (PropertyField) field;
-                int houses = game.getHousesOn(field);
-                rent = propertyField.getRent(houses);
-            } else if (field instanceof RailroadField) {
-                RailroadField railroadField = (RailroadField) field;
-                int railroadsOwned = game.getNRailroadsOwned(owner);
-                if (railroadsOwned > 0
-                        && railroadsOwned <= railroadField.getMaxRailroads()) {
-                    rent = railroadField.getRent(railroadsOwned);
-                }
-            } else if (field instanceof CompanyField) {
-                CompanyField companyField = (CompanyField) field;
-                int companiesOwned = game.getNCompaniesOwned(owner);
-                if (companiesOwned > 0
-                        && companiesOwned <= companyField.getMaxCompanies()) {
-                    rent = companyField.getRentMultiplicator(companiesOwned)
-                            * getLastCastValue();
-                }
+        int position = player.getPiece().getPosition();
+        CompiledBoard board = game.getBoard().getCompiled();
+        switch (board.getKind(position)) {
+        case CompiledBoard.KIND_PROPERTY:
+            if (game.getOwner(position) != null)
+                rent = board.getRent(position, game.getHousesOn(position));
+            break;
+        case CompiledBoard.KIND_RAILROAD:
+            int railroadsOwned = game.getNRailroadsOwned(game
+                    .getOwner(position));
+            if (railroadsOwned > 0
+                    && railroadsOwned <= board.getNRents(position)) {
+                rent = board.getRent(position, railroadsOwned - 1);
             }
+            break;
+        case CompiledBoard.KIND_COMPANY:
+            int companiesOwned = game.getNCompaniesOwned(game
+                    .getOwner(position));
+            if (companiesOwned > 0
+                    && companiesOwned <= board.getNRents(position)) {
+                rent = board.getRent(position, companiesOwned - 1)
+                        * getLastCastValue();
+            }
+            break;
+        default:
+            break;
         }
         return rent;
     }
@@ -365,15 +439,109 @@ public class TurnHandler implements Serializable, Hashable {
      *         <code>false</code> otherwise
      */
     public boolean endTurn() {
-        if (nextTask == TurnTask.END_TURN) {
-            nextTask = TurnTask.TURN_FINISHED;
-            game.nextTurn();
-            return true;
-        } else {
+        TurnCommand command = new TurnCommand(turn, Action.END_TURN);
+        if (!isAllowed(command))
+            return false;
+        long start = start(command);
+        setNextTask(TurnTask.TURN_FINISHED);
+        game.nextTurn();
+        taken(command, start);
+        return true;
+    }
+
+    /**
+     * checks if an action may be taken now
+     * 
+     * It must be the turn of the player of the command, and the action must
+     * be the next task of the turn (see {@link #getNextTask()}); a property
+     * can only be bought if the player has enough money. Houses can be bought
+     * at any time of the turn, but only on a property of the player that
+     * hasn't got the maximum number of houses yet. The actions of the turn
+     * handler do nothing if they aren't allowed, and the server uses this to
+     * accept only the actions of its clients that change the game.
+     * 
+     * @param command
+     *            the action
+     * @return <code>true</code>, if the action may be taken
+     */
+    public boolean isAllowed(TurnCommand command) {
+        if (command.getPlayer() != turn || game.getTurn() != turn)
+            return false;
+        switch (command.getAction()) {
+        case CAST_DICE:
+            return nextTask == TurnTask.CAST_DICE;
+        case MOVE_PIECE:
+            return nextTask == TurnTask.MOVE_PLAYING_PIECE;
+        case BUY_PROPERTY:
+            return nextTask == TurnTask.BUY_PROPERTY
+                    && getPlayer().getWealth() >= propertyPrice();
+        case DECLINE_PROPERTY:
+            return nextTask == TurnTask.BUY_PROPERTY;
+        case PAY_RENT:
+            return nextTask == TurnTask.PAY_RENT;
+        case PAY_TAX:
+            return nextTask == TurnTask.PAY_TAX;
+        case DRAW_CARD:
+            return nextTask == TurnTask.DRAW_CARD;
+        case FOLLOW_CARD:
+            return nextTask == TurnTask.FOLLOW_CARD;
+        case BUY_HOUSE:
+            return nextTask != TurnTask.TURN_FINISHED
+                    && canBuyHouse(command.getField());
+        case END_TURN:
+            return nextTask == TurnTask.END_TURN;
+        default:
             return false;
         }
     }
 
+    /**
+     * @param fieldIndex
+     *            the index of a field
+     * @return <code>true</code>, if the current player can build a house on
+     *         the field
+     */
+    private boolean canBuyHouse(int fieldIndex) {
+        Board board = game.getBoard();
+        if (fieldIndex < 0 || fieldIndex >= board.getAbsoluteLength())
+            return false;
+        Field field = board.getField(fieldIndex);
+        Player player = getPlayer();
+        return field instanceof PropertyField
+                && game.getOwner(fieldIndex) == player
+                && game.getHousesOn(fieldIndex) < board.getMaxHouses()
+                && player.getWealth() >= ((PropertyField) field)
+                        .getHousePrice();
+    }
+
+    /**
+     * starts measuring an action
+     * 
+     * @param command
+     *            the action that has been allowed
+     * @return the start time of the action for {@link #taken}
+     */
+    private long start(TurnCommand command) {
+        return ACTION_DURATIONS[command.getAction().ordinal()].start();
+    }
+
+    /**
+     * counts an action that has been applied in the metrics and appends it
+     * to the {@link ActionLog} of the game
+     * 
+     * Only the actions that changed the game are recorded, so replaying the
+     * log or the actions sent to lockstep clients never repeats a no-op.
+     * 
+     * @param command
+     *            the action
+     * @param start
+     *            the start time returned by {@link #start(TurnCommand)}
+     */
+    private void taken(TurnCommand command, long start) {
+        ACTION_DURATIONS[command.getAction().ordinal()].stop(start);
+        game.recordAction(command);
+    }
+
     /**
      * @return the value of the two dice values combined
      */
@@ -395,6 +563,35 @@ public class TurnHandler implements Serializable, Hashable {
         return nextTask;
     }
 
+    /**
+     * sets the next task and notifies the {@link TurnTaskListener}s of the
+     * game if it has changed
+     * 
+     * @param task
+     *            the next task
+     */
+    private void setNextTask(TurnTask task) {
+        TurnTask oldTask = nextTask;
+        nextTask = task;
+        if (oldTask != task && game != null)
+            game.fireTurnTaskChanged(this, oldTask);
+    }
+
+    /**
+     * @return the result of the last throw or <code>null</code> if the dice
+     *         haven't been cast yet
+     */
+    int[] getLastCast() {
+        return lastCast;
+    }
+
+    /**
+     * @return the index of the player whose turn it is
+     */
+    int getTurn() {
+        return turn;
+    }
+
     /**
      * @return the player, whose turn it is currently
      */
@@ -478,4 +675,27 @@ public class TurnHandler implements Serializable, Hashable {
         /** the player can't do anything anymore; he has to end his turn */
         TURN_FINISHED
     }
+
+    /**
+     * listener interface for the changes of the next task of the current turn
+     * 
+     * The listeners are registered at the {@link Game}, because a new turn
+     * handler is created for every turn. The start of a turn is not reported
+     * as a task change; it is announced by
+     * {@link GameListener#playerEndedTurn(Game, int)}.
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static interface TurnTaskListener extends EventListener {
+        /**
+         * invoked when the next task of the current turn has changed
+         * 
+         * @param sender
+         *            the turn handler of the current turn
+         * @param oldTask
+         *            the task before the change
+         */
+        public void turnTaskChanged(TurnHandler sender, TurnTask oldTask);
+    }
 }
@@ -6,16 +6,21 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 
 import javax.swing.JPanel;
 
+import ch.winfor.monopoly.Freeable;
+import ch.winfor.monopoly.Language;
+import ch.winfor.monopoly.Language.LanguageListener;
 import ch.winfor.monopoly.game.Board;
 import ch.winfor.monopoly.game.BuyableField;
 import ch.winfor.monopoly.game.Card;
@@ -28,10 +33,17 @@ import ch.winfor.monopoly.game.PlayingPiece;
 /**
  * panel displaying the whole playing board of a game
  * 
+ * The panel is drawn in two layers. The board layer contains the images of
+ * all fields and is only created again when the size of the panel or the
+ * language changes. On top of it, the houses, the owners and the playing
+ * pieces are drawn on every repaint. Game events only repaint the fields they
+ * concern.
+ * 
  * @author Nicolas Winkler
  * 
  */
-public class BoardPanel extends JPanel implements GameListener, MouseListener {
+public class BoardPanel extends JPanel implements GameListener, MouseListener,
+        LanguageListener, Freeable {
     private static final long serialVersionUID = -7081424827169475469L;
 
     /** the standard background color of of the board */
@@ -47,6 +59,24 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
     /** the displayed images of the fields */
     private FieldImage[] fields;
 
+    /** the image of all fields, drawn below everything else */
+    private BufferedImage boardLayer;
+
+    /** if {@link #boardLayer} has to be created again */
+    private volatile boolean boardLayerInvalid;
+
+    /** the area covered by every field on the panel */
+    private volatile Rectangle[] fieldBounds;
+
+    /** the radius of a playing piece in pixels */
+    private static final int PIECE_RADIUS = 10;
+
+    /** horizontal offset between two pieces on the same field */
+    private static final int PIECE_X_OFFSET = 5;
+
+    /** vertical offset between two pieces on the same field */
+    private static final int PIECE_Y_OFFSET = 7;
+
     /** subscribers to events of this board panel */
     private List<BoardPanelListener> boardPanelListers;
 
@@ -66,6 +96,7 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
         boardPanelListers = new ArrayList<BoardPanelListener>();
 
         this.addMouseListener(this);
+        Language.getInstance().addLanguageListener(this);
     }
 
     /**
@@ -80,10 +111,24 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
      *            the game to set
      */
     public void setGame(Game game) {
-        if (game != null)
-            game.removeGameListener(this);
+        if (this.game != null)
+            this.game.removeGameListener(this);
         this.game = game;
         game.addGameListener(this);
+        fields = new FieldImage[game.getBoard().getAbsoluteLength()];
+        boardLayerInvalid = true;
+        repaint();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see ch.winfor.monopoly.Freeable#free()
+     */
+    @Override
+    public void free() {
+        game.removeGameListener(this);
+        Language.getInstance().removeLanguageListener(this);
     }
 
     /*
@@ -96,14 +141,33 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
         // g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
         // RenderingHints.VALUE_ANTIALIAS_ON);
 
-        g2d.setBackground(STANDARD_BACKGROUND_COLOR);
-        g2d.clearRect(0, 0, getWidth(), getHeight());
+        if (boardLayerInvalid || boardLayer == null
+                || boardLayer.getWidth() != Math.max(1, getWidth())
+                || boardLayer.getHeight() != Math.max(1, getHeight()))
+            buildBoardLayer();
 
-        trackWidth = (int) (Math.min(getWidth(), getHeight()) / 7.5);
+        g2d.drawImage(boardLayer, 0, 0, null);
+        displayFieldStates(g2d, g2d.getClipBounds());
+        displayPlayingPieces(g2d);
+    }
 
+    /**
+     * creates the images of the fields for the current size of the panel and
+     * draws them onto the board layer
+     */
+    private void buildBoardLayer() {
+        boardLayerInvalid = false;
+        trackWidth = (int) (Math.min(getWidth(), getHeight()) / 7.5);
         buildFields();
-        displayFields(g2d);
-        displayPlayingPieces(g2d);
+        fieldBounds = calculateFieldBounds();
+
+        boardLayer = new BufferedImage(Math.max(1, getWidth()), Math.max(1,
+                getHeight()), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = boardLayer.createGraphics();
+        g.setBackground(STANDARD_BACKGROUND_COLOR);
+        g.clearRect(0, 0, boardLayer.getWidth(), boardLayer.getHeight());
+        displayFields(g);
+        g.dispose();
     }
 
     private void buildFields() {
@@ -164,12 +228,7 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
 
         Board board = game.getBoard();
         AffineTransform at = g.getTransform();
-        g.rotate((flankIndex + 2) * Math.PI / 2, getWidth() * 0.5,
-                getHeight() * 0.5);
-        if ((flankIndex & 1) != 0) {
-            g.translate((getWidth() - getHeight()) * 0.5,
-                    -(getWidth() - getHeight()) * 0.5);
-        }
+        g.transform(getFlankTransform(flankIndex));
 
         int fieldsOffset = flankIndex * board.getFlankLength();
         for (int i = 0; i < board.getFlankLength(); i++) {
@@ -197,6 +256,91 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
         g.setTransform(at);
     }
 
+    /**
+     * @param flankIndex
+     *            the index of a flank
+     * @return the transformation from the system of the flank into the
+     *         system of the panel
+     */
+    private AffineTransform getFlankTransform(int flankIndex) {
+        AffineTransform at = new AffineTransform();
+        at.rotate((flankIndex + 2) * Math.PI / 2, getWidth() * 0.5,
+                getHeight() * 0.5);
+        if ((flankIndex & 1) != 0) {
+            at.translate((getWidth() - getHeight()) * 0.5,
+                    -(getWidth() - getHeight()) * 0.5);
+        }
+        return at;
+    }
+
+    /**
+     * @return the area every field covers on the panel
+     */
+    private Rectangle[] calculateFieldBounds() {
+        int flankLength = game.getBoard().getFlankLength();
+        Rectangle[] bounds = new Rectangle[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            FieldImage field = fields[i];
+            Rectangle area = new Rectangle(field.getX() - field.getWidth(),
+                    field.getY() - field.getHeight(), field.getWidth(),
+                    field.getHeight());
+            bounds[i] = getFlankTransform(i / flankLength)
+                    .createTransformedShape(area).getBounds();
+        }
+        return bounds;
+    }
+
+    /**
+     * draws the houses and the owners of the fields
+     * 
+     * @param g
+     *            the graphics to draw onto
+     * @param clip
+     *            the area that has to be drawn or <code>null</code> to draw
+     *            all fields
+     */
+    private void displayFieldStates(Graphics2D g, Rectangle clip) {
+        Board board = game.getBoard();
+        Rectangle[] bounds = fieldBounds;
+        int flankLength = board.getFlankLength();
+        AffineTransform at = g.getTransform();
+
+        for (int i = 0; i < fields.length; i++) {
+            if (!(board.getField(i) instanceof BuyableField))
+                continue;
+            if (clip != null && bounds != null && !clip.intersects(bounds[i]))
+                continue;
+            Player owner = game.getOwner(i);
+            if (owner == null && game.getHousesOn(i) == 0)
+                continue;
+
+            g.transform(getFlankTransform(i / flankLength));
+            fields[i].displayState(g, owner != null ? owner.getPiece()
+                    .getColor() : null);
+            g.setTransform(at);
+        }
+    }
+
+    /**
+     * repaints the area of a field, including the playing pieces that may
+     * stick out of it
+     * 
+     * @param fieldIndex
+     *            the index of the field
+     */
+    private void repaintField(int fieldIndex) {
+        Rectangle[] bounds = fieldBounds;
+        if (bounds == null || fieldIndex < 0 || fieldIndex >= bounds.length) {
+            repaint();
+            return;
+        }
+        int margin = PIECE_RADIUS
+                + Math.max(PIECE_X_OFFSET, PIECE_Y_OFFSET) * game.getNPlayers();
+        Rectangle area = bounds[fieldIndex];
+        repaint(area.x - margin, area.y - margin, area.width + 2 * margin,
+                area.height + 2 * margin);
+    }
+
     /**
      * draws the playing pieces
      * 
@@ -232,11 +376,8 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
         float x = fields[index].getCenterX();
         float y = fields[index].getCenterY();
 
-        final int xMultiplier = 5;
-        final int yMultiplier = 7;
-
-        x -= number * xMultiplier;
-        y -= number * yMultiplier;
+        x -= number * PIECE_X_OFFSET;
+        y -= number * PIECE_Y_OFFSET;
 
         int flankLength = game.getBoard().getFlankLength();
         int flank = index / flankLength;
@@ -244,13 +385,10 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
 
         AffineTransform at = g.getTransform();
 
-        g.rotate((flank + 2) * Math.PI / 2, getWidth() * 0.5, getHeight() * 0.5);
-        if ((flank & 1) != 0) {
-            g.translate((getWidth() - getHeight()) * 0.5,
-                    -(getWidth() - getHeight()) * 0.5);
-        }
+        g.transform(getFlankTransform(flank));
         g.setColor(piece.getColor());
-        g.fillOval((int) x - 10, (int) y - 10, 20, 20);
+        g.fillOval((int) x - PIECE_RADIUS, (int) y - PIECE_RADIUS,
+                2 * PIECE_RADIUS, 2 * PIECE_RADIUS);
 
         g.setTransform(at);
     }
@@ -292,17 +430,7 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
      *            the desired flank
      */
     private void rotatePoint(Point pt, int flank) {
-
-        AffineTransform at = new AffineTransform();
-
-        at.rotate((flank + 2) * Math.PI / 2, getWidth() * 0.5,
-                getHeight() * 0.5);
-
-        if ((flank & 1) != 0) {
-            at.translate((getWidth() - getHeight()) * 0.5,
-                    -(getWidth() - getHeight()) * 0.5);
-        }
-
+        AffineTransform at = getFlankTransform(flank);
         try {
             at.inverseTransform(pt, pt);
         } catch (NoninvertibleTransformException e) {
@@ -399,7 +527,8 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
 
     @Override
     public void playingPieceMoved(Game sender, int pieceIndex, int oldPosition) {
-        repaint();
+        repaintField(oldPosition);
+        repaintField(sender.getPiece(pieceIndex).getPosition());
     }
 
     @Override
@@ -422,6 +551,7 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
 
     @Override
     public void playerObtained(Game sender, Player player, BuyableField field) {
+        repaintField(sender.getBoard().getFieldIndex(field));
     }
 
     @Override
@@ -430,13 +560,26 @@ public class BoardPanel extends JPanel implements GameListener, MouseListener {
 
     @Override
     public void houseNumberChanged(Game sender, int position, int oldValue) {
-        repaint();
+        repaintField(position);
     }
 
     @Override
     public void cardDrawn(Game sender, String deckName, Card c) {
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.Language.LanguageListener#languageChanged(ch.winfor
+     * .monopoly.Language)
+     */
+    @Override
+    public void languageChanged(Language sender) {
+        boardLayerInvalid = true;
+        repaint();
+    }
+
     /**
      * listener interface for catching events sent from the board panel
      * 
@@ -28,6 +28,11 @@ import ch.winfor.monopoly.game.PropertyField;
  * should be drawn upside down, and the other parts are rotated so they too are
  * displayed correctly.)
  * 
+ * The image only contains what doesn't change during a game. The houses and
+ * the owner of the field are drawn separately by
+ * {@link #displayState(Graphics2D, Color)}, so the image doesn't have to be
+ * created again when they change.
+ * 
  * @author Nicolas Winkler
  * 
  */
@@ -126,6 +131,7 @@ public class FieldImage {
         } else {
             drawCaption(g);
         }
+        g.dispose();
     }
 
     /**
@@ -176,8 +182,6 @@ public class FieldImage {
         g.setStroke(new BasicStroke(2.0f));
         g.drawLine(1, height - 1, getWidth() - 1, height - 1);
         g.setStroke(s);
-
-        drawHouses(g);
     }
 
     /**
@@ -392,6 +396,37 @@ public class FieldImage {
                 null);
     }
 
+    /**
+     * draws the houses on the field and a marker in the color of the owner's
+     * playing piece at the same place as {@link #display(Graphics2D)} draws
+     * the image
+     * 
+     * @param g
+     *            the graphics to draw onto
+     * @param ownerColor
+     *            the color of the owner or <code>null</code> if the field has
+     *            no owner
+     */
+    public void displayState(Graphics2D g, Color ownerColor) {
+        if (getWidth() < 10)
+            return;
+
+        AffineTransform at = g.getTransform();
+        g.translate(xPos, yPos);
+        g.scale(-1, -1);
+
+        if (field instanceof PropertyField)
+            drawHouses(g);
+        if (ownerColor != null) {
+            int markerHeight = Math.max(3, getHeight() / 16);
+            g.setColor(ownerColor);
+            g.fillRect(2, getHeight() - markerHeight - 2, getWidth() - 4,
+                    markerHeight);
+        }
+
+        g.setTransform(at);
+    }
+
     /**
      * @return the x coordinate of the center point of this image
      */
@@ -12,14 +12,18 @@ import java.awt.event.ActionListener;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
-import javax.swing.SwingUtilities;
 import javax.swing.border.LineBorder;
 
 import ch.winfor.monopoly.Freeable;
 import ch.winfor.monopoly.Language;
 import ch.winfor.monopoly.Language.LanguageListener;
 import ch.winfor.monopoly.game.Game;
-import ch.winfor.monopoly.game.TurnHandler;
+import ch.winfor.monopoly.game.GameSnapshot;
+import ch.winfor.monopoly.game.GameThread;
+import ch.winfor.monopoly.game.GameThread.SnapshotListener;
+import ch.winfor.monopoly.game.TurnCommand;
+import ch.winfor.monopoly.game.TurnCommand.Action;
+import ch.winfor.monopoly.game.TurnHandler.TurnTask;
 import ch.winfor.monopoly.gui.turnControl.BuyHousesPanel;
 import ch.winfor.monopoly.gui.turnControl.BuyPropertyPanel;
 import ch.winfor.monopoly.gui.turnControl.CastDicePanel;
@@ -34,6 +38,12 @@ import ch.winfor.monopoly.gui.turnControl.TurnActionPanel;
 /**
  * panel translating user input to changes in the game
  * 
+ * The panel shows the control for the next task of its player. It follows
+ * the snapshots published by the {@link GameThread} of the game, which are
+ * passed to the event dispatch thread by the {@link SwingDispatcher}, and
+ * submits the actions of the player as {@link TurnCommand}s. The game must
+ * have a running game thread if the panel is editable.
+ * 
  * @author Nicolas Winkler
  * 
  */
@@ -83,8 +93,28 @@ public class GameControlPanel extends JPanel implements ActionListener,
     /** panel containing {@link TurnActionPanel}s to control the game */
     private JPanel upperPanel;
 
-    /** thread waiting for the player to take his turn */
-    private TurnAwaiter scanThread;
+    /** the task whose control is shown, <code>null</code> if none is */
+    private TurnTask shownTask;
+
+    /** shows the control for the next task; runs on the EDT */
+    private final Runnable updateTask = new Runnable() {
+        @Override
+        public void run() {
+            updateTurnActionPanel(false);
+        }
+    };
+
+    /** the last snapshot published by the game thread */
+    private volatile GameSnapshot snapshot;
+
+    /** requests an update when the game has changed */
+    private final SnapshotListener snapshotListener = new SnapshotListener() {
+        @Override
+        public void snapshotPublished(GameThread sender, GameSnapshot snapshot) {
+            GameControlPanel.this.snapshot = snapshot;
+            SwingDispatcher.getInstance().request(updateTask);
+        }
+    };
 
     /**
      * specifies which turn this panel controls
@@ -180,7 +210,12 @@ public class GameControlPanel extends JPanel implements ActionListener,
         gbc_infoPanel.gridy = 2;
         add(centerPanel, gbc_infoPanel);
 
-        waitForNextTurn();
+        if (editable) {
+            GameThread gameThread = game.getGameThread();
+            snapshot = gameThread.getSnapshot();
+            gameThread.addSnapshotListener(snapshotListener);
+            SwingDispatcher.getInstance().request(updateTask);
+        }
 
         Language lang = Language.getInstance();
         lang.addLanguageListener(this);
@@ -190,6 +225,9 @@ public class GameControlPanel extends JPanel implements ActionListener,
     public void free() {
         Language lang = Language.getInstance();
         lang.removeLanguageListener(this);
+        GameThread gameThread = game.getGameThread();
+        if (gameThread != null)
+            gameThread.removeSnapshotListener(snapshotListener);
     }
 
     @Override
@@ -204,17 +242,17 @@ public class GameControlPanel extends JPanel implements ActionListener,
         Object source = e.getSource();
         if (source == endTurnPanel) {
             if (e.getID() == EndTurnPanel.ACTION_ID_END_TURN) {
-                waitForNextTurn();
                 setUpperPanelContent(takenYourTurnPanel);
-
-                TurnHandler turnHandler = game.getTurnHandler();
-                turnHandler.endTurn();
+                shownTask = null;
+                game.submit(new TurnCommand(turn, Action.END_TURN));
             } else {
                 setUpperPanelContent(buyHousesPanel);
             }
-        } else if (source instanceof TurnActionPanel) {
-            updateTurnActionPanel();
+        } else if (source == buyHousesPanel) {
+            updateTurnActionPanel(true);
         }
+        // the other actions change the task; the panel is updated when the
+        // game thread publishes the new state
     }
 
     /**
@@ -233,12 +271,26 @@ public class GameControlPanel extends JPanel implements ActionListener,
     }
 
     /**
-     * updates the turn control elements
+     * updates the turn control elements if it is the turn of the player
+     * 
+     * @param force
+     *            <code>true</code> to show the control of the next task even
+     *            if it is already shown (and maybe replaced by the house
+     *            control), <code>false</code> to only update the panel if the
+     *            task has changed
      */
-    private void updateTurnActionPanel() {
-        TurnHandler th = game.getTurnHandler();
+    private void updateTurnActionPanel(boolean force) {
+        GameSnapshot gs = snapshot;
+        if (gs.getTurn() != turn) {
+            shownTask = null;
+            return;
+        }
+        TurnTask task = gs.getNextTask();
+        if (task == shownTask && !force)
+            return;
+        shownTask = task;
 
-        switch (th.getNextTask()) {
+        switch (task) {
         case CAST_DICE:
             setUpperPanelContent(castDicePanel);
             break;
@@ -255,7 +307,7 @@ public class GameControlPanel extends JPanel implements ActionListener,
             setUpperPanelContent(drawCardPanel);
             break;
         case FOLLOW_CARD:
-            playCardPanel.setCard(th.getDrawnCard());
+            playCardPanel.setCard(gs.getDrawnCard(game.getBoard()));
             setUpperPanelContent(playCardPanel);
             break;
         case END_TURN:
@@ -280,64 +332,4 @@ public class GameControlPanel extends JPanel implements ActionListener,
     public void setGame(Game game) {
         this.game = game;
     }
-
-    /**
-     * sets {@link #scanThread}) to a new turn–awaiting thread
-     */
-    private void waitForNextTurn() {
-        if (!editable)
-            return;
-        if (scanThread != null)
-            scanThread.shouldStop();
-        scanThread = new TurnAwaiter();
-        scanThread.start();
-    }
-
-    /**
-     * thread running a loop which checks if it's the player's turn
-     * 
-     * @author Nicolas Winkler
-     * 
-     */
-    private class TurnAwaiter extends Thread {
-        /** flag, if the thread should still run */
-        private boolean shouldRun;
-
-        public TurnAwaiter() {
-            shouldRun = true;
-        }
-
-        /**
-         * urges the thread to stop
-         * 
-         * The thread should effectively stop after a maximum 100 milliseconds
-         * of delay have passed.
-         */
-        public void shouldStop() {
-            shouldRun = false;
-        }
-
-        /**
-         * main scanning routine
-         */
-        public void run() {
-            while (shouldRun) {
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
-                if (game.getTurn() == turn) {
-                    SwingUtilities.invokeLater(new Runnable() {
-                        @Override
-                        public void run() {
-                            updateTurnActionPanel();
-                        }
-                    });
-
-                    shouldRun = false;
-                }
-            }
-        }
-    }
 }
@@ -0,0 +1,86 @@
+package ch.winfor.monopoly.gui;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * runs updates of the user interface on the event dispatch thread
+ * 
+ * Game events can arrive on any thread and often many at once. Instead of
+ * posting one task to the event dispatch thread per event, updates are
+ * collected here and run in one batch. An update requested several times
+ * before the batch runs is only run once.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class SwingDispatcher {
+    /** the dispatcher shared by all panels */
+    private static final SwingDispatcher instance = new SwingDispatcher();
+
+    /** the updates waiting to be run, in the order they were requested */
+    private Set<Runnable> pending;
+
+    /** if a batch has been posted to the event dispatch thread */
+    private boolean scheduled;
+
+    /** runs the pending updates on the event dispatch thread */
+    private final Runnable batch = new Runnable() {
+        @Override
+        public void run() {
+            runPending();
+        }
+    };
+
+    /**
+     * creates a dispatcher without pending updates
+     */
+    public SwingDispatcher() {
+        pending = new LinkedHashSet<Runnable>();
+    }
+
+    /**
+     * @return the dispatcher shared by all panels
+     */
+    public static SwingDispatcher getInstance() {
+        return instance;
+    }
+
+    /**
+     * requests an update; it runs on the event dispatch thread as soon as
+     * possible, but only once no matter how often it is requested until then
+     * 
+     * @param update
+     *            the update
+     */
+    public void request(Runnable update) {
+        synchronized (this) {
+            pending.add(update);
+            if (scheduled)
+                return;
+            scheduled = true;
+        }
+        SwingUtilities.invokeLater(batch);
+    }
+
+    /**
+     * runs all pending updates; runs on the event dispatch thread
+     */
+    private void runPending() {
+        Set<Runnable> updates;
+        synchronized (this) {
+            updates = pending;
+            pending = new LinkedHashSet<Runnable>();
+            scheduled = false;
+        }
+        for (Runnable update : updates) {
+            try {
+                update.run();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -15,6 +15,7 @@ import ch.winfor.monopoly.game.Game;
 import ch.winfor.monopoly.game.MonopolyGroup;
 import ch.winfor.monopoly.game.Player;
 import ch.winfor.monopoly.game.PropertyField;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 import ch.winfor.monopoly.game.TurnHandler;
 import ch.winfor.monopoly.gui.BrowseGamePanel.BuyableFieldComboBox;
 
@@ -86,11 +87,11 @@ public class BuyHousesPanel extends TurnActionPanel implements ActionListener,
             ActionEvent ae = new ActionEvent(this, 0, btnNoMoreHouses.getText());
             fireActionEvent(ae);
         } else if (e.getSource() == btnBuyHouse) {
-            TurnHandler th = game.getTurnHandler();
             Object selectedObject = comboBox.getSelectedItem();
             if (selectedObject instanceof PropertyField) {
                 PropertyField propertyField = (PropertyField) selectedObject;
-                th.buyHouse(propertyField);
+                submitAction(Action.BUY_HOUSE, game.getBoard()
+                        .getFieldIndex(propertyField));
             }
         }
     }
@@ -13,6 +13,7 @@ import ch.winfor.monopoly.Language;
 import ch.winfor.monopoly.Language.LanguageListener;
 import ch.winfor.monopoly.game.BuyableField;
 import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 import ch.winfor.monopoly.game.TurnHandler;
 
 public class BuyPropertyPanel extends TurnActionPanel implements
@@ -52,12 +53,11 @@ public class BuyPropertyPanel extends TurnActionPanel implements
 
     @Override
     public void actionPerformed(ActionEvent e) {
-        TurnHandler turnHandler = game.getTurnHandler();
         if (e.getSource() == btnBuyProperty) {
-            turnHandler.buyProperty(true);
+            submitAction(Action.BUY_PROPERTY);
         }
         if (e.getSource() == btnDontBuyProperty) {
-            turnHandler.buyProperty(false);
+            submitAction(Action.DECLINE_PROPERTY);
         }
 
         ActionEvent ae = new ActionEvent(this, 0, "");
@@ -8,8 +8,7 @@ import javax.swing.JButton;
 import ch.winfor.monopoly.Language;
 import ch.winfor.monopoly.Language.LanguageListener;
 import ch.winfor.monopoly.game.Game;
-import ch.winfor.monopoly.game.TurnHandler;
-import ch.winfor.monopoly.game.TurnHandler.TurnTask;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 
 /**
  * Panel that is displayed when the player should cast the dice
@@ -44,17 +43,11 @@ public class CastDicePanel extends TurnActionPanel implements ActionListener,
     @Override
     public void actionPerformed(ActionEvent e) {
         Object source = e.getSource();
-        TurnHandler turnHandler = game.getTurnHandler();
         if (source == btnCastDice) {
-            if (turnHandler.getNextTask() == TurnTask.CAST_DICE) {
-                turnHandler.castDice();
-                turnHandler.movePiece();
-                ActionEvent ae = new ActionEvent(this, 0, "");
-                fireActionEvent(ae);
-            } else {
-                ActionEvent ae = new ActionEvent(this, -1, "");
-                fireActionEvent(ae);
-            }
+            submitAction(Action.CAST_DICE);
+            submitAction(Action.MOVE_PIECE);
+            ActionEvent ae = new ActionEvent(this, 0, "");
+            fireActionEvent(ae);
         }
     }
 
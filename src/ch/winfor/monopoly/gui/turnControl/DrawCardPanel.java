@@ -11,8 +11,8 @@ import javax.swing.SwingConstants;
 
 import ch.winfor.monopoly.Language;
 import ch.winfor.monopoly.Language.LanguageListener;
-import ch.winfor.monopoly.game.Card;
 import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 
 public class DrawCardPanel extends TurnActionPanel implements ActionListener {
     /**
@@ -56,13 +56,7 @@ public class DrawCardPanel extends TurnActionPanel implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e) {
         ActionEvent ae = new ActionEvent(this, 0, "");
-        Card card = game.getTurnHandler().drawCard();
-        if (card != null) {
-            /*
-             * JFrame f = new JFrame(); f.setContentPane(new CardPanel(card));
-             * f.pack(); f.setVisible(true);
-             */
-        }
+        submitAction(Action.DRAW_CARD);
         fireActionEvent(ae);
     }
 }
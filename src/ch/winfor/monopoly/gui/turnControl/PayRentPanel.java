@@ -8,7 +8,7 @@ import javax.swing.JButton;
 import ch.winfor.monopoly.Language;
 import ch.winfor.monopoly.Language.LanguageListener;
 import ch.winfor.monopoly.game.Game;
-import ch.winfor.monopoly.game.TurnHandler;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 
 public class PayRentPanel extends TurnActionPanel implements ActionListener {
     /**  */
@@ -39,8 +39,7 @@ public class PayRentPanel extends TurnActionPanel implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e) {
         ActionEvent ae = new ActionEvent(this, 0, "Rent Payed");
-        TurnHandler th = game.getTurnHandler();
-        th.payRent();
+        submitAction(Action.PAY_RENT);
         fireActionEvent(ae);
     }
 }
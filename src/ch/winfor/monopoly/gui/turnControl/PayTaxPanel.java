@@ -8,7 +8,7 @@ import javax.swing.JButton;
 import ch.winfor.monopoly.Language;
 import ch.winfor.monopoly.Language.LanguageListener;
 import ch.winfor.monopoly.game.Game;
-import ch.winfor.monopoly.game.TurnHandler;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 
 public class PayTaxPanel extends TurnActionPanel implements ActionListener {
     /**  */
@@ -39,8 +39,7 @@ public class PayTaxPanel extends TurnActionPanel implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e) {
         ActionEvent ae = new ActionEvent(this, 0, "Tax Payed");
-        TurnHandler th = game.getTurnHandler();
-        th.payTax();
+        submitAction(Action.PAY_TAX);
         fireActionEvent(ae);
     }
 }
@@ -16,6 +16,7 @@ import ch.winfor.monopoly.Language;
 import ch.winfor.monopoly.Language.LanguageListener;
 import ch.winfor.monopoly.game.Card;
 import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 import ch.winfor.monopoly.gui.CardPanel;
 
 public class PlayCardPanel extends TurnActionPanel implements ActionListener {
@@ -85,7 +86,7 @@ public class PlayCardPanel extends TurnActionPanel implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e) {
         ActionEvent ae = new ActionEvent(this, 0, "");
-        game.getTurnHandler().followCard();
+        submitAction(Action.FOLLOW_CARD);
         fireActionEvent(ae);
     }
 }
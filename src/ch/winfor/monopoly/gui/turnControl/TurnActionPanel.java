@@ -9,6 +9,9 @@ import javax.swing.BorderFactory;
 import javax.swing.JPanel;
 
 import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.GameThread;
+import ch.winfor.monopoly.game.TurnCommand;
+import ch.winfor.monopoly.game.TurnCommand.Action;
 
 /**
  * base class for panels that can fire action events
@@ -76,6 +79,30 @@ public class TurnActionPanel extends JPanel {
         actionListeners.remove(l);
     }
 
+    /**
+     * submits an action of the player whose turn it is to the game
+     * 
+     * @param action
+     *            the action
+     */
+    protected void submitAction(Action action) {
+        submitAction(action, -1);
+    }
+
+    /**
+     * submits an action of the player whose turn it is to the game
+     * 
+     * @param action
+     *            the action
+     * @param field
+     *            the index of the field the action refers to, or -1
+     */
+    protected void submitAction(Action action, int field) {
+        GameThread gt = game.getGameThread();
+        int turn = gt != null ? gt.getSnapshot().getTurn() : game.getTurn();
+        game.submit(new TurnCommand(turn, action, field));
+    }
+
     /**
      * recreates the panel and renews its contents
      */
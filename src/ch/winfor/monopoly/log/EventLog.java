@@ -0,0 +1,251 @@
+package ch.winfor.monopoly.log;
+
+/**
+ * the events of one category (e.g. <code>network</code>) of the {@link Log}
+ * 
+ * An event is a short dot-separated name (e.g. <code>message.sent</code>)
+ * with up to three parameters given as key and value. The values are
+ * formatted by the writer thread of the log, not by the logging thread, so
+ * they must not change after they have been logged (messages, snapshots,
+ * strings, boxed numbers); a {@link Throwable} value is written with its stack
+ * trace.
+ * 
+ * If the level of the event isn't enabled, logging it costs a comparison.
+ * The values of a disabled event are still evaluated by the caller, though,
+ * so an event with a primitive value (which is boxed) or a value that must be
+ * computed should be guarded on hot paths:
+ * 
+ * <pre>
+ * if (LOG.isEnabled(Level.DEBUG))
+ *     LOG.debug(&quot;message.sent&quot;, &quot;size&quot;, size);
+ * </pre>
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class EventLog {
+    /** the name of the category */
+    private final String category;
+
+    /** ordinal of the lowest enabled level */
+    private volatile int threshold;
+
+    /**
+     * creates a category; categories are created by {@link Log#get(String)}
+     * 
+     * @param category
+     *            the name of the category
+     * @param level
+     *            the lowest enabled level
+     */
+    EventLog(String category, Level level) {
+        this.category = category;
+        this.threshold = level.ordinal();
+    }
+
+    /**
+     * @return the name of the category
+     */
+    public String getCategory() {
+        return category;
+    }
+
+    /**
+     * @return the lowest enabled level
+     */
+    public Level getLevel() {
+        return Level.values()[threshold];
+    }
+
+    /**
+     * sets the lowest enabled level
+     * 
+     * @param level
+     *            the level, {@link Level#OFF} to switch the category off
+     */
+    public void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    /**
+     * @param level
+     *            a level other than {@link Level#OFF}
+     * @return <code>true</code>, if events of the level are written
+     */
+    public boolean isEnabled(Level level) {
+        return level.ordinal() >= threshold;
+    }
+
+    /**
+     * logs an event; the number of values must be at most three
+     * 
+     * This form allocates the array of the parameters even if the level is
+     * disabled; the methods of the single levels don't.
+     * 
+     * @param level
+     *            the level of the event
+     * @param event
+     *            the name of the event
+     * @param keysAndValues
+     *            the keys of the parameters, each followed by its value
+     */
+    public void log(Level level, String event, Object... keysAndValues) {
+        if (!isEnabled(level))
+            return;
+        String[] keys = new String[LogBuffer.PARAMETERS];
+        Object[] values = new Object[LogBuffer.PARAMETERS];
+        int n = Math.min(keysAndValues.length / 2, LogBuffer.PARAMETERS);
+        for (int i = 0; i < n; i++) {
+            keys[i] = String.valueOf(keysAndValues[2 * i]);
+            values[i] = keysAndValues[2 * i + 1];
+        }
+        Log.append(this, level, event, n, keys[0], values[0], keys[1],
+                values[1], keys[2], values[2]);
+    }
+
+    /**
+     * logs an event of the level {@link Level#DEBUG}
+     */
+    public void debug(String event) {
+        if (isEnabled(Level.DEBUG))
+            Log.append(this, Level.DEBUG, event, 0, null, null, null, null,
+                    null, null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#DEBUG}
+     */
+    public void debug(String event, String k1, Object v1) {
+        if (isEnabled(Level.DEBUG))
+            Log.append(this, Level.DEBUG, event, 1, k1, v1, null, null, null,
+                    null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#DEBUG}
+     */
+    public void debug(String event, String k1, Object v1, String k2,
+            Object v2) {
+        if (isEnabled(Level.DEBUG))
+            Log.append(this, Level.DEBUG, event, 2, k1, v1, k2, v2, null,
+                    null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#DEBUG}
+     */
+    public void debug(String event, String k1, Object v1, String k2,
+            Object v2, String k3, Object v3) {
+        if (isEnabled(Level.DEBUG))
+            Log.append(this, Level.DEBUG, event, 3, k1, v1, k2, v2, k3, v3);
+    }
+
+    /**
+     * logs an event of the level {@link Level#INFO}
+     */
+    public void info(String event) {
+        if (isEnabled(Level.INFO))
+            Log.append(this, Level.INFO, event, 0, null, null, null, null,
+                    null, null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#INFO}
+     */
+    public void info(String event, String k1, Object v1) {
+        if (isEnabled(Level.INFO))
+            Log.append(this, Level.INFO, event, 1, k1, v1, null, null, null,
+                    null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#INFO}
+     */
+    public void info(String event, String k1, Object v1, String k2,
+            Object v2) {
+        if (isEnabled(Level.INFO))
+            Log.append(this, Level.INFO, event, 2, k1, v1, k2, v2, null, null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#INFO}
+     */
+    public void info(String event, String k1, Object v1, String k2,
+            Object v2, String k3, Object v3) {
+        if (isEnabled(Level.INFO))
+            Log.append(this, Level.INFO, event, 3, k1, v1, k2, v2, k3, v3);
+    }
+
+    /**
+     * logs an event of the level {@link Level#WARN}
+     */
+    public void warn(String event) {
+        if (isEnabled(Level.WARN))
+            Log.append(this, Level.WARN, event, 0, null, null, null, null,
+                    null, null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#WARN}
+     */
+    public void warn(String event, String k1, Object v1) {
+        if (isEnabled(Level.WARN))
+            Log.append(this, Level.WARN, event, 1, k1, v1, null, null, null,
+                    null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#WARN}
+     */
+    public void warn(String event, String k1, Object v1, String k2,
+            Object v2) {
+        if (isEnabled(Level.WARN))
+            Log.append(this, Level.WARN, event, 2, k1, v1, k2, v2, null, null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#WARN}
+     */
+    public void warn(String event, String k1, Object v1, String k2,
+            Object v2, String k3, Object v3) {
+        if (isEnabled(Level.WARN))
+            Log.append(this, Level.WARN, event, 3, k1, v1, k2, v2, k3, v3);
+    }
+
+    /**
+     * logs an event of the level {@link Level#ERROR}
+     */
+    public void error(String event) {
+        if (isEnabled(Level.ERROR))
+            Log.append(this, Level.ERROR, event, 0, null, null, null, null,
+                    null, null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#ERROR}
+     */
+    public void error(String event, String k1, Object v1) {
+        if (isEnabled(Level.ERROR))
+            Log.append(this, Level.ERROR, event, 1, k1, v1, null, null, null,
+                    null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#ERROR}
+     */
+    public void error(String event, String k1, Object v1, String k2,
+            Object v2) {
+        if (isEnabled(Level.ERROR))
+            Log.append(this, Level.ERROR, event, 2, k1, v1, k2, v2, null,
+                    null);
+    }
+
+    /**
+     * logs an event of the level {@link Level#ERROR}
+     */
+    public void error(String event, String k1, Object v1, String k2,
+            Object v2, String k3, Object v3) {
+        if (isEnabled(Level.ERROR))
+            Log.append(this, Level.ERROR, event, 3, k1, v1, k2, v2, k3, v3);
+    }
+}
@@ -0,0 +1,27 @@
+package ch.winfor.monopoly.log;
+
+/**
+ * the severity of a logged event
+ * 
+ * A category of the {@link Log} writes the events of its level and of all
+ * higher ones; {@link #OFF} switches a category off.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public enum Level {
+    /** details for finding errors, e.g. every sent or received message */
+    DEBUG,
+
+    /** normal but noteworthy events, e.g. a recovered room */
+    INFO,
+
+    /** unexpected events the program can handle, e.g. a dropped message */
+    WARN,
+
+    /** failures, e.g. an exception of a game command */
+    ERROR,
+
+    /** no events are written */
+    OFF;
+}
@@ -0,0 +1,241 @@
+package ch.winfor.monopoly.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.LockSupport;
+
+import ch.winfor.monopoly.metrics.Counter;
+import ch.winfor.monopoly.metrics.Metrics;
+
+/**
+ * the asynchronous event log of the process
+ * 
+ * The engine, the network code and the ais keep an {@link EventLog} for their
+ * category in a static field (<code>Log.get("network")</code>). An enabled
+ * event is copied into a bounded ring buffer and formatted and written by a
+ * background thread, so the logging thread (e.g. an I/O thread of the
+ * server) never waits for the output; if the ring is full, the event is
+ * dropped and the number of dropped events is written later. A disabled
+ * event costs a comparison.
+ * 
+ * Every category starts at the level {@link Level#INFO}. The levels can be
+ * changed with {@link #configure(String)} or with the system property
+ * <code>monopoly.log</code> (e.g.
+ * <code>-Dmonopoly.log=network=debug,ai=warn</code>).
+ * The events are written to the standard output until a file is set with
+ * {@link #setFile(File, long, int)} or the system property
+ * <code>monopoly.log.file</code>.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class Log {
+    /** category of the network code */
+    public static final String NETWORK = "network";
+
+    /** category of the game engine */
+    public static final String ENGINE = "engine";
+
+    /** category of the ais */
+    public static final String AI = "ai";
+
+    /** number of events the ring buffer holds */
+    private static final int CAPACITY = 8192;
+
+    /** the size at which a log file is rolled over by default */
+    public static final long DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+
+    /** the number of old log files kept by default */
+    public static final int DEFAULT_MAX_FILES = 5;
+
+    /** milliseconds {@link #flush()} waits at most */
+    private static final long FLUSH_TIMEOUT = 1000;
+
+    /** the categories by name */
+    private static final ConcurrentMap<String, EventLog> logs =
+            new ConcurrentHashMap<String, EventLog>();
+
+    /** the configured levels by category; <code>*</code> for all others */
+    private static final Map<String, Level> levels =
+            new ConcurrentHashMap<String, Level>();
+
+    /** the events waiting to be written */
+    private static final LogBuffer buffer = new LogBuffer(CAPACITY);
+
+    /** formats and writes the events */
+    private static final LogWriter writer = new LogWriter(buffer);
+
+    /** number of dropped events */
+    private static final Counter dropped = Metrics.counter("log.dropped");
+
+    /** the writer thread or <code>null</code> if not started yet */
+    private static volatile Thread writerThread;
+
+    static {
+        String spec = System.getProperty("monopoly.log");
+        if (spec != null)
+            configure(spec);
+        String file = System.getProperty("monopoly.log.file");
+        if (file != null) {
+            try {
+                setFile(new File(file), DEFAULT_MAX_BYTES, DEFAULT_MAX_FILES);
+            } catch (IOException e) {
+                System.err.println("can't open log file " + file + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * only static members
+     */
+    private Log() {
+    }
+
+    /**
+     * returns the category with a name, creating it if it doesn't exist yet
+     * 
+     * @param category
+     *            the name of the category
+     * @return the category
+     */
+    public static EventLog get(String category) {
+        EventLog log = logs.get(category);
+        if (log == null) {
+            EventLog created = new EventLog(category,
+                    configuredLevel(category));
+            log = logs.putIfAbsent(category, created);
+            if (log == null)
+                log = created;
+        }
+        return log;
+    }
+
+    /**
+     * sets the level of a category
+     * 
+     * @param category
+     *            the name of the category, <code>*</code> for all categories
+     * @param level
+     *            the lowest enabled level
+     */
+    public static void setLevel(String category, Level level) {
+        if (category.equals("*")) {
+            levels.clear();
+            levels.put("*", level);
+            for (EventLog log : logs.values())
+                log.setLevel(level);
+        } else {
+            levels.put(category, level);
+            get(category).setLevel(level);
+        }
+    }
+
+    /**
+     * sets the levels of the categories
+     * 
+     * @param spec
+     *            comma-separated <code>category=level</code> pairs; a level
+     *            without a category applies to all categories (e.g.
+     *            <code>warn,network=debug</code>)
+     * @throws IllegalArgumentException
+     *             if a level is unknown
+     */
+    public static void configure(String spec) {
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.isEmpty())
+                continue;
+            int eq = part.indexOf('=');
+            String category = eq < 0 ? "*" : part.substring(0, eq).trim();
+            String level = part.substring(eq + 1).trim();
+            setLevel(category, Level.valueOf(level.toUpperCase(Locale.ROOT)));
+        }
+    }
+
+    /**
+     * writes the events to a rolling file from now on
+     * 
+     * @param file
+     *            the file; existing content is kept
+     * @param maxBytes
+     *            the (approximate) size at which the file is rolled over
+     * @param maxFiles
+     *            the number of old files kept
+     * @throws IOException
+     *             if the file can't be opened
+     */
+    public static void setFile(File file, long maxBytes, int maxFiles)
+            throws IOException {
+        writer.setFile(file, maxBytes, maxFiles);
+    }
+
+    /**
+     * waits (at most a second) until the events logged so far are written
+     */
+    public static void flush() {
+        if (writerThread == null)
+            return;
+        long target = buffer.getClaimed();
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT;
+        while (writer.getFlushed() < target
+                && System.currentTimeMillis() < deadline) {
+            LockSupport.unpark(writerThread);
+            LockSupport.parkNanos(1000 * 1000);
+        }
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full
+     */
+    public static long getDropped() {
+        return buffer.getDropped();
+    }
+
+    /**
+     * adds an event to the buffer; called by {@link EventLog} if the level of
+     * the event is enabled
+     */
+    static void append(EventLog log, Level level, String event,
+            int parameters, String k1, Object v1, String k2, Object v2,
+            String k3, Object v3) {
+        if (writerThread == null)
+            startWriter();
+        if (!buffer.offer(log, level, event, parameters, k1, v1, k2, v2, k3,
+                v3))
+            dropped.increment();
+    }
+
+    /**
+     * @param category
+     *            the name of a category
+     * @return the configured level of the category
+     */
+    private static Level configuredLevel(String category) {
+        Level level = levels.get(category);
+        if (level == null)
+            level = levels.get("*");
+        return level != null ? level : Level.INFO;
+    }
+
+    /**
+     * starts the writer thread and flushes the log when the process ends
+     */
+    private static synchronized void startWriter() {
+        if (writerThread != null)
+            return;
+        Thread thread = new Thread(writer, "event-log");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread("event-log-flush") {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+        writerThread = thread;
+    }
+}
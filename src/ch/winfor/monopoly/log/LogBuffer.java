@@ -0,0 +1,166 @@
+package ch.winfor.monopoly.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * a bounded ring of preallocated events, filled by any number of threads and
+ * emptied by the writer thread of the {@link Log}
+ * 
+ * A logging thread claims the next sequence number with a compare-and-set,
+ * fills the entry of that number and publishes it by writing the number into
+ * the entry. If all entries are still waiting for the writer, the event is
+ * dropped and counted instead, so logging never waits for the disk.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+final class LogBuffer {
+    /** maximum number of parameters of an event */
+    static final int PARAMETERS = 3;
+
+    /**
+     * one event in the ring
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    static final class Entry {
+        /** the sequence number of the event, written when it's complete */
+        volatile long sequence = -1;
+
+        /** the time of the event in milliseconds since 1970 */
+        long time;
+
+        /** the category */
+        EventLog log;
+
+        /** the level */
+        Level level;
+
+        /** the name of the event */
+        String event;
+
+        /** the name of the logging thread */
+        String thread;
+
+        /** number of parameters */
+        int parameters;
+
+        /** the keys of the parameters */
+        final String[] keys = new String[PARAMETERS];
+
+        /** the values of the parameters */
+        final Object[] values = new Object[PARAMETERS];
+    }
+
+    /** the entries */
+    private final Entry[] entries;
+
+    /** <code>entries.length - 1</code> */
+    private final int mask;
+
+    /** the next sequence number to claim */
+    private final AtomicLong claimed = new AtomicLong();
+
+    /** the next sequence number the writer reads */
+    private volatile long read;
+
+    /** number of dropped events */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity
+     *            the number of entries, rounded up to a power of two
+     */
+    LogBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        entries = new Entry[size];
+        for (int i = 0; i < size; i++)
+            entries[i] = new Entry();
+        mask = size - 1;
+    }
+
+    /**
+     * adds an event
+     * 
+     * @return <code>false</code>, if the ring was full and the event has been
+     *         dropped
+     */
+    boolean offer(EventLog log, Level level, String event, int parameters,
+            String k1, Object v1, String k2, Object v2, String k3, Object v3) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - read >= entries.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Entry e = entries[(int) sequence & mask];
+        e.time = System.currentTimeMillis();
+        e.log = log;
+        e.level = level;
+        e.event = event;
+        e.thread = Thread.currentThread().getName();
+        e.parameters = parameters;
+        e.keys[0] = k1;
+        e.values[0] = v1;
+        e.keys[1] = k2;
+        e.values[1] = v2;
+        e.keys[2] = k3;
+        e.values[2] = v3;
+        e.sequence = sequence;
+        return true;
+    }
+
+    /**
+     * returns the next event for the writer; it stays in the ring until
+     * {@link #release(Entry)} is called
+     * 
+     * @return the event or <code>null</code> if there is no complete one
+     */
+    Entry peek() {
+        long next = read;
+        Entry e = entries[(int) next & mask];
+        return e.sequence == next ? e : null;
+    }
+
+    /**
+     * frees the entry returned by {@link #peek()} for new events
+     * 
+     * @param e
+     *            the entry
+     */
+    void release(Entry e) {
+        e.log = null;
+        e.event = null;
+        e.thread = null;
+        for (int i = 0; i < PARAMETERS; i++) {
+            e.keys[i] = null;
+            e.values[i] = null;
+        }
+        read = read + 1; // only the writer thread changes read
+    }
+
+    /**
+     * @return the number of events claimed so far
+     */
+    long getClaimed() {
+        return claimed.get();
+    }
+
+    /**
+     * @return the number of events read so far
+     */
+    long getRead() {
+        return read;
+    }
+
+    /**
+     * @return the number of dropped events
+     */
+    long getDropped() {
+        return dropped.get();
+    }
+}
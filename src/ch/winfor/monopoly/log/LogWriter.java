@@ -0,0 +1,304 @@
+package ch.winfor.monopoly.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * the thread formatting the events of a {@link LogBuffer} and writing them
+ * to the standard output or a rolling file
+ * 
+ * Every event is written as one line:
+ * 
+ * <pre>
+ * 2014-05-01T12:00:00.000Z DEBUG network message.sent thread=nio-1 size=42
+ * </pre>
+ * 
+ * Values containing spaces, quotes or line breaks are quoted; the stack
+ * traces of {@link Throwable} values follow the line, indented by a tab.
+ * 
+ * A file is rolled over when it has grown to the maximum size: the file
+ * <code>name</code> is renamed to <code>name.1</code>, <code>name.1</code> to
+ * <code>name.2</code> and so on, and the oldest one is deleted.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+final class LogWriter implements Runnable {
+    /** nanoseconds to sleep when there are no events */
+    private static final long IDLE_NANOS = 10 * 1000 * 1000;
+
+    /** the events */
+    private final LogBuffer buffer;
+
+    /** formats the times; only used by the writer thread */
+    private final SimpleDateFormat timeFormat;
+
+    /** the line being formatted; only used by the writer thread */
+    private final StringBuilder line;
+
+    /** the output */
+    private Writer out;
+
+    /** the file written or <code>null</code> for the standard output */
+    private File file;
+
+    /** the size at which the file is rolled over */
+    private long maxBytes;
+
+    /** the number of old files kept */
+    private int maxFiles;
+
+    /** the number of characters written to the current file */
+    private long written;
+
+    /** the dropped events already reported */
+    private long reportedDrops;
+
+    /** the number of events read when the output was flushed the last time */
+    private volatile long flushed;
+
+    /**
+     * @param buffer
+     *            the events to write
+     */
+    LogWriter(LogBuffer buffer) {
+        this.buffer = buffer;
+        this.timeFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        this.timeFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        this.line = new StringBuilder(256);
+        this.out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * writes to a rolling file from now on
+     * 
+     * @param file
+     *            the file; existing content is kept
+     * @param maxBytes
+     *            the (approximate) size at which the file is rolled over
+     * @param maxFiles
+     *            the number of old files kept
+     * @throws IOException
+     *             if the file can't be opened
+     */
+    synchronized void setFile(File file, long maxBytes, int maxFiles)
+            throws IOException {
+        Writer opened = open(file, true);
+        close();
+        this.out = opened;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = maxFiles;
+        this.written = file.length();
+    }
+
+    /**
+     * @return the number of events read when the output was flushed the last
+     *         time
+     */
+    long getFlushed() {
+        return flushed;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                if (!writeAvailable())
+                    LockSupport.parkNanos(IDLE_NANOS);
+            } catch (Throwable t) { // the log must go on, even if the disk
+                                    // is full
+                t.printStackTrace();
+                LockSupport.parkNanos(IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * writes all events in the buffer and flushes the output
+     * 
+     * @return <code>true</code>, if any event was written
+     * @throws IOException
+     *             if writing fails
+     */
+    private synchronized boolean writeAvailable() throws IOException {
+        boolean any = false;
+        LogBuffer.Entry e;
+        while ((e = buffer.peek()) != null) {
+            format(e);
+            buffer.release(e);
+            write();
+            any = true;
+        }
+
+        long dropped = buffer.getDropped();
+        if (dropped != reportedDrops) {
+            line.setLength(0);
+            line.append(timeFormat.format(new Date())).append(" WARN log ")
+                    .append("events.dropped count=")
+                    .append(dropped - reportedDrops).append('\n');
+            reportedDrops = dropped;
+            write();
+            any = true;
+        }
+
+        if (any || flushed != buffer.getRead()) {
+            out.flush();
+            flushed = buffer.getRead();
+        }
+        return any;
+    }
+
+    /**
+     * formats an event into {@link #line}
+     * 
+     * @param e
+     *            the event
+     */
+    private void format(LogBuffer.Entry e) {
+        line.setLength(0);
+        line.append(timeFormat.format(new Date(e.time))).append(' ')
+                .append(e.level).append(' ').append(e.log.getCategory())
+                .append(' ').append(e.event).append(" thread=");
+        appendValue(e.thread);
+        for (int i = 0; i < e.parameters; i++) {
+            line.append(' ').append(e.keys[i]).append('=');
+            appendValue(e.values[i]);
+        }
+        line.append('\n');
+        for (int i = 0; i < e.parameters; i++) {
+            if (e.values[i] instanceof Throwable)
+                appendStackTrace((Throwable) e.values[i]);
+        }
+    }
+
+    /**
+     * appends a value, quoted if necessary
+     * 
+     * @param value
+     *            the value
+     */
+    private void appendValue(Object value) {
+        String s;
+        try {
+            s = String.valueOf(value);
+        } catch (RuntimeException ex) {
+            s = "<" + ex + ">";
+        }
+
+        boolean quote = s.isEmpty();
+        for (int i = 0; i < s.length() && !quote; i++) {
+            char c = s.charAt(i);
+            quote = c <= ' ' || c == '"' || c == '=';
+        }
+        if (!quote) {
+            line.append(s);
+            return;
+        }
+
+        line.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                line.append('\\').append(c);
+            else if (c == '\n')
+                line.append("\\n");
+            else if (c == '\r')
+                line.append("\\r");
+            else if (c == '\t')
+                line.append("\\t");
+            else
+                line.append(c);
+        }
+        line.append('"');
+    }
+
+    /**
+     * appends the stack trace of a throwable, every line indented by a tab
+     * 
+     * @param t
+     *            the throwable
+     */
+    private void appendStackTrace(Throwable t) {
+        StringWriter sw = new StringWriter();
+        t.printStackTrace(new PrintWriter(sw));
+        for (String traceLine : sw.toString().split("\r?\n"))
+            line.append('\t').append(traceLine).append('\n');
+    }
+
+    /**
+     * writes {@link #line} and rolls the file over if it's full
+     * 
+     * @throws IOException
+     *             if writing fails
+     */
+    private void write() throws IOException {
+        out.append(line);
+        written += line.length();
+        if (file != null && written >= maxBytes)
+            roll();
+    }
+
+    /**
+     * renames the current file and the old ones and starts a new file
+     * 
+     * @throws IOException
+     *             if the new file can't be opened
+     */
+    private void roll() throws IOException {
+        close();
+        String name = file.getPath();
+        new File(name + "." + maxFiles).delete();
+        for (int i = maxFiles - 1; i >= 1; i--)
+            new File(name + "." + i).renameTo(new File(name + "." + (i + 1)));
+        if (maxFiles > 0)
+            file.renameTo(new File(name + ".1"));
+        out = open(file, false);
+        written = 0;
+    }
+
+    /**
+     * opens a file for writing
+     * 
+     * @param file
+     *            the file
+     * @param append
+     *            if the existing content is kept
+     * @return the writer
+     * @throws IOException
+     *             if the file can't be opened
+     */
+    private static Writer open(File file, boolean append) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+                file, append), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * closes the current output (but not the standard output)
+     * 
+     * @throws IOException
+     *             if closing fails
+     */
+    private void close() throws IOException {
+        if (file != null)
+            out.close();
+        else
+            out.flush();
+    }
+}
@@ -0,0 +1,82 @@
+package ch.winfor.monopoly.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * a number that is counted up (or down) by any number of threads
+ * 
+ * The value is split into a few cells, each on its own cache line, and every
+ * thread adds to the cell chosen by its id, so threads counting the same
+ * event don't contend for one memory location. Reading the value sums up the
+ * cells; it is exact once no thread adds to it anymore.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class Counter {
+    /** number of cells (a power of two) */
+    private static final int CELLS = 16;
+
+    /** distance between two cells in longs, so they are on own cache lines */
+    private static final int PADDING = 8;
+
+    /** the name of the counter */
+    private final String name;
+
+    /** the cells whose sum is the value */
+    private final AtomicLongArray cells;
+
+    /**
+     * creates a counter with the value 0; counters are created by
+     * {@link Metrics#counter(String)}
+     * 
+     * @param name
+     *            the name of the counter
+     */
+    Counter(String name) {
+        this.name = name;
+        this.cells = new AtomicLongArray(CELLS * PADDING);
+    }
+
+    /**
+     * @return the name of the counter
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * adds one to the value
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * adds to the value
+     * 
+     * @param n
+     *            the amount to add, may be negative
+     */
+    public void add(long n) {
+        if (Metrics.ENABLED)
+            cells.getAndAdd(cell(), n);
+    }
+
+    /**
+     * @return the current value
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; i++)
+            sum += cells.get(i * PADDING);
+        return sum;
+    }
+
+    /**
+     * @return the index of the cell of the current thread
+     */
+    static int cell() {
+        return ((int) Thread.currentThread().getId() & (CELLS - 1)) * PADDING;
+    }
+}
@@ -0,0 +1,207 @@
+package ch.winfor.monopoly.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * distribution of recorded values (e.g. durations in nanoseconds or sizes in
+ * bytes) with a fixed relative precision
+ * 
+ * Like an HDR histogram, the values are counted in buckets whose width grows
+ * with the value: every power of two is split into {@link #SUB_BUCKETS}
+ * buckets, so a percentile is never off by more than about 6 percent, for
+ * any value from 0 to {@link Long#MAX_VALUE}, with a fixed number of buckets.
+ * Recording a value only increments one bucket and needs neither a lock nor
+ * an allocation.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class Histogram {
+    /** log2 of {@link #SUB_BUCKETS} */
+    private static final int SUB_BUCKET_BITS = 4;
+
+    /** number of buckets per power of two */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /** number of buckets needed for all non-negative longs */
+    private static final int N_BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** the name of the histogram */
+    private final String name;
+
+    /** the number of values in every bucket */
+    private final AtomicLongArray buckets;
+
+    /** the sum of the values */
+    private final Counter sum;
+
+    /** the largest value */
+    private final AtomicLong max;
+
+    /**
+     * creates an empty histogram; histograms are created by
+     * {@link Metrics#histogram(String)}
+     * 
+     * @param name
+     *            the name of the histogram
+     */
+    Histogram(String name) {
+        this.name = name;
+        this.buckets = new AtomicLongArray(N_BUCKETS);
+        this.sum = new Counter(name);
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * @return the name of the histogram
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * adds a value
+     * 
+     * @param value
+     *            the value; negative values are recorded as 0
+     */
+    public void record(long value) {
+        if (!Metrics.ENABLED)
+            return;
+        if (value < 0)
+            value = 0;
+        buckets.incrementAndGet(bucketIndex(value));
+        sum.add(value);
+        long m;
+        while (value > (m = max.get()) && !max.compareAndSet(m, value))
+            ;
+    }
+
+    /**
+     * @return a copy of the current distribution
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[N_BUCKETS];
+        for (int i = 0; i < N_BUCKETS; i++)
+            counts[i] = buckets.get(i);
+        return new Snapshot(counts, sum.get(), max.get());
+    }
+
+    /**
+     * @param value
+     *            a non-negative value
+     * @return the index of the bucket of the value
+     */
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS)
+            return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS)
+                + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @param index
+     *            the index of a bucket
+     * @return the largest value counted in the bucket
+     */
+    static long highestValue(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)))
+                << shift;
+        return lowest + ((1L << shift) - 1);
+    }
+
+    /**
+     * the distribution of a histogram at one point in time
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static final class Snapshot {
+        /** the number of values in every bucket */
+        private final long[] counts;
+
+        /** the number of values */
+        private final long count;
+
+        /** the sum of the values */
+        private final long sum;
+
+        /** the largest value */
+        private final long max;
+
+        /**
+         * @param counts
+         *            the number of values in every bucket
+         * @param sum
+         *            the sum of the values
+         * @param max
+         *            the largest value
+         */
+        private Snapshot(long[] counts, long sum, long max) {
+            long n = 0;
+            for (long c : counts)
+                n += c;
+            this.counts = counts;
+            this.count = n;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return the number of values
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return the sum of the values
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * @return the largest value, <code>0</code> if there is none
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @return the mean of the values, <code>0</code> if there is none
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * returns the value below or at which a fraction of the values are
+         * 
+         * @param fraction
+         *            the fraction (e.g. <code>0.99</code> for the 99th
+         *            percentile)
+         * @return the largest value of the bucket containing the percentile
+         *         (at most the largest value recorded), <code>0</code> if
+         *         there are no values
+         */
+        public long getPercentile(double fraction) {
+            if (count == 0)
+                return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank)
+                    return Math.min(highestValue(i), max);
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package ch.winfor.monopoly.metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * the registry of the counters, histograms and timers of the process
+ * 
+ * The engine and the network code keep the metrics they record in static
+ * fields, created once by {@link #counter(String)},
+ * {@link #histogram(String)} and {@link #timer(String)}, so recording a value
+ * costs no lookup. The metrics can be read in-process with the getters,
+ * dumped periodically by a {@link MetricsReporter} or fetched from a
+ * {@link MetricsEndpoint}; all of them use the text format of
+ * {@link #writeText(Writer)}.
+ * 
+ * Names are dot-separated, starting with the component (e.g.
+ * <code>game.createHash.nanos</code>); timers and histograms of durations end
+ * in <code>.nanos</code>, histograms of sizes in <code>.bytes</code>.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class Metrics {
+    /** if values are recorded; can be switched off for simulations */
+    public static boolean ENABLED = true;
+
+    /** the counters by name */
+    private static final ConcurrentMap<String, Counter> counters =
+            new ConcurrentHashMap<String, Counter>();
+
+    /** the histograms by name */
+    private static final ConcurrentMap<String, Histogram> histograms =
+            new ConcurrentHashMap<String, Histogram>();
+
+    /** the timers by name */
+    private static final ConcurrentMap<String, Timer> timers =
+            new ConcurrentHashMap<String, Timer>();
+
+    /** percentiles written by {@link #writeText(Writer)} */
+    private static final double[] PERCENTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    /** the keys of {@link #PERCENTILES} */
+    private static final String[] PERCENTILE_KEYS = { "p50", "p90", "p99",
+            "p99.9" };
+
+    /**
+     * only static members
+     */
+    private Metrics() {
+    }
+
+    /**
+     * returns the counter with a name, creating it if it doesn't exist yet
+     * 
+     * @param name
+     *            the name
+     * @return the counter
+     */
+    public static Counter counter(String name) {
+        Counter counter = counters.get(name);
+        if (counter == null) {
+            Counter created = new Counter(name);
+            counter = counters.putIfAbsent(name, created);
+            if (counter == null)
+                counter = created;
+        }
+        return counter;
+    }
+
+    /**
+     * returns the histogram with a name, creating it if it doesn't exist yet
+     * 
+     * @param name
+     *            the name
+     * @return the histogram
+     */
+    public static Histogram histogram(String name) {
+        Histogram histogram = histograms.get(name);
+        if (histogram == null) {
+            Histogram created = new Histogram(name);
+            histogram = histograms.putIfAbsent(name, created);
+            if (histogram == null)
+                histogram = created;
+        }
+        return histogram;
+    }
+
+    /**
+     * returns the timer with a name, creating it if it doesn't exist yet
+     * 
+     * @param name
+     *            the name
+     * @return the timer
+     */
+    public static Timer timer(String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            Timer created = new Timer(name);
+            timer = timers.putIfAbsent(name, created);
+            if (timer == null)
+                timer = created;
+        }
+        return timer;
+    }
+
+    /**
+     * @return all counters sorted by name
+     */
+    public static Map<String, Counter> getCounters() {
+        return new TreeMap<String, Counter>(counters);
+    }
+
+    /**
+     * @return all histograms sorted by name
+     */
+    public static Map<String, Histogram> getHistograms() {
+        return new TreeMap<String, Histogram>(histograms);
+    }
+
+    /**
+     * @return all timers sorted by name
+     */
+    public static Map<String, Timer> getTimers() {
+        return new TreeMap<String, Timer>(timers);
+    }
+
+    /**
+     * writes the current values of all metrics as text
+     * 
+     * Every counter is written as a line <code>name value</code>. Every
+     * histogram is written as a line starting with its name followed by the
+     * number of values, their mean, some percentiles and their maximum as
+     * <code>key=value</code> pairs. A timer is written like a histogram of the
+     * durations of its timed calls, but with the number of all calls as
+     * <code>calls</code>. Histograms and timers without values are left out.
+     * 
+     * @param out
+     *            the writer
+     * @throws IOException
+     *             if writing fails
+     */
+    public static void writeText(Writer out) throws IOException {
+        for (Counter counter : getCounters().values())
+            out.write(counter.getName() + " " + counter.get() + "\n");
+        writeDistributions(out);
+    }
+
+    /**
+     * writes the lines of the histograms and timers of
+     * {@link #writeText(Writer)}
+     * 
+     * @param out
+     *            the writer
+     * @throws IOException
+     *             if writing fails
+     */
+    static void writeDistributions(Writer out) throws IOException {
+        for (Histogram histogram : getHistograms().values()) {
+            Histogram.Snapshot s = histogram.snapshot();
+            if (s.getCount() != 0)
+                writeDistribution(out, histogram.getName(), "count="
+                        + s.getCount(), s);
+        }
+        for (Timer timer : getTimers().values()) {
+            long calls = timer.getCalls();
+            Histogram.Snapshot s = timer.getDurations().snapshot();
+            if (s.getCount() != 0)
+                writeDistribution(out, timer.getName(), "calls=" + calls, s);
+            else if (calls != 0) // no call has been timed yet
+                out.write(timer.getName() + " calls=" + calls + "\n");
+        }
+        out.flush();
+    }
+
+    /**
+     * writes the line of a histogram or timer
+     * 
+     * @param out
+     *            the writer
+     * @param name
+     *            the name of the metric
+     * @param count
+     *            the first <code>key=value</code> pair
+     * @param s
+     *            the distribution
+     * @throws IOException
+     *             if writing fails
+     */
+    private static void writeDistribution(Writer out, String name,
+            String count, Histogram.Snapshot s) throws IOException {
+        StringBuilder line = new StringBuilder(name);
+        line.append(' ').append(count);
+        line.append(String.format(Locale.ROOT, " mean=%.1f", s.getMean()));
+        for (int i = 0; i < PERCENTILES.length; i++) {
+            line.append(' ').append(PERCENTILE_KEYS[i]).append('=')
+                    .append(s.getPercentile(PERCENTILES[i]));
+        }
+        line.append(" max=").append(s.getMax()).append('\n');
+        out.write(line.toString());
+    }
+
+    /**
+     * @return the current values of all metrics in the format of
+     *         {@link #writeText(Writer)}
+     */
+    public static String toText() {
+        StringWriter sw = new StringWriter();
+        try {
+            writeText(sw);
+        } catch (IOException e) {
+            // a StringWriter doesn't throw
+        }
+        return sw.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package ch.winfor.monopoly.metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+
+/**
+ * a socket on the loopback interface answering every connection with the
+ * current metrics as text
+ * 
+ * The answer is a minimal HTTP response containing the text of
+ * {@link Metrics#writeText(java.io.Writer)}, so the metrics can be fetched
+ * with <code>curl http://127.0.0.1:&lt;port&gt;/</code>; a client that sends
+ * no request gets the same answer after a second. The endpoint only listens
+ * on the loopback interface, so it isn't reachable from other hosts.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class MetricsEndpoint implements Runnable {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
+    /** milliseconds to wait for the request of a client */
+    private static final int REQUEST_TIMEOUT = 1000;
+
+    /** the listening socket */
+    private final ServerSocket serverSocket;
+
+    /** the thread accepting the connections */
+    private Thread thread;
+
+    /**
+     * opens the socket
+     * 
+     * @param port
+     *            the port, <code>0</code> for any free port
+     * @throws IOException
+     *             if the port can't be bound
+     */
+    public MetricsEndpoint(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * starts accepting connections in a daemon thread
+     */
+    public synchronized void start() {
+        if (thread != null)
+            return;
+        thread = new Thread(this, "metrics-endpoint");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return the port the endpoint listens on
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * closes the socket; the accepting thread ends
+     */
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            LOG.warn("metrics.notClosed", "error", e);
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Runnable#run()
+     */
+    @Override
+    public void run() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket client = serverSocket.accept();
+                try {
+                    answer(client);
+                } finally {
+                    client.close();
+                }
+            } catch (IOException e) {
+                if (!serverSocket.isClosed())
+                    LOG.warn("metrics.notAnswered", "error", e);
+            }
+        }
+    }
+
+    /**
+     * skips the request of a client and sends the metrics
+     * 
+     * @param client
+     *            the connection to the client
+     * @throws IOException
+     *             if the connection fails
+     */
+    private void answer(Socket client) throws IOException {
+        client.setSoTimeout(REQUEST_TIMEOUT);
+        BufferedReader in = new BufferedReader(new InputStreamReader(
+                client.getInputStream(), StandardCharsets.US_ASCII));
+        try {
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty())
+                ;
+        } catch (SocketTimeoutException e) {
+            // no (complete) request, answer anyway
+        }
+
+        byte[] body = Metrics.toText().getBytes(StandardCharsets.UTF_8);
+        String header = "HTTP/1.0 200 OK\r\n"
+                + "Content-Type: text/plain; charset=utf-8\r\n"
+                + "Content-Length: " + body.length + "\r\n\r\n";
+        OutputStream out = client.getOutputStream();
+        out.write(header.getBytes(StandardCharsets.US_ASCII));
+        out.write(body);
+        out.flush();
+    }
+}
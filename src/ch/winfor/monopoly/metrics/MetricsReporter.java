@@ -0,0 +1,116 @@
+package ch.winfor.monopoly.metrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * dumps the metrics to a stream (e.g. the log of a server) at a fixed rate
+ * 
+ * Every dump starts with a header line and contains the metrics in the
+ * format of {@link Metrics#writeText(java.io.Writer)}, except that every
+ * counter line ends with the change since the previous dump per second, so
+ * the frequency of events (e.g. resynchronizations) can be read directly.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class MetricsReporter {
+    /** the stream the metrics are written to */
+    private final PrintStream out;
+
+    /** the time between two dumps in milliseconds */
+    private final long periodMillis;
+
+    /** the values of the counters at the previous dump */
+    private final Map<String, Long> previous;
+
+    /** the time of the previous dump */
+    private long previousTime;
+
+    /** the thread writing the dumps or <code>null</code> if not started */
+    private ScheduledExecutorService scheduler;
+
+    /**
+     * @param out
+     *            the stream the metrics are written to
+     * @param periodMillis
+     *            the time between two dumps in milliseconds
+     */
+    public MetricsReporter(PrintStream out, long periodMillis) {
+        this.out = out;
+        this.periodMillis = periodMillis;
+        this.previous = new HashMap<String, Long>();
+        this.previousTime = System.nanoTime();
+    }
+
+    /**
+     * starts dumping the metrics in a daemon thread
+     */
+    public synchronized void start() {
+        if (scheduler != null)
+            return;
+        previousTime = System.nanoTime();
+        scheduler = Executors
+                .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "metrics-reporter");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                report();
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * stops dumping the metrics
+     */
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * writes a dump now
+     */
+    public synchronized void report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-9, (now - previousTime) / 1e9);
+        previousTime = now;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "--- metrics (%.1f s) ---%n",
+                seconds));
+        for (Counter counter : Metrics.getCounters().values()) {
+            long value = counter.get();
+            Long before = previous.put(counter.getName(), value);
+            double rate = (value - (before != null ? before : 0)) / seconds;
+            sb.append(String.format(Locale.ROOT, "%s %d (%.1f/s)%n",
+                    counter.getName(), value, rate));
+        }
+        StringWriter histograms = new StringWriter();
+        try {
+            Metrics.writeDistributions(histograms);
+        } catch (IOException e) {
+            // a StringWriter doesn't throw
+        }
+        sb.append(histograms);
+        out.print(sb);
+        out.flush();
+    }
+}
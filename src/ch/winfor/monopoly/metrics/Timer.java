@@ -0,0 +1,99 @@
+package ch.winfor.monopoly.metrics;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * counts the calls of an operation and measures the duration of some of them
+ * 
+ * Reading the clock takes longer than many operations of the engine (e.g.
+ * sending an event to the listeners), so only a random sample of one in
+ * {@link #SAMPLE_INTERVAL} calls is timed; the number of calls is exact. The
+ * durations are recorded in nanoseconds in a {@link Histogram}.
+ * 
+ * A call is measured like this:
+ * 
+ * <pre>
+ * long start = timer.start();
+ * // the operation
+ * timer.stop(start);
+ * </pre>
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public final class Timer {
+    /** one in this many calls is timed (a power of two) */
+    public static final int SAMPLE_INTERVAL = 16;
+
+    /** the value of {@link #start()} for calls that aren't timed */
+    private static final long NOT_SAMPLED = Long.MIN_VALUE;
+
+    /** the name of the timer */
+    private final String name;
+
+    /** the number of calls */
+    private final Counter calls;
+
+    /** the durations of the timed calls */
+    private final Histogram durations;
+
+    /**
+     * creates a timer without calls; timers are created by
+     * {@link Metrics#timer(String)}
+     * 
+     * @param name
+     *            the name of the timer
+     */
+    Timer(String name) {
+        this.name = name;
+        this.calls = new Counter(name);
+        this.durations = new Histogram(name);
+    }
+
+    /**
+     * @return the name of the timer
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the number of calls
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return the durations of the timed calls in nanoseconds
+     */
+    public Histogram getDurations() {
+        return durations;
+    }
+
+    /**
+     * starts a call
+     * 
+     * @return the value to pass to {@link #stop(long)}
+     */
+    public long start() {
+        if (!Metrics.ENABLED)
+            return NOT_SAMPLED;
+        int random = ThreadLocalRandom.current().nextInt();
+        if ((random & (SAMPLE_INTERVAL - 1)) != 0)
+            return NOT_SAMPLED;
+        return System.nanoTime();
+    }
+
+    /**
+     * ends a call
+     * 
+     * @param start
+     *            the value returned by {@link #start()}
+     */
+    public void stop(long start) {
+        calls.increment();
+        if (start != NOT_SAMPLED)
+            durations.record(System.nanoTime() - start);
+    }
+}
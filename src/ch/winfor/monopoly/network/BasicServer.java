@@ -8,6 +8,9 @@ import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.List;
 
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+
 /**
  * a basic server class
  * 
@@ -18,6 +21,9 @@ import java.util.List;
  * 
  */
 public class BasicServer {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
 
     /** the port on which this server is running */
     private int port;
@@ -56,7 +62,7 @@ public class BasicServer {
         try {
             acceptSocket = new ServerSocket(port);
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.warn("server.notStarted", "port", port, "error", e);
         }
     }
 
@@ -112,8 +118,7 @@ public class BasicServer {
         if (acceptSocket != null) {
             connectionListener = new Listener();
             connectionListener.start();
-            if (MonopolyClient.NETWORK_LOGS)
-                System.out.println("started server on port " + getPort());
+            LOG.info("server.started", "port", getPort());
         }
     }
 
@@ -179,7 +184,7 @@ public class BasicServer {
                     acceptSocket.close();
                 acceptSocket = null;
             } catch (IOException e) {
-                e.printStackTrace();
+                LOG.warn("server.notClosed", "error", e);
             }
         }
 
@@ -193,7 +198,7 @@ public class BasicServer {
                 } catch (SocketException e) {
                     // probably exit thread
                 } catch (IOException e) {
-                    e.printStackTrace();
+                    LOG.warn("connection.notAccepted", "error", e);
                 }
             }
         }
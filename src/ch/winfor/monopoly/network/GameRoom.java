@@ -0,0 +1,315 @@
+package ch.winfor.monopoly.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.GameJournal;
+import ch.winfor.monopoly.game.GameJournal.SyncPolicy;
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.network.MonopolyServer.ClientConnection;
+import ch.winfor.monopoly.network.RequestMessage.CreateRoom;
+import ch.winfor.monopoly.network.RequestMessage.JoinRoom;
+import ch.winfor.monopoly.network.RequestMessage.ListRooms;
+import ch.winfor.monopoly.network.RoomMessage.RoomInfo;
+import ch.winfor.monopoly.network.RoomMessage.RoomJoined;
+import ch.winfor.monopoly.network.RoomMessage.RoomRefused;
+import ch.winfor.monopoly.sim.SimulatedGame;
+import ch.winfor.monopoly.sim.Strategy;
+
+/**
+ * a room of a {@link RoomServer}, consisting of a game, the clients playing
+ * it and a turn timer
+ * 
+ * Every room belongs to one worker thread of the server. Everything that
+ * touches the game (the messages of the clients, the turn timer and the
+ * eviction) runs on this thread, so the game needs no locks.
+ * 
+ * If the server keeps journals, the game of the room is recorded by a
+ * {@link GameJournal}, so the room can be restored after a restart of the
+ * server.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+class GameRoom implements MonopolyServerListener {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
+    /** strategy finishing the turns of players who took too long */
+    private static final Strategy TIMEOUT_STRATEGY = new Strategy.NeverBuyStrategy();
+
+    /** the server hosting the room */
+    private final RoomServer roomServer;
+
+    /** the id of the room */
+    private final int id;
+
+    /** the name of the room */
+    private final String name;
+
+    /** the server managing the game and the clients of the room */
+    private final MonopolyServer server;
+
+    /** the worker thread of the room */
+    private final ScheduledExecutorService worker;
+
+    /** milliseconds a player has for his turn */
+    private final long turnTimeout;
+
+    /** the journal recording the game or <code>null</code> */
+    private GameJournal journal;
+
+    /** the timer of the current turn or <code>null</code> */
+    private ScheduledFuture<?> turnTimer;
+
+    /** the turn the timer has been started for */
+    private int timedTurn;
+
+    /** the time of the last message of a client */
+    private volatile long lastActivity;
+
+    /** if the room has been closed */
+    private boolean closed;
+
+    /**
+     * @param roomServer
+     *            the server hosting the room
+     * @param id
+     *            the id of the room
+     * @param name
+     *            the name of the room
+     * @param game
+     *            the game of the room
+     * @param journal
+     *            the journal recording the game or <code>null</code>
+     * @param worker
+     *            the worker thread of the room
+     * @param turnTimeout
+     *            milliseconds a player has for his turn
+     */
+    GameRoom(RoomServer roomServer, int id, String name, Game game,
+            GameJournal journal, ScheduledExecutorService worker,
+            long turnTimeout) {
+        this.roomServer = roomServer;
+        this.id = id;
+        this.name = name;
+        this.journal = journal;
+        this.worker = worker;
+        this.turnTimeout = turnTimeout;
+        server = new MonopolyServer(game);
+        server.addServerListener(this);
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the id of the room
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * @return the worker thread of the room
+     */
+    ScheduledExecutorService getWorker() {
+        return worker;
+    }
+
+    /**
+     * @return public information about the room
+     */
+    RoomInfo getInfo() {
+        return new RoomInfo(id, name, server.getGame().getNPlayers(),
+                server.getNClients());
+    }
+
+    /**
+     * starts recording the game in a new journal as soon as the worker thread
+     * is free; the clients joining afterwards are listeners of the game after
+     * the journal, so a batch is written before its updates are sent
+     * 
+     * @param directory
+     *            the directory of the journal
+     * @param policy
+     *            when the journal is forced to the disk
+     */
+    void startJournal(final File directory, final SyncPolicy policy) {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (closed)
+                    return;
+                try {
+                    journal = GameJournal.create(directory, server.getGame(),
+                            policy);
+                    Files.write(new File(directory, RoomServer.NAME_FILE)
+                            .toPath(), name.getBytes(StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    // the room works without journal, it just can't be
+                    // restored
+                    LOG.warn("journal.notCreated", "room", id, "error", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * lets a client join the room as soon as the worker thread is free
+     * 
+     * @param channel
+     *            the connection of the client
+     * @param requester
+     *            the connection that received the request, which is answered
+     *            if the client can't join
+     */
+    void join(final NioChannel channel, final MonopolyConnection requester) {
+        worker.execute(new Runnable() {
+            @Override
+            public void run() {
+                int seat = server.findFreeSeat();
+                if (closed) {
+                    roomServer.joinRefused(requester, "room " + id
+                            + " has been closed");
+                } else if (seat == -1) {
+                    roomServer.joinRefused(requester, "room " + id
+                            + " is full");
+                } else {
+                    // the messages of the client are processed on this
+                    // thread, so it has its seat before its first action
+                    ClientConnection cc = server.accept(channel, worker);
+                    cc.setPlayers(seat);
+                    cc.sendMessage(new RoomJoined(id, server.getNClients(),
+                            seat));
+                    if (server.findFreeSeat() == -1 && turnTimer == null)
+                        scheduleTurnTimer();
+                }
+            }
+        });
+    }
+
+    /**
+     * (re)starts the timer for the current turn
+     */
+    private void scheduleTurnTimer() {
+        if (turnTimer != null)
+            turnTimer.cancel(false);
+        timedTurn = server.getGame().getTurn();
+        turnTimer = worker.schedule(new Runnable() {
+            @Override
+            public void run() {
+                turnTimedOut();
+            }
+        }, turnTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * finishes the turn of a player who took too long
+     */
+    private void turnTimedOut() {
+        turnTimer = null;
+        if (closed || server.getNClients() == 0)
+            return;
+        Game game = server.getGame();
+        if (game.getTurn() == timedTurn) {
+            LOG.info("turn.timedOut", "room", id, "turn", timedTurn);
+            // one batch like the actions of the clients, so the journal
+            // writes the turn at once
+            game.beginBatch();
+            try {
+                SimulatedGame.playTurn(game, TIMEOUT_STRATEGY);
+            } catch (RuntimeException e) {
+                LOG.error("turn.notFinished", "room", id, "error", e);
+            } finally {
+                game.endBatch();
+            }
+        }
+        scheduleTurnTimer();
+    }
+
+    /**
+     * @param now
+     *            the current time in milliseconds
+     * @param idleTimeout
+     *            milliseconds without messages after which a room is idle
+     * @return <code>true</code> if no client has sent anything for too long
+     */
+    boolean isIdle(long now, long idleTimeout) {
+        return now - lastActivity > idleTimeout;
+    }
+
+    /**
+     * disconnects all clients and stops the turn timer; must run on the
+     * worker thread
+     * 
+     * @param keepJournal
+     *            <code>true</code> if the room is to be restored when the
+     *            server starts again, <code>false</code> to delete its journal
+     */
+    void close(boolean keepJournal) {
+        closed = true;
+        if (turnTimer != null) {
+            turnTimer.cancel(false);
+            turnTimer = null;
+        }
+        server.close();
+        if (journal != null) {
+            try {
+                if (keepJournal) {
+                    journal.close();
+                } else {
+                    new File(journal.getDirectory(), RoomServer.NAME_FILE)
+                            .delete();
+                    journal.delete();
+                }
+            } catch (IOException e) {
+                LOG.warn("journal.notClosed", "room", id, "error", e);
+            }
+            journal = null;
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.network.MonopolyServerListener#connectionAccepted(ch
+     * .winfor.monopoly.network.MonopolyServer,
+     * ch.winfor.monopoly.network.MonopolyConnection)
+     */
+    @Override
+    public void connectionAccepted(MonopolyServer sender,
+            MonopolyConnection connection) {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.network.MonopolyServerListener#messageReceived(ch.
+     * winfor.monopoly.network.MonopolyServer,
+     * ch.winfor.monopoly.network.MonopolyConnection,
+     * ch.winfor.monopoly.network.NetworkMessage)
+     */
+    @Override
+    public void messageReceived(MonopolyServer sender,
+            MonopolyConnection connection, NetworkMessage message) {
+        lastActivity = System.currentTimeMillis();
+        if (message instanceof ListRooms) {
+            connection.sendMessage(roomServer.createRoomList());
+        } else if (message instanceof CreateRoom
+                || message instanceof JoinRoom) {
+            connection.sendMessage(new RoomRefused("already in room " + id));
+        }
+
+        if (turnTimer != null && server.getGame().getTurn() != timedTurn)
+            scheduleTurnTimer();
+    }
+}
@@ -0,0 +1,114 @@
+package ch.winfor.monopoly.network;
+
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.TurnCommand;
+
+/**
+ * base message of the lockstep mode, in which the server sends only the
+ * actions of the players and every client executes them on its own copy of
+ * the game
+ * 
+ * A client asks for this mode with {@link RequestMessage.RequestLockstep}.
+ * The server answers with an {@link UpdateMessage.FullGameUpdate}, which
+ * contains the seed and the generators of the game, and then sends every
+ * action as an {@link ActionMessage} and from time to time a
+ * {@link Checkpoint}. A client whose game doesn't match a checkpoint requests
+ * the full game again; that is the only time the state is sent.
+ * 
+ * The clients send the actions they want to take as {@link ActionMessage}s
+ * too. The server executes only those allowed by
+ * {@link ch.winfor.monopoly.game.TurnHandler#isAllowed(TurnCommand)} and
+ * drops the others, so its game stays the authoritative one.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public abstract class LockstepMessage extends NetworkMessage {
+    /** */
+    private static final long serialVersionUID = -2218391874563304907L;
+
+    /** the number of actions taken in the game before the message */
+    protected long sequence;
+
+    /**
+     * @param sequence
+     *            the number of actions taken in the game before the message
+     */
+    public LockstepMessage(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * @return the number of actions taken in the game before the message
+     *         (see {@link Game#getNActions()})
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * an action of a player; sent by the server in the order the actions are
+     * to be executed, and by the clients (with any sequence) for the actions
+     * of their players
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class ActionMessage extends LockstepMessage {
+        /** */
+        private static final long serialVersionUID = 6650279385526372911L;
+
+        /** the action */
+        protected TurnCommand command;
+
+        /**
+         * @param sequence
+         *            the number of actions taken before this one
+         * @param command
+         *            the action
+         */
+        public ActionMessage(long sequence, TurnCommand command) {
+            super(sequence);
+            this.command = command;
+        }
+
+        /**
+         * @return the action
+         */
+        public TurnCommand getCommand() {
+            return command;
+        }
+    }
+
+    /**
+     * the hash of the server's game after a number of actions
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class Checkpoint extends LockstepMessage {
+        /** */
+        private static final long serialVersionUID = -4127786361095538802L;
+
+        /** the hash of the game */
+        protected long hash;
+
+        /**
+         * @param sequence
+         *            the number of actions taken
+         * @param hash
+         *            the hash of the game after these actions
+         */
+        public Checkpoint(long sequence, long hash) {
+            super(sequence);
+            this.hash = hash;
+        }
+
+        /**
+         * @return the hash of the game after {@link #getSequence()} actions
+         */
+        public long getHash() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,900 @@
+package ch.winfor.monopoly.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import ch.winfor.monopoly.game.GameSnapshot;
+import ch.winfor.monopoly.game.TurnCommand;
+import ch.winfor.monopoly.game.TurnCommand.Action;
+import ch.winfor.monopoly.metrics.Histogram;
+import ch.winfor.monopoly.metrics.Metrics;
+import ch.winfor.monopoly.metrics.Timer;
+import ch.winfor.monopoly.network.LockstepMessage.ActionMessage;
+import ch.winfor.monopoly.network.LockstepMessage.Checkpoint;
+import ch.winfor.monopoly.network.RequestMessage.CreateRoom;
+import ch.winfor.monopoly.network.RequestMessage.JoinRoom;
+import ch.winfor.monopoly.network.RequestMessage.ListRooms;
+import ch.winfor.monopoly.network.RequestMessage.RequestBoard;
+import ch.winfor.monopoly.network.RequestMessage.RequestFullGame;
+import ch.winfor.monopoly.network.RequestMessage.RequestLockstep;
+import ch.winfor.monopoly.network.RoomMessage.RoomInfo;
+import ch.winfor.monopoly.network.RoomMessage.RoomJoined;
+import ch.winfor.monopoly.network.RoomMessage.RoomList;
+import ch.winfor.monopoly.network.RoomMessage.RoomRefused;
+import ch.winfor.monopoly.network.UpdateMessage.CardDrawnUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.DeltaUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.HousesNumberChangedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerEndedTurn;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerKeepsCardUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerMovedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerObtainedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerWealthChangedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayersJailStateChangedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.SnapshotUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.UpdateBatch;
+
+/**
+ * compact binary encoding of {@link NetworkMessage}s
+ * 
+ * Every message is sent as a frame consisting of its length (as varint)
+ * followed by a tag byte identifying the message class and the fields of the
+ * message. Integers are written as zigzag varints, hashes as 8 fixed bytes and
+ * strings as length-prefixed UTF-8. Messages without a binary encoding (e.g.
+ * {@link UpdateMessage.FullGameUpdate} or the messages of the game
+ * configuration) are sent as a frame with the tag {@link #TAG_SERIALIZED}
+ * containing the message in Java serialization.
+ * 
+ * An {@link UpdateBatch} is sent as one frame containing the number of
+ * updates, the tag and fields of every update and a single hash of the game
+ * after all of them.
+ * 
+ * A stream starts with {@link #MAGIC}, whose last byte is the protocol
+ * version, so incompatible peers are detected on the first message.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class MessageCodec {
+    /** version of the binary protocol */
+    public static final int VERSION = 6;
+
+    /** header sent once at the start of a stream */
+    static final byte[] MAGIC = { 'M', 'N', 'P', VERSION };
+
+    /** maximum size of a frame in bytes */
+    public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+    /** message in Java serialization */
+    static final int TAG_SERIALIZED = 0;
+
+    /** tag of {@link RequestFullGame} */
+    static final int TAG_REQUEST_FULL_GAME = 1;
+
+    /** tag of {@link PlayerMovedUpdate} */
+    static final int TAG_PLAYER_MOVED = 2;
+
+    /** tag of {@link PlayerWealthChangedUpdate} */
+    static final int TAG_WEALTH_CHANGED = 3;
+
+    /** tag of {@link PlayerEndedTurn} */
+    static final int TAG_ENDED_TURN = 4;
+
+    /** tag of {@link PlayersJailStateChangedUpdate} */
+    static final int TAG_JAIL_STATE_CHANGED = 5;
+
+    /** tag of {@link PlayerObtainedUpdate} */
+    static final int TAG_PLAYER_OBTAINED = 6;
+
+    /** tag of {@link PlayerKeepsCardUpdate} */
+    static final int TAG_KEEPS_CARD = 7;
+
+    /** tag of {@link HousesNumberChangedUpdate} */
+    static final int TAG_HOUSES_CHANGED = 8;
+
+    /** tag of {@link CardDrawnUpdate} */
+    static final int TAG_CARD_DRAWN = 9;
+
+    /** tag of {@link RequestBoard} */
+    static final int TAG_REQUEST_BOARD = 10;
+
+    /** tag of {@link SnapshotUpdate} */
+    static final int TAG_SNAPSHOT = 11;
+
+    /** tag of {@link DeltaUpdate} */
+    static final int TAG_DELTA = 12;
+
+    /** tag of {@link CreateRoom} */
+    static final int TAG_CREATE_ROOM = 13;
+
+    /** tag of {@link JoinRoom} */
+    static final int TAG_JOIN_ROOM = 14;
+
+    /** tag of {@link ListRooms} */
+    static final int TAG_LIST_ROOMS = 15;
+
+    /** tag of {@link RoomList} */
+    static final int TAG_ROOM_LIST = 16;
+
+    /** tag of {@link RoomJoined} */
+    static final int TAG_ROOM_JOINED = 17;
+
+    /** tag of {@link RoomRefused} */
+    static final int TAG_ROOM_REFUSED = 18;
+
+    /** tag of {@link UpdateBatch} */
+    static final int TAG_UPDATE_BATCH = 19;
+
+    /** tag of {@link RequestLockstep} */
+    static final int TAG_REQUEST_LOCKSTEP = 20;
+
+    /** tag of {@link ActionMessage} */
+    static final int TAG_ACTION = 21;
+
+    /** tag of {@link Checkpoint} */
+    static final int TAG_CHECKPOINT = 22;
+
+    /** number and duration of the encoded messages */
+    private static final Timer ENCODE_DURATION = Metrics
+            .timer("network.encode.nanos");
+
+    /** size of the encoded frames (without the length prefix) */
+    private static final Histogram ENCODE_SIZE = Metrics
+            .histogram("network.encode.bytes");
+
+    /** number and duration of the decoded messages */
+    private static final Timer DECODE_DURATION = Metrics
+            .timer("network.decode.nanos");
+
+    /** size of the decoded frames (without the length prefix) */
+    private static final Histogram DECODE_SIZE = Metrics
+            .histogram("network.decode.bytes");
+
+    /**
+     * writes the fields of a message into a frame
+     * 
+     * @param message
+     *            the message
+     * @param out
+     *            the frame to write to (should be empty)
+     * @throws IOException
+     *             if the message can't be serialized
+     */
+    public static void encode(NetworkMessage message, FrameWriter out)
+            throws IOException {
+        long start = ENCODE_DURATION.start();
+        encodeMessage(message, out);
+        ENCODE_DURATION.stop(start);
+        ENCODE_SIZE.record(out.size());
+    }
+
+    /**
+     * writes the fields of a message into a frame (see
+     * {@link #encode(NetworkMessage, FrameWriter)})
+     * 
+     * @param message
+     *            the message
+     * @param out
+     *            the frame to write to
+     * @throws IOException
+     *             if the message can't be serialized
+     */
+    private static void encodeMessage(NetworkMessage message, FrameWriter out)
+            throws IOException {
+        // exact class comparisons, so subclasses with additional fields fall
+        // back to serialization
+        if (message instanceof UpdateMessage
+                && encodeUpdate((UpdateMessage) message, out)) {
+            out.writeLong(((UpdateMessage) message).hashAfter);
+            return;
+        } else if (message.getClass() == UpdateBatch.class) {
+            UpdateBatch ub = (UpdateBatch) message;
+            out.writeByte(TAG_UPDATE_BATCH);
+            out.writeVarInt(ub.getNUpdates());
+            for (int i = 0; i < ub.getNUpdates(); i++) {
+                if (!encodeUpdate(ub.getUpdate(i), out)) {
+                    // one of the updates has no binary encoding
+                    out.reset();
+                    writeSerialized(message, out);
+                    return;
+                }
+            }
+            out.writeLong(ub.hashAfter);
+            return;
+        } else if (message.getClass() == RequestFullGame.class) {
+            out.writeByte(TAG_REQUEST_FULL_GAME);
+            out.writeVarLong(((RequestFullGame) message).acknowledgedVersion);
+            return;
+        } else if (message.getClass() == RequestBoard.class) {
+            out.writeByte(TAG_REQUEST_BOARD);
+            return;
+        } else if (message.getClass() == RequestLockstep.class) {
+            out.writeByte(TAG_REQUEST_LOCKSTEP);
+            return;
+        } else if (message.getClass() == ActionMessage.class) {
+            ActionMessage am = (ActionMessage) message;
+            out.writeByte(TAG_ACTION);
+            out.writeVarLong(am.sequence);
+            out.writeVarInt(am.command.getPlayer());
+            out.writeByte(am.command.getAction().ordinal());
+            out.writeVarInt(am.command.getField());
+            return;
+        } else if (message.getClass() == Checkpoint.class) {
+            Checkpoint cp = (Checkpoint) message;
+            out.writeByte(TAG_CHECKPOINT);
+            out.writeVarLong(cp.sequence);
+            out.writeLong(cp.hash);
+            return;
+        } else if (message.getClass() == SnapshotUpdate.class) {
+            SnapshotUpdate su = (SnapshotUpdate) message;
+            out.writeByte(TAG_SNAPSHOT);
+            out.writeVarLong(su.version);
+            out.writeLong(su.hashAfter);
+            DataOutputStream dos = new DataOutputStream(out);
+            su.state.write(dos);
+            dos.flush();
+            return;
+        } else if (message.getClass() == DeltaUpdate.class) {
+            DeltaUpdate du = (DeltaUpdate) message;
+            out.writeByte(TAG_DELTA);
+            out.writeVarLong(du.version);
+            out.writeVarLong(du.baseVersion);
+            out.writeLong(du.hashAfter);
+            out.write(du.delta, 0, du.delta.length);
+            return;
+        } else if (message.getClass() == CreateRoom.class) {
+            CreateRoom cr = (CreateRoom) message;
+            out.writeByte(TAG_CREATE_ROOM);
+            out.writeString(cr.name);
+            out.writeVarInt(cr.nPlayers);
+            return;
+        } else if (message.getClass() == JoinRoom.class) {
+            out.writeByte(TAG_JOIN_ROOM);
+            out.writeVarInt(((JoinRoom) message).roomId);
+            return;
+        } else if (message.getClass() == ListRooms.class) {
+            out.writeByte(TAG_LIST_ROOMS);
+            return;
+        } else if (message.getClass() == RoomList.class) {
+            RoomInfo[] rooms = ((RoomList) message).rooms;
+            out.writeByte(TAG_ROOM_LIST);
+            out.writeVarInt(rooms.length);
+            for (RoomInfo room : rooms) {
+                out.writeVarInt(room.getId());
+                out.writeString(room.getName());
+                out.writeVarInt(room.getNPlayers());
+                out.writeVarInt(room.getNClients());
+            }
+            return;
+        } else if (message.getClass() == RoomJoined.class) {
+            RoomJoined rj = (RoomJoined) message;
+            out.writeByte(TAG_ROOM_JOINED);
+            out.writeVarInt(rj.roomId);
+            out.writeVarInt(rj.nClients);
+            out.writeVarInt(rj.seat);
+            return;
+        } else if (message.getClass() == RoomRefused.class) {
+            out.writeByte(TAG_ROOM_REFUSED);
+            out.writeString(((RoomRefused) message).reason);
+            return;
+        } else {
+            writeSerialized(message, out);
+            return;
+        }
+    }
+
+    /**
+     * writes a message in Java serialization
+     * 
+     * @param message
+     *            the message
+     * @param out
+     *            the frame to write to
+     * @throws IOException
+     *             if the message can't be serialized
+     */
+    private static void writeSerialized(NetworkMessage message, FrameWriter out)
+            throws IOException {
+        out.writeByte(TAG_SERIALIZED);
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(message);
+        oos.flush();
+    }
+
+    /**
+     * writes the tag and the fields of an update with a binary encoding, but
+     * not its hash
+     * 
+     * @param message
+     *            the update
+     * @param out
+     *            the frame to write to
+     * @return <code>false</code> if the update has no binary encoding, in
+     *         which case nothing is written
+     */
+    private static boolean encodeUpdate(UpdateMessage message,
+            FrameWriter out) {
+        // exact class comparisons, so subclasses with additional fields fall
+        // back to serialization
+        if (message.getClass() == PlayerMovedUpdate.class) {
+            PlayerMovedUpdate pmu = (PlayerMovedUpdate) message;
+            out.writeByte(TAG_PLAYER_MOVED);
+            out.writeVarInt(pmu.playerIndex);
+            out.writeVarInt(pmu.piecePosition);
+        } else if (message.getClass() == PlayerWealthChangedUpdate.class) {
+            PlayerWealthChangedUpdate pwcu = (PlayerWealthChangedUpdate) message;
+            out.writeByte(TAG_WEALTH_CHANGED);
+            out.writeVarInt(pwcu.playerIndex);
+            out.writeVarLong(pwcu.newWealth);
+        } else if (message.getClass() == PlayerEndedTurn.class) {
+            out.writeByte(TAG_ENDED_TURN);
+            out.writeVarInt(((PlayerEndedTurn) message).playerIndex);
+        } else if (message.getClass() == PlayersJailStateChangedUpdate.class) {
+            PlayersJailStateChangedUpdate pjscu = (PlayersJailStateChangedUpdate) message;
+            out.writeByte(TAG_JAIL_STATE_CHANGED);
+            out.writeVarInt(pjscu.playerIndex);
+            out.writeVarInt(pjscu.newJailState);
+        } else if (message.getClass() == PlayerObtainedUpdate.class) {
+            PlayerObtainedUpdate pou = (PlayerObtainedUpdate) message;
+            out.writeByte(TAG_PLAYER_OBTAINED);
+            out.writeVarInt(pou.playerIndex);
+            out.writeVarInt(pou.fieldIndex);
+        } else if (message.getClass() == PlayerKeepsCardUpdate.class) {
+            PlayerKeepsCardUpdate pkcu = (PlayerKeepsCardUpdate) message;
+            out.writeByte(TAG_KEEPS_CARD);
+            out.writeVarInt(pkcu.playerIndex);
+            out.writeString(pkcu.cardCollectionName);
+            out.writeVarInt(pkcu.cardIndex);
+        } else if (message.getClass() == HousesNumberChangedUpdate.class) {
+            HousesNumberChangedUpdate hncu = (HousesNumberChangedUpdate) message;
+            out.writeByte(TAG_HOUSES_CHANGED);
+            out.writeVarInt(hncu.fieldIndex);
+            out.writeVarInt(hncu.newHouseNumbers);
+        } else if (message.getClass() == CardDrawnUpdate.class) {
+            out.writeByte(TAG_CARD_DRAWN);
+            out.writeString(((CardDrawnUpdate) message).deckName);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * creates a message from a frame
+     * 
+     * @param in
+     *            the frame
+     * @return the decoded message
+     * @throws IOException
+     *             if the frame is malformed
+     */
+    public static NetworkMessage decode(FrameReader in) throws IOException {
+        long start = DECODE_DURATION.start();
+        int size = in.available();
+        NetworkMessage message = decodeMessage(in);
+        DECODE_DURATION.stop(start);
+        DECODE_SIZE.record(size);
+        return message;
+    }
+
+    /**
+     * creates a message from a frame (see {@link #decode(FrameReader)})
+     * 
+     * @param in
+     *            the frame
+     * @return the decoded message
+     * @throws IOException
+     *             if the frame is malformed
+     */
+    private static NetworkMessage decodeMessage(FrameReader in)
+            throws IOException {
+        int tag = in.readByte();
+        UpdateMessage update;
+        switch (tag) {
+        case TAG_SERIALIZED:
+            ObjectInputStream ois = new ObjectInputStream(in);
+            try {
+                Object obj = ois.readObject();
+                if (obj instanceof NetworkMessage)
+                    return (NetworkMessage) obj;
+                throw new IOException("frame doesn't contain a message: "
+                        + obj);
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            }
+        case TAG_REQUEST_FULL_GAME:
+            return new RequestFullGame(in.readVarLong());
+        case TAG_REQUEST_BOARD:
+            return new RequestBoard();
+        case TAG_REQUEST_LOCKSTEP:
+            return new RequestLockstep();
+        case TAG_ACTION: {
+            long sequence = in.readVarLong();
+            int player = in.readVarInt();
+            int action = in.readByte();
+            if (action >= Action.values().length)
+                throw new IOException("unknown action: " + action);
+            TurnCommand command = new TurnCommand(player,
+                    Action.values()[action], in.readVarInt());
+            return new ActionMessage(sequence, command);
+        }
+        case TAG_CHECKPOINT: {
+            long sequence = in.readVarLong();
+            return new Checkpoint(sequence, in.readLong());
+        }
+        case TAG_SNAPSHOT: {
+            long version = in.readVarLong();
+            long hash = in.readLong();
+            update = new SnapshotUpdate(version, GameSnapshot
+                    .read(new DataInputStream(in)));
+            update.setHash(hash);
+            return update;
+        }
+        case TAG_DELTA: {
+            long version = in.readVarLong();
+            long baseVersion = in.readVarLong();
+            long hash = in.readLong();
+            byte[] delta = new byte[in.available()];
+            in.read(delta, 0, delta.length);
+            update = new DeltaUpdate(version, baseVersion, delta);
+            update.setHash(hash);
+            return update;
+        }
+        case TAG_CREATE_ROOM: {
+            String name = in.readString();
+            return new CreateRoom(name, in.readVarInt());
+        }
+        case TAG_JOIN_ROOM:
+            return new JoinRoom(in.readVarInt());
+        case TAG_LIST_ROOMS:
+            return new ListRooms();
+        case TAG_ROOM_LIST: {
+            int nRooms = in.readVarInt();
+            if (nRooms < 0 || nRooms > in.available())
+                throw new IOException("invalid number of rooms: " + nRooms);
+            RoomInfo[] rooms = new RoomInfo[nRooms];
+            for (int i = 0; i < rooms.length; i++) {
+                int id = in.readVarInt();
+                String name = in.readString();
+                int nPlayers = in.readVarInt();
+                rooms[i] = new RoomInfo(id, name, nPlayers, in.readVarInt());
+            }
+            return new RoomList(rooms);
+        }
+        case TAG_ROOM_JOINED: {
+            int roomId = in.readVarInt();
+            int nClients = in.readVarInt();
+            return new RoomJoined(roomId, nClients, in.readVarInt());
+        }
+        case TAG_ROOM_REFUSED:
+            return new RoomRefused(in.readString());
+        case TAG_UPDATE_BATCH: {
+            int nUpdates = in.readVarInt();
+            if (nUpdates < 0 || nUpdates > in.available())
+                throw new IOException("invalid number of updates: "
+                        + nUpdates);
+            UpdateMessage[] updates = new UpdateMessage[nUpdates];
+            for (int i = 0; i < updates.length; i++)
+                updates[i] = decodeUpdate(in.readByte(), in);
+            update = new UpdateBatch(updates);
+            update.setHash(in.readLong());
+            return update;
+        }
+        default:
+            update = decodeUpdate(tag, in);
+            update.setHash(in.readLong());
+            return update;
+        }
+    }
+
+    /**
+     * reads the fields of an update with a binary encoding, but not its hash
+     * 
+     * @param tag
+     *            the tag of the update, which has already been read
+     * @param in
+     *            the frame
+     * @return the update
+     * @throws IOException
+     *             if the tag isn't the one of such an update or the frame is
+     *             malformed
+     */
+    private static UpdateMessage decodeUpdate(int tag, FrameReader in)
+            throws IOException {
+        UpdateMessage.PlayerUpdate playerUpdate;
+        UpdateMessage update;
+        switch (tag) {
+        case TAG_PLAYER_MOVED: {
+            int playerIndex = in.readVarInt();
+            update = new PlayerMovedUpdate(playerIndex, in.readVarInt());
+            break;
+        }
+        case TAG_WEALTH_CHANGED: {
+            int playerIndex = in.readVarInt();
+            playerUpdate = new PlayerWealthChangedUpdate(in.readVarLong());
+            playerUpdate.playerIndex = playerIndex;
+            update = playerUpdate;
+            break;
+        }
+        case TAG_ENDED_TURN:
+            playerUpdate = new PlayerEndedTurn();
+            playerUpdate.playerIndex = in.readVarInt();
+            update = playerUpdate;
+            break;
+        case TAG_JAIL_STATE_CHANGED: {
+            int playerIndex = in.readVarInt();
+            playerUpdate = new PlayersJailStateChangedUpdate(in.readVarInt());
+            playerUpdate.playerIndex = playerIndex;
+            update = playerUpdate;
+            break;
+        }
+        case TAG_PLAYER_OBTAINED: {
+            PlayerObtainedUpdate pou = new PlayerObtainedUpdate();
+            pou.playerIndex = in.readVarInt();
+            pou.fieldIndex = in.readVarInt();
+            update = pou;
+            break;
+        }
+        case TAG_KEEPS_CARD: {
+            PlayerKeepsCardUpdate pkcu = new PlayerKeepsCardUpdate();
+            pkcu.playerIndex = in.readVarInt();
+            pkcu.cardCollectionName = in.readString();
+            pkcu.cardIndex = in.readVarInt();
+            update = pkcu;
+            break;
+        }
+        case TAG_HOUSES_CHANGED: {
+            HousesNumberChangedUpdate hncu = new HousesNumberChangedUpdate();
+            hncu.fieldIndex = in.readVarInt();
+            hncu.newHouseNumbers = in.readVarInt();
+            update = hncu;
+            break;
+        }
+        case TAG_CARD_DRAWN: {
+            CardDrawnUpdate cdu = new CardDrawnUpdate();
+            cdu.deckName = in.readString();
+            update = cdu;
+            break;
+        }
+        default:
+            throw new IOException("unknown message tag: " + tag);
+        }
+        return update;
+    }
+
+    /**
+     * growable buffer into which a frame is encoded
+     * 
+     * The first bytes of the buffer are reserved for the length of the frame,
+     * so the whole frame can be sent with a single write operation.
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class FrameWriter extends OutputStream {
+        /** number of bytes reserved for the length prefix */
+        private static final int HEADER_SIZE = 5;
+
+        /** the buffer */
+        private byte[] buffer;
+
+        /** position after the last written byte */
+        private int position;
+
+        /**
+         * creates an empty frame
+         */
+        public FrameWriter() {
+            buffer = new byte[256];
+            position = HEADER_SIZE;
+        }
+
+        /**
+         * removes all content from the frame
+         */
+        public void reset() {
+            position = HEADER_SIZE;
+        }
+
+        /**
+         * @return the number of bytes written into the frame (without the
+         *         length prefix)
+         */
+        public int size() {
+            return position - HEADER_SIZE;
+        }
+
+        /**
+         * makes sure that a number of bytes can be appended
+         * 
+         * @param n
+         *            the number of bytes
+         */
+        private void ensureCapacity(int n) {
+            if (position + n > buffer.length)
+                buffer = Arrays.copyOf(buffer,
+                        Math.max(buffer.length * 2, position + n));
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.OutputStream#write(int)
+         */
+        @Override
+        public void write(int b) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) b;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.OutputStream#write(byte[], int, int)
+         */
+        @Override
+        public void write(byte[] b, int off, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, off, buffer, position, len);
+            position += len;
+        }
+
+        /**
+         * @param b
+         *            the byte to write
+         */
+        public void writeByte(int b) {
+            write(b);
+        }
+
+        /**
+         * writes a signed integer as zigzag varint
+         * 
+         * @param value
+         *            the value
+         */
+        public void writeVarInt(int value) {
+            writeUnsignedVarLong(((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL);
+        }
+
+        /**
+         * writes a signed long as zigzag varint
+         * 
+         * @param value
+         *            the value
+         */
+        public void writeVarLong(long value) {
+            writeUnsignedVarLong((value << 1) ^ (value >> 63));
+        }
+
+        /**
+         * writes an unsigned varint (7 bits per byte, lowest bits first)
+         * 
+         * @param value
+         *            the value
+         */
+        public void writeUnsignedVarLong(long value) {
+            ensureCapacity(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        /**
+         * writes 8 bytes (big endian)
+         * 
+         * @param value
+         *            the value
+         */
+        public void writeLong(long value) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8)
+                buffer[position++] = (byte) (value >>> shift);
+        }
+
+        /**
+         * writes a string as length-prefixed UTF-8, <code>null</code> is
+         * allowed
+         * 
+         * @param s
+         *            the string
+         */
+        public void writeString(String s) {
+            if (s == null) {
+                writeUnsignedVarLong(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeUnsignedVarLong(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        /**
+         * writes the length prefix and the content of the frame in one
+         * operation
+         * 
+         * @param output
+         *            the stream to write to
+         * @throws IOException
+         *             if the writing fails
+         */
+        public void writeTo(OutputStream output) throws IOException {
+            int length = size();
+            int lengthSize = 1;
+            for (int l = length >>> 7; l != 0; l >>>= 7)
+                lengthSize++;
+
+            int start = HEADER_SIZE - lengthSize;
+            int p = start;
+            int l = length;
+            while ((l & ~0x7F) != 0) {
+                buffer[p++] = (byte) ((l & 0x7F) | 0x80);
+                l >>>= 7;
+            }
+            buffer[p] = (byte) l;
+            output.write(buffer, start, lengthSize + length);
+        }
+    }
+
+    /**
+     * a received frame from which the fields of a message are read
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class FrameReader extends ByteArrayInputStream {
+        /**
+         * creates a reader on an empty frame
+         */
+        public FrameReader() {
+            super(new byte[256], 0, 0);
+        }
+
+        /**
+         * reads the next frame from a stream, replacing the current one
+         * 
+         * @param input
+         *            the stream
+         * @return <code>false</code> if the stream ended before the frame
+         *         started
+         * @throws IOException
+         *             if the stream ended in the middle of a frame or the frame
+         *             is too large
+         */
+        public boolean readFrom(InputStream input) throws IOException {
+            int length = 0;
+            for (int shift = 0;; shift += 7) {
+                int b = input.read();
+                if (b == -1) {
+                    if (shift == 0)
+                        return false;
+                    throw new EOFException("stream ended in frame header");
+                }
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    break;
+                if (shift >= 28)
+                    throw new IOException("malformed frame length");
+            }
+            if (length < 0 || length > MAX_FRAME_SIZE)
+                throw new IOException("frame too large: " + length);
+
+            if (buf.length < length)
+                buf = new byte[Math.max(length, buf.length * 2)];
+            int read = 0;
+            while (read < length) {
+                int n = input.read(buf, read, length - read);
+                if (n == -1)
+                    throw new EOFException("stream ended in frame");
+                read += n;
+            }
+            pos = 0;
+            count = length;
+            mark = 0;
+            return true;
+        }
+
+        /**
+         * wraps an already received frame
+         * 
+         * @param frame
+         *            the buffer containing the frame
+         * @param offset
+         *            the position of the frame in the buffer
+         * @param length
+         *            the length of the frame
+         */
+        public void setFrame(byte[] frame, int offset, int length) {
+            buf = frame;
+            pos = offset;
+            count = offset + length;
+            mark = offset;
+        }
+
+        /**
+         * @return the next byte
+         * @throws EOFException
+         *             if the frame has ended
+         */
+        public int readByte() throws EOFException {
+            int b = read();
+            if (b == -1)
+                throw new EOFException("frame too short");
+            return b;
+        }
+
+        /**
+         * @return the next zigzag varint
+         * @throws EOFException
+         *             if the frame has ended
+         */
+        public int readVarInt() throws EOFException {
+            int raw = (int) readUnsignedVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        /**
+         * @return the next zigzag varint
+         * @throws EOFException
+         *             if the frame has ended
+         */
+        public long readVarLong() throws EOFException {
+            long raw = readUnsignedVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+
+        /**
+         * @return the next unsigned varint
+         * @throws EOFException
+         *             if the frame has ended
+         */
+        public long readUnsignedVarLong() throws EOFException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            return value;
+        }
+
+        /**
+         * @return the next 8 bytes (big endian)
+         * @throws EOFException
+         *             if the frame has ended
+         */
+        public long readLong() throws EOFException {
+            long value = 0;
+            for (int i = 0; i < 8; i++)
+                value = (value << 8) | readByte();
+            return value;
+        }
+
+        /**
+         * @return the next length-prefixed UTF-8 string
+         * @throws EOFException
+         *             if the frame has ended
+         */
+        public String readString() throws EOFException {
+            int length = (int) readUnsignedVarLong() - 1;
+            if (length < 0)
+                return null;
+            if (length > count - pos)
+                throw new EOFException("frame too short");
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
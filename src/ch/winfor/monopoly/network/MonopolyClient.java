@@ -5,13 +5,27 @@ import java.net.InetAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
 
+import ch.winfor.monopoly.game.Board;
 import ch.winfor.monopoly.game.BuyableField;
 import ch.winfor.monopoly.game.Card;
 import ch.winfor.monopoly.game.Card.KeepableCard;
 import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.GameCommand;
+import ch.winfor.monopoly.game.GameListener;
+import ch.winfor.monopoly.game.GameSnapshot;
 import ch.winfor.monopoly.game.Player;
+import ch.winfor.monopoly.game.TurnCommand;
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.network.LockstepMessage.ActionMessage;
+import ch.winfor.monopoly.network.LockstepMessage.Checkpoint;
+import ch.winfor.monopoly.network.RequestMessage.RequestBoard;
 import ch.winfor.monopoly.network.RequestMessage.RequestFullGame;
+import ch.winfor.monopoly.network.RequestMessage.RequestLockstep;
+import ch.winfor.monopoly.network.UpdateMessage.BoardUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.FullGameUpdate;
 import ch.winfor.monopoly.network.UpdateMessage.InvalidUpdateException;
+import ch.winfor.monopoly.network.UpdateMessage.StateUpdate;
 
 /**
  * client part of a connection to a server running a monopoly game
@@ -19,11 +33,37 @@ import ch.winfor.monopoly.network.UpdateMessage.InvalidUpdateException;
  * @author Nicolas Winkler
  * 
  */
-public class MonopolyClient extends MonopolyConnection {
+public class MonopolyClient extends MonopolyConnection implements
+        Game.ActionForwarder {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
+    /** the version of the last state received from the server */
+    private long acknowledgedVersion = StateUpdate.NO_VERSION;
+
+    /** the last state received from the server */
+    private GameSnapshot acknowledgedState;
+
+    /**
+     * <code>true</code> if the actions are executed by the server and sent
+     * back (see {@link LockstepMessage})
+     */
+    private volatile boolean lockstep;
+
+    /**
+     * <code>true</code> while a lockstep client waits for the full game, during
+     * which the actions are ignored
+     */
+    private volatile boolean awaitingGame;
+
+    /** the board sent by the server while the client has no game yet */
+    private Board board;
 
     public MonopolyClient(InetAddress address, int port, Game game)
             throws IOException {
         super(new Socket(address, port), game);
+        if (game != null)
+            game.setActionForwarder(this);
     }
 
     public MonopolyClient(InetAddress address, int port) throws IOException {
@@ -60,14 +100,87 @@ public class MonopolyClient extends MonopolyConnection {
         super.connect(InetAddress.getByName(address), port);
     }
 
+    /**
+     * the actions submitted to the new game are sent to the server (see
+     * {@link #forwardAction(TurnCommand)}), which executes them for the
+     * players the client may act for
+     * 
+     * @see ch.winfor.monopoly.network.MonopolyConnection#setGame(Game)
+     */
+    @Override
+    public void setGame(Game game) {
+        if (this.game != null)
+            this.game.setActionForwarder(null);
+        super.setGame(game);
+        if (game != null)
+            game.setActionForwarder(this);
+    }
+
+    /**
+     * switches to the lockstep mode: from now on, the game only changes by
+     * the actions the server sends back
+     */
+    public void startLockstep() {
+        lockstep = true;
+        awaitingGame = true;
+        sendMessage(new RequestLockstep());
+    }
+
+    /**
+     * asks the server for its board and the state of its game, from which a
+     * client without a game creates its own; it can be obtained by
+     * {@link #getGame()} as soon as the state has been received
+     */
+    public void requestGame() {
+        sendMessage(new RequestBoard());
+    }
+
     /**
      * asks the server to send the full game state
      */
     public void requestFullGame() {
-        RequestFullGame rfg = new RequestFullGame();
+        if (lockstep)
+            awaitingGame = true;
+        RequestFullGame rfg = new RequestFullGame(acknowledgedVersion);
         sendMessage(rfg);
     }
 
+    /**
+     * applies a state sent by the server
+     * 
+     * @param stateUpdate
+     *            the state
+     */
+    private void receiveState(StateUpdate stateUpdate) {
+        // the server already knows the changes, so don't send them back
+        GameListener previous = game.suppressEvents(this);
+        try {
+            stateUpdate.updateGame(game, acknowledgedVersion,
+                    acknowledgedState);
+        } catch (InvalidUpdateException iue) {
+            LOG.info("state.notApplied", "reason", iue.getMessage());
+        } finally {
+            game.resumeEvents(previous);
+        }
+
+        GameSnapshot state = stateUpdate.getSnapshot();
+        if (state == null) {
+            // the board or the base state of the delta is unknown
+            acknowledgedVersion = StateUpdate.NO_VERSION;
+            acknowledgedState = null;
+            if (!(stateUpdate instanceof UpdateMessage.DeltaUpdate))
+                sendMessage(new RequestBoard());
+            else
+                requestFullGame();
+        } else if (stateUpdate.checkHash(game)) {
+            acknowledgedVersion = stateUpdate.getVersion();
+            acknowledgedState = state;
+        } else {
+            // requesting again would just return the same state
+            LOG.warn("state.hashMismatch", "version", stateUpdate.getVersion());
+        }
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -77,25 +190,123 @@ public class MonopolyClient extends MonopolyConnection {
      */
     @Override
     public void messageReceived(NetworkMessage message) {
-        if (NETWORK_LOGS)
-            System.out.println("Message received: " + message);
+        LOG.debug("message.received", "message", message);
 
-        if (message instanceof UpdateMessage) {
-            UpdateMessage updateMessage = (UpdateMessage) message;
+        if (game == null) {
+            joinGame(message);
+        } else if (message instanceof UpdateMessage) {
+            final UpdateMessage updateMessage = (UpdateMessage) message;
+            game.submit(new GameCommand() {
+                @Override
+                public void execute(Game game) {
+                    applyUpdate(updateMessage);
+                }
+            });
+        } else if (message instanceof LockstepMessage) {
+            final LockstepMessage lockstepMessage = (LockstepMessage) message;
+            game.submit(new GameCommand() {
+                @Override
+                public void execute(Game game) {
+                    applyLockstep(lockstepMessage);
+                }
+            });
+        }
+    }
+
+    /**
+     * creates the game of a client that has requested one (see
+     * {@link #requestGame()}) from the board and the first state sent by the
+     * server
+     * 
+     * @param message
+     *            the board or the state
+     */
+    private void joinGame(NetworkMessage message) {
+        if (message instanceof BoardUpdate) {
+            board = ((BoardUpdate) message).getBoard();
+        } else if (message instanceof StateUpdate && board != null) {
+            // the new game has no thread yet, so the state is applied here
+            setGame(new Game(board, 0, null));
+            receiveState((StateUpdate) message);
+        }
+    }
 
-            removeListener(); // suspend listening to the game
+    /**
+     * executes an action sent by the server or compares the game to a
+     * checkpoint; runs on the game thread
+     * 
+     * If an action is missing or the game differs from the checkpoint, the
+     * full game is requested.
+     * 
+     * @param message
+     *            the action or checkpoint
+     */
+    private void applyLockstep(LockstepMessage message) {
+        if (!lockstep || awaitingGame) // the full game will contain it
+            return;
+
+        long taken = game.getNActions();
+        if (message instanceof ActionMessage) {
+            if (message.getSequence() != taken) {
+                requestFullGame();
+                return;
+            }
+            GameListener previous = game.suppressEvents(this);
             try {
-                if (game != null)
-                    updateMessage.updateGame(game);
-            } catch (InvalidUpdateException iue) {
-                iue.printStackTrace();
+                ((ActionMessage) message).getCommand().execute(game);
+            } finally {
+                game.resumeEvents(previous);
             }
-            addListener();
+            if (game.getNActions() != taken + 1) // not executable here
+                requestFullGame();
+        } else if (message instanceof Checkpoint) {
+            if (message.getSequence() != taken
+                    || ((Checkpoint) message).getHash() != game.createHash()) {
+                LOG.info("checkpoint.mismatch", "sequence",
+                        message.getSequence());
+                requestFullGame();
+            }
+        }
+    }
 
-            if (game != null)
-                if (!updateMessage.checkHash(game)) // hashes are not the same
-                    requestFullGame(); // error occurred, request the whole game
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.game.Game.ActionForwarder#forwardAction(ch.winfor.
+     * monopoly.game.TurnCommand)
+     */
+    @Override
+    public void forwardAction(TurnCommand action) {
+        sendMessage(new ActionMessage(-1, action));
+    }
+
+    /**
+     * applies an update sent by the server; runs on the game thread
+     * 
+     * @param updateMessage
+     *            the update
+     */
+    private void applyUpdate(UpdateMessage updateMessage) {
+        if (updateMessage instanceof StateUpdate) {
+            receiveState((StateUpdate) updateMessage);
+            return;
         }
+
+        GameListener previous = game.suppressEvents(this);
+        try {
+            updateMessage.updateGame(game);
+        } catch (InvalidUpdateException iue) {
+            LOG.warn("update.notApplied", "update", updateMessage, "error",
+                    iue);
+        } finally {
+            game.resumeEvents(previous);
+        }
+        if (updateMessage instanceof FullGameUpdate)
+            awaitingGame = false;
+
+        if (!updateMessage.checkHash(game)) // hashes are not the same
+            requestFullGame(); // error occurred, request the whole game
     }
 
     @Override
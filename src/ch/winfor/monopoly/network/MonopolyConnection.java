@@ -8,6 +8,8 @@ import java.util.ArrayList;
 
 import ch.winfor.monopoly.game.Game;
 import ch.winfor.monopoly.game.GameListener;
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
 
 /**
  * a connection (server or client) to other players which play at the same game
@@ -17,6 +19,9 @@ import ch.winfor.monopoly.game.GameListener;
  * 
  */
 public abstract class MonopolyConnection implements GameListener {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
     /** the socket connection */
     protected Socket connection;
 
@@ -31,9 +36,6 @@ public abstract class MonopolyConnection implements GameListener {
 
     private ArrayList<MonopolyConnectionListener> listeners;
 
-    /** defines if network logs are enabled (only for debug purposes) */
-    public static boolean NETWORK_LOGS = true;
-
     /**
      * initialize the connection
      * 
@@ -49,12 +51,34 @@ public abstract class MonopolyConnection implements GameListener {
             networkMessageStream = new NetworkMessageStream(
                     connection.getOutputStream(), connection.getInputStream());
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.warn("stream.notOpened", "error", e);
         }
         addListener();
         startListening();
     }
 
+    /**
+     * initialize a connection whose incoming messages are read by someone
+     * else, e.g. the I/O threads of a {@link NioServer}, and passed to
+     * {@link #deliverMessage(NetworkMessage)}
+     * 
+     * @param connection
+     *            the socket connection
+     * @param game
+     *            the game belonging to the connection
+     * @param messageStream
+     *            the stream the outgoing messages are written to; it may be
+     *            shared with other connections over the same socket
+     */
+    protected MonopolyConnection(Socket connection, Game game,
+            NetworkMessageStream messageStream) {
+        this.game = game;
+        this.connection = connection;
+        listeners = new ArrayList<MonopolyConnectionListener>();
+        networkMessageStream = messageStream;
+        addListener();
+    }
+
     public MonopolyConnection() {
         this.connection = new Socket();
         listeners = new ArrayList<MonopolyConnectionListener>();
@@ -79,7 +103,7 @@ public abstract class MonopolyConnection implements GameListener {
                         connection.getOutputStream(),
                         connection.getInputStream());
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.warn("stream.notOpened", "error", e);
         }
         startListening();
     }
@@ -102,14 +126,16 @@ public abstract class MonopolyConnection implements GameListener {
     }
 
     /**
+     * moves the listeners of the connection (see {@link #addListener()}) from
+     * the old game to the new one
+     * 
      * @param game
      *            the game to set
      */
     public void setGame(Game game) {
-        if (game != null)
-            game.removeGameListener(this);
+        removeListener();
         this.game = game;
-        game.addGameListener(this);
+        addListener();
     }
 
     /**
@@ -126,7 +152,7 @@ public abstract class MonopolyConnection implements GameListener {
                 networkMessageStream.writeMessage(message);
                 return true;
             } catch (IOException e) {
-                e.printStackTrace();
+                LOG.warn("message.notSent", "message", message, "error", e);
                 fireTimedOut();
             }
         }
@@ -149,6 +175,18 @@ public abstract class MonopolyConnection implements GameListener {
         }
     }
 
+    /**
+     * processes a message that has been received by an external reader in the
+     * same way the listening thread does
+     * 
+     * @param message
+     *            the received message
+     */
+    void deliverMessage(NetworkMessage message) {
+        messageReceived(message);
+        fireMessageReceived(message);
+    }
+
     /**
      * forces the connection to close the socket resulting in cancellation of
      * all running operations e.g. connecting
@@ -158,7 +196,7 @@ public abstract class MonopolyConnection implements GameListener {
             try {
                 connection.close();
             } catch (IOException e) {
-                e.printStackTrace();
+                LOG.warn("socket.notClosed", "error", e);
             }
         }
     }
@@ -275,7 +313,8 @@ public abstract class MonopolyConnection implements GameListener {
                                         // that happened while receiving a
                                         // message or processing the received
                                         // message
-                    t.printStackTrace();
+                    LOG.error("message.failed", "message", message, "error",
+                            t);
                 }
             } while (shouldRun && message != null);
             connectionListener = null;
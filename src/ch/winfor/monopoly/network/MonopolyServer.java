@@ -3,23 +3,42 @@ package ch.winfor.monopoly.network;
 import java.io.IOException;
 import java.net.Socket;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 
 import ch.winfor.monopoly.game.BuyableField;
 import ch.winfor.monopoly.game.Card;
 import ch.winfor.monopoly.game.Card.KeepableCard;
 import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.GameCommand;
+import ch.winfor.monopoly.game.GameSnapshot;
 import ch.winfor.monopoly.game.Player;
+import ch.winfor.monopoly.game.TurnCommand;
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.metrics.Counter;
+import ch.winfor.monopoly.metrics.Metrics;
 import ch.winfor.monopoly.network.BasicServer.ServerListener;
+import ch.winfor.monopoly.network.LockstepMessage.ActionMessage;
+import ch.winfor.monopoly.network.LockstepMessage.Checkpoint;
+import ch.winfor.monopoly.network.RequestMessage.RequestBoard;
 import ch.winfor.monopoly.network.RequestMessage.RequestFullGame;
+import ch.winfor.monopoly.network.RequestMessage.RequestLockstep;
+import ch.winfor.monopoly.network.UpdateMessage.BoardUpdate;
 import ch.winfor.monopoly.network.UpdateMessage.CardDrawnUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.DeltaUpdate;
 import ch.winfor.monopoly.network.UpdateMessage.FullGameUpdate;
 import ch.winfor.monopoly.network.UpdateMessage.HousesNumberChangedUpdate;
-import ch.winfor.monopoly.network.UpdateMessage.InvalidUpdateException;
 import ch.winfor.monopoly.network.UpdateMessage.PlayerKeepsCardUpdate;
 import ch.winfor.monopoly.network.UpdateMessage.PlayerObtainedUpdate;
 import ch.winfor.monopoly.network.UpdateMessage.PlayerWealthChangedUpdate;
 import ch.winfor.monopoly.network.UpdateMessage.PlayersJailStateChangedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.SnapshotUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.StateUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.UpdateBatch;
 
 /**
  * the server part of a connection to several clients connected to the server
@@ -29,7 +48,37 @@ import ch.winfor.monopoly.network.UpdateMessage.PlayersJailStateChangedUpdate;
  * 
  */
 public class MonopolyServer implements MonopolyConnectionListener {
-    /** the listening server */
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
+    /** number of whole games requested by clients */
+    private static final Counter RESYNC_REQUESTS = Metrics
+            .counter("network.resync.requests");
+
+    /** number of actions of clients that weren't allowed */
+    private static final Counter ACTIONS_REJECTED = Metrics
+            .counter("network.actions.rejected");
+
+    /** number of updates sent by clients, which are never applied */
+    private static final Counter UPDATES_REJECTED = Metrics
+            .counter("network.updates.rejected");
+
+    /** number of whole states sent as {@link SnapshotUpdate} */
+    private static final Counter SNAPSHOTS_SENT = Metrics
+            .counter("network.resync.snapshots");
+
+    /** number of whole states sent as {@link DeltaUpdate} */
+    private static final Counter DELTAS_SENT = Metrics
+            .counter("network.resync.deltas");
+
+    /** number of {@link FullGameUpdate}s sent to lockstep clients */
+    private static final Counter FULL_GAMES_SENT = Metrics
+            .counter("network.resync.fullGames");
+
+    /**
+     * the listening server or <code>null</code> if the clients are accepted by
+     * a shared {@link NioServer}
+     */
     private BasicServer server;
 
     /** list of our clients */
@@ -42,21 +91,14 @@ public class MonopolyServer implements MonopolyConnectionListener {
     private Game game;
 
     public MonopolyServer(int port, Game game) {
-        clients = new ArrayList<ClientConnection>();
-        listeners = new ArrayList<MonopolyServerListener>();
-        setGame(game);
+        this(game);
         server = new BasicServer(port);
         server.startListening();
         server.addServerListener(new ServerListener() {
             @Override
             public void connectionAccepted(BasicServer sender, Socket connection) {
-                ClientConnection cc = new ClientConnection(connection,
-                        MonopolyServer.this.game);
-                clients.add(cc);
-                cc.addConnectionListener(MonopolyServer.this);
-                fireConnectionAccepted(cc);
-                if (MonopolyConnection.NETWORK_LOGS)
-                    System.out.println("Connection accepted!");
+                addClient(new ClientConnection(connection,
+                        MonopolyServer.this.game));
             }
         });
     }
@@ -65,6 +107,104 @@ public class MonopolyServer implements MonopolyConnectionListener {
         this(port, null);
     }
 
+    /**
+     * creates a server that doesn't listen for connections itself; its
+     * clients are accepted by a {@link NioServer} and handed over with
+     * {@link #accept(NioChannel)}
+     * 
+     * @param game
+     *            the server game
+     */
+    public MonopolyServer(Game game) {
+        clients = new CopyOnWriteArrayList<ClientConnection>();
+        listeners = new ArrayList<MonopolyServerListener>();
+        setGame(game);
+    }
+
+    /**
+     * makes a connection accepted by a {@link NioServer} a client of this
+     * server
+     * 
+     * @param channel
+     *            the accepted connection
+     * @return the new client
+     */
+    public ClientConnection accept(NioChannel channel) {
+        return accept(channel, null);
+    }
+
+    /**
+     * makes a connection accepted by a {@link NioServer} a client of this
+     * server
+     * 
+     * @param channel
+     *            the accepted connection
+     * @param executor
+     *            the executor processing the messages of the client, or
+     *            <code>null</code> to process them in the I/O thread
+     * @return the new client
+     */
+    public ClientConnection accept(NioChannel channel, Executor executor) {
+        ClientConnection cc = new ClientConnection(channel.getSocket(), game,
+                channel.getMessageStream());
+        channel.setConnection(cc, executor);
+        addClient(cc);
+        return cc;
+    }
+
+    /**
+     * registers a new client
+     * 
+     * @param cc
+     *            the client
+     */
+    private void addClient(ClientConnection cc) {
+        clients.add(cc);
+        cc.addConnectionListener(this);
+        fireConnectionAccepted(cc);
+        LOG.info("connection.accepted", "clients", clients.size());
+    }
+
+    /**
+     * @return the number of connected clients
+     */
+    public int getNClients() {
+        return clients.size();
+    }
+
+    /**
+     * @return the lowest index of a player no client may act for, or
+     *         <code>-1</code> if every player has a client
+     */
+    public int findFreeSeat() {
+        for (int player = 0; player < game.getNPlayers(); player++) {
+            boolean taken = false;
+            for (ClientConnection cc : clients)
+                taken |= cc.controls(player);
+            if (!taken)
+                return player;
+        }
+        return -1;
+    }
+
+    /**
+     * gives every connected client one of the players to act for, in the
+     * order the clients have connected; the clients that are left over only
+     * watch
+     * 
+     * @param players
+     *            the indices of the players played over the network
+     */
+    public void assignSeats(int... players) {
+        int i = 0;
+        for (ClientConnection cc : clients) {
+            if (i < players.length)
+                cc.setPlayers(players[i++]);
+            else
+                cc.setPlayers();
+        }
+    }
+
     /**
      * @return the game
      */
@@ -89,7 +229,62 @@ public class MonopolyServer implements MonopolyConnectionListener {
      * @author Nicolas Winkler
      * 
      */
-    public class ClientConnection extends MonopolyConnection {
+    public class ClientConnection extends MonopolyConnection implements
+            Game.BatchListener, Game.ActionListener {
+        /** number of sent states that are kept as base for deltas */
+        private static final int SENT_STATES_KEPT = 4;
+
+        /**
+         * minimal number of actions between two {@link Checkpoint}s sent to a
+         * lockstep client
+         */
+        private static final int CHECKPOINT_INTERVAL = 16;
+
+        /**
+         * <code>true</code> if the client executes the actions itself (see
+         * {@link LockstepMessage}) and gets no updates
+         */
+        private volatile boolean lockstep;
+
+        /**
+         * the indices of the players the client may act for (its seats),
+         * <code>null</code> for none
+         */
+        private volatile int[] players;
+
+        /** the number of actions at the last checkpoint sent */
+        private long checkpointSequence;
+
+        /**
+         * <code>true</code> if an action has been taken in the current batch,
+         * whose change of the turn the updates don't contain
+         */
+        private boolean turnChanged;
+
+        /** the version of the next state sent to the client */
+        private long nextVersion = 1;
+
+        /** the version of the last state the client has applied */
+        private long acknowledgedVersion = StateUpdate.NO_VERSION;
+
+        /** the last states sent to the client, by version */
+        private LinkedHashMap<Long, GameSnapshot> sentStates = new LinkedHashMap<Long, GameSnapshot>() {
+            /** */
+            private static final long serialVersionUID = 8807473364716271342L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Long, GameSnapshot> eldest) {
+                return size() > SENT_STATES_KEPT;
+            }
+        };
+
+        /**
+         * the updates of the current batch of the game, which are sent when
+         * the batch ends; created lazily because {@link #addListener()} is
+         * called by the super constructor
+         */
+        private List<UpdateMessage> pendingUpdates;
 
         /**
          * wraps the client manager around the connection
@@ -101,6 +296,20 @@ public class MonopolyServer implements MonopolyConnectionListener {
             super(connection, game);
         }
 
+        /**
+         * wraps the client manager around a connection read by a
+         * {@link NioServer}
+         * 
+         * @param connection
+         *            the socket of the connection
+         * @param messageStream
+         *            the stream of the outgoing messages
+         */
+        ClientConnection(Socket connection, Game game,
+                NetworkMessageStream messageStream) {
+            super(connection, game, messageStream);
+        }
+
         /*
          * (non-Javadoc)
          * 
@@ -108,41 +317,261 @@ public class MonopolyServer implements MonopolyConnectionListener {
          * ch.winfor.monopoly.network.MonopolyConnection#messageReceived(ch.
          * winfor.monopoly.network.NetworkMessage)
          */
-        public void messageReceived(NetworkMessage message) {
-            if (NETWORK_LOGS)
-                System.out.println("Message received: " + message);
+        public void messageReceived(final NetworkMessage message) {
+            LOG.debug("message.received", "message", message);
 
+            game.submit(new GameCommand() {
+                @Override
+                public void execute(Game game) {
+                    processMessage(message);
+                }
+            });
+        }
+
+        /**
+         * answers a request or executes an action of the client; runs on the
+         * game thread
+         * 
+         * @param message
+         *            the message
+         */
+        private void processMessage(NetworkMessage message) {
+            if (message instanceof RequestLockstep) {
+                lockstep = true;
+                if (pendingUpdates != null)
+                    pendingUpdates.clear();
+                sendLockstepGame();
+            }
             if (message instanceof RequestFullGame) {
+                RESYNC_REQUESTS.increment();
+                acknowledgedVersion = ((RequestFullGame) message)
+                        .getAcknowledgedVersion();
+                if (lockstep)
+                    sendLockstepGame();
+                else
+                    sendFullGame();
+            }
+            if (message instanceof ActionMessage) {
+                // the client only requests the action; if it's allowed, it's
+                // executed here and sent back to every lockstep client
+                // (including this one) by actionTaken
+                TurnCommand command = ((ActionMessage) message).getCommand();
+                if (controls(command.getPlayer())
+                        && game.getTurnHandler().isAllowed(command)) {
+                    command.execute(game);
+                } else {
+                    ACTIONS_REJECTED.increment();
+                    LOG.info("action.rejected", "action", command);
+                }
+            }
+            if (message instanceof RequestBoard) {
+                sendMessage(new BoardUpdate(game.getBoard()));
+                acknowledgedVersion = StateUpdate.NO_VERSION;
                 sendFullGame();
             }
             if (message instanceof UpdateMessage) {
-                UpdateMessage updateMessage = (UpdateMessage) message;
-
-                removeListener(); // suspend listening to game
-                try {
-                    updateMessage.updateGame(game);
-                } catch (InvalidUpdateException iue) {
+                // the game of the server is authoritative: clients send the
+                // actions they want to take, never changes of the state
+                UPDATES_REJECTED.increment();
+                LOG.info("update.rejected", "update", message);
+            }
+        }
 
-                }
-                addListener();
+        /**
+         * sets the players the client may act for, e.g. its seat in a room;
+         * until this is called, all its actions are rejected
+         * 
+         * @param players
+         *            the indices of the players, none or <code>null</code> if
+         *            the client only watches
+         */
+        public void setPlayers(int... players) {
+            this.players = players == null ? null : players.clone();
+        }
 
-                if (!updateMessage.checkHash(game)) {
-                    sendFullGame();
-                }
+        /**
+         * @param player
+         *            the index of a player
+         * @return <code>true</code>, if the client may act for the player
+         */
+        public boolean controls(int player) {
+            int[] allowed = players;
+            if (allowed == null)
+                return false;
+            for (int p : allowed) {
+                if (p == player)
+                    return true;
             }
+            return false;
         }
 
+        /**
+         * sends the current state of the game to the client
+         * 
+         * If the client has acknowledged a state that is still known, only
+         * the difference to that state is sent, otherwise the whole state.
+         */
         private void sendFullGame() {
-            FullGameUpdate rfg = new FullGameUpdate(MonopolyServer.this.game);
-            rfg.setHash(MonopolyServer.this.game.createHash());
-            sendMessage(rfg);
+            flushUpdates();
+            GameSnapshot state = GameSnapshot.capture(game);
+            long version = nextVersion++;
+            GameSnapshot base = sentStates.get(acknowledgedVersion);
+
+            StateUpdate su;
+            if (base != null && state.canDeltaFrom(base)) {
+                su = new DeltaUpdate(version, acknowledgedVersion, base, state);
+                DELTAS_SENT.increment();
+            } else {
+                su = new SnapshotUpdate(version, state);
+                SNAPSHOTS_SENT.increment();
+            }
+            sentStates.put(version, state);
+            su.setHash(game.createHash());
+            sendMessage(su);
+        }
+
+        /**
+         * sends the whole game including its random number generators to a
+         * lockstep client, which continues with the actions taken after it
+         */
+        private void sendLockstepGame() {
+            FullGameUpdate fgu = new FullGameUpdate(game);
+            fgu.setHash(game.createHash());
+            sendMessage(fgu);
+            FULL_GAMES_SENT.increment();
+            checkpointSequence = game.getNActions();
         }
 
+        /**
+         * sends an update, or keeps it until the current batch of the game
+         * has ended
+         * 
+         * Lockstep clients derive the changes from the actions, so they get
+         * no updates.
+         * 
+         * @param um
+         *            the update
+         */
         private void sendUpdateMessage(UpdateMessage um) {
+            if (lockstep)
+                return;
+            if (game.isInBatch()) {
+                if (pendingUpdates == null)
+                    pendingUpdates = new ArrayList<UpdateMessage>();
+                pendingUpdates.add(um);
+                return;
+            }
+            um.setHash(game.createHash());
+            sendMessage(um);
+        }
+
+        /**
+         * sends the updates kept during a batch: a single update as it is,
+         * several in one {@link UpdateBatch}; either way with only one hash
+         */
+        private void flushUpdates() {
+            if (pendingUpdates == null || pendingUpdates.isEmpty())
+                return;
+            UpdateMessage um;
+            if (pendingUpdates.size() == 1)
+                um = pendingUpdates.get(0);
+            else
+                um = new UpdateBatch(
+                        pendingUpdates.toArray(new UpdateMessage[pendingUpdates
+                                .size()]));
+            pendingUpdates.clear();
             um.setHash(game.createHash());
             sendMessage(um);
         }
 
+        /*
+         * (non-Javadoc)
+         * 
+         * @see
+         * ch.winfor.monopoly.game.Game.BatchListener#batchEnded(ch.winfor.monopoly
+         * .game.Game)
+         */
+        @Override
+        public void batchEnded(Game sender) {
+            if (lockstep) {
+                long sequence = sender.getNActions();
+                if (sequence - checkpointSequence >= CHECKPOINT_INTERVAL) {
+                    sendMessage(new Checkpoint(sequence, sender.createHash()));
+                    checkpointSequence = sequence;
+                }
+            } else if (turnChanged) {
+                turnChanged = false;
+                // the state contains the changes of the updates as well
+                if (pendingUpdates != null)
+                    pendingUpdates.clear();
+                sendFullGame();
+                // the client applies the states in the order they are sent
+                acknowledgedVersion = nextVersion - 1;
+            } else {
+                flushUpdates();
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see
+         * ch.winfor.monopoly.game.Game.ActionListener#actionTaken(ch.winfor.
+         * monopoly.game.Game, ch.winfor.monopoly.game.TurnCommand, long)
+         */
+        @Override
+        public void actionTaken(Game sender, TurnCommand action, long sequence) {
+            if (lockstep)
+                sendMessage(new ActionMessage(sequence, action));
+            else
+                turnChanged = true;
+        }
+
+        /**
+         * moves the listeners to the new game and forgets the states sent of
+         * the old one, so the client gets the whole state next time
+         * 
+         * @see ch.winfor.monopoly.network.MonopolyConnection#setGame(Game)
+         */
+        @Override
+        public void setGame(Game game) {
+            super.setGame(game);
+            if (pendingUpdates != null)
+                pendingUpdates.clear();
+            sentStates.clear();
+            acknowledgedVersion = StateUpdate.NO_VERSION;
+            turnChanged = false;
+            checkpointSequence = game != null ? game.getNActions() : 0;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see ch.winfor.monopoly.network.MonopolyConnection#addListener()
+         */
+        @Override
+        protected void addListener() {
+            super.addListener();
+            if (game != null) {
+                game.addBatchListener(this);
+                game.addActionListener(this);
+            }
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see ch.winfor.monopoly.network.MonopolyConnection#removeListener()
+         */
+        @Override
+        protected void removeListener() {
+            super.removeListener();
+            if (game != null) {
+                game.removeBatchListener(this);
+                game.removeActionListener(this);
+            }
+        }
+
         @Override
         public void playingPieceMoved(Game sender, int pieceIndex,
                 int oldPosition) {
@@ -206,18 +635,24 @@ public class MonopolyServer implements MonopolyConnectionListener {
     }
 
     public void close() {
+        if (server == null) {
+            for (ClientConnection cc : clients)
+                removeConnection(cc);
+            return;
+        }
         try {
             server.close();
         } catch (IOException e) {
-            e.printStackTrace();
+            LOG.warn("server.notClosed", "error", e);
         }
     }
 
     /**
-     * @return the port on which this server listens
+     * @return the port on which this server listens or <code>-1</code> if its
+     *         clients are accepted by a {@link NioServer}
      */
     public int getPort() {
-        return server.getPort();
+        return server != null ? server.getPort() : -1;
     }
 
     /**
@@ -285,13 +720,17 @@ public class MonopolyServer implements MonopolyConnectionListener {
      *            the message
      */
     public void broadcast(final NetworkMessage nw) {
-        for (int i = 0; i < clients.size(); i++) {
-            final int index = i;
-            new Thread() {
-                public void run() {
-                    clients.get(index).sendMessage(nw);
-                }
-            }.start();
+        for (final ClientConnection cc : clients) {
+            if (server == null) {
+                // connections of a NioServer only queue the message
+                cc.sendMessage(nw);
+            } else {
+                new Thread() {
+                    public void run() {
+                        cc.sendMessage(nw);
+                    }
+                }.start();
+            }
         }
     }
 }
@@ -6,27 +6,82 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
+import java.util.Arrays;
+
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Level;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.network.MessageCodec.FrameReader;
+import ch.winfor.monopoly.network.MessageCodec.FrameWriter;
 
 /**
  * stream wrapper that writes instances of {@link NetworkMessage} to a data
  * stream and also reads them from an incoming stream
  * 
+ * By default, messages are sent in the compact binary format of
+ * {@link MessageCodec}. The old format (one Java serialization stream per
+ * message) can still be used by choosing {@link Encoding#SERIALIZATION}; both
+ * ends of a connection must use the same encoding.
+ * 
  * @author Nicolas Winkler
  * 
  */
 public class NetworkMessageStream {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
+    /** the encoding used by new streams */
+    public static Encoding DEFAULT_ENCODING = Encoding.BINARY;
+
     /** the data output stream */
     private OutputStream output;
 
     /** the data input stream */
     private InputStream input;
 
+    /** the encoding of the messages */
+    private Encoding encoding;
+
+    /** buffer for outgoing frames */
+    private FrameWriter frameWriter;
+
+    /** buffer for outgoing serialized messages */
+    private ByteArrayOutputStream serialBuffer;
+
+    /** buffer for incoming frames */
+    private FrameReader frameReader;
+
+    /** if the protocol header has been written to the output */
+    private boolean headerWritten;
+
+    /** if the protocol header has been read from the input */
+    private boolean headerRead;
+
     /**
-     * initialize
+     * initialize with the default encoding
      */
     public NetworkMessageStream(OutputStream output, InputStream input) {
+        this(output, input, DEFAULT_ENCODING);
+    }
+
+    /**
+     * initialize
+     * 
+     * @param output
+     *            the data output stream
+     * @param input
+     *            the data input stream
+     * @param encoding
+     *            the encoding of the messages
+     */
+    public NetworkMessageStream(OutputStream output, InputStream input,
+            Encoding encoding) {
         this.output = output;
         this.input = input;
+        this.encoding = encoding;
+        this.frameWriter = new FrameWriter();
+        this.serialBuffer = new ByteArrayOutputStream();
+        this.frameReader = new FrameReader();
     }
 
     /**
@@ -39,27 +94,42 @@ public class NetworkMessageStream {
      */
     public synchronized void writeMessage(NetworkMessage message)
             throws IOException {
-        ObjectOutputStream oos = new ObjectOutputStream(output);
-
-        oos.writeObject(message);
-
-        if (MonopolyConnection.NETWORK_LOGS) {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            ObjectOutputStream oos2 = new ObjectOutputStream(baos);
-            oos2.writeObject(message);
-            System.out.println("Message sent (size = "
-                    + baos.toByteArray().length + "): " + message);
+        int size;
+        if (encoding == Encoding.BINARY) {
+            if (!headerWritten) {
+                output.write(MessageCodec.MAGIC);
+                headerWritten = true;
+            }
+            frameWriter.reset();
+            MessageCodec.encode(message, frameWriter);
+            frameWriter.writeTo(output);
+            size = frameWriter.size();
+        } else {
+            // one write per message, as the binary frames
+            serialBuffer.reset();
+            ObjectOutputStream oos = new ObjectOutputStream(serialBuffer);
+            oos.writeObject(message);
+            oos.flush();
+            serialBuffer.writeTo(output);
+            size = serialBuffer.size();
         }
+
+        if (LOG.isEnabled(Level.DEBUG))
+            LOG.debug("message.sent", "size", size, "message", message);
     }
 
     /**
      * reads a {@link NetworkMessage} from a data input stream
      * 
-     * @return the newly created message
+     * @return the newly created message or <code>null</code> if the stream
+     *         has ended
      * @throws IOException
      *             in case of an error during the receiving
      */
     public NetworkMessage readMessage() throws IOException {
+        if (encoding == Encoding.BINARY)
+            return readBinaryMessage();
+
         ObjectInputStream ois = null;
         try {
             ois = new ObjectInputStream(input);
@@ -72,7 +142,7 @@ public class NetworkMessageStream {
             if (ois != null)
                 obj = ois.readObject();
         } catch (ClassNotFoundException e) {
-            e.printStackTrace();
+            LOG.warn("message.unknownClass", "error", e);
         }
 
         if (obj instanceof NetworkMessage) {
@@ -83,6 +153,42 @@ public class NetworkMessageStream {
         }
     }
 
+    /**
+     * reads a message in the format of {@link MessageCodec}
+     * 
+     * @return the message or <code>null</code> if the stream has ended
+     * @throws IOException
+     *             if the message is malformed or the other end uses another
+     *             protocol version
+     */
+    private NetworkMessage readBinaryMessage() throws IOException {
+        if (!headerRead) {
+            byte[] header = new byte[MessageCodec.MAGIC.length];
+            int read = 0;
+            while (read < header.length) {
+                int n = input.read(header, read, header.length - read);
+                if (n == -1)
+                    return null;
+                read += n;
+            }
+            if (!Arrays.equals(header, MessageCodec.MAGIC))
+                throw new IOException("unsupported protocol header: "
+                        + Arrays.toString(header));
+            headerRead = true;
+        }
+
+        if (!frameReader.readFrom(input))
+            return null;
+        return MessageCodec.decode(frameReader);
+    }
+
+    /**
+     * @return the encoding of the messages
+     */
+    public Encoding getEncoding() {
+        return encoding;
+    }
+
     /**
      * @return the data output stream of this instance
      */
@@ -112,4 +218,18 @@ public class NetworkMessageStream {
     public void setInput(InputStream input) {
         this.input = input;
     }
+
+    /**
+     * formats in which messages can be sent
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static enum Encoding {
+        /** the binary format of {@link MessageCodec} */
+        BINARY,
+
+        /** every message in its own Java serialization stream */
+        SERIALIZATION,
+    }
 }
@@ -0,0 +1,451 @@
+package ch.winfor.monopoly.network;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.metrics.Counter;
+import ch.winfor.monopoly.metrics.Histogram;
+import ch.winfor.monopoly.metrics.Metrics;
+import ch.winfor.monopoly.network.MessageCodec.FrameReader;
+
+/**
+ * a connection accepted by a {@link NioServer}
+ * 
+ * The channel is read by the I/O thread it belongs to, which decodes the
+ * incoming frames of {@link MessageCodec} and passes the messages to the
+ * attached {@link MonopolyConnection}. Outgoing messages are written to
+ * {@link #getOutput()} from any thread; they are only queued there and written
+ * to the socket by the I/O thread as soon as the socket accepts them.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class NioChannel {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
+    /** initial size of the read buffer */
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    /** number of queued bytes at which a client is considered too slow */
+    public static final int MAX_QUEUED_BYTES = 8 * 1024 * 1024;
+
+    /** the bytes queued by all channels */
+    private static final Counter TOTAL_QUEUED = Metrics
+            .counter("network.sendQueue.totalBytes");
+
+    /** the bytes queued by a channel, whenever data is added to its queue */
+    private static final Histogram QUEUE_DEPTH = Metrics
+            .histogram("network.sendQueue.bytes");
+
+    /** the socket channel */
+    private final SocketChannel channel;
+
+    /** the I/O thread serving this channel */
+    private final NioServer.IoLoop loop;
+
+    /** the key of this channel at the selector of {@link #loop} */
+    private SelectionKey key;
+
+    /** buffer for incoming data, in write mode between two reads */
+    private ByteBuffer readBuffer;
+
+    /** reader for the frames in {@link #readBuffer} */
+    private final FrameReader frameReader;
+
+    /** if the protocol header has been read */
+    private boolean headerRead;
+
+    /** the buffer size needed for the incomplete frame at the buffer start */
+    private int requiredCapacity;
+
+    /** the outgoing data */
+    private final Queue<ByteBuffer> writeQueue;
+
+    /** number of bytes in {@link #writeQueue} not yet written */
+    private final AtomicInteger queuedBytes;
+
+    /** if the I/O thread has been asked to write the queue */
+    private final AtomicBoolean writeRequested;
+
+    /** if the channel has been closed */
+    private final AtomicBoolean closed;
+
+    /** the stream queueing the outgoing data */
+    private final OutputStream output;
+
+    /** the stream encoding the outgoing messages */
+    private final NetworkMessageStream messageStream;
+
+    /** the connection receiving the incoming messages */
+    private volatile MonopolyConnection connection;
+
+    /** executor running the message processing or <code>null</code> */
+    private volatile Executor executor;
+
+    /**
+     * @param channel
+     *            the socket channel, configured to be non-blocking
+     * @param loop
+     *            the I/O thread serving the channel
+     */
+    NioChannel(SocketChannel channel, NioServer.IoLoop loop) {
+        this.channel = channel;
+        this.loop = loop;
+        readBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        frameReader = new FrameReader();
+        writeQueue = new ConcurrentLinkedQueue<ByteBuffer>();
+        queuedBytes = new AtomicInteger();
+        writeRequested = new AtomicBoolean();
+        closed = new AtomicBoolean();
+        output = new ChannelOutput();
+        messageStream = new NetworkMessageStream(output, null);
+    }
+
+    /**
+     * @return the socket of the channel
+     */
+    public Socket getSocket() {
+        return channel.socket();
+    }
+
+    /**
+     * @return the stream queueing outgoing data
+     */
+    public OutputStream getOutput() {
+        return output;
+    }
+
+    /**
+     * @return the stream encoding outgoing messages into {@link #getOutput()};
+     *         every connection attached to this channel must use it, so the
+     *         protocol header is only sent once
+     */
+    public NetworkMessageStream getMessageStream() {
+        return messageStream;
+    }
+
+    /**
+     * @return the connection receiving the incoming messages
+     */
+    public MonopolyConnection getConnection() {
+        return connection;
+    }
+
+    /**
+     * sets the connection receiving the incoming messages; they are processed
+     * by the I/O thread
+     * 
+     * @param connection
+     *            the new connection
+     */
+    public void setConnection(MonopolyConnection connection) {
+        setConnection(connection, null);
+    }
+
+    /**
+     * sets the connection receiving the incoming messages
+     * 
+     * @param connection
+     *            the new connection
+     * @param executor
+     *            the executor processing the messages in the order they
+     *            arrived, or <code>null</code> to process them in the I/O
+     *            thread
+     */
+    public void setConnection(MonopolyConnection connection, Executor executor) {
+        this.executor = executor;
+        this.connection = connection;
+    }
+
+    /**
+     * @return <code>true</code> if the channel has been closed
+     */
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * @return the number of queued bytes that still have to be sent
+     */
+    public int getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * registers the channel at the selector of its I/O thread
+     * 
+     * @param selector
+     *            the selector
+     */
+    void register(Selector selector) {
+        try {
+            int ops = SelectionKey.OP_READ;
+            if (!writeQueue.isEmpty())
+                ops |= SelectionKey.OP_WRITE;
+            key = channel.register(selector, ops, this);
+        } catch (ClosedChannelException e) {
+            close();
+        }
+    }
+
+    /**
+     * reads the available data and processes the complete frames
+     * 
+     * @throws IOException
+     *             if the connection has been closed or a frame is malformed
+     */
+    void read() throws IOException {
+        int n = channel.read(readBuffer);
+        if (n == -1) {
+            close();
+            return;
+        }
+
+        readBuffer.flip();
+        while (readFrame())
+            ;
+        readBuffer.compact();
+
+        if (readBuffer.capacity() < requiredCapacity) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(requiredCapacity,
+                    readBuffer.capacity() * 2));
+            readBuffer.flip();
+            larger.put(readBuffer);
+            readBuffer = larger;
+        }
+    }
+
+    /**
+     * decodes the frame at the position of the read buffer and passes the
+     * message on
+     * 
+     * @return <code>false</code> if the buffer contains no complete frame
+     * @throws IOException
+     *             if the data is not a valid frame
+     */
+    private boolean readFrame() throws IOException {
+        byte[] data = readBuffer.array();
+        int position = readBuffer.position();
+        int limit = readBuffer.limit();
+
+        if (!headerRead) {
+            byte[] magic = MessageCodec.MAGIC;
+            if (limit - position < magic.length)
+                return false;
+            for (int i = 0; i < magic.length; i++) {
+                if (data[position + i] != magic[i])
+                    throw new IOException("unsupported protocol header");
+            }
+            readBuffer.position(position + magic.length);
+            headerRead = true;
+            return true;
+        }
+
+        int length = 0;
+        int start = position;
+        for (int shift = 0;; shift += 7) {
+            if (start == limit)
+                return false;
+            int b = data[start++];
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                break;
+            if (shift >= 28)
+                throw new IOException("malformed frame length");
+        }
+        if (length < 0 || length > MessageCodec.MAX_FRAME_SIZE)
+            throw new IOException("frame too large: " + length);
+        if (limit - start < length) {
+            requiredCapacity = start - position + length;
+            return false;
+        }
+
+        frameReader.setFrame(data, start, length);
+        NetworkMessage message = MessageCodec.decode(frameReader);
+        readBuffer.position(start + length);
+        requiredCapacity = 0;
+        deliver(message);
+        return true;
+    }
+
+    /**
+     * passes a message on to the attached connection
+     * 
+     * @param message
+     *            the message
+     */
+    private void deliver(final NetworkMessage message) {
+        final MonopolyConnection target = connection;
+        if (target == null) {
+            LOG.warn("message.dropped", "message", message);
+            return;
+        }
+
+        Executor ex = executor;
+        if (ex == null) {
+            dispatch(target, message);
+        } else {
+            ex.execute(new Runnable() {
+                @Override
+                public void run() {
+                    dispatch(target, message);
+                }
+            });
+        }
+    }
+
+    /**
+     * lets a connection process a message
+     * 
+     * @param target
+     *            the connection
+     * @param message
+     *            the message
+     */
+    private static void dispatch(MonopolyConnection target,
+            NetworkMessage message) {
+        try {
+            target.deliverMessage(message);
+        } catch (Throwable t) { // errors of one message must not stop the
+                                // processing of the following ones
+            LOG.error("message.failed", "message", message, "error", t);
+        }
+    }
+
+    /**
+     * writes as much of the write queue to the socket as it accepts
+     * 
+     * @param batch
+     *            array for gathering the buffers to write
+     */
+    void flush(ByteBuffer[] batch) {
+        if (key == null || !key.isValid())
+            return;
+        try {
+            while (true) {
+                int n = 0;
+                for (ByteBuffer buffer : writeQueue) {
+                    if (n == batch.length)
+                        break;
+                    batch[n++] = buffer;
+                }
+                if (n == 0) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    writeRequested.set(false);
+                    // data queued after the check above would otherwise wait
+                    // for the next write
+                    if (writeQueue.isEmpty()
+                            || !writeRequested.compareAndSet(false, true))
+                        return;
+                    continue;
+                }
+
+                long written = channel.write(batch, 0, n);
+                queuedBytes.addAndGet((int) -written);
+                TOTAL_QUEUED.add(-written);
+                boolean complete = !batch[n - 1].hasRemaining();
+                Arrays.fill(batch, 0, n, null);
+                ByteBuffer head;
+                while ((head = writeQueue.peek()) != null
+                        && !head.hasRemaining())
+                    writeQueue.poll();
+
+                if (!complete) {
+                    key.interestOps(SelectionKey.OP_READ
+                            | SelectionKey.OP_WRITE);
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    /**
+     * closes the channel and notifies the attached connection
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
+        if (key != null)
+            key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOG.warn("channel.notClosed", "error", e);
+        }
+        writeQueue.clear();
+        TOTAL_QUEUED.add(-queuedBytes.getAndSet(0));
+        loop.getServer().channelClosed(this);
+
+        final MonopolyConnection target = connection;
+        if (target != null) {
+            Executor ex = executor;
+            if (ex == null) {
+                target.fireTimedOut();
+            } else {
+                ex.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        target.fireTimedOut();
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * stream adding the written data to the write queue
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    private class ChannelOutput extends OutputStream {
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.OutputStream#write(int)
+         */
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.io.OutputStream#write(byte[], int, int)
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed.get())
+                throw new IOException("connection closed");
+            int queued = queuedBytes.addAndGet(len);
+            TOTAL_QUEUED.add(len);
+            QUEUE_DEPTH.record(queued);
+            if (queued > MAX_QUEUED_BYTES) {
+                close();
+                throw new IOException("client too slow, write queue full");
+            }
+            writeQueue.add(ByteBuffer.wrap(Arrays.copyOfRange(b, off, off
+                    + len)));
+            if (writeRequested.compareAndSet(false, true))
+                loop.requestWrite(NioChannel.this);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package ch.winfor.monopoly.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.BoardFactory;
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.log.Level;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.network.MessageCodec.FrameReader;
+import ch.winfor.monopoly.network.MessageCodec.FrameWriter;
+import ch.winfor.monopoly.network.RequestMessage.RequestFullGame;
+import ch.winfor.monopoly.network.UpdateMessage.StateUpdate;
+
+/**
+ * load test client opening thousands of connections to a {@link NioServer}
+ * 
+ * Every connection repeatedly requests the full game and waits for the answer
+ * before sending the next request. The test reports how long it took to open
+ * the connections, the number of answered requests per second and the round
+ * trip latencies. If no address is given, a server hosting one game per
+ * <code>playersPerRoom</code> connections is started in this JVM.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class NioLoadTest {
+    /** the connections of the test */
+    private List<LoadConnection> connections;
+
+    /** the encoded request, including the protocol header */
+    private byte[] firstRequest;
+
+    /** the encoded request without the protocol header */
+    private byte[] request;
+
+    /** the number of requests every connection sends */
+    private int requestsPerConnection;
+
+    /** the measured round trip times in nanoseconds */
+    private long[] latencies;
+
+    /** the number of measured round trips */
+    private int nLatencies;
+
+    /** the number of connections that have received all answers */
+    private int nFinished;
+
+    /** the number of connections that failed */
+    private int nFailed;
+
+    /** reader for the received frames */
+    private FrameReader frameReader;
+
+    /**
+     * @param requestsPerConnection
+     *            the number of requests every connection sends
+     */
+    public NioLoadTest(int requestsPerConnection) throws IOException {
+        this.requestsPerConnection = requestsPerConnection;
+        connections = new ArrayList<LoadConnection>();
+        frameReader = new FrameReader();
+
+        FrameWriter writer = new FrameWriter();
+        MessageCodec.encode(new RequestFullGame(), writer);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        writer.writeTo(baos);
+        request = baos.toByteArray();
+        firstRequest = new byte[MessageCodec.MAGIC.length + request.length];
+        System.arraycopy(MessageCodec.MAGIC, 0, firstRequest, 0,
+                MessageCodec.MAGIC.length);
+        System.arraycopy(request, 0, firstRequest, MessageCodec.MAGIC.length,
+                request.length);
+    }
+
+    /**
+     * opens the connections and runs the test until every connection has
+     * received all answers or failed
+     * 
+     * @param address
+     *            the address of the server
+     * @param nConnections
+     *            the number of connections
+     */
+    public void run(InetSocketAddress address, int nConnections)
+            throws IOException {
+        latencies = new long[nConnections * requestsPerConnection];
+        Selector selector = Selector.open();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < nConnections; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            LoadConnection lc = new LoadConnection(channel);
+            connections.add(lc);
+            if (channel.connect(address))
+                lc.connected(selector);
+            else
+                channel.register(selector, SelectionKey.OP_CONNECT, lc);
+        }
+
+        long connectedTime = 0;
+        int nConnected = 0;
+        while (nFinished + nFailed < nConnections) {
+            selector.select(1000);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                LoadConnection lc = (LoadConnection) key.attachment();
+                try {
+                    if (key.isConnectable()) {
+                        lc.channel.finishConnect();
+                        lc.connected(selector);
+                        if (++nConnected == nConnections)
+                            connectedTime = System.nanoTime() - start;
+                    } else if (key.isReadable()) {
+                        lc.read();
+                    } else if (key.isWritable()) {
+                        lc.write();
+                    }
+                } catch (IOException e) {
+                    nFailed++;
+                    key.cancel();
+                    lc.channel.close();
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        for (LoadConnection lc : connections)
+            lc.channel.close();
+        selector.close();
+
+        long[] sorted = Arrays.copyOf(latencies, nLatencies);
+        Arrays.sort(sorted);
+        System.out.printf("connections: %d opened, %d failed, all open "
+                + "after %.1f ms%n", nConnections - nFailed, nFailed,
+                connectedTime / 1e6);
+        System.out.printf("requests: %d answered in %.2f s (%.0f/s)%n",
+                nLatencies, seconds, nLatencies / seconds);
+        if (sorted.length > 0) {
+            System.out.printf("latency: p50 %.2f ms, p99 %.2f ms, "
+                    + "max %.2f ms%n", percentile(sorted, 0.5) / 1e6,
+                    percentile(sorted, 0.99) / 1e6,
+                    sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    /**
+     * runs the load test
+     * 
+     * @param args
+     *            <code>[connections] [requestsPerConnection] [playersPerRoom]
+     *            [host:port]</code>; without an address, a server is started
+     *            in this JVM
+     */
+    public static void main(String[] args) throws IOException {
+        int nConnections = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int nRequests = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        final int playersPerRoom = args.length > 2 ? Integer.parseInt(args[2])
+                : 4;
+        Log.setLevel(Log.NETWORK, Level.WARN);
+
+        NioServer server = null;
+        final List<MonopolyServer> rooms = new ArrayList<MonopolyServer>();
+        InetSocketAddress address;
+        if (args.length > 3) {
+            String[] hostPort = args[3].split(":");
+            address = new InetSocketAddress(hostPort[0],
+                    Integer.parseInt(hostPort[1]));
+        } else {
+            final Board board = BoardFactory.createStandardBoard();
+            server = new NioServer(0);
+            server.addServerListener(new NioServer.ServerListener() {
+                /** the room new connections join */
+                private MonopolyServer room;
+
+                @Override
+                public void connectionAccepted(NioServer sender,
+                        NioChannel channel) {
+                    if (room == null || room.getNClients() >= playersPerRoom) {
+                        room = new MonopolyServer(new Game(board,
+                                playersPerRoom, null));
+                        rooms.add(room);
+                    }
+                    room.accept(channel);
+                }
+            });
+            server.start();
+            address = new InetSocketAddress("127.0.0.1", server.getPort());
+            System.out.println("server started on port " + server.getPort()
+                    + " with " + server.getNThreads() + " I/O threads");
+        }
+
+        new NioLoadTest(nRequests).run(address, nConnections);
+
+        if (server != null) {
+            System.out.println("rooms: " + rooms.size());
+            server.close();
+        }
+    }
+
+    /**
+     * @param sorted
+     *            the sorted values
+     * @param p
+     *            the percentile between <code>0</code> and <code>1</code>
+     * @return the value at the percentile
+     */
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+
+    /**
+     * one connection of the test
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    private class LoadConnection {
+        /** the channel */
+        private final SocketChannel channel;
+
+        /** the key of the channel at the selector of the test */
+        private SelectionKey key;
+
+        /** if the protocol header of the server has been read */
+        private boolean headerRead;
+
+        /** the data to write */
+        private ByteBuffer out;
+
+        /** the received data, in write mode */
+        private ByteBuffer in;
+
+        /** the time the current request was sent */
+        private long sentTime;
+
+        /** the number of received answers */
+        private int nAnswers;
+
+        /**
+         * @param channel
+         *            the channel
+         */
+        LoadConnection(SocketChannel channel) {
+            this.channel = channel;
+            in = ByteBuffer.allocate(4096);
+        }
+
+        /**
+         * registers for reading and sends the first request
+         * 
+         * @param selector
+         *            the selector of the test
+         */
+        void connected(Selector selector) throws IOException {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            send(firstRequest);
+        }
+
+        /**
+         * sends a request
+         * 
+         * @param data
+         *            the encoded request
+         */
+        void send(byte[] data) throws IOException {
+            sentTime = System.nanoTime();
+            out = ByteBuffer.wrap(data);
+            write();
+        }
+
+        /**
+         * writes the pending data
+         */
+        void write() throws IOException {
+            channel.write(out);
+            if (out.hasRemaining())
+                key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            else
+                key.interestOps(SelectionKey.OP_READ);
+        }
+
+        /**
+         * reads the available data and processes the complete answers
+         */
+        void read() throws IOException {
+            if (channel.read(in) == -1)
+                throw new IOException("connection closed by the server");
+            in.flip();
+            while (readFrame())
+                ;
+            in.compact();
+            if (!in.hasRemaining()) {
+                in.flip();
+                in = ByteBuffer.allocate(in.capacity() * 2).put(in);
+            }
+        }
+
+        /**
+         * decodes one received frame
+         * 
+         * @return <code>false</code> if there is no complete frame
+         */
+        private boolean readFrame() throws IOException {
+            byte[] data = in.array();
+            int start = in.position();
+            if (!headerRead) {
+                if (in.limit() - start < MessageCodec.MAGIC.length)
+                    return false;
+                if (!Arrays.equals(Arrays.copyOfRange(data, start, start
+                        + MessageCodec.MAGIC.length), MessageCodec.MAGIC))
+                    throw new IOException("unsupported protocol header");
+                in.position(start + MessageCodec.MAGIC.length);
+                headerRead = true;
+                return true;
+            }
+
+            int length = 0;
+            for (int shift = 0;; shift += 7) {
+                if (start == in.limit())
+                    return false;
+                int b = data[start++];
+                length |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    break;
+            }
+            if (in.limit() - start < length)
+                return false;
+
+            frameReader.setFrame(data, start, length);
+            NetworkMessage message = MessageCodec.decode(frameReader);
+            in.position(start + length);
+            if (!(message instanceof StateUpdate))
+                throw new IOException("unexpected answer: " + message);
+
+            latencies[nLatencies++] = System.nanoTime() - sentTime;
+            if (++nAnswers == requestsPerConnection)
+                nFinished++;
+            else
+                send(request);
+            return true;
+        }
+    }
+}
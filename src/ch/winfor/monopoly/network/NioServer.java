@@ -0,0 +1,358 @@
+package ch.winfor.monopoly.network;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+
+/**
+ * a server accepting many connections with a few threads
+ * 
+ * In contrast to {@link BasicServer}, which needs a thread per connection,
+ * this server uses non-blocking {@link SocketChannel}s that are multiplexed by
+ * one {@link Selector} per I/O thread. By default, there is one I/O thread per
+ * processor core. Every accepted connection is represented by a
+ * {@link NioChannel}; the subscribers of the server attach a
+ * {@link MonopolyConnection} to it (usually with
+ * {@link MonopolyServer#accept(NioChannel)}), which then receives the
+ * incoming messages. Like this, one server can host the games of many
+ * {@link MonopolyServer}s at the same time.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class NioServer {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
+    /** maximum number of connections waiting to be accepted */
+    private static final int BACKLOG = 1024;
+
+    /** the channel accepting new connections */
+    private ServerSocketChannel acceptChannel;
+
+    /** the I/O threads */
+    private IoLoop[] loops;
+
+    /** index of the I/O thread the next connection is assigned to */
+    private int nextLoop;
+
+    /** number of open connections */
+    private AtomicInteger nConnections;
+
+    /** if the I/O threads should continue running */
+    private volatile boolean running;
+
+    /** list of subscribers that subscribed to this server */
+    private List<ServerListener> serverListeners;
+
+    /**
+     * initializes the server with one I/O thread per processor core
+     * 
+     * @param port
+     *            the port on which the server should run, <code>0</code> to
+     *            choose a free port
+     * @throws IOException
+     *             if the port is already in use
+     */
+    public NioServer(int port) throws IOException {
+        this(port, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * initializes the server
+     * 
+     * @param port
+     *            the port on which the server should run, <code>0</code> to
+     *            choose a free port
+     * @param nThreads
+     *            the number of I/O threads
+     * @throws IOException
+     *             if the port is already in use
+     */
+    public NioServer(int port, int nThreads) throws IOException {
+        nConnections = new AtomicInteger();
+        serverListeners = new ArrayList<ServerListener>();
+        acceptChannel = ServerSocketChannel.open();
+        acceptChannel.socket().setReuseAddress(true);
+        acceptChannel.bind(new InetSocketAddress(port), BACKLOG);
+        acceptChannel.configureBlocking(false);
+
+        loops = new IoLoop[Math.max(1, nThreads)];
+        for (int i = 0; i < loops.length; i++)
+            loops[i] = new IoLoop(i);
+        acceptChannel.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * starts the I/O threads
+     */
+    public void start() {
+        running = true;
+        for (IoLoop loop : loops)
+            loop.start();
+    }
+
+    /**
+     * stops the I/O threads and closes all connections
+     * 
+     * @throws IOException
+     *             if the listening channel could not be closed
+     */
+    public void close() throws IOException {
+        running = false;
+        for (IoLoop loop : loops)
+            loop.selector.wakeup();
+        acceptChannel.close();
+    }
+
+    /**
+     * @return the port on which the server listens for connections
+     */
+    public int getPort() {
+        return acceptChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return the number of I/O threads
+     */
+    public int getNThreads() {
+        return loops.length;
+    }
+
+    /**
+     * @return the number of currently open connections
+     */
+    public int getNConnections() {
+        return nConnections.get();
+    }
+
+    /**
+     * accepts all pending connections and distributes them among the I/O
+     * threads
+     * 
+     * @throws IOException
+     *             if accepting failed
+     */
+    private void accept() throws IOException {
+        SocketChannel socketChannel;
+        while ((socketChannel = acceptChannel.accept()) != null) {
+            socketChannel.configureBlocking(false);
+            socketChannel.socket().setTcpNoDelay(true);
+            IoLoop loop = loops[nextLoop];
+            nextLoop = (nextLoop + 1) % loops.length;
+
+            NioChannel channel = new NioChannel(socketChannel, loop);
+            nConnections.incrementAndGet();
+            fireConnectionAccepted(channel);
+            loop.register(channel);
+        }
+    }
+
+    /**
+     * invoked by a channel when it has been closed
+     * 
+     * @param channel
+     *            the closed channel
+     */
+    void channelClosed(NioChannel channel) {
+        nConnections.decrementAndGet();
+    }
+
+    /**
+     * adds a subscriber to the server
+     * 
+     * @param sl
+     *            the new subscriber
+     */
+    public void addServerListener(ServerListener sl) {
+        serverListeners.add(sl);
+    }
+
+    /**
+     * removes a subscriber from the server
+     * 
+     * @param sl
+     *            the old subscriber
+     */
+    public void removeServerListener(ServerListener sl) {
+        serverListeners.remove(sl);
+    }
+
+    /**
+     * notifies the subscribers that a new connection has been accepted
+     * 
+     * @param channel
+     *            the new connection
+     */
+    protected void fireConnectionAccepted(NioChannel channel) {
+        for (ServerListener sl : serverListeners) {
+            try {
+                sl.connectionAccepted(this, channel);
+            } catch (Throwable t) {
+                LOG.error("listener.failed", "error", t);
+            }
+        }
+    }
+
+    /**
+     * thread that serves the connections registered at its selector
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    class IoLoop extends Thread {
+        /** maximum number of buffers written at once */
+        private static final int WRITE_BATCH = 32;
+
+        /** the selector multiplexing the connections */
+        private final Selector selector;
+
+        /** connections waiting to be registered at the selector */
+        private final Queue<NioChannel> registrations;
+
+        /** connections whose write queue is waiting to be flushed */
+        private final Queue<NioChannel> writes;
+
+        /** buffer array for gathering writes */
+        private final ByteBuffer[] writeBatch;
+
+        /**
+         * @param index
+         *            the index of the thread
+         * @throws IOException
+         *             if the selector could not be opened
+         */
+        IoLoop(int index) throws IOException {
+            super("nio-server-" + index);
+            setDaemon(true);
+            selector = Selector.open();
+            registrations = new ConcurrentLinkedQueue<NioChannel>();
+            writes = new ConcurrentLinkedQueue<NioChannel>();
+            writeBatch = new ByteBuffer[WRITE_BATCH];
+        }
+
+        /**
+         * @return the server of this thread
+         */
+        NioServer getServer() {
+            return NioServer.this;
+        }
+
+        /**
+         * registers a new connection at the selector of this thread
+         * 
+         * @param channel
+         *            the connection
+         */
+        void register(NioChannel channel) {
+            registrations.add(channel);
+            if (Thread.currentThread() != this)
+                selector.wakeup();
+        }
+
+        /**
+         * asks the thread to flush the write queue of a connection
+         * 
+         * @param channel
+         *            the connection
+         */
+        void requestWrite(NioChannel channel) {
+            writes.add(channel);
+            if (Thread.currentThread() != this)
+                selector.wakeup();
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Thread#run()
+         */
+        public void run() {
+            while (running) {
+                // requests of this thread itself don't wake the selector up,
+                // so they are handled before selecting
+                NioChannel channel;
+                while ((channel = registrations.poll()) != null)
+                    channel.register(selector);
+                while ((channel = writes.poll()) != null)
+                    channel.flush(writeBatch);
+
+                try {
+                    selector.select();
+                } catch (IOException e) {
+                    LOG.error("select.failed", "error", e);
+                    break;
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys()
+                        .iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept();
+                            continue;
+                        }
+                        channel = (NioChannel) key.attachment();
+                        if (key.isReadable())
+                            channel.read();
+                        if (key.isValid() && key.isWritable())
+                            channel.flush(writeBatch);
+                    } catch (CancelledKeyException e) {
+                        if (key.attachment() instanceof NioChannel)
+                            ((NioChannel) key.attachment()).close();
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof NioChannel)
+                            ((NioChannel) key.attachment()).close();
+                        else
+                            LOG.warn("connection.notAccepted", "error", e);
+                    }
+                }
+            }
+
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof NioChannel)
+                    ((NioChannel) key.attachment()).close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOG.warn("selector.notClosed", "error", e);
+            }
+        }
+    }
+
+    /**
+     * interface for subscribers of a {@link NioServer}
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static interface ServerListener {
+        /**
+         * invoked when a new connection has been accepted, before any
+         * message of it is read
+         * 
+         * @param sender
+         *            the server
+         * @param channel
+         *            the new connection
+         */
+        void connectionAccepted(NioServer sender, NioChannel channel);
+    }
+}
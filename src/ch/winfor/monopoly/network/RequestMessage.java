@@ -19,5 +19,139 @@ public abstract class RequestMessage extends NetworkMessage {
     public static class RequestFullGame extends RequestMessage {
         /** */
         private static final long serialVersionUID = -5513755029742133581L;
+
+        /**
+         * the version of the last state the sender has applied, so only the
+         * changes since then need to be sent
+         */
+        protected long acknowledgedVersion;
+
+        /**
+         * requests the whole state
+         */
+        public RequestFullGame() {
+            this(UpdateMessage.StateUpdate.NO_VERSION);
+        }
+
+        /**
+         * @param acknowledgedVersion
+         *            the version of the last state the sender has applied
+         */
+        public RequestFullGame(long acknowledgedVersion) {
+            this.acknowledgedVersion = acknowledgedVersion;
+        }
+
+        /**
+         * @return the version of the last state the sender has applied
+         */
+        public long getAcknowledgedVersion() {
+            return acknowledgedVersion;
+        }
+    }
+
+    /**
+     * requests the board of the game (sent when the receiver gets a state of
+     * a board it doesn't know)
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class RequestBoard extends RequestMessage {
+        /** */
+        private static final long serialVersionUID = 4418380925960325061L;
+    }
+
+    /**
+     * asks the server to switch the connection to the lockstep mode (see
+     * {@link LockstepMessage})
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class RequestLockstep extends RequestMessage {
+        /** */
+        private static final long serialVersionUID = -3094611576640982736L;
+    }
+
+    /**
+     * asks a {@link RoomServer} to open a new room and join it
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class CreateRoom extends RequestMessage {
+        /** */
+        private static final long serialVersionUID = -2361290317716329127L;
+
+        /** the name of the room */
+        protected String name;
+
+        /** the number of players of the game in the room */
+        protected int nPlayers;
+
+        /**
+         * @param name
+         *            the name of the room
+         * @param nPlayers
+         *            the number of players of the game in the room
+         */
+        public CreateRoom(String name, int nPlayers) {
+            this.name = name;
+            this.nPlayers = nPlayers;
+        }
+
+        /**
+         * @return the name of the room
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of players of the game in the room
+         */
+        public int getNPlayers() {
+            return nPlayers;
+        }
+    }
+
+    /**
+     * asks a {@link RoomServer} to join an existing room
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class JoinRoom extends RequestMessage {
+        /** */
+        private static final long serialVersionUID = 5205446622163584302L;
+
+        /** the id of the room */
+        protected int roomId;
+
+        /**
+         * @param roomId
+         *            the id of the room
+         */
+        public JoinRoom(int roomId) {
+            this.roomId = roomId;
+        }
+
+        /**
+         * @return the id of the room
+         */
+        public int getRoomId() {
+            return roomId;
+        }
+    }
+
+    /**
+     * asks a {@link RoomServer} for its open rooms
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class ListRooms extends RequestMessage {
+        /** */
+        private static final long serialVersionUID = -6939104870434178745L;
     }
 }
@@ -0,0 +1,209 @@
+package ch.winfor.monopoly.network;
+
+import java.io.Serializable;
+
+/**
+ * base message for the answers of a {@link RoomServer} to the room requests
+ * of a client
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public abstract class RoomMessage extends NetworkMessage {
+    /** */
+    private static final long serialVersionUID = 3308917243170813544L;
+
+    /**
+     * public information about a room
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class RoomInfo implements Serializable {
+        /** */
+        private static final long serialVersionUID = -4405062419524516215L;
+
+        /** the id of the room */
+        private final int id;
+
+        /** the name of the room */
+        private final String name;
+
+        /** the number of players of the game */
+        private final int nPlayers;
+
+        /** the number of connected clients */
+        private final int nClients;
+
+        /**
+         * @param id
+         *            the id of the room
+         * @param name
+         *            the name of the room
+         * @param nPlayers
+         *            the number of players of the game
+         * @param nClients
+         *            the number of connected clients
+         */
+        public RoomInfo(int id, String name, int nPlayers, int nClients) {
+            this.id = id;
+            this.name = name;
+            this.nPlayers = nPlayers;
+            this.nClients = nClients;
+        }
+
+        /**
+         * @return the id of the room
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * @return the name of the room
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of players of the game
+         */
+        public int getNPlayers() {
+            return nPlayers;
+        }
+
+        /**
+         * @return the number of connected clients
+         */
+        public int getNClients() {
+            return nClients;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see java.lang.Object#toString()
+         */
+        @Override
+        public String toString() {
+            return "#" + id + " " + name + " (" + nClients + "/" + nPlayers
+                    + ")";
+        }
+    }
+
+    /**
+     * the rooms of a server, answer to
+     * {@link RequestMessage.ListRooms}
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class RoomList extends RoomMessage {
+        /** */
+        private static final long serialVersionUID = 1707418790137751474L;
+
+        /** the rooms */
+        protected RoomInfo[] rooms;
+
+        /**
+         * @param rooms
+         *            the rooms
+         */
+        public RoomList(RoomInfo[] rooms) {
+            this.rooms = rooms;
+        }
+
+        /**
+         * @return the rooms
+         */
+        public RoomInfo[] getRooms() {
+            return rooms;
+        }
+    }
+
+    /**
+     * confirms that the client has joined a room; all following messages
+     * concern the game of this room
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class RoomJoined extends RoomMessage {
+        /** */
+        private static final long serialVersionUID = -8418165230713093329L;
+
+        /** the id of the room */
+        protected int roomId;
+
+        /** the number of clients in the room, including the new one */
+        protected int nClients;
+
+        /** the index of the player the client plays */
+        protected int seat;
+
+        /**
+         * @param roomId
+         *            the id of the room
+         * @param nClients
+         *            the number of clients in the room, including the new one
+         * @param seat
+         *            the index of the player the client plays
+         */
+        public RoomJoined(int roomId, int nClients, int seat) {
+            this.roomId = roomId;
+            this.nClients = nClients;
+            this.seat = seat;
+        }
+
+        /**
+         * @return the id of the room
+         */
+        public int getRoomId() {
+            return roomId;
+        }
+
+        /**
+         * @return the number of clients in the room, including the new one
+         */
+        public int getNClients() {
+            return nClients;
+        }
+
+        /**
+         * @return the index of the player the client plays
+         */
+        public int getSeat() {
+            return seat;
+        }
+    }
+
+    /**
+     * answer to a room request that could not be fulfilled
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class RoomRefused extends RoomMessage {
+        /** */
+        private static final long serialVersionUID = 2263618870187924307L;
+
+        /** why the request was refused */
+        protected String reason;
+
+        /**
+         * @param reason
+         *            why the request was refused
+         */
+        public RoomRefused(String reason) {
+            this.reason = reason;
+        }
+
+        /**
+         * @return why the request was refused
+         */
+        public String getReason() {
+            return reason;
+        }
+    }
+}
@@ -0,0 +1,555 @@
+package ch.winfor.monopoly.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.winfor.monopoly.NetworkSetupPanel;
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.BoardFactory;
+import ch.winfor.monopoly.game.BuyableField;
+import ch.winfor.monopoly.game.Card;
+import ch.winfor.monopoly.game.Card.KeepableCard;
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.GameJournal;
+import ch.winfor.monopoly.game.GameJournal.SyncPolicy;
+import ch.winfor.monopoly.game.Player;
+import ch.winfor.monopoly.log.EventLog;
+import ch.winfor.monopoly.log.Log;
+import ch.winfor.monopoly.metrics.MetricsEndpoint;
+import ch.winfor.monopoly.metrics.MetricsReporter;
+import ch.winfor.monopoly.network.RequestMessage.CreateRoom;
+import ch.winfor.monopoly.network.RequestMessage.JoinRoom;
+import ch.winfor.monopoly.network.RequestMessage.ListRooms;
+import ch.winfor.monopoly.network.RoomMessage.RoomInfo;
+import ch.winfor.monopoly.network.RoomMessage.RoomList;
+import ch.winfor.monopoly.network.RoomMessage.RoomRefused;
+
+/**
+ * headless server hosting many games at the same time
+ * 
+ * Every game is played in a {@link GameRoom}. New connections are in the
+ * lobby first, where they can list the rooms ({@link ListRooms}), open a new
+ * one ({@link CreateRoom}) or join an existing one ({@link JoinRoom}). After
+ * {@link RoomMessage.RoomJoined}, all messages of the client concern the game
+ * of the room.
+ * 
+ * The rooms are distributed among a fixed number of worker threads by their
+ * id. All mutations of a game run on the worker of its room, so the games are
+ * never accessed concurrently. Rooms in which no client has sent a message
+ * for a while are closed.
+ * 
+ * With a journal directory, the game of every room is recorded by a
+ * {@link GameJournal} in a subdirectory <code>room-&lt;id&gt;</code>. When
+ * the server is started again after a crash or {@link #close()}, these rooms
+ * are restored with the same ids, and the clients can join them again. The
+ * journal of a room is deleted when the room is closed for being idle.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class RoomServer implements NioServer.ServerListener {
+    /** the events of the network code */
+    private static final EventLog LOG = Log.get(Log.NETWORK);
+
+    /** default milliseconds a player has for his turn */
+    public static final long DEFAULT_TURN_TIMEOUT = 60 * 1000;
+
+    /** default milliseconds without messages after which a room is closed */
+    public static final long DEFAULT_IDLE_TIMEOUT = 10 * 60 * 1000;
+
+    /** milliseconds between two dumps of the metrics by {@link #main} */
+    private static final long METRICS_PERIOD = 60 * 1000;
+
+    /** the maximum number of players in a room */
+    public static final int MAX_PLAYERS = 8;
+
+    /** milliseconds between two searches for idle rooms */
+    private static final long EVICTION_INTERVAL = 10 * 1000;
+
+    /** the prefix of the journal directories of the rooms */
+    private static final String ROOM_DIRECTORY_PREFIX = "room-";
+
+    /** the file in the journal directory of a room containing its name */
+    static final String NAME_FILE = "name";
+
+    /** the server accepting the connections */
+    private NioServer nioServer;
+
+    /** the worker threads the rooms are distributed among */
+    private ScheduledExecutorService[] workers;
+
+    /** the open rooms by id */
+    private ConcurrentHashMap<Integer, GameRoom> rooms;
+
+    /** the id of the next room */
+    private AtomicInteger nextRoomId;
+
+    /** the board of the games */
+    private Board board;
+
+    /** milliseconds a player has for his turn */
+    private long turnTimeout;
+
+    /** milliseconds without messages after which a room is closed */
+    private long idleTimeout;
+
+    /** the directory of the journals of the rooms or <code>null</code> */
+    private File journalDirectory;
+
+    /** when the journals are forced to the disk */
+    private SyncPolicy syncPolicy;
+
+    /**
+     * initializes the server with one worker per processor core and the
+     * default timeouts
+     * 
+     * @param port
+     *            the port on which the server should run
+     * @param board
+     *            the board of all games
+     * @throws IOException
+     *             if the port is already in use
+     */
+    public RoomServer(int port, Board board) throws IOException {
+        this(port, board, Runtime.getRuntime().availableProcessors(),
+                DEFAULT_TURN_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    /**
+     * initializes the server
+     * 
+     * @param port
+     *            the port on which the server should run
+     * @param board
+     *            the board of all games; it is shared between the games and
+     *            must not be modified
+     * @param nWorkers
+     *            the number of worker threads running the games
+     * @param turnTimeout
+     *            milliseconds a player has for his turn before it is finished
+     *            for him
+     * @param idleTimeout
+     *            milliseconds without messages after which a room is closed
+     * @throws IOException
+     *             if the port is already in use
+     */
+    public RoomServer(int port, Board board, int nWorkers, long turnTimeout,
+            long idleTimeout) throws IOException {
+        this(port, board, nWorkers, turnTimeout, idleTimeout, null,
+                SyncPolicy.PERIODIC);
+    }
+
+    /**
+     * initializes the server and restores the rooms of the journals in a
+     * directory
+     * 
+     * @param port
+     *            the port on which the server should run
+     * @param board
+     *            the board of all games; it is shared between the games and
+     *            must not be modified
+     * @param nWorkers
+     *            the number of worker threads running the games
+     * @param turnTimeout
+     *            milliseconds a player has for his turn before it is finished
+     *            for him
+     * @param idleTimeout
+     *            milliseconds without messages after which a room is closed
+     * @param journalDirectory
+     *            the directory of the journals of the rooms; it is created if
+     *            it doesn't exist; <code>null</code> for no journals
+     * @param syncPolicy
+     *            when the journals are forced to the disk
+     * @throws IOException
+     *             if the port is already in use or the directory can't be
+     *             created
+     */
+    public RoomServer(int port, Board board, int nWorkers, long turnTimeout,
+            long idleTimeout, File journalDirectory, SyncPolicy syncPolicy)
+            throws IOException {
+        this.board = board;
+        this.turnTimeout = turnTimeout;
+        this.idleTimeout = idleTimeout;
+        this.journalDirectory = journalDirectory;
+        this.syncPolicy = syncPolicy;
+        rooms = new ConcurrentHashMap<Integer, GameRoom>();
+        nextRoomId = new AtomicInteger(1);
+
+        workers = new ScheduledExecutorService[Math.max(1, nWorkers)];
+        for (int i = 0; i < workers.length; i++) {
+            final String threadName = "room-worker-" + i;
+            workers[i] = Executors
+                    .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, threadName);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+
+        if (journalDirectory != null) {
+            if (!journalDirectory.isDirectory() && !journalDirectory.mkdirs())
+                throw new IOException("can't create " + journalDirectory);
+            recoverRooms();
+        }
+
+        nioServer = new NioServer(port);
+        nioServer.addServerListener(this);
+    }
+
+    /**
+     * starts accepting connections and the search for idle rooms
+     */
+    public void start() {
+        for (final ScheduledExecutorService worker : workers) {
+            worker.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    evictIdleRooms(worker);
+                }
+            }, EVICTION_INTERVAL, EVICTION_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+        nioServer.start();
+    }
+
+    /**
+     * stops the server and closes all rooms; their journals are kept
+     */
+    public void close() {
+        try {
+            nioServer.close();
+        } catch (IOException e) {
+            LOG.warn("server.notClosed", "error", e);
+        }
+        for (final GameRoom room : rooms.values()) {
+            room.getWorker().execute(new Runnable() {
+                @Override
+                public void run() {
+                    room.close(true);
+                }
+            });
+        }
+        rooms.clear();
+        for (ScheduledExecutorService worker : workers)
+            worker.shutdown();
+    }
+
+    /**
+     * @return the port on which the server listens for connections
+     */
+    public int getPort() {
+        return nioServer.getPort();
+    }
+
+    /**
+     * @return the number of open rooms
+     */
+    public int getNRooms() {
+        return rooms.size();
+    }
+
+    /**
+     * opens a new room
+     * 
+     * @param name
+     *            the name of the room
+     * @param nPlayers
+     *            the number of players of the game
+     * @return the id of the new room
+     * @throws IllegalArgumentException
+     *             if the number of players is not between <code>1</code> and
+     *             {@link #MAX_PLAYERS}
+     */
+    public int createRoom(String name, int nPlayers) {
+        if (nPlayers < 1 || nPlayers > MAX_PLAYERS)
+            throw new IllegalArgumentException("invalid number of players: "
+                    + nPlayers);
+        int id = nextRoomId.getAndIncrement();
+        GameRoom room = openRoom(id, name, new Game(board, nPlayers, null),
+                null);
+        // the requests are read by the I/O threads, which must not wait for
+        // the files of the journal
+        if (journalDirectory != null)
+            room.startJournal(new File(journalDirectory,
+                    ROOM_DIRECTORY_PREFIX + id), syncPolicy);
+        return id;
+    }
+
+    /**
+     * creates a room and adds it to the open rooms
+     * 
+     * @param id
+     *            the id of the room
+     * @param name
+     *            the name of the room
+     * @param game
+     *            the game of the room
+     * @param journal
+     *            the journal recording the game or <code>null</code>
+     * @return the room
+     */
+    private GameRoom openRoom(int id, String name, Game game,
+            GameJournal journal) {
+        // the journal is a listener of the game before the clients, so a
+        // batch is written before its updates are sent
+        GameRoom room = new GameRoom(this, id, name, game, journal,
+                workers[id % workers.length], turnTimeout);
+        rooms.put(id, room);
+        return room;
+    }
+
+    /**
+     * restores the rooms of the journals in the journal directory
+     */
+    private void recoverRooms() {
+        File[] directories = journalDirectory.listFiles();
+        if (directories == null)
+            return;
+        for (File directory : directories) {
+            String fileName = directory.getName();
+            if (!fileName.startsWith(ROOM_DIRECTORY_PREFIX)
+                    || !GameJournal.exists(directory))
+                continue;
+            int id;
+            try {
+                id = Integer.parseInt(fileName.substring(ROOM_DIRECTORY_PREFIX
+                        .length()));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            try {
+                GameJournal journal = GameJournal.recover(directory, board,
+                        syncPolicy);
+                String name = "room " + id;
+                File nameFile = new File(directory, NAME_FILE);
+                if (nameFile.isFile())
+                    name = new String(Files.readAllBytes(nameFile.toPath()),
+                            StandardCharsets.UTF_8);
+                openRoom(id, name, journal.getGame(), journal);
+                if (id >= nextRoomId.get())
+                    nextRoomId.set(id + 1);
+                LOG.info("room.recovered", "room", id, "actions", journal
+                        .getGame().getNActions());
+            } catch (IOException e) {
+                LOG.error("room.notRecovered", "room", id, "reason",
+                        e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return public information about all open rooms
+     */
+    public RoomInfo[] getRooms() {
+        List<RoomInfo> infos = new ArrayList<RoomInfo>(rooms.size());
+        for (GameRoom room : rooms.values())
+            infos.add(room.getInfo());
+        return infos.toArray(new RoomInfo[infos.size()]);
+    }
+
+    /**
+     * @return the answer to a {@link ListRooms} request
+     */
+    RoomList createRoomList() {
+        return new RoomList(getRooms());
+    }
+
+    /**
+     * answers a join request that could not be fulfilled
+     * 
+     * @param requester
+     *            the connection that received the request
+     * @param reason
+     *            why the client can't join
+     */
+    void joinRefused(MonopolyConnection requester, String reason) {
+        if (requester instanceof LobbyConnection)
+            ((LobbyConnection) requester).joining = false;
+        requester.sendMessage(new RoomRefused(reason));
+    }
+
+    /**
+     * closes the idle rooms of a worker; runs on this worker
+     * 
+     * @param worker
+     *            the worker
+     */
+    private void evictIdleRooms(ScheduledExecutorService worker) {
+        long now = System.currentTimeMillis();
+        for (GameRoom room : rooms.values()) {
+            if (room.getWorker() == worker && room.isIdle(now, idleTimeout)) {
+                rooms.remove(room.getId());
+                room.close(false);
+                LOG.info("room.evicted", "room", room.getId());
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see
+     * ch.winfor.monopoly.network.NioServer.ServerListener#connectionAccepted
+     * (ch.winfor.monopoly.network.NioServer,
+     * ch.winfor.monopoly.network.NioChannel)
+     */
+    @Override
+    public void connectionAccepted(NioServer sender, NioChannel channel) {
+        channel.setConnection(new LobbyConnection(channel));
+    }
+
+    /**
+     * a connection that hasn't joined a room yet
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    private class LobbyConnection extends MonopolyConnection {
+        /** the channel of the connection */
+        private NioChannel channel;
+
+        /**
+         * if the connection waits for a room to accept it; other join
+         * requests are refused in the meantime
+         */
+        private volatile boolean joining;
+
+        /**
+         * @param channel
+         *            the channel of the connection
+         */
+        LobbyConnection(NioChannel channel) {
+            super(channel.getSocket(), null, channel.getMessageStream());
+            this.channel = channel;
+        }
+
+        /*
+         * (non-Javadoc)
+         * 
+         * @see
+         * ch.winfor.monopoly.network.MonopolyConnection#messageReceived(ch.
+         * winfor.monopoly.network.NetworkMessage)
+         */
+        @Override
+        public void messageReceived(NetworkMessage message) {
+            if (message instanceof ListRooms) {
+                sendMessage(createRoomList());
+            } else if (joining) {
+                sendMessage(new RoomRefused("already joining a room"));
+            } else if (message instanceof CreateRoom) {
+                CreateRoom cr = (CreateRoom) message;
+                try {
+                    int id = createRoom(cr.getName(), cr.getNPlayers());
+                    joining = true;
+                    rooms.get(id).join(channel, this);
+                } catch (IllegalArgumentException e) {
+                    sendMessage(new RoomRefused(e.getMessage()));
+                }
+            } else if (message instanceof JoinRoom) {
+                int id = ((JoinRoom) message).getRoomId();
+                GameRoom room = rooms.get(id);
+                if (room != null) {
+                    joining = true;
+                    room.join(channel, this);
+                } else
+                    sendMessage(new RoomRefused("no room " + id));
+            } else {
+                sendMessage(new RoomRefused("not in a room"));
+            }
+        }
+
+        // a connection in the lobby has no game, so there are no game events
+
+        @Override
+        public void playingPieceMoved(Game sender, int pieceIndex,
+                int oldPosition) {
+        }
+
+        @Override
+        public void playerEndedTurn(Game sender, int playerIndex) {
+        }
+
+        @Override
+        public void playerWealthChanged(Game sender, Player player,
+                long wealthBefore) {
+        }
+
+        @Override
+        public void playerWentBankrupt(Game sender, Player player) {
+        }
+
+        @Override
+        public void playersJailStateChanged(Game sender, Player player,
+                int jailStateBefore) {
+        }
+
+        @Override
+        public void playerObtained(Game sender, Player player,
+                BuyableField field) {
+        }
+
+        @Override
+        public void playerKeepsCard(Game sender, Player player,
+                KeepableCard card) {
+        }
+
+        @Override
+        public void houseNumberChanged(Game sender, int position, int oldNumber) {
+        }
+
+        @Override
+        public void cardDrawn(Game sender, String deckName, Card c) {
+        }
+    }
+
+    /**
+     * runs a server until the process is killed
+     * 
+     * @param args
+     *            <code>[port] [workers] [journal directory]
+     *            [metrics port]</code>; an empty journal directory runs the
+     *            rooms without journals; with a metrics port, the metrics are
+     *            served on that port of the loopback interface and written to
+     *            the output every minute
+     */
+    public static void main(String[] args) throws IOException,
+            InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Integer
+                .parseInt(NetworkSetupPanel.DEFAULT_PORT);
+        int nWorkers = args.length > 1 ? Integer.parseInt(args[1]) : Runtime
+                .getRuntime().availableProcessors();
+        File journalDirectory = null;
+        if (args.length > 2 && !args[2].isEmpty())
+            journalDirectory = new File(args[2]);
+        if (args.length > 3) {
+            MetricsEndpoint endpoint = new MetricsEndpoint(
+                    Integer.parseInt(args[3]));
+            endpoint.start();
+            new MetricsReporter(System.out, METRICS_PERIOD).start();
+            System.out.println("metrics on 127.0.0.1:" + endpoint.getPort());
+        }
+
+        RoomServer server = new RoomServer(port,
+                BoardFactory.createStandardBoard(), nWorkers,
+                DEFAULT_TURN_TIMEOUT, DEFAULT_IDLE_TIMEOUT, journalDirectory,
+                SyncPolicy.PERIODIC);
+        server.start();
+        System.out.println("room server listening on port " + server.getPort()
+                + " with " + nWorkers + " workers and " + server.getNRooms()
+                + " restored rooms");
+        // the server threads are daemons
+        Thread.currentThread().join();
+    }
+}
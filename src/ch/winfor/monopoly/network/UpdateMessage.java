@@ -1,5 +1,11 @@
 package ch.winfor.monopoly.network;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
 import ch.winfor.monopoly.game.Board;
 import ch.winfor.monopoly.game.BuyableField;
 import ch.winfor.monopoly.game.Card;
@@ -7,6 +13,7 @@ import ch.winfor.monopoly.game.Card.KeepableCard;
 import ch.winfor.monopoly.game.CardCollection;
 import ch.winfor.monopoly.game.Field;
 import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.GameSnapshot;
 import ch.winfor.monopoly.game.Player;
 import ch.winfor.monopoly.game.PlayingPiece;
 import ch.winfor.monopoly.game.ShuffledCardDeck;
@@ -108,6 +115,255 @@ public abstract class UpdateMessage extends NetworkMessage {
         }
     }
 
+    /**
+     * sends the board a game is played on
+     * 
+     * The board never changes during a game, so it is only sent if the
+     * receiver doesn't know it yet (see {@link RequestMessage.RequestBoard}).
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class BoardUpdate extends UpdateMessage {
+        /** */
+        private static final long serialVersionUID = -2207245914606164347L;
+
+        /** the board */
+        private Board board;
+
+        /**
+         * @param board
+         *            the board
+         */
+        public BoardUpdate(Board board) {
+            this.board = board;
+        }
+
+        @Override
+        public void updateGame(Game game) {
+            game.setBoard(board);
+        }
+
+        /**
+         * the board alone doesn't make the game equal to the sender's, so the
+         * hash is not checked
+         * 
+         * @see ch.winfor.monopoly.network.UpdateMessage#checkHash(Game)
+         */
+        @Override
+        public boolean checkHash(Game game) {
+            return true;
+        }
+
+        /**
+         * @return the board
+         */
+        public Board getBoard() {
+            return board;
+        }
+    }
+
+    /**
+     * message replacing the mutable state of the game by a new version
+     * 
+     * Every state sent to a client gets a new version number. The client
+     * remembers the last state it has applied successfully and tells the
+     * sender its version when it requests a resynchronization (see
+     * {@link RequestMessage.RequestFullGame}), so the sender can transmit only
+     * the difference to that state.
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static abstract class StateUpdate extends UpdateMessage {
+        /** */
+        private static final long serialVersionUID = -2618264730463398510L;
+
+        /** version number for "no state" */
+        public static final long NO_VERSION = -1;
+
+        /** the version of the state */
+        protected long version;
+
+        /** the state after applying the update */
+        private transient GameSnapshot snapshot;
+
+        /**
+         * @param version
+         *            the version of the new state
+         */
+        public StateUpdate(long version) {
+            this.version = version;
+        }
+
+        /**
+         * creates the new state
+         * 
+         * @param baseVersion
+         *            the version of the last state the receiver applied
+         * @param base
+         *            the last state the receiver applied, may be
+         *            <code>null</code>
+         * @return the new state
+         * @throws InvalidUpdateException
+         *             if the update can't be applied on the base state
+         */
+        public abstract GameSnapshot createSnapshot(long baseVersion,
+                GameSnapshot base) throws InvalidUpdateException;
+
+        /**
+         * applies the state to a game
+         * 
+         * @param game
+         *            the game
+         * @param baseVersion
+         *            the version of the last state the receiver applied
+         * @param base
+         *            the last state the receiver applied, may be
+         *            <code>null</code>
+         * @throws InvalidUpdateException
+         *             if the update can't be applied
+         */
+        public void updateGame(Game game, long baseVersion, GameSnapshot base)
+                throws InvalidUpdateException {
+            GameSnapshot newState = createSnapshot(baseVersion, base);
+            if (newState.getBoardHash() != game.getBoard().createHash())
+                throw new InvalidUpdateException("state of an unknown board");
+            newState.restore(game);
+            snapshot = newState;
+        }
+
+        @Override
+        public void updateGame(Game game) throws InvalidUpdateException {
+            updateGame(game, NO_VERSION, null);
+        }
+
+        /**
+         * @return the version of the state
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * @return the state after {@link #updateGame(Game)} has been
+         *         successful, <code>null</code> before
+         */
+        public GameSnapshot getSnapshot() {
+            return snapshot;
+        }
+    }
+
+    /**
+     * message containing the whole mutable state of the game
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class SnapshotUpdate extends StateUpdate {
+        /** */
+        private static final long serialVersionUID = 1966018829498914215L;
+
+        /** the state */
+        protected GameSnapshot state;
+
+        /**
+         * @param version
+         *            the version of the state
+         * @param state
+         *            the state
+         */
+        public SnapshotUpdate(long version, GameSnapshot state) {
+            super(version);
+            this.state = state;
+        }
+
+        @Override
+        public GameSnapshot createSnapshot(long baseVersion, GameSnapshot base) {
+            return state;
+        }
+    }
+
+    /**
+     * message containing the difference between the current state and a
+     * state the receiver already knows
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class DeltaUpdate extends StateUpdate {
+        /** */
+        private static final long serialVersionUID = -9078305733451536154L;
+
+        /** the version of the state the delta is based on */
+        protected long baseVersion;
+
+        /** the delta written by {@link GameSnapshot#writeDelta} */
+        protected byte[] delta;
+
+        /**
+         * creates the delta between two states
+         * 
+         * @param version
+         *            the version of the new state
+         * @param baseVersion
+         *            the version of the base state
+         * @param base
+         *            the state the receiver knows
+         * @param state
+         *            the new state
+         */
+        public DeltaUpdate(long version, long baseVersion, GameSnapshot base,
+                GameSnapshot state) {
+            super(version);
+            this.baseVersion = baseVersion;
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try {
+                state.writeDelta(base, new DataOutputStream(baos));
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // can't happen in memory
+            }
+            this.delta = baos.toByteArray();
+        }
+
+        /**
+         * @param version
+         *            the version of the new state
+         * @param baseVersion
+         *            the version of the base state
+         * @param delta
+         *            the encoded delta
+         */
+        DeltaUpdate(long version, long baseVersion, byte[] delta) {
+            super(version);
+            this.baseVersion = baseVersion;
+            this.delta = delta;
+        }
+
+        @Override
+        public GameSnapshot createSnapshot(long baseVersion, GameSnapshot base)
+                throws InvalidUpdateException {
+            if (base == null || baseVersion != this.baseVersion)
+                throw new InvalidUpdateException("delta based on version "
+                        + this.baseVersion + ", but the current version is "
+                        + baseVersion);
+            try {
+                return GameSnapshot.readDelta(base, new DataInputStream(
+                        new ByteArrayInputStream(delta)));
+            } catch (IOException e) {
+                throw new InvalidUpdateException("malformed delta: "
+                        + e.getMessage());
+            }
+        }
+
+        /**
+         * @return the version of the state the delta is based on
+         */
+        public long getBaseVersion() {
+            return baseVersion;
+        }
+    }
+
     /**
      * an update message sent when a player moved its piece
      * 
@@ -311,6 +567,55 @@ public abstract class UpdateMessage extends NetworkMessage {
         }
     }
 
+    /**
+     * message containing all the updates caused by one action, which are
+     * applied in order
+     * 
+     * Only the hash of the game after the last update is sent, so the updates
+     * in the batch don't carry hashes of their own.
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class UpdateBatch extends UpdateMessage {
+        /** */
+        private static final long serialVersionUID = 2350894318870457725L;
+
+        /** the updates */
+        protected UpdateMessage[] updates;
+
+        /**
+         * @param updates
+         *            the updates in the order they have to be applied
+         */
+        public UpdateBatch(UpdateMessage[] updates) {
+            this.updates = updates;
+        }
+
+        /**
+         * @return the number of updates in the batch
+         */
+        public int getNUpdates() {
+            return updates.length;
+        }
+
+        /**
+         * @param index
+         *            the index of the update
+         * @return the {@code index}th update
+         */
+        public UpdateMessage getUpdate(int index) {
+            return updates[index];
+        }
+
+        @Override
+        public void updateGame(Game game) throws InvalidUpdateException {
+            for (int i = 0; i < updates.length; i++) {
+                updates[i].updateGame(game);
+            }
+        }
+    }
+
     /**
      * exception class describing an error caused by an non-valid
      * {@link UpdateMessage}.
@@ -0,0 +1,214 @@
+package ch.winfor.monopoly.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.BoardFactory;
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.GameSnapshot;
+import ch.winfor.monopoly.network.NetworkMessageStream.Encoding;
+import ch.winfor.monopoly.network.RequestMessage.RequestFullGame;
+import ch.winfor.monopoly.network.UpdateMessage.BoardUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.CardDrawnUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.DeltaUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.FullGameUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.HousesNumberChangedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerEndedTurn;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerKeepsCardUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerMovedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerObtainedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayerWealthChangedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.PlayersJailStateChangedUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.SnapshotUpdate;
+import ch.winfor.monopoly.network.UpdateMessage.UpdateBatch;
+import ch.winfor.monopoly.res.Ressources;
+
+/**
+ * command line tool comparing the message sizes and the encoding and decoding
+ * throughput of the two encodings of {@link NetworkMessageStream}
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class WireFormatComparison {
+    /** number of times the sample messages are encoded per measurement */
+    private static final int ROUNDS = 20000;
+
+    /**
+     * creates the messages that are sent most often during a game
+     * 
+     * @return the sample messages
+     */
+    private static NetworkMessage[] createSampleMessages() {
+        PlayerObtainedUpdate obtained = new PlayerObtainedUpdate();
+        obtained.playerIndex = 2;
+        obtained.fieldIndex = 39;
+        HousesNumberChangedUpdate houses = new HousesNumberChangedUpdate();
+        houses.fieldIndex = 19;
+        houses.newHouseNumbers = 3;
+        CardDrawnUpdate card = new CardDrawnUpdate();
+        card.deckName = "chance";
+
+        NetworkMessage[] messages = { new PlayerMovedUpdate(1, 24),
+                new PlayerWealthChangedUpdate(1350),
+                new PlayersJailStateChangedUpdate(3), obtained, houses, card,
+                new PlayerEndedTurn(), new RequestFullGame() };
+        for (int i = 0; i < messages.length; i++) {
+            if (messages[i] instanceof UpdateMessage)
+                ((UpdateMessage) messages[i]).setHash(0x5DEECE66DL * (i + 1)
+                        * 0x9E3779B97F4A7C15L);
+        }
+        return messages;
+    }
+
+    /**
+     * creates one message of every type of {@link UpdateMessage}, e.g. for
+     * benchmarks
+     * 
+     * @param game
+     *            the game the messages are about; its board must have a deck
+     *            named <code>Chance</code>
+     * @return the messages
+     */
+    public static UpdateMessage[] createSampleUpdates(Game game) {
+        PlayerObtainedUpdate obtained = new PlayerObtainedUpdate();
+        obtained.playerIndex = 1;
+        obtained.fieldIndex = 39;
+        PlayerKeepsCardUpdate keeps = new PlayerKeepsCardUpdate();
+        keeps.playerIndex = 1;
+        keeps.cardCollectionName = "Chance";
+        HousesNumberChangedUpdate houses = new HousesNumberChangedUpdate();
+        houses.fieldIndex = 19;
+        houses.newHouseNumbers = 3;
+        CardDrawnUpdate card = new CardDrawnUpdate();
+        card.deckName = "Chance";
+        PlayerMovedUpdate moved = new PlayerMovedUpdate(1, 24);
+        PlayerWealthChangedUpdate wealth = new PlayerWealthChangedUpdate(1350);
+        PlayerEndedTurn ended = new PlayerEndedTurn();
+
+        GameSnapshot base = GameSnapshot.capture(new Game(game.getBoard(),
+                game.getNPlayers(), null, game.getSeed()));
+        GameSnapshot state = GameSnapshot.capture(game);
+        UpdateMessage[] updates = { moved, wealth, ended,
+                new PlayersJailStateChangedUpdate(3), obtained, keeps, houses,
+                card, new UpdateBatch(new UpdateMessage[] { moved, wealth,
+                        ended }), new SnapshotUpdate(2, state),
+                new DeltaUpdate(2, 1, base, state), new FullGameUpdate(game),
+                new BoardUpdate(game.getBoard()) };
+        for (int i = 0; i < updates.length; i++)
+            updates[i].setHash(game.createHash());
+        return updates;
+    }
+
+    /**
+     * writes messages with a fresh {@link NetworkMessageStream}
+     * 
+     * @param messages
+     *            the messages to write
+     * @param encoding
+     *            the encoding
+     * @return the written bytes
+     */
+    private static byte[] write(NetworkMessage[] messages, Encoding encoding)
+            throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        NetworkMessageStream nms = new NetworkMessageStream(baos, null,
+                encoding);
+        for (NetworkMessage message : messages)
+            nms.writeMessage(message);
+        return baos.toByteArray();
+    }
+
+    /**
+     * measures the size of every message and the throughput of an encoding
+     * 
+     * @param messages
+     *            the messages
+     * @param encoding
+     *            the encoding
+     */
+    private static void measure(NetworkMessage[] messages, Encoding encoding)
+            throws IOException {
+        int header = write(new NetworkMessage[0], encoding).length;
+        System.out.println(encoding + ":");
+        long total = 0;
+        for (NetworkMessage message : messages) {
+            int size = write(new NetworkMessage[] { message }, encoding).length
+                    - header;
+            total += size;
+            System.out.printf("  %-32s %6d bytes%n", message.getClass()
+                    .getSimpleName(), size);
+        }
+        System.out.printf("  %-32s %6d bytes%n", "total", total);
+
+        NetworkMessageStream writer = new NetworkMessageStream(
+                new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                    }
+                }, null, encoding);
+        for (int i = 0; i < ROUNDS / 10; i++) {
+            for (NetworkMessage message : messages)
+                writer.writeMessage(message);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (NetworkMessage message : messages)
+                writer.writeMessage(message);
+        }
+        double encodeSeconds = (System.nanoTime() - start) / 1e9;
+
+        NetworkMessage[] repeated = new NetworkMessage[messages.length
+                * ROUNDS];
+        for (int i = 0; i < repeated.length; i++)
+            repeated[i] = messages[i % messages.length];
+        byte[] data = write(repeated, encoding);
+        start = System.nanoTime();
+        NetworkMessageStream reader = new NetworkMessageStream(null,
+                new ByteArrayInputStream(data), encoding);
+        for (int i = 0; i < repeated.length; i++)
+            reader.readMessage();
+        double decodeSeconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("  encode: %.0f messages/s, decode: %.0f messages/s%n",
+                repeated.length / encodeSeconds, repeated.length
+                        / decodeSeconds);
+    }
+
+    /**
+     * runs the comparison
+     * 
+     * @param args
+     *            optional board ressource for the full game update (e.g.
+     *            {@code swiss_edition.xml})
+     */
+    public static void main(String[] args) throws IOException, SAXException,
+            ParserConfigurationException {
+        NetworkMessage[] messages = createSampleMessages();
+        measure(messages, Encoding.SERIALIZATION);
+        measure(messages, Encoding.BINARY);
+
+        String boardName = args.length > 0 ? args[0] : "standard_edition.xml";
+        InputStream is = Ressources.getRessource(boardName);
+        if (is == null)
+            throw new IOException("board not found: " + boardName);
+        Board board = BoardFactory.createFromXml(is);
+        NetworkMessage[] full = { new FullGameUpdate(new Game(board, 4, null)) };
+        System.out.println("full game update: "
+                + write(full, Encoding.SERIALIZATION).length + " bytes "
+                + "(serialization), " + write(full, Encoding.BINARY).length
+                + " bytes (binary)");
+    }
+}
@@ -0,0 +1,257 @@
+package ch.winfor.monopoly.sim;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.BuyableField;
+import ch.winfor.monopoly.game.Field;
+import ch.winfor.monopoly.game.Game;
+import ch.winfor.monopoly.game.Player;
+import ch.winfor.monopoly.game.PropertyField;
+import ch.winfor.monopoly.game.TurnHandler;
+
+/**
+ * a game that is played synchronously without any threads, listeners or gui
+ * 
+ * The game is played turn by turn by calling the {@link TurnHandler} actions
+ * directly. Decisions are delegated to one {@link Strategy} per player. The
+ * game is over as soon as a player goes bankrupt or the maximum number of
+ * turns is reached; in both cases the solvent player with the highest net
+ * worth wins.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class SimulatedGame {
+    /** maximum number of actions in one turn before it is considered stuck */
+    private static final int MAX_ACTIONS_PER_TURN = 256;
+
+    /** the game that is simulated */
+    private Game game;
+
+    /** the strategies of the players */
+    private Strategy[] strategies;
+
+    /** number of turns after which the game is aborted */
+    private int maxTurns;
+
+    /**
+     * initializes a new game on a board
+     * 
+     * @param board
+     *            the board to play on; it is not modified and can be shared
+     *            between several simulated games
+     * @param strategies
+     *            the strategies of the players (one per player)
+     * @param maxTurns
+     *            number of turns (summed over all players) after which the
+     *            game is aborted
+     */
+    public SimulatedGame(Board board, Strategy[] strategies, int maxTurns) {
+        this.game = new Game(board, strategies.length, null);
+        this.strategies = strategies;
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * plays the game until it is over
+     * 
+     * @return the outcome of the game
+     */
+    public GameOutcome play() {
+        int turns = 0;
+        while (turns < maxTurns) {
+            playTurn();
+            turns++;
+
+            int bankrupt = findBankruptPlayer();
+            if (bankrupt != -1) {
+                return new GameOutcome(findWinner(), turns, bankrupt);
+            }
+        }
+        return new GameOutcome(findWinner(), turns, -1);
+    }
+
+    /**
+     * plays one turn of the current player
+     */
+    public void playTurn() {
+        playTurn(game, strategies[game.getTurn()]);
+    }
+
+    /**
+     * plays the rest of the current turn of any game
+     * 
+     * @param game
+     *            the game
+     * @param strategy
+     *            the strategy making the decisions for the current player
+     * @throws IllegalStateException
+     *             if the turn does not end
+     */
+    public static void playTurn(Game game, Strategy strategy) {
+        TurnHandler th = game.getTurnHandler();
+
+        for (int actions = 0; actions < MAX_ACTIONS_PER_TURN; actions++) {
+            switch (th.getNextTask()) {
+            case CAST_DICE:
+                th.castDice();
+                break;
+            case MOVE_PLAYING_PIECE:
+                th.movePiece();
+                break;
+            case BUY_PROPERTY:
+                BuyableField field = th.getPropertyToBuy();
+                boolean buy = field != null
+                        && strategy.buyProperty(th, field)
+                        && th.getPlayer().getWealth() >= field.getPrice();
+                th.buyProperty(buy);
+                break;
+            case PAY_RENT:
+                th.payRent();
+                break;
+            case PAY_TAX:
+                th.payTax();
+                break;
+            case DRAW_CARD:
+                th.drawCard();
+                break;
+            case FOLLOW_CARD:
+                th.followCard();
+                break;
+            case END_TURN:
+                for (PropertyField house : strategy.chooseHouses(th)) {
+                    if (!th.buyHouse(house))
+                        break;
+                }
+                th.endTurn();
+                return;
+            default:
+                th.endTurn();
+                return;
+            }
+        }
+        throw new IllegalStateException("turn of player " + game.getTurn()
+                + " did not end after " + MAX_ACTIONS_PER_TURN + " actions");
+    }
+
+    /**
+     * @return the index of a player with negative wealth, <code>-1</code> if
+     *         every player is solvent
+     */
+    private int findBankruptPlayer() {
+        for (int i = 0; i < game.getNPlayers(); i++) {
+            if (game.getPlayer(i).getWealth() < 0)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the solvent player with the highest net worth
+     */
+    private int findWinner() {
+        int winner = -1;
+        long best = Long.MIN_VALUE;
+        for (int i = 0; i < game.getNPlayers(); i++) {
+            Player player = game.getPlayer(i);
+            if (player.getWealth() < 0)
+                continue;
+            long worth = getNetWorth(player);
+            if (worth > best) {
+                best = worth;
+                winner = i;
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * calculates the money of a player plus the price of everything he owns
+     * 
+     * @param player
+     *            the player
+     * @return the net worth of the player
+     */
+    public long getNetWorth(Player player) {
+        Board board = game.getBoard();
+        long worth = player.getWealth();
+        for (int i = 0; i < board.getAbsoluteLength(); i++) {
+            Field field = board.getField(i);
+            if (field instanceof BuyableField) {
+                BuyableField buyableField = (BuyableField) field;
+                if (player.possesses(buyableField))
+                    worth += buyableField.getPrice();
+            }
+        }
+        return worth;
+    }
+
+    /**
+     * @return the game that is simulated
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * the result of one simulated game
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class GameOutcome {
+        /** index of the winning player, <code>-1</code> if nobody won */
+        private final int winner;
+
+        /** number of turns played */
+        private final int turns;
+
+        /**
+         * index of the player who went bankrupt, <code>-1</code> if the game
+         * was aborted after the maximum number of turns
+         */
+        private final int bankruptPlayer;
+
+        /**
+         * @param winner
+         *            index of the winning player
+         * @param turns
+         *            number of turns played
+         * @param bankruptPlayer
+         *            index of the player who went bankrupt or <code>-1</code>
+         */
+        public GameOutcome(int winner, int turns, int bankruptPlayer) {
+            this.winner = winner;
+            this.turns = turns;
+            this.bankruptPlayer = bankruptPlayer;
+        }
+
+        /**
+         * @return index of the winning player, <code>-1</code> if nobody won
+         */
+        public int getWinner() {
+            return winner;
+        }
+
+        /**
+         * @return number of turns played
+         */
+        public int getTurns() {
+            return turns;
+        }
+
+        /**
+         * @return index of the player who went bankrupt, <code>-1</code> if
+         *         the game was aborted
+         */
+        public int getBankruptPlayer() {
+            return bankruptPlayer;
+        }
+
+        /**
+         * @return <code>true</code> if the game ended with a bankruptcy
+         */
+        public boolean endedByBankruptcy() {
+            return bankruptPlayer != -1;
+        }
+    }
+}
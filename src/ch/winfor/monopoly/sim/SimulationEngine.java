@@ -0,0 +1,202 @@
+package ch.winfor.monopoly.sim;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.xml.sax.SAXException;
+
+import ch.winfor.monopoly.game.Board;
+import ch.winfor.monopoly.game.BoardFactory;
+import ch.winfor.monopoly.metrics.Metrics;
+import ch.winfor.monopoly.res.Ressources;
+
+/**
+ * runs a large number of independent {@link SimulatedGame}s on all available
+ * processors
+ * 
+ * The games are split into chunks which are played on a
+ * {@link ForkJoinPool}; each chunk collects its outcomes in its own
+ * {@link SimulationResult}, so the games don't share any mutable state except
+ * the (read-only) {@link Board}.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class SimulationEngine {
+    /** number of games a task plays without splitting itself any further */
+    private static final int GAMES_PER_TASK = 64;
+
+    /** the standard maximum number of turns per game */
+    public static final int STANDARD_MAX_TURNS = 1000;
+
+    /** the board on which all games are played */
+    private Board board;
+
+    /** the strategies of the players */
+    private Strategy[] strategies;
+
+    /** number of turns after which a game is aborted */
+    private int maxTurns;
+
+    /** number of threads to use */
+    private int parallelism;
+
+    /**
+     * initializes the engine
+     * 
+     * @param board
+     *            the board on which all games are played
+     * @param strategies
+     *            the strategies of the players (one per player)
+     */
+    public SimulationEngine(Board board, Strategy[] strategies) {
+        this.board = board;
+        this.strategies = strategies;
+        this.maxTurns = STANDARD_MAX_TURNS;
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * @param maxTurns
+     *            the number of turns after which a game is aborted
+     */
+    public void setMaxTurns(int maxTurns) {
+        this.maxTurns = maxTurns;
+    }
+
+    /**
+     * @return the number of turns after which a game is aborted
+     */
+    public int getMaxTurns() {
+        return maxTurns;
+    }
+
+    /**
+     * @param parallelism
+     *            the number of threads to use
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @return the number of threads to use
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * plays a number of games and aggregates their outcomes
+     * 
+     * @param nGames
+     *            the number of games to play
+     * @return the aggregated outcomes
+     */
+    public SimulationResult simulate(int nGames) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long start = System.nanoTime();
+            SimulationResult result = pool.invoke(new SimulationTask(0,
+                    nGames));
+            result.setElapsedNanos(System.nanoTime() - start);
+            return result;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * task that plays a range of games, splitting itself if the range is too
+     * large
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    private class SimulationTask extends RecursiveTask<SimulationResult> {
+        /** */
+        private static final long serialVersionUID = -4281765530984017762L;
+
+        /** index of the first game to play */
+        private final int from;
+
+        /** index after the last game to play */
+        private final int to;
+
+        /**
+         * @param from
+         *            index of the first game to play
+         * @param to
+         *            index after the last game to play
+         */
+        public SimulationTask(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected SimulationResult compute() {
+            if (to - from <= GAMES_PER_TASK) {
+                SimulationResult result = new SimulationResult(
+                        strategies.length);
+                for (int i = from; i < to; i++) {
+                    SimulatedGame game = new SimulatedGame(board, strategies,
+                            maxTurns);
+                    result.add(game.play());
+                }
+                return result;
+            }
+
+            int middle = (from + to) >>> 1;
+            SimulationTask left = new SimulationTask(from, middle);
+            SimulationTask right = new SimulationTask(middle, to);
+            left.fork();
+            SimulationResult result = right.compute();
+            result.merge(left.join());
+            return result;
+        }
+    }
+
+    /**
+     * runs a simulation from the command line
+     * 
+     * Arguments (all optional): number of games, board ressource (e.g.
+     * {@code swiss_edition.xml}), number of players, maximum number of turns.
+     * 
+     * @param args
+     *            the command line arguments
+     */
+    public static void main(String[] args) throws SAXException, IOException,
+            ParserConfigurationException {
+        int nGames = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        String boardName = args.length > 1 ? args[1] : "standard_edition.xml";
+        int nPlayers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int maxTurns = args.length > 3 ? Integer.parseInt(args[3])
+                : STANDARD_MAX_TURNS;
+        // the metrics of the engine would cost more than they tell here
+        Metrics.ENABLED = false;
+
+        InputStream is = Ressources.getRessource(boardName);
+        if (is == null)
+            throw new IOException("board not found: " + boardName);
+        Board board = BoardFactory.createFromXml(is);
+
+        Strategy[] strategies = new Strategy[nPlayers];
+        for (int i = 0; i < nPlayers; i++) {
+            if (i % 2 == 0)
+                strategies[i] = new Strategy.AlwaysBuyStrategy();
+            else
+                strategies[i] = new Strategy.ReserveStrategy(300);
+        }
+
+        SimulationEngine engine = new SimulationEngine(board, strategies);
+        engine.setMaxTurns(maxTurns);
+        System.out.println("simulating on " + boardName + " with "
+                + engine.getParallelism() + " threads");
+        System.out.print(engine.simulate(nGames));
+    }
+}
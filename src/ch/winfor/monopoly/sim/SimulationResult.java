@@ -0,0 +1,211 @@
+package ch.winfor.monopoly.sim;
+
+import ch.winfor.monopoly.sim.SimulatedGame.GameOutcome;
+
+/**
+ * aggregated outcomes of a number of simulated games
+ * 
+ * Results of games that ran on different threads are collected in separate
+ * instances and combined with {@link #merge(SimulationResult)}.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public class SimulationResult {
+    /** number of games played */
+    private int nGames;
+
+    /** number of wins per player */
+    private long[] wins;
+
+    /** number of bankruptcies per player */
+    private long[] bankruptcies;
+
+    /** sum of the lengths (in turns) of all games */
+    private long totalTurns;
+
+    /** sum of the turns at which a player went bankrupt */
+    private long totalBankruptcyTurns;
+
+    /** number of games that were aborted after the maximum number of turns */
+    private int nAborted;
+
+    /** length of the shortest game */
+    private int minTurns;
+
+    /** length of the longest game */
+    private int maxTurns;
+
+    /** the time in nanoseconds it took to play the games */
+    private long elapsedNanos;
+
+    /**
+     * initializes an empty result
+     * 
+     * @param nPlayers
+     *            the number of players per game
+     */
+    public SimulationResult(int nPlayers) {
+        wins = new long[nPlayers];
+        bankruptcies = new long[nPlayers];
+        minTurns = Integer.MAX_VALUE;
+        maxTurns = 0;
+    }
+
+    /**
+     * adds the outcome of a game to the result
+     * 
+     * @param outcome
+     *            the outcome of the game
+     */
+    public void add(GameOutcome outcome) {
+        nGames++;
+        if (outcome.getWinner() != -1)
+            wins[outcome.getWinner()]++;
+        totalTurns += outcome.getTurns();
+        minTurns = Math.min(minTurns, outcome.getTurns());
+        maxTurns = Math.max(maxTurns, outcome.getTurns());
+
+        if (outcome.endedByBankruptcy()) {
+            bankruptcies[outcome.getBankruptPlayer()]++;
+            totalBankruptcyTurns += outcome.getTurns();
+        } else {
+            nAborted++;
+        }
+    }
+
+    /**
+     * adds the results of another simulation to this one
+     * 
+     * @param other
+     *            the other result
+     */
+    public void merge(SimulationResult other) {
+        nGames += other.nGames;
+        for (int i = 0; i < wins.length; i++) {
+            wins[i] += other.wins[i];
+            bankruptcies[i] += other.bankruptcies[i];
+        }
+        totalTurns += other.totalTurns;
+        totalBankruptcyTurns += other.totalBankruptcyTurns;
+        nAborted += other.nAborted;
+        minTurns = Math.min(minTurns, other.minTurns);
+        maxTurns = Math.max(maxTurns, other.maxTurns);
+    }
+
+    /**
+     * @return the number of games played
+     */
+    public int getNGames() {
+        return nGames;
+    }
+
+    /**
+     * @return the number of players per game
+     */
+    public int getNPlayers() {
+        return wins.length;
+    }
+
+    /**
+     * @param player
+     *            the index of the player
+     * @return the ratio of games the player has won
+     */
+    public double getWinRate(int player) {
+        return nGames == 0 ? 0.0 : (double) wins[player] / nGames;
+    }
+
+    /**
+     * @param player
+     *            the index of the player
+     * @return the ratio of games in which the player went bankrupt
+     */
+    public double getBankruptcyRate(int player) {
+        return nGames == 0 ? 0.0 : (double) bankruptcies[player] / nGames;
+    }
+
+    /**
+     * @return the average number of turns of a game
+     */
+    public double getAverageGameLength() {
+        return nGames == 0 ? 0.0 : (double) totalTurns / nGames;
+    }
+
+    /**
+     * @return the average turn at which the first player went bankrupt (only
+     *         counting games that ended with a bankruptcy)
+     */
+    public double getAverageBankruptcyTurn() {
+        int bankruptGames = nGames - nAborted;
+        return bankruptGames == 0 ? 0.0 : (double) totalBankruptcyTurns
+                / bankruptGames;
+    }
+
+    /**
+     * @return the number of games that were aborted after the maximum number
+     *         of turns
+     */
+    public int getNAborted() {
+        return nAborted;
+    }
+
+    /**
+     * @return the length of the shortest game
+     */
+    public int getMinTurns() {
+        return nGames == 0 ? 0 : minTurns;
+    }
+
+    /**
+     * @return the length of the longest game
+     */
+    public int getMaxTurns() {
+        return maxTurns;
+    }
+
+    /**
+     * @return the time in nanoseconds it took to play the games
+     */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * @param elapsedNanos
+     *            the time in nanoseconds it took to play the games
+     */
+    public void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the number of games played per second
+     */
+    public double getGamesPerSecond() {
+        return elapsedNanos == 0 ? 0.0 : nGames * 1e9 / elapsedNanos;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%d games in %.2f s (%.0f games/s)%n", nGames,
+                elapsedNanos / 1e9, getGamesPerSecond()));
+        sb.append(String.format(
+                "game length: avg %.1f, min %d, max %d turns; %d aborted%n",
+                getAverageGameLength(), getMinTurns(), getMaxTurns(), nAborted));
+        sb.append(String.format("first bankruptcy: avg turn %.1f%n",
+                getAverageBankruptcyTurn()));
+        for (int i = 0; i < wins.length; i++) {
+            sb.append(String.format(
+                    "player %d: %.2f%% wins, %.2f%% bankruptcies%n", i,
+                    getWinRate(i) * 100, getBankruptcyRate(i) * 100));
+        }
+        return sb.toString();
+    }
+}
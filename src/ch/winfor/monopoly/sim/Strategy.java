@@ -0,0 +1,126 @@
+package ch.winfor.monopoly.sim;
+
+import java.util.Collections;
+import java.util.List;
+
+import ch.winfor.monopoly.game.BuyableField;
+import ch.winfor.monopoly.game.Player;
+import ch.winfor.monopoly.game.PropertyField;
+import ch.winfor.monopoly.game.TurnHandler;
+
+/**
+ * decision policy used by a {@link SimulatedGame} for the choices a player
+ * can make during his turn
+ * 
+ * Strategies are shared between all games running in parallel, so
+ * implementations must not keep any mutable state.
+ * 
+ * @author Nicolas Winkler
+ * 
+ */
+public interface Strategy {
+    /**
+     * decides if the player should buy the field he landed on
+     * 
+     * @param turnHandler
+     *            information about the current turn and game state
+     * @param field
+     *            the field that can be bought
+     * @return <code>true</code> if the player wants to buy the field,
+     *         <code>false</code> otherwise
+     */
+    boolean buyProperty(TurnHandler turnHandler, BuyableField field);
+
+    /**
+     * invoked before the player ends his turn; decides which houses the
+     * player should build
+     * 
+     * The strategy doesn't build the houses itself: the caller builds them
+     * one after the other with {@link TurnHandler#buyHouse(PropertyField)}
+     * (or by submitting the {@link ch.winfor.monopoly.game.TurnCommand}s) and
+     * stops at the first one that can't be built.
+     * 
+     * @param turnHandler
+     *            information about the current turn and game state
+     * @return the fields to build a house on, in the order they are to be
+     *         built; empty if the player doesn't want to build
+     */
+    List<PropertyField> chooseHouses(TurnHandler turnHandler);
+
+    /**
+     * strategy that never buys anything (this is what {@link
+     * ch.winfor.monopoly.ai.MonopolyAi} does by default)
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class NeverBuyStrategy implements Strategy {
+        @Override
+        public boolean buyProperty(TurnHandler turnHandler, BuyableField field) {
+            return false;
+        }
+
+        @Override
+        public List<PropertyField> chooseHouses(TurnHandler turnHandler) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * strategy that buys every property it can afford, but never builds
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class AlwaysBuyStrategy implements Strategy {
+        @Override
+        public boolean buyProperty(TurnHandler turnHandler, BuyableField field) {
+            return turnHandler.getPlayer().getWealth() >= field.getPrice();
+        }
+
+        @Override
+        public List<PropertyField> chooseHouses(TurnHandler turnHandler) {
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * strategy that buys properties as long as a certain amount of money is
+     * left afterwards
+     * 
+     * @author Nicolas Winkler
+     * 
+     */
+    public static class ReserveStrategy implements Strategy {
+        /** the money the player wants to keep at least */
+        private final long reserve;
+
+        /**
+         * initializes the strategy
+         * 
+         * @param reserve
+         *            the money the player wants to keep at least
+         */
+        public ReserveStrategy(long reserve) {
+            this.reserve = reserve;
+        }
+
+        @Override
+        public boolean buyProperty(TurnHandler turnHandler, BuyableField field) {
+            Player player = turnHandler.getPlayer();
+            return player.getWealth() - field.getPrice() >= reserve;
+        }
+
+        @Override
+        public List<PropertyField> chooseHouses(TurnHandler turnHandler) {
+            return Collections.emptyList();
+        }
+
+        /**
+         * @return the money the player wants to keep at least
+         */
+        public long getReserve() {
+            return reserve;
+        }
+    }
+}